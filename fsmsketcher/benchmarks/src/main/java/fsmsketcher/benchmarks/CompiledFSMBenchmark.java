@@ -0,0 +1,67 @@
+package fsmsketcher.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fsmsketcher.engine.CompiledFSM;
+
+/**
+ *
+ * Word evaluation on a CompiledFSM, with the table on and off the heap. The machines are
+ * deterministic, so the compiled table has the same number of states as the FSM and the
+ * sizes line up with FSMBenchmark.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompiledFSMBenchmark {
+
+	@Param({ "16", "1024", "16384" })
+	int states;
+
+	@Param({ "0.5", "1.0" })
+	double density;
+
+	@Param({ "false", "true" })
+	boolean offHeap;
+
+	private CompiledFSM compiled;
+	private char[][] words;
+	private int next;
+
+	@Setup
+	public void setup() {
+		RandomMachine machine = new RandomMachine(states, FSMBenchmark.ALPHABET, density, 1, FSMBenchmark.SEED);
+		compiled = machine.build().compile(offHeap);
+		words = machine.walks(FSMBenchmark.WORDS, FSMBenchmark.WORD_LENGTH, FSMBenchmark.SEED);
+	}
+
+	private char[] nextWord() {
+		return words[next++ & (FSMBenchmark.WORDS - 1)];
+	}
+
+	@Benchmark
+	public boolean acceptsWord() {
+		return compiled.acceptsWord(nextWord());
+	}
+
+	@Benchmark
+	public boolean validateWord() {
+		return compiled.validateWord(nextWord());
+	}
+}
@@ -0,0 +1,87 @@
+package fsmsketcher.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fsmsketcher.engine.FSM;
+
+/**
+ *
+ * Building and tearing down whole machines. Each call works on a full machine, so the numbers
+ * are per machine rather than per state or edge.
+ *
+ * The removal benchmarks need a fresh machine every call, which is built in an invocation
+ * level setup. The machines are large enough that the setup overhead JMH warns about is
+ * small next to the work measured, except perhaps for the smallest size.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConstructionBenchmark {
+
+	@Param({ "16", "256", "4096" })
+	int states;
+
+	@Param({ "0.5", "1.0" })
+	double density;
+
+	@Param({ "1", "2", "4" })
+	int nondeterminism;
+
+	RandomMachine machine;
+
+	@Setup
+	public void setup() {
+		machine = new RandomMachine(states, FSMBenchmark.ALPHABET, density, nondeterminism, FSMBenchmark.SEED);
+	}
+
+	/**
+	 * A freshly built machine for each removal call.
+	 */
+	@State(Scope.Thread)
+	public static class Fresh {
+		FSM fsm;
+
+		@Setup(Level.Invocation)
+		public void setup(ConstructionBenchmark benchmark) {
+			fsm = benchmark.machine.build();
+		}
+	}
+
+	@Benchmark
+	public FSM construct() {
+		return machine.build();
+	}
+
+	@Benchmark
+	public FSM removeTransitions(Fresh fresh) {
+		for (int e = 0; e < machine.edgeFrom.length; e++) {
+			fresh.fsm.removeTransition(machine.edgeFrom[e], machine.edgeTo[e], machine.edgeSymbol[e]);
+		}
+		return fresh.fsm;
+	}
+
+	@Benchmark
+	public FSM removeStates(Fresh fresh) {
+		for (int s = machine.states - 1; s >= 0; s--) {
+			fresh.fsm.removeState(s);
+		}
+		return fresh.fsm;
+	}
+}
@@ -0,0 +1,67 @@
+package fsmsketcher.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fsmsketcher.engine.CompiledFSM;
+import fsmsketcher.engine.FSM;
+
+/**
+ *
+ * Compiling and minimizing whole machines. The sizes are small because the subset
+ * construction grows quickly with nondeterminism: a dense 48 state machine with two targets
+ * per symbol already compiles to tens of thousands of states.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeterminizeBenchmark {
+
+	@Param({ "8", "16", "32" })
+	int states;
+
+	@Param({ "0.5", "1.0" })
+	double density;
+
+	@Param({ "1", "2" })
+	int nondeterminism;
+
+	private FSM fsm;
+	private CompiledFSM compiled;
+
+	@Setup
+	public void setup() {
+		fsm = new RandomMachine(states, FSMBenchmark.ALPHABET, density, nondeterminism, FSMBenchmark.SEED).build();
+		compiled = fsm.compile();
+	}
+
+	@Benchmark
+	public CompiledFSM compile() {
+		return fsm.compile();
+	}
+
+	@Benchmark
+	public CompiledFSM compileParallel() {
+		return fsm.compileParallel(false);
+	}
+
+	@Benchmark
+	public CompiledFSM minimize() {
+		return compiled.minimize();
+	}
+}
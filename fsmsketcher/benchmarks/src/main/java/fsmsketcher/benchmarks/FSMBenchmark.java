@@ -0,0 +1,88 @@
+package fsmsketcher.benchmarks;
+
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fsmsketcher.engine.FSM;
+
+/**
+ *
+ * Word evaluation on the FSM interpreter, which steps a set of states per symbol. Each call
+ * tests the next of a fixed set of words, so the numbers are per word of WORD_LENGTH symbols.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FSMBenchmark {
+
+	static final int ALPHABET = 4;
+	static final int WORDS = 256;
+	static final int WORD_LENGTH = 32;
+	static final long SEED = 42;
+
+	@Param({ "16", "1024", "16384" })
+	int states;
+
+	@Param({ "0.5", "1.0" })
+	double density;
+
+	@Param({ "1", "2", "4" })
+	int nondeterminism;
+
+	private FSM fsm;
+	private char[][] words;
+	private HashSet<Integer> active;
+	private int next;
+
+	@Setup
+	public void setup() {
+		RandomMachine machine = new RandomMachine(states, ALPHABET, density, nondeterminism, SEED);
+		fsm = machine.build();
+		words = machine.walks(WORDS, WORD_LENGTH, SEED);
+		//The states reached part way through a word, as a typical set to step.
+		active = new HashSet<>();
+		active.add(0);
+		for (int i = 0; i < WORD_LENGTH / 4; i++) {
+			HashSet<Integer> stepped = fsm.nextStates(active, words[0][i]);
+			if (stepped.isEmpty()) {
+				break;
+			}
+			active = stepped;
+		}
+	}
+
+	private char[] nextWord() {
+		return words[next++ & (WORDS - 1)];
+	}
+
+	@Benchmark
+	public boolean acceptsWord() {
+		return fsm.acceptsWord(nextWord());
+	}
+
+	@Benchmark
+	public boolean validateWord() {
+		return fsm.validateWord(nextWord());
+	}
+
+	@Benchmark
+	public HashSet<Integer> nextStates() {
+		return fsm.nextStates(active, (char) ('a' + (next++ & (ALPHABET - 1))));
+	}
+}
@@ -0,0 +1,74 @@
+package fsmsketcher.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fsmsketcher.engine.FSM;
+import fsmsketcher.engine.InstrumentedStateMachine;
+
+/**
+ *
+ * The overhead of InstrumentedStateMachine over the plain FSM, both recording and switched
+ * off, on the same machines and words as FSMBenchmark.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstrumentationBenchmark {
+
+	@Param({ "16", "1024" })
+	int states;
+
+	@Param({ "1", "2" })
+	int nondeterminism;
+
+	private FSM fsm;
+	private InstrumentedStateMachine recording;
+	private InstrumentedStateMachine disabled;
+	private char[][] words;
+	private int next;
+
+	@Setup
+	public void setup() {
+		RandomMachine machine = new RandomMachine(states, FSMBenchmark.ALPHABET, 1.0, nondeterminism, FSMBenchmark.SEED);
+		fsm = machine.build();
+		recording = new InstrumentedStateMachine(fsm);
+		disabled = new InstrumentedStateMachine(fsm);
+		disabled.setEnabled(false);
+		words = machine.walks(FSMBenchmark.WORDS, FSMBenchmark.WORD_LENGTH, FSMBenchmark.SEED);
+	}
+
+	private char[] nextWord() {
+		return words[next++ & (FSMBenchmark.WORDS - 1)];
+	}
+
+	@Benchmark
+	public boolean plain() {
+		return fsm.acceptsWord(nextWord());
+	}
+
+	@Benchmark
+	public boolean recording() {
+		return recording.acceptsWord(nextWord());
+	}
+
+	@Benchmark
+	public boolean disabled() {
+		return disabled.acceptsWord(nextWord());
+	}
+}
@@ -0,0 +1,79 @@
+package fsmsketcher.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fsmsketcher.engine.CompiledFSM;
+import fsmsketcher.engine.FSM;
+import fsmsketcher.engine.MachineGenerator;
+import fsmsketcher.engine.WordCorpus;
+
+/**
+ *
+ * Evaluation on machines from MachineGenerator that are far too big to fit in a cache, with
+ * a mix of accept and reject words from WordCorpus. These show the cost of memory traffic
+ * rather than of the stepping code.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LargeMachineBenchmark {
+
+	private static final int WORDS = 4096;
+
+	@Param({ "1000000", "4000000" })
+	int states;
+
+	@Param({ "false", "true" })
+	boolean offHeap;
+
+	private FSM fsm;
+	private CompiledFSM compiled;
+	private char[][] words;
+	private int next;
+
+	@Setup
+	public void setup() {
+		MachineGenerator generator = new MachineGenerator(FSMBenchmark.SEED);
+		generator.setAlphabetSize(8);
+		generator.setOutDegree(4);
+		generator.setAcceptDensity(0.1);
+		fsm = generator.generate(states);
+		compiled = fsm.compile(offHeap);
+		WordCorpus corpus = new WordCorpus(fsm, FSMBenchmark.SEED);
+		corpus.setLengths(1, 256, 1.5);
+		words = new char[WORDS][];
+		for (int i = 0; i < WORDS; i++) {
+			words[i] = corpus.nextWord(WordCorpus.Kind.MIXED).toCharArray();
+		}
+	}
+
+	private char[] nextWord() {
+		return words[next++ & (WORDS - 1)];
+	}
+
+	@Benchmark
+	public boolean acceptsWord() {
+		return fsm.acceptsWord(nextWord());
+	}
+
+	@Benchmark
+	public boolean compiledAcceptsWord() {
+		return compiled.acceptsWord(nextWord());
+	}
+}
@@ -0,0 +1,133 @@
+package fsmsketcher.benchmarks;
+
+import java.util.SplittableRandom;
+
+import fsmsketcher.engine.FSM;
+
+/**
+ *
+ * A seeded random machine for the benchmarks, described by its size, how many of the
+ * (state, symbol) pairs have transitions and how many targets each of those pairs has.
+ * The edges are kept as plain arrays so they can be replayed into a fresh FSM and walked
+ * to make words that stay inside the machine.
+ *
+ */
+final class RandomMachine {
+
+	final int states;
+	final char[] symbols;
+	/** The edges, in the order they are added: edgeFrom[i] --edgeSymbol[i]--> edgeTo[i]. */
+	final int[] edgeFrom;
+	final int[] edgeTo;
+	final char[] edgeSymbol;
+	final boolean[] accept;
+	/** The targets of each (state, column), indexed by state * symbols.length + column. */
+	private final int[][] targets;
+
+	/**
+	 * Generates a machine.
+	 *
+	 * @param states The number of states.
+	 * @param alphabet The number of symbols, starting at 'a'.
+	 * @param density The chance that a (state, symbol) pair has any transitions.
+	 * @param nondeterminism The number of targets of each pair that has transitions.
+	 * @param seed The seed, so runs see the same machine.
+	 */
+	RandomMachine(int states, int alphabet, double density, int nondeterminism, long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		this.states = states;
+		this.symbols = new char[alphabet];
+		for (int c = 0; c < alphabet; c++) {
+			symbols[c] = (char) ('a' + c);
+		}
+		targets = new int[states * alphabet][];
+		int edges = 0;
+		for (int i = 0; i < targets.length; i++) {
+			if (random.nextDouble() < density) {
+				targets[i] = new int[nondeterminism];
+				for (int k = 0; k < nondeterminism; k++) {
+					targets[i][k] = random.nextInt(states);
+				}
+				edges += nondeterminism;
+			} else {
+				targets[i] = new int[0];
+			}
+		}
+		edgeFrom = new int[edges];
+		edgeTo = new int[edges];
+		edgeSymbol = new char[edges];
+		int e = 0;
+		for (int i = 0; i < targets.length; i++) {
+			for (int to : targets[i]) {
+				edgeFrom[e] = i / alphabet;
+				edgeSymbol[e] = symbols[i % alphabet];
+				edgeTo[e++] = to;
+			}
+		}
+		accept = new boolean[states];
+		for (int s = 0; s < states; s++) {
+			accept[s] = random.nextInt(4) == 0;
+		}
+	}
+
+	/**
+	 * Builds the machine as an FSM.
+	 *
+	 * @return A new FSM with every state and edge added.
+	 */
+	FSM build() {
+		FSM fsm = new FSM();
+		for (char symbol : symbols) {
+			fsm.addSymbol(symbol);
+		}
+		for (int s = 0; s < states; s++) {
+			fsm.addState();
+		}
+		fsm.setInitialState(0);
+		for (int e = 0; e < edgeFrom.length; e++) {
+			fsm.addTransition(edgeFrom[e], edgeTo[e], edgeSymbol[e]);
+		}
+		for (int s = 0; s < states; s++) {
+			if (accept[s]) {
+				fsm.setFinalState(s);
+			}
+		}
+		return fsm;
+	}
+
+	/**
+	 * Makes words by walking random edges from the initial state. A walk that reaches a pair
+	 * with no transitions continues with random symbols, so the machine rejects the word there.
+	 *
+	 * @param count The number of words.
+	 * @param length The length of every word.
+	 * @param seed The seed.
+	 * @return The words.
+	 */
+	char[][] walks(int count, int length, long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		char[][] words = new char[count][length];
+		int[] open = new int[symbols.length];
+		for (char[] word : words) {
+			int state = 0;
+			for (int i = 0; i < length; i++) {
+				int choices = 0;
+				for (int c = 0; state >= 0 && c < symbols.length; c++) {
+					if (targets[state * symbols.length + c].length > 0) {
+						open[choices++] = c;
+					}
+				}
+				if (choices == 0) {
+					word[i] = symbols[random.nextInt(symbols.length)];
+					state = -1;
+					continue;
+				}
+				int column = open[random.nextInt(choices)];
+				int[] next = targets[state * symbols.length + column];
+				word[i] = symbols[column];
+				state = next[random.nextInt(next.length)];
+			}
+		}
+		return words;
+	}
+}
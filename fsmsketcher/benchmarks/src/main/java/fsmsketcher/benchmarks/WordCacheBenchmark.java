@@ -0,0 +1,98 @@
+package fsmsketcher.benchmarks;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fsmsketcher.engine.CompiledFSM;
+import fsmsketcher.engine.WordCache;
+
+/**
+ *
+ * Testing words through a WordCache against testing them straight on the compiled table,
+ * with the words drawn from a Zipfian distribution over a pool much larger than the cache.
+ * Runs on four threads so contention between cache segments shows up.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class WordCacheBenchmark {
+
+	private static final int POOL = 1 << 16;
+	private static final int DRAWS = 1 << 20;
+
+	@Param({ "32", "1024" })
+	int wordLength;
+
+	@Param({ "0.8", "1.1" })
+	double skew;
+
+	private CompiledFSM machine;
+	private WordCache cache;
+	private char[][] draws;
+
+	/**
+	 * The position of one thread in the shared draws.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next;
+
+		@Setup
+		public void setup() {
+			next = (int) Thread.currentThread().getId() * 7919;
+		}
+	}
+
+	@Setup
+	public void setup() {
+		RandomMachine random = new RandomMachine(1024, FSMBenchmark.ALPHABET, 1.0, 2, FSMBenchmark.SEED);
+		machine = random.build().compile();
+		char[][] pool = random.walks(POOL, wordLength, FSMBenchmark.SEED);
+		cache = new WordCache(POOL / 16);
+
+		//Inverse transform sampling of rank k with weight 1 / k^skew.
+		double[] cumulative = new double[POOL];
+		double total = 0;
+		for (int k = 0; k < POOL; k++) {
+			total += 1 / Math.pow(k + 1, skew);
+			cumulative[k] = total;
+		}
+		SplittableRandom rng = new SplittableRandom(FSMBenchmark.SEED);
+		draws = new char[DRAWS][];
+		for (int i = 0; i < DRAWS; i++) {
+			int k = Arrays.binarySearch(cumulative, rng.nextDouble() * total);
+			draws[i] = pool[Math.min(k < 0 ? -k - 1 : k, POOL - 1)];
+		}
+	}
+
+	@Benchmark
+	public boolean uncached(Cursor cursor) {
+		char[] word = draws[cursor.next++ & (DRAWS - 1)];
+		return machine.acceptsWord(word);
+	}
+
+	@Benchmark
+	public boolean cached(Cursor cursor) {
+		char[] word = draws[cursor.next++ & (DRAWS - 1)];
+		return cache.evaluate(machine, 0, word, 0, word.length) == WordCache.ACCEPT;
+	}
+}
@@ -0,0 +1,83 @@
+package fsmsketcher.benchmarks;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fsmsketcher.engine.WordCounter;
+
+/**
+ *
+ * Counting accepted words by length on deterministic machines. Short lengths are stepped,
+ * long ones go through matrix powers, so the lengths cover both sides of the switch. Exact
+ * counts have a bit or two per symbol of the length, and multiplying them dominates long
+ * lengths, so they are measured on shorter lengths than the modular count.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WordCounterBenchmark {
+
+	static final long MODULUS = 1_000_000_007L;
+
+	static WordCounter counter(int states) {
+		RandomMachine machine = new RandomMachine(states, FSMBenchmark.ALPHABET, 1.0, 1, FSMBenchmark.SEED);
+		return new WordCounter(machine.build().compile().minimize());
+	}
+
+	@State(Scope.Benchmark)
+	public static class Modulo {
+		@Param({ "16", "128" })
+		int states;
+
+		@Param({ "64", "4096", "1000000" })
+		long length;
+
+		WordCounter counter;
+
+		@Setup
+		public void setup() {
+			counter = counter(states);
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Exact {
+		@Param({ "16", "128" })
+		int states;
+
+		@Param({ "64", "4096" })
+		long length;
+
+		WordCounter counter;
+
+		@Setup
+		public void setup() {
+			counter = counter(states);
+		}
+	}
+
+	@Benchmark
+	public long countModulo(Modulo state) {
+		return state.counter.count(state.length, MODULUS);
+	}
+
+	@Benchmark
+	public BigInteger countExact(Exact state) {
+		return state.counter.count(state.length);
+	}
+}
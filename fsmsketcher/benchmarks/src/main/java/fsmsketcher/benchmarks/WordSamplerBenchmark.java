@@ -0,0 +1,54 @@
+package fsmsketcher.benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fsmsketcher.engine.WordSampler;
+
+/**
+ *
+ * Drawing uniformly random accepted words. At length 16 the counts fit in longs; at 256 they
+ * are BigIntegers.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WordSamplerBenchmark {
+
+	@Param({ "16", "1024" })
+	int states;
+
+	@Param({ "16", "256" })
+	int length;
+
+	private WordSampler sampler;
+	private SplittableRandom random;
+
+	@Setup
+	public void setup() {
+		RandomMachine machine = new RandomMachine(states, FSMBenchmark.ALPHABET, 1.0, 1, FSMBenchmark.SEED);
+		sampler = new WordSampler(machine.build().compile().minimize(), length);
+		random = new SplittableRandom(FSMBenchmark.SEED);
+	}
+
+	@Benchmark
+	public char[] sample() {
+		return sampler.sample(length, random);
+	}
+}
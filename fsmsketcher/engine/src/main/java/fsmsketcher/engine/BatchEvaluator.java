@@ -0,0 +1,283 @@
+package fsmsketcher.engine;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ *
+ * The headless entry point. Loads a machine file, tests one word per input line and writes
+ * one result per line, so it can sit in a shell pipeline:
+ * <pre>
+ *   java fsmsketcher.engine.BatchEvaluator [--count] [--quiet] [--cache DIR] [--memo N] machine-file [words-file]
+ * </pre>
+ * Words are read from words-file, or standard input if it is left out or is "-". Each
+ * result is "accept", "reject", or "invalid" for a word with a symbol outside of the
+ * alphabet. With --count only the totals are written. Throughput is reported on standard
+ * error unless --quiet is given. With --cache, text machine files are compiled through a
+ * CompiledCache in DIR. With --memo, results of up to N distinct words are kept in a
+ * WordCache, which pays off when the input repeats the same words many times.
+ *
+ * Nothing here touches AWT or Swing, so it runs on machines without a display. Words are
+ * tested in place in the input buffer and results are written through a large buffer.
+ *
+ */
+public class BatchEvaluator {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final long CACHE_BYTES = 1L << 30;
+
+	private final CompiledFSM machine;
+	private WordCache wordCache;
+	private long accepted;
+	private long rejected;
+	private long invalid;
+	private long symbols;
+
+	/**
+	 * Creates an evaluator for a machine.
+	 *
+	 * @param machine The compiled machine to test words against.
+	 */
+	public BatchEvaluator(CompiledFSM machine) {
+		this.machine = machine;
+	}
+
+	/**
+	 * Puts a cache of results in front of the machine.
+	 *
+	 * @param cache The cache, or null to test every word.
+	 */
+	public void setWordCache(WordCache cache) {
+		this.wordCache = cache;
+	}
+
+	/**
+	 * Loads a machine file. A binary file with a compiled section is memory mapped; anything
+	 * else is read and compiled, through the cache if one is given.
+	 *
+	 * @param file The machine file.
+	 * @param cache The compiled machine cache, or null.
+	 * @return The compiled machine.
+	 * @throws IOException If the file couldn't be read, has no machine in it or has a bad
+	 *                     range label.
+	 */
+	public static CompiledFSM load(File file, CompiledCache cache) throws IOException {
+		String name = file.getName().toLowerCase();
+		if (!name.endsWith(".dot") && !name.endsWith(".gv") && !name.endsWith(".json")) {
+			CompiledFSM compiled = FSMFile.mapCompiled(file);
+			if (compiled != null) {
+				return compiled;
+			}
+		}
+		FSMDocument document = MachineFiles.readDocument(file);
+		if (document == null) {
+			throw new IOException(file + " has no machine in it.");
+		}
+		FSM fsm;
+		try {
+			fsm = document.toFSM();
+		} catch (IllegalArgumentException e) {
+			throw new IOException(file + " has a bad label: " + e.getMessage(), e);
+		}
+		return cache == null ? fsm.compileParallel(false) : cache.compile(fsm);
+	}
+
+	/**
+	 * Tests every line of the input.
+	 *
+	 * @param in The words, one per line.
+	 * @param out Where the results are written, or null to only count them.
+	 * @throws IOException If the input couldn't be read or the output written.
+	 */
+	public void evaluate(Reader in, Writer out) throws IOException {
+		char[] buffer = new char[BUFFER_SIZE];
+		int start = 0;
+		int end = 0;
+		while (true) {
+			int read = in.read(buffer, end, buffer.length - end);
+			if (read < 0) {
+				if (end > start) {
+					test(buffer, start, end, out);
+				}
+				break;
+			}
+			end += read;
+			FSMEvents.EvaluationChunk event = new FSMEvents.EvaluationChunk();
+			event.begin();
+			long wordsBefore = accepted + rejected + invalid;
+			long symbolsBefore = symbols;
+			long acceptedBefore = accepted;
+			int lineStart = start;
+			for (int i = start; i < end; i++) {
+				if (buffer[i] == '\n') {
+					test(buffer, lineStart, i, out);
+					lineStart = i + 1;
+				}
+			}
+			if (event.shouldCommit()) {
+				event.source = "batch";
+				event.words = accepted + rejected + invalid - wordsBefore;
+				event.symbols = symbols - symbolsBefore;
+				event.accepted = accepted - acceptedBefore;
+				event.commit();
+			}
+			//Keep the unfinished last line, growing the buffer if it fills it.
+			int remaining = end - lineStart;
+			if (lineStart == 0 && remaining == buffer.length) {
+				buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+			} else {
+				System.arraycopy(buffer, lineStart, buffer, 0, remaining);
+			}
+			start = 0;
+			end = remaining;
+		}
+		if (out != null) {
+			out.flush();
+		}
+	}
+
+	private void test(char[] buffer, int from, int to, Writer out) throws IOException {
+		if (to > from && buffer[to - 1] == '\r') {
+			to--;
+		}
+		int length = to - from;
+		symbols += length;
+		String result;
+		if (wordCache != null) {
+			int cached = wordCache.evaluate(machine, 0, buffer, from, length);
+			if (cached == WordCache.INVALID) {
+				invalid++;
+				result = "invalid\n";
+			} else if (cached == WordCache.ACCEPT) {
+				accepted++;
+				result = "accept\n";
+			} else {
+				rejected++;
+				result = "reject\n";
+			}
+		} else if (!machine.validateWord(buffer, from, length)) {
+			invalid++;
+			result = "invalid\n";
+		} else if (machine.acceptsWord(buffer, from, length)) {
+			accepted++;
+			result = "accept\n";
+		} else {
+			rejected++;
+			result = "reject\n";
+		}
+		if (out != null) {
+			out.write(result);
+		}
+	}
+
+	/**
+	 * Returns the number of words accepted so far.
+	 * @return The number of accepted words.
+	 */
+	public long getAccepted() {
+		return accepted;
+	}
+	/**
+	 * Returns the number of valid words rejected so far.
+	 * @return The number of rejected words.
+	 */
+	public long getRejected() {
+		return rejected;
+	}
+	/**
+	 * Returns the number of words with symbols outside of the alphabet so far.
+	 * @return The number of invalid words.
+	 */
+	public long getInvalid() {
+		return invalid;
+	}
+	/**
+	 * Returns the number of symbols read so far.
+	 * @return The number of symbols.
+	 */
+	public long getSymbols() {
+		return symbols;
+	}
+
+	public static void main(String[] args) {
+		boolean countOnly = false;
+		boolean quiet = false;
+		File cacheDirectory = null;
+		int memo = 0;
+		File machineFile = null;
+		String wordsFile = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--count")) {
+				countOnly = true;
+			} else if (args[i].equals("--quiet")) {
+				quiet = true;
+			} else if (args[i].equals("--cache") && i + 1 < args.length) {
+				cacheDirectory = new File(args[++i]);
+			} else if (args[i].equals("--memo") && i + 1 < args.length) {
+				try {
+					memo = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException e) {
+					machineFile = null;
+					break;
+				}
+			} else if (machineFile == null) {
+				machineFile = new File(args[i]);
+			} else if (wordsFile == null) {
+				wordsFile = args[i];
+			} else {
+				machineFile = null;
+				break;
+			}
+		}
+		if (machineFile == null || memo < 0) {
+			System.err.println("Usage: java fsmsketcher.engine.BatchEvaluator [--count] [--quiet] [--cache DIR] [--memo N] machine-file [words-file]");
+			System.exit(2);
+		}
+
+		try {
+			long loadStart = System.nanoTime();
+			CompiledCache cache = cacheDirectory == null ? null : new CompiledCache(cacheDirectory, CACHE_BYTES);
+			BatchEvaluator evaluator = new BatchEvaluator(load(machineFile, cache));
+			WordCache wordCache = memo > 0 ? new WordCache(memo) : null;
+			evaluator.setWordCache(wordCache);
+			long evaluateStart = System.nanoTime();
+
+			InputStream input = wordsFile == null || wordsFile.equals("-") ? System.in : new FileInputStream(wordsFile);
+			Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), BUFFER_SIZE);
+			try (Reader in = new InputStreamReader(input, StandardCharsets.UTF_8)) {
+				evaluator.evaluate(in, countOnly ? null : out);
+			}
+			long evaluateEnd = System.nanoTime();
+
+			if (countOnly) {
+				out.write("accept " + evaluator.getAccepted() + "\n");
+				out.write("reject " + evaluator.getRejected() + "\n");
+				out.write("invalid " + evaluator.getInvalid() + "\n");
+				out.flush();
+			}
+			if (!quiet) {
+				long words = evaluator.getAccepted() + evaluator.getRejected() + evaluator.getInvalid();
+				double seconds = Math.max(evaluateEnd - evaluateStart, 1) / 1e9;
+				System.err.printf("Loaded machine in %.1f ms. Tested %d words (%d symbols) in %.1f ms: %.0f words/s, %.0f symbols/s.%n",
+								  (evaluateStart - loadStart) / 1e6, words, evaluator.getSymbols(), seconds * 1e3,
+								  words / seconds, evaluator.getSymbols() / seconds);
+				if (wordCache != null) {
+					System.err.printf("Word cache: %d hits, %d misses (%.1f%%), %d evictions.%n",
+									  wordCache.getHits(), wordCache.getMisses(), 100 * wordCache.getHitRate(), wordCache.getEvictions());
+				}
+			}
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+}
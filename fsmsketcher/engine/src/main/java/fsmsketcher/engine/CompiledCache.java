@@ -0,0 +1,170 @@
+package fsmsketcher.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ * A directory of compiled machines keyed by FSMFingerprint, shared between runs and jobs.
+ * Compiling through the cache determinizes and minimizes a machine only the first time its
+ * structure is seen; later compiles memory map the stored table instead.
+ *
+ * Each entry is one FSMFile holding only the compiled section. Entries are written to a
+ * temporary file and renamed into place, so several processes can share a directory. A hit
+ * touches the entry's modification time, and after every miss the least recently used
+ * entries are deleted until the directory fits in its size limit.
+ *
+ */
+public class CompiledCache {
+
+	private static final String SUFFIX = ".fsmc";
+
+	private final File directory;
+	private final long maxBytes;
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+	/**
+	 * Creates a cache over a directory, creating the directory if needed.
+	 *
+	 * @param directory Where the compiled machines are stored.
+	 * @param maxBytes The most the entries may take up on disk together.
+	 * @throws IOException If the directory couldn't be created.
+	 */
+	public CompiledCache(File directory, long maxBytes) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create cache directory " + directory);
+		}
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+	}
+
+	/**
+	 * Returns the minimal compiled form of a machine, from the cache if possible.
+	 *
+	 * @param fsm The machine to compile.
+	 * @return The minimal compiled machine.
+	 * @throws IOException If the cache couldn't be read or written.
+	 */
+	public CompiledFSM compile(FSM fsm) throws IOException {
+		String fingerprint = FSMFingerprint.of(fsm);
+		File entry = new File(directory, fingerprint + SUFFIX);
+		FSMEvents.CacheLookup event = new FSMEvents.CacheLookup();
+		event.begin();
+		if (entry.isFile()) {
+			try {
+				CompiledFSM cached = FSMFile.mapCompiled(entry);
+				if (cached != null) {
+					entry.setLastModified(System.currentTimeMillis());
+					hits.incrementAndGet();
+					commit(event, fingerprint, true, entry);
+					return cached;
+				}
+			} catch (IOException e) {
+				//A damaged entry is treated as a miss and replaced.
+				entry.delete();
+			}
+		}
+
+		misses.incrementAndGet();
+		CompiledFSM compiled = fsm.compileParallel(false).minimize();
+		File temp = File.createTempFile(fingerprint, ".tmp", directory);
+		try {
+			FSMFile.write(temp, null, compiled);
+			try {
+				Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			temp.delete();
+		}
+		commit(event, fingerprint, false, entry);
+		evict();
+		return compiled;
+	}
+
+	private static void commit(FSMEvents.CacheLookup event, String fingerprint, boolean hit, File entry) {
+		if (event.shouldCommit()) {
+			event.fingerprint = fingerprint;
+			event.hit = hit;
+			event.bytes = entry.length();
+			event.commit();
+		}
+	}
+
+	/**
+	 * Deletes the least recently used entries until the cache fits in its size limit.
+	 */
+	public void evict() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		List<File> entries = new ArrayList<>();
+		long total = 0;
+		for (File file : files) {
+			if (file.getName().endsWith(SUFFIX)) {
+				entries.add(file);
+				total += file.length();
+			}
+		}
+		if (total <= maxBytes) {
+			return;
+		}
+		FSMEvents.CacheEvict event = new FSMEvents.CacheEvict();
+		event.begin();
+		long before = total;
+		int deleted = 0;
+		Collections.sort(entries, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return Long.compare(a.lastModified(), b.lastModified());
+			}
+		});
+		for (File file : entries) {
+			if (total <= maxBytes) {
+				break;
+			}
+			long length = file.length();
+			if (file.delete()) {
+				total -= length;
+				deleted++;
+			}
+		}
+		if (event.shouldCommit()) {
+			event.entries = deleted;
+			event.bytesFreed = before - total;
+			event.bytesUsed = total;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Returns how many compiles were answered from the cache.
+	 *
+	 * @return The number of hits.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns how many compiles had to determinize and minimize.
+	 *
+	 * @return The number of misses.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+}
@@ -0,0 +1,503 @@
+package fsmsketcher.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *
+ * A deterministic, read-only form of an FSM. The machine is compiled with the subset
+ * construction into a TransitionTable so that a word can be tested with one table lookup
+ * per symbol instead of stepping a set of states.
+ *
+ * The table can be kept on the heap or off the heap. Either way the machine is used through
+ * the same cursor methods: start at getInitialState(), step() once per symbol and check
+ * isAcceptState() at the end. A step that leaves the machine returns DEAD.
+ *
+ * Each column is a SymbolClasses class. Without range transitions that is one column per
+ * alphabet symbol; with them, a range such as \p{L} is split into the few classes the
+ * other labels can tell apart, so the table stays as narrow as the labels rather than as
+ * wide as the code points they cover.
+ *
+ */
+public final class CompiledFSM {
+
+	/**
+	 * The state returned when a step has no transition. Every step from DEAD is DEAD.
+	 */
+	public static final int DEAD = -1;
+
+	/**
+	 * The smallest symbol of each column, which for a machine without ranges is the
+	 * sorted alphabet.
+	 */
+	private final char[] symbols;
+	/**
+	 * Maps a code point to its column, or -1 if the code point isn't in the alphabet.
+	 */
+	private final SymbolClasses classes;
+	/**
+	 * The state every word starts from.
+	 */
+	private final int initialState;
+	/**
+	 * The transitions and accept states.
+	 */
+	private final TransitionTable table;
+
+	/**
+	 * Creates a compiled machine from an already built table.
+	 *
+	 * @param symbols The alphabet, sorted, one symbol per table column.
+	 * @param initialState The state every word starts from.
+	 * @param table The transitions and accept states.
+	 */
+	CompiledFSM(char[] symbols, int initialState, TransitionTable table) {
+		this(SymbolClasses.of(symbols), initialState, table);
+	}
+
+	/**
+	 * Creates a compiled machine from an already built table whose columns are symbol classes.
+	 *
+	 * @param classes The classes, one per table column.
+	 * @param initialState The state every word starts from.
+	 * @param table The transitions and accept states.
+	 */
+	CompiledFSM(SymbolClasses classes, int initialState, TransitionTable table) {
+		this.symbols = new char[classes.size()];
+		for (int c = 0; c < symbols.length; c++) {
+			symbols[c] = (char) classes.get(c).first();
+		}
+		this.classes = classes;
+		this.initialState = initialState;
+		this.table = table;
+	}
+
+	/**
+	 * Compiles a machine into a table on the heap.
+	 *
+	 * @param fsm The machine to compile.
+	 * @return The compiled machine.
+	 */
+	public static CompiledFSM compile(FSM fsm) {
+		return compile(fsm, false);
+	}
+
+	/**
+	 * Compiles a machine with the subset construction. Only the subsets reachable from the
+	 * initial state are created, in breadth first order with the columns visited in
+	 * alphabet order, so the same machine always compiles to the same numbering.
+	 *
+	 * @param fsm The machine to compile.
+	 * @param offHeap If true, the table is stored in direct buffers instead of the heap.
+	 * @return The compiled machine.
+	 */
+	public static CompiledFSM compile(FSM fsm, boolean offHeap) {
+		FSMEvents.Determinize event = new FSMEvents.Determinize();
+		event.begin();
+		MachineAlphabet alphabet = fsm.getClasses();
+		int width = alphabet.classes.size();
+		TransitionTable.Builder builder = new TransitionTable.Builder(width, offHeap);
+		HashMap<StateSet, Integer> ids = new HashMap<>();
+		List<StateSet> sets = new ArrayList<>();
+
+		StateSet start = new StateSet(new int[] { fsm.getInitialState() });
+		ids.put(start, builder.addState(start.accepts(fsm)));
+		sets.add(start);
+
+		int[][] buckets = new int[width][4];
+		int[] sizes = new int[width];
+		for (int from = 0; from < sets.size(); from++) {
+			Arrays.fill(sizes, 0);
+			for (int state : sets.get(from).states) {
+				for (FSM.pair trans : fsm.getTransitions(state)) {
+					int column = alphabet.columnOf(trans.ch);
+					if (column >= 0) {
+						add(buckets, sizes, column, trans.nS);
+					}
+				}
+				for (FSM.RangePair trans : fsm.getRangeTransitions(state)) {
+					for (int column : alphabet.columnsOf(trans.label)) {
+						add(buckets, sizes, column, trans.nS);
+					}
+				}
+			}
+			for (int column = 0; column < width; column++) {
+				if (sizes[column] == 0) {
+					continue;
+				}
+				StateSet next = StateSet.of(buckets[column], sizes[column]);
+				Integer to = ids.get(next);
+				if (to == null) {
+					to = builder.addState(next.accepts(fsm));
+					ids.put(next, to);
+					sets.add(next);
+				}
+				builder.set(from, column, to);
+			}
+		}
+		CompiledFSM compiled = new CompiledFSM(alphabet.classes, 0, builder.build());
+		if (event.shouldCommit()) {
+			event.nfaStates = fsm.getNumberOfStates();
+			event.dfaStates = compiled.getNumberOfStates();
+			event.symbols = width;
+			event.offHeap = offHeap;
+			event.commit();
+		}
+		return compiled;
+	}
+
+	private static void add(int[][] buckets, int[] sizes, int column, int state) {
+		if (sizes[column] == buckets[column].length) {
+			buckets[column] = Arrays.copyOf(buckets[column], 2 * sizes[column]);
+		}
+		buckets[column][sizes[column]++] = state;
+	}
+
+	/**
+	 * Compiles a machine with the subset construction spread over the common ForkJoinPool.
+	 * The result is identical to compile()'s.
+	 *
+	 * @param fsm The machine to compile.
+	 * @param offHeap If true, the table is stored in direct buffers instead of the heap.
+	 * @return The compiled machine.
+	 */
+	public static CompiledFSM compileParallel(FSM fsm, boolean offHeap) {
+		return compileParallel(fsm, offHeap, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Compiles a machine with the subset construction spread over a ForkJoinPool. Each
+	 * breadth first level of subsets is stepped in parallel, and the result is renumbered
+	 * so that it is identical to compile()'s. A pool with one thread just runs compile().
+	 *
+	 * @param fsm The machine to compile.
+	 * @param offHeap If true, the table is stored in direct buffers instead of the heap.
+	 * @param pool The pool to run on.
+	 * @return The compiled machine.
+	 */
+	public static CompiledFSM compileParallel(FSM fsm, boolean offHeap, ForkJoinPool pool) {
+		if (pool.getParallelism() < 2) {
+			return compile(fsm, offHeap);
+		}
+		FSMEvents.Determinize event = new FSMEvents.Determinize();
+		event.begin();
+		MachineAlphabet alphabet = fsm.getClasses();
+		TransitionTable table = ParallelSubsetConstruction.build(fsm, alphabet, offHeap, pool);
+		CompiledFSM compiled = new CompiledFSM(alphabet.classes, 0, table);
+		if (event.shouldCommit()) {
+			event.nfaStates = fsm.getNumberOfStates();
+			event.dfaStates = compiled.getNumberOfStates();
+			event.symbols = alphabet.classes.size();
+			event.offHeap = offHeap;
+			event.parallel = true;
+			event.commit();
+		}
+		return compiled;
+	}
+
+	/**
+	 * Returns the minimal machine for the same language, with its table stored the same
+	 * way as this one. States that can never reach an accept state are dropped, and the
+	 * result is numbered canonically, so equal languages give identical tables.
+	 *
+	 * @return The minimal machine.
+	 */
+	public CompiledFSM minimize() {
+		return Minimizer.minimize(this, isOffHeap());
+	}
+
+	/**
+	 * Returns the alphabet sorted with duplicates removed.
+	 */
+	static char[] sortedSymbols(List<Character> alphabet) {
+		TreeSet<Character> sorted = new TreeSet<>(alphabet);
+		char[] symbols = new char[sorted.size()];
+		int i = 0;
+		for (char c : sorted) {
+			symbols[i++] = c;
+		}
+		return symbols;
+	}
+
+	/**
+	 * Returns the state every word starts from.
+	 *
+	 * @return The initial state.
+	 */
+	public int getInitialState() {
+		return initialState;
+	}
+
+	/**
+	 * Returns the number of deterministic states.
+	 *
+	 * @return The number of states.
+	 */
+	public int getNumberOfStates() {
+		return table.getNumberOfStates();
+	}
+
+	/**
+	 * Returns the number of symbols in the alphabet, which is the width of each table row.
+	 *
+	 * @return The number of columns.
+	 */
+	public int getNumberOfColumns() {
+		return symbols.length;
+	}
+
+	/**
+	 * Returns the symbol of a column. A column made from ranges steps on every code point of
+	 * getSymbolSet(column) and this is only the smallest of them, cut to a char.
+	 *
+	 * @param column The column.
+	 * @return The symbol the column steps on.
+	 */
+	public char getSymbol(int column) {
+		return symbols[column];
+	}
+
+	/**
+	 * Returns the code points a column steps on.
+	 *
+	 * @param column The column.
+	 * @return The code points of the column's class.
+	 */
+	public SymbolSet getSymbolSet(int column) {
+		return classes.get(column);
+	}
+
+	/**
+	 * Returns the smallest symbol of each column, which without ranges is the sorted alphabet.
+	 *
+	 * @return A copy of the alphabet.
+	 */
+	public char[] getSymbols() {
+		return symbols.clone();
+	}
+
+	/**
+	 * Returns the classes the columns are made from.
+	 *
+	 * @return The classes.
+	 */
+	public SymbolClasses getClasses() {
+		return classes;
+	}
+
+	/**
+	 * Returns the column of a symbol.
+	 *
+	 * @param symbol The symbol.
+	 * @return The column, or -1 if the symbol isn't in the alphabet.
+	 */
+	public int columnOf(char symbol) {
+		return classes.classOf(symbol);
+	}
+
+	/**
+	 * Returns the column of a code point.
+	 *
+	 * @param codePoint The code point.
+	 * @return The column, or -1 if the code point isn't in the alphabet.
+	 */
+	public int columnOfCodePoint(int codePoint) {
+		return classes.classOf(codePoint);
+	}
+
+	/**
+	 * Steps a state on a column.
+	 *
+	 * @param state The current state, or DEAD.
+	 * @param column The column of the symbol.
+	 * @return The next state, or DEAD.
+	 */
+	public int next(int state, int column) {
+		return state == DEAD ? DEAD : table.get(state, column);
+	}
+
+	/**
+	 * Steps a state on a symbol.
+	 *
+	 * @param state The current state, or DEAD.
+	 * @param symbol The symbol to step on.
+	 * @return The next state, or DEAD if there is no transition or the symbol isn't in the alphabet.
+	 */
+	public int step(int state, char symbol) {
+		int column = columnOf(symbol);
+		return column < 0 ? DEAD : next(state, column);
+	}
+
+	/**
+	 * Steps a state on a code point.
+	 *
+	 * @param state The current state, or DEAD.
+	 * @param codePoint The code point to step on.
+	 * @return The next state, or DEAD if there is no transition or the code point isn't in the alphabet.
+	 */
+	public int stepCodePoint(int state, int codePoint) {
+		int column = columnOfCodePoint(codePoint);
+		return column < 0 ? DEAD : next(state, column);
+	}
+
+	/**
+	 * Tests whether a given state is an accept state.
+	 *
+	 * @param state The state to be tested, or DEAD.
+	 * @return Whether the given state is an accept state.
+	 */
+	public boolean isAcceptState(int state) {
+		return state != DEAD && table.isAccept(state);
+	}
+
+	/**
+	 * Tests whether every symbol of a word is in the alphabet.
+	 *
+	 * @param word The word to check.
+	 * @return Whether the word only uses alphabet symbols.
+	 */
+	public boolean validateWord(char[] word) {
+		return validateWord(word, 0, word.length);
+	}
+
+	/**
+	 * Tests whether every symbol of part of an array is in the alphabet. A surrogate pair is
+	 * read as one code point when some column holds code points above U+FFFF.
+	 *
+	 * @param word The array holding the word.
+	 * @param offset Where the word starts.
+	 * @param length The length of the word.
+	 * @return Whether the word only uses alphabet symbols.
+	 */
+	public boolean validateWord(char[] word, int offset, int length) {
+		if (classes.hasSupplementary()) {
+			int end = offset + length;
+			for (int i = offset; i < end; ) {
+				int codePoint = Character.codePointAt(word, i, end);
+				i += Character.charCount(codePoint);
+				if (columnOfCodePoint(codePoint) < 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+		for (int i = offset; i < offset + length; i++) {
+			if (columnOf(word[i]) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * See's if the machine accepts a word. A word with a symbol outside of the alphabet is
+	 * rejected, the same as FSM.acceptsWord.
+	 *
+	 * @param word The symbols to feed the machine.
+	 * @return Whether the machine accepts the word.
+	 */
+	public boolean acceptsWord(char[] word) {
+		return acceptsWord(word, 0, word.length);
+	}
+
+	/**
+	 * See's if the machine accepts part of an array, so words can be tested straight out of
+	 * an input buffer without copying them.
+	 *
+	 * @param word The array holding the word.
+	 * @param offset Where the word starts.
+	 * @param length The length of the word.
+	 * @return Whether the machine accepts the word.
+	 */
+	public boolean acceptsWord(char[] word, int offset, int length) {
+		int state = initialState;
+		if (classes.hasSupplementary()) {
+			int end = offset + length;
+			for (int i = offset; i < end; ) {
+				int codePoint = Character.codePointAt(word, i, end);
+				i += Character.charCount(codePoint);
+				state = stepCodePoint(state, codePoint);
+				if (state == DEAD) {
+					return false;
+				}
+			}
+			return isAcceptState(state);
+		}
+		for (int i = offset; i < offset + length; i++) {
+			state = step(state, word[i]);
+			if (state == DEAD) {
+				return false;
+			}
+		}
+		return isAcceptState(state);
+	}
+
+	/**
+	 * Returns whether the table is stored outside of the Java heap.
+	 *
+	 * @return true if the table lives in direct or mapped buffers.
+	 */
+	public boolean isOffHeap() {
+		return table.isOffHeap();
+	}
+
+	/**
+	 * Returns the table behind the machine.
+	 *
+	 * @return The table.
+	 */
+	TransitionTable getTable() {
+		return table;
+	}
+
+	/**
+	 * A sorted set of NFA states, used as the key of a DFA state during the subset construction.
+	 */
+	static final class StateSet {
+		final int[] states;
+		private final int hash;
+
+		StateSet(int[] states) {
+			this.states = states;
+			this.hash = Arrays.hashCode(states);
+		}
+
+		/**
+		 * Creates a set from the first size entries of an array, which may hold duplicates.
+		 */
+		static StateSet of(int[] buffer, int size) {
+			int[] states = Arrays.copyOf(buffer, size);
+			Arrays.sort(states);
+			int n = 0;
+			for (int i = 0; i < size; i++) {
+				if (n == 0 || states[n - 1] != states[i]) {
+					states[n++] = states[i];
+				}
+			}
+			return new StateSet(n == size ? states : Arrays.copyOf(states, n));
+		}
+
+		boolean accepts(FSM fsm) {
+			for (int state : states) {
+				if (fsm.hasFinalState(state)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof StateSet && Arrays.equals(states, ((StateSet) o).states);
+		}
+	}
+}
@@ -0,0 +1,433 @@
+package fsmsketcher.engine;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ *
+ * Reads and writes machines as Graphviz DOT. Like JsonFormat, both directions stream one
+ * statement at a time.
+ *
+ * The reader understands the part of DOT that machine drawing tools produce:
+ * <ul>
+ * <li>node statements; shape=doublecircle marks a final state, label and pos="x,y" are kept</li>
+ * <li>edge statements, including chains like a -&gt; b -&gt; c; the label is the symbol,
+ *     and a label like "a,b" adds one transition per symbol; a range label like "[0-9]"
+ *     adds one range transition</li>
+ * <li>an edge from a node with shape=point (or a node named like __start) marks its target
+ *     as the initial state; otherwise the first node seen is initial</li>
+ * </ul>
+ * A graph attribute alphabet="ab" declares the alphabet; without it the alphabet is every
+ * symbol used by an edge. Other graph attributes, default attribute statements and subgraph
+ * braces are accepted and otherwise ignored.
+ *
+ */
+public final class DotFormat {
+
+	private DotFormat() {
+	}
+
+	/**
+	 * Reads a machine.
+	 *
+	 * @param in The DOT text.
+	 * @return The machine described.
+	 * @throws IOException If the text couldn't be read or isn't DOT.
+	 */
+	public static FSMDocument read(Reader in) throws IOException {
+		Tokenizer reader = new Tokenizer(in);
+		String token = reader.next();
+		while (token != null && !token.equals("{")) {
+			token = reader.next();
+		}
+		if (token == null) {
+			throw reader.error("Expected a graph body");
+		}
+		Statements statements = new Statements(reader);
+		while ((token = reader.next()) != null) {
+			statements.read(token);
+		}
+		return statements.finish();
+	}
+
+	/**
+	 * Applies the statements of a graph body to a document, one statement at a time.
+	 */
+	private static final class Statements {
+		private final Tokenizer reader;
+		private final FSMDocument document;
+		private final StateIds ids;
+		private final HashMap<String, Boolean> startNodes;
+		private final LinkedHashSet<Character> usedSymbols;
+		private final List<String> chain;
+		private final HashMap<String, String> attributes;
+		private boolean declaredAlphabet;
+		private int initial;
+
+		Statements(Tokenizer reader) {
+			this.reader = reader;
+			this.document = new FSMDocument();
+			this.ids = new StateIds(document);
+			this.startNodes = new HashMap<>();
+			this.usedSymbols = new LinkedHashSet<>();
+			this.chain = new ArrayList<>();
+			this.attributes = new HashMap<>();
+			this.initial = -1;
+		}
+
+		/**
+		 * Reads the rest of the statement that starts with a token.
+		 */
+		void read(String token) throws IOException {
+			if (token.equals("}") || token.equals("{") || token.equals(";") || token.equals(",")) {
+				return;
+			}
+			if (token.equals("subgraph")) {
+				reader.next();
+				return;
+			}
+			attributes.clear();
+			if (token.equals("graph") || token.equals("node") || token.equals("edge")) {
+				if (reader.peekToken().equals("[")) {
+					reader.readAttributes(attributes);
+					if (token.equals("graph") && attributes.containsKey("alphabet")) {
+						declareAlphabet(attributes.get("alphabet"));
+					}
+				}
+				return;
+			}
+
+			String next = reader.peekToken();
+			if (next.equals("=")) {
+				reader.next();
+				String value = reader.next();
+				if (token.equals("alphabet") && value != null) {
+					declareAlphabet(value);
+				}
+				return;
+			}
+			chain.clear();
+			chain.add(token);
+			while (next.equals("->") || next.equals("--")) {
+				reader.next();
+				chain.add(reader.nextId());
+				next = reader.peekToken();
+			}
+			if (next.equals("[")) {
+				reader.readAttributes(attributes);
+			}
+			if (chain.size() == 1) {
+				node(token);
+			} else {
+				edges();
+			}
+		}
+
+		private void declareAlphabet(String alphabet) {
+			declaredAlphabet = true;
+			for (char symbol : alphabet.toCharArray()) {
+				document.addSymbol(symbol);
+			}
+		}
+
+		private void node(String id) throws IOException {
+			String shape = attributes.get("shape");
+			if ("point".equals(shape) || id.startsWith("__start")) {
+				startNodes.put(id, Boolean.TRUE);
+				return;
+			}
+			int state = ids.get(id);
+			if (attributes.containsKey("label")) {
+				document.setStateLabel(state, attributes.get("label"));
+			}
+			if ("doublecircle".equals(shape)) {
+				document.setFinalState(state, true);
+			}
+			String pos = attributes.get("pos");
+			if (pos != null) {
+				int comma = pos.indexOf(',');
+				try {
+					document.setStatePosition(state, parseCoordinate(pos.substring(0, comma)),
+												parseCoordinate(pos.substring(comma + 1).replace("!", "")));
+				} catch (RuntimeException e) {
+					throw reader.error("Bad position " + pos);
+				}
+			}
+		}
+
+		private void edges() {
+			String label = attributes.get("label");
+			for (int i = 0; i + 1 < chain.size(); i++) {
+				String from = chain.get(i);
+				String to = chain.get(i + 1);
+				if (startNodes.containsKey(from) || from.startsWith("__start")) {
+					initial = ids.get(to);
+					continue;
+				}
+				int fromState = ids.get(from);
+				int toState = ids.get(to);
+				if (label == null || label.isEmpty()) {
+					continue;
+				}
+				for (String symbol : splitLabel(label)) {
+					document.addTransition(fromState, toState, symbol);
+					if (!SymbolSet.isRangeLabel(symbol)) {
+						usedSymbols.add(symbol.charAt(0));
+					}
+				}
+			}
+		}
+
+		FSMDocument finish() {
+			if (!declaredAlphabet) {
+				for (char symbol : usedSymbols) {
+					document.addSymbol(symbol);
+				}
+			}
+			document.setInitialState(Math.max(initial, 0));
+			return document;
+		}
+	}
+
+	private static int parseCoordinate(String value) {
+		value = value.trim();
+		if (value.indexOf('.') < 0 && value.indexOf('e') < 0) {
+			return Integer.parseInt(value);
+		}
+		return (int) Math.round(Double.parseDouble(value));
+	}
+
+	/**
+	 * Splits a label like "a, b" into its symbols. A label of a single character, including a
+	 * lone comma, and a range label like "[a,b]" are kept whole.
+	 */
+	private static List<String> splitLabel(String label) {
+		List<String> symbols = new ArrayList<>();
+		if (label.length() == 1 || label.indexOf(',') < 0 || SymbolSet.isRangeLabel(label)) {
+			symbols.add(label.length() == 1 ? FSMDocument.labelOf(label.charAt(0)) : label);
+			return symbols;
+		}
+		for (String part : label.split(",")) {
+			part = part.trim();
+			if (!part.isEmpty()) {
+				symbols.add(part.length() == 1 ? FSMDocument.labelOf(part.charAt(0)) : part);
+			}
+		}
+		return symbols;
+	}
+
+
+	/**
+	 * Writes a machine. States are named s0, s1, ... and keep their labels and positions.
+	 *
+	 * @param document The machine to write.
+	 * @param out Where to write it. It is not closed, but it is flushed.
+	 * @throws IOException If the text couldn't be written.
+	 */
+	public static void write(FSMDocument document, Writer out) throws IOException {
+		out.write("digraph fsm {\n  rankdir=LR;\n  alphabet=");
+		StringBuilder alphabet = new StringBuilder();
+		for (char symbol : document.getAlphabet()) {
+			alphabet.append(symbol);
+		}
+		writeString(out, alphabet.toString());
+		out.write(";\n  node [shape=circle];\n");
+		for (int i = 0; i < document.getNumberOfStates(); i++) {
+			out.write("  s");
+			out.write(Integer.toString(i));
+			out.write(" [label=");
+			writeString(out, document.getStateLabel(i) == null ? "" : document.getStateLabel(i));
+			if (document.isFinalState(i)) {
+				out.write(", shape=doublecircle");
+			}
+			out.write(", pos=\"");
+			out.write(Integer.toString(document.getStateX(i)));
+			out.write(',');
+			out.write(Integer.toString(document.getStateY(i)));
+			out.write("\"];\n");
+		}
+		if (document.getNumberOfStates() > 0) {
+			out.write("  __start [shape=point];\n  __start -> s");
+			out.write(Integer.toString(document.getInitialState()));
+			out.write(";\n");
+		}
+		for (int i = 0; i < document.getNumberOfTransitions(); i++) {
+			out.write("  s");
+			out.write(Integer.toString(document.getTransitionFrom(i)));
+			out.write(" -> s");
+			out.write(Integer.toString(document.getTransitionTo(i)));
+			out.write(" [label=");
+			writeString(out, document.getTransitionLabel(i));
+			out.write("];\n");
+		}
+		out.write("}\n");
+		out.flush();
+	}
+
+	private static void writeString(Writer out, String s) throws IOException {
+		out.write('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				out.write('\\');
+			}
+			out.write(c);
+		}
+		out.write('"');
+	}
+
+	/**
+	 * Splits DOT text into ids, quoted strings and operators, skipping comments.
+	 */
+	private static final class Tokenizer extends TextScanner {
+		private final StringBuilder token = new StringBuilder();
+		private String peeked;
+
+		Tokenizer(Reader in) {
+			super(in);
+		}
+
+		/**
+		 * Returns the next token without consuming it.
+		 *
+		 * @return The token, or an empty string at the end of the input.
+		 */
+		String peekToken() throws IOException {
+			if (peeked == null) {
+				peeked = readToken();
+			}
+			return peeked == null ? "" : peeked;
+		}
+
+		/**
+		 * Consumes the next token.
+		 *
+		 * @return The token, or null at the end of the input.
+		 */
+		String next() throws IOException {
+			if (peeked != null) {
+				String token = peeked;
+				peeked = null;
+				return token;
+			}
+			return readToken();
+		}
+
+		String nextId() throws IOException {
+			String id = next();
+			if (id == null || id.length() == 1 && "{}[];,=".indexOf(id.charAt(0)) >= 0) {
+				throw error("Expected a node id but found " + (id == null ? "end of input" : id));
+			}
+			return id;
+		}
+
+		/**
+		 * Reads an attribute list like [a=b, c="d"] into a map.
+		 */
+		void readAttributes(HashMap<String, String> attributes) throws IOException {
+			next();
+			String token;
+			while ((token = next()) != null && !token.equals("]")) {
+				if (token.equals(",") || token.equals(";")) {
+					continue;
+				}
+				if (peekToken().equals("=")) {
+					next();
+					attributes.put(token, next());
+				}
+			}
+			if (token == null) {
+				throw error("Unterminated attribute list");
+			}
+		}
+
+		private String readToken() throws IOException {
+			while (true) {
+				int c = skipWhitespace();
+				if (c < 0) {
+					return null;
+				}
+				if (c == '#') {
+					skipLine();
+					continue;
+				}
+				if (c == '/') {
+					read();
+					int d = read();
+					if (d == '/') {
+						skipLine();
+					} else if (d == '*') {
+						int last = 0;
+						while ((d = read()) >= 0 && !(last == '*' && d == '/')) {
+							last = d;
+						}
+					} else {
+						throw error("Unexpected '/'");
+					}
+					continue;
+				}
+				break;
+			}
+			int c = read();
+			token.setLength(0);
+			if (c == '"') {
+				while ((c = appendUntil(token, '"', '\\')) != '"') {
+					if (c < 0) {
+						throw error("Unterminated string");
+					}
+					read();
+					if (c == '\\') {
+						int d = read();
+						if (d == 'n' || d == 'l' || d == 'r') {
+							token.append('\n');
+						} else if (d != '"' && d != '\\') {
+							token.append('\\').append((char) d);
+						} else {
+							token.append((char) d);
+						}
+					}
+				}
+				read();
+				return token.toString();
+			}
+			if (c == '<') {
+				int depth = 1;
+				while (depth > 0) {
+					c = read();
+					if (c < 0) {
+						throw error("Unterminated HTML string");
+					}
+					if (c == '<') {
+						depth++;
+					} else if (c == '>') {
+						depth--;
+					}
+					if (depth > 0) {
+						token.append((char) c);
+					}
+				}
+				return token.toString();
+			}
+			if (c == '-' && (peek() == '>' || peek() == '-')) {
+				return "-" + (char) read();
+			}
+			if ("{}[];,=".indexOf(c) >= 0) {
+				return String.valueOf((char) c);
+			}
+			token.append((char) c);
+			appendIdentifier(token);
+			return token.toString();
+		}
+
+		private void skipLine() throws IOException {
+			int c;
+			while ((c = read()) >= 0 && c != '\n') {
+			}
+		}
+	}
+}
@@ -0,0 +1,425 @@
+package fsmsketcher.engine;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ * A small embedded server that keeps named compiled machines in memory and answers accept
+ * queries for other processes on the same box, so each of them doesn't have to load and
+ * compile the machines itself.
+ *
+ * The protocol is line based UTF-8 over a plain socket. Requests may be pipelined: a client
+ * can send any number of requests without waiting, and the responses come back in order.
+ * Responses are flushed only once the server has caught up with the client's input, so a
+ * pipelined burst is answered with a few large writes.
+ * <pre>
+ *   LOAD name path         OK states            load a machine file (see BatchEvaluator.load)
+ *   UNLOAD name            OK
+ *   ACCEPT name word       accept | reject | invalid
+ *   BATCH name count       one line with a letter per word: a, r or i
+ *     word ...             (the count words follow, one per line)
+ *   STATS name             name words=... accepted=... requests=... mean_us=... max_us=... avg_words_per_s_since_load=... version=...
+ *                          (and cache_hits=... cache_misses=... cache_evictions=... with a word cache)
+ *                          avg_words_per_s_since_load is every word since LOAD over the time since LOAD,
+ *                          idle time included, so it is an average and not the current rate.
+ *   LIST                   the loaded names, separated by spaces
+ *   QUIT                   closes the connection
+ * </pre>
+ * Errors are answered with a line starting with ERR.
+ *
+ * With a word cache size, each machine gets its own WordCache keyed by snapshot version,
+ * so words that come up again are answered without stepping the machine, and an editor
+ * publishing a new snapshot is enough to retire the old answers.
+ *
+ * The server binds to the loopback address only. Every connection is handled on its own
+ * thread from a cached pool.
+ *
+ */
+public class EvaluationServer implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int RESULT_CHUNK = 1 << 12;
+	private static final long CACHE_BYTES = 1L << 30;
+	private static final List<String> COMMANDS = Arrays.asList("LOAD", "UNLOAD", "ACCEPT", "BATCH", "STATS", "LIST", "QUIT");
+
+	private final ServerSocket serverSocket;
+	private final ExecutorService connections;
+	private final ConcurrentHashMap<String, Machine> machines;
+	private final CompiledCache cache;
+	private final int wordCacheSize;
+
+	/**
+	 * A loaded machine and its statistics.
+	 */
+	private static final class Machine {
+		final SnapshotPublisher snapshots;
+		final WordCache wordCache;
+		final long loadedAt;
+		final AtomicLong requests = new AtomicLong();
+		final AtomicLong words = new AtomicLong();
+		final AtomicLong accepted = new AtomicLong();
+		final AtomicLong totalNanos = new AtomicLong();
+		final AtomicLong maxNanos = new AtomicLong();
+
+		Machine(SnapshotPublisher snapshots, WordCache wordCache) {
+			this.snapshots = snapshots;
+			this.wordCache = wordCache;
+			this.loadedAt = System.nanoTime();
+		}
+
+		void record(long words, long accepted, long nanos) {
+			this.requests.incrementAndGet();
+			this.words.addAndGet(words);
+			this.accepted.addAndGet(accepted);
+			this.totalNanos.addAndGet(nanos);
+			long max = maxNanos.get();
+			while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+				max = maxNanos.get();
+			}
+		}
+
+		/**
+		 * Tests a word against a snapshot, through the word cache if there is one.
+		 */
+		int evaluate(MachineSnapshot snapshot, char[] word) {
+			if (wordCache != null) {
+				return wordCache.evaluate(snapshot.getMachine(), snapshot.getVersion(), word, 0, word.length);
+			}
+			CompiledFSM fsm = snapshot.getMachine();
+			if (!fsm.validateWord(word)) {
+				return WordCache.INVALID;
+			}
+			return fsm.acceptsWord(word) ? WordCache.ACCEPT : WordCache.REJECT;
+		}
+	}
+
+	/**
+	 * Creates a server listening on the loopback address. It starts accepting connections
+	 * once start() is called.
+	 *
+	 * @param port The port to listen on, or 0 for any free port.
+	 * @param cache The cache used to compile text machine files, or null.
+	 * @throws IOException If the port couldn't be bound.
+	 */
+	public EvaluationServer(int port, CompiledCache cache) throws IOException {
+		this(port, cache, 0);
+	}
+
+	/**
+	 * Creates a server listening on the loopback address. It starts accepting connections
+	 * once start() is called.
+	 *
+	 * @param port The port to listen on, or 0 for any free port.
+	 * @param cache The cache used to compile text machine files, or null.
+	 * @param wordCacheSize How many word results to keep per machine, or 0 for none.
+	 * @throws IOException If the port couldn't be bound.
+	 */
+	public EvaluationServer(int port, CompiledCache cache, int wordCacheSize) throws IOException {
+		this.serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+		this.connections = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "fsm-connection");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.machines = new ConcurrentHashMap<>();
+		this.cache = cache;
+		this.wordCacheSize = wordCacheSize;
+	}
+
+	/**
+	 * Returns the port the server is listening on.
+	 *
+	 * @return The port.
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Adds or replaces a named machine. Queries already running keep using the machine they started with.
+	 *
+	 * @param name The name clients use for the machine.
+	 * @param fsm The compiled machine.
+	 */
+	public void register(String name, CompiledFSM fsm) {
+		register(name, new SnapshotPublisher(fsm));
+	}
+
+	/**
+	 * Adds or replaces a named machine that is still being edited. Each request is answered
+	 * from the latest snapshot when it starts, so a batch never mixes two versions.
+	 *
+	 * @param name The name clients use for the machine.
+	 * @param snapshots Where the editor publishes the machine.
+	 */
+	public void register(String name, SnapshotPublisher snapshots) {
+		machines.put(name, new Machine(snapshots, wordCacheSize > 0 ? new WordCache(wordCacheSize) : null));
+	}
+
+	/**
+	 * Starts accepting connections on a background thread.
+	 */
+	public void start() {
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (!serverSocket.isClosed()) {
+					try {
+						final Socket socket = serverSocket.accept();
+						connections.execute(new Runnable() {
+							@Override
+							public void run() {
+								serve(socket);
+							}
+						});
+					} catch (IOException e) {
+						if (!serverSocket.isClosed()) {
+							e.printStackTrace();
+						}
+					}
+				}
+			}
+		}, "fsm-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Stops accepting connections and closes the ones that are open.
+	 */
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+		connections.shutdownNow();
+	}
+
+	private void serve(Socket socket) {
+		try (Socket s = socket;
+			 BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8), BUFFER_SIZE);
+			 Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+			s.setTcpNoDelay(true);
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (!handle(line, in, out)) {
+					break;
+				}
+				//Only flush once every pipelined request that has arrived is answered.
+				if (!in.ready()) {
+					out.flush();
+				}
+			}
+			out.flush();
+		} catch (SocketException e) {
+			//The client went away.
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Answers one request.
+	 *
+	 * @return false if the connection should be closed.
+	 */
+	private boolean handle(String line, BufferedReader in, Writer out) throws IOException {
+		String[] parts = line.split(" ", 3);
+		String command = parts[0].toUpperCase();
+		if (command.equals("QUIT")) {
+			return false;
+		}
+		if (command.equals("LIST")) {
+			List<String> names = new ArrayList<>(machines.keySet());
+			Collections.sort(names);
+			StringBuilder response = new StringBuilder();
+			for (String name : names) {
+				response.append(response.length() == 0 ? "" : " ").append(name);
+			}
+			out.write(response.append('\n').toString());
+			return true;
+		}
+		if (!COMMANDS.contains(command)) {
+			out.write("ERR unknown command " + parts[0] + "\n");
+			return true;
+		}
+		if (parts.length < 2) {
+			out.write("ERR missing machine name\n");
+			return true;
+		}
+		String name = parts[1];
+		if (command.equals("LOAD")) {
+			if (parts.length < 3) {
+				out.write("ERR missing path\n");
+				return true;
+			}
+			try {
+				CompiledFSM fsm = BatchEvaluator.load(new File(parts[2]), cache);
+				register(name, fsm);
+				out.write("OK " + fsm.getNumberOfStates() + "\n");
+			} catch (IOException e) {
+				out.write("ERR " + e.getMessage() + "\n");
+			}
+			return true;
+		}
+		if (command.equals("UNLOAD")) {
+			out.write(machines.remove(name) == null ? "ERR no machine " + name + "\n" : "OK\n");
+			return true;
+		}
+
+		Machine machine = machines.get(name);
+		if (command.equals("ACCEPT")) {
+			if (machine == null) {
+				out.write("ERR no machine " + name + "\n");
+				return true;
+			}
+			MachineSnapshot snapshot = machine.snapshots.get();
+			char[] word = parts.length < 3 ? new char[0] : parts[2].toCharArray();
+			long start = System.nanoTime();
+			int result = machine.evaluate(snapshot, word);
+			machine.record(1, result == WordCache.ACCEPT ? 1 : 0, System.nanoTime() - start);
+			out.write(result == WordCache.INVALID ? "invalid\n" : result == WordCache.ACCEPT ? "accept\n" : "reject\n");
+		} else if (command.equals("BATCH")) {
+			int count;
+			try {
+				count = parts.length < 3 ? -1 : Integer.parseInt(parts[2].trim());
+			} catch (NumberFormatException e) {
+				count = -1;
+			}
+			if (count < 0) {
+				out.write("ERR bad word count\n");
+				return true;
+			}
+			//The words are read even for an unknown machine so the stream stays in step.
+			FSMEvents.EvaluationChunk event = new FSMEvents.EvaluationChunk();
+			event.begin();
+			MachineSnapshot snapshot = machine == null ? null : machine.snapshots.get();
+			//Results go out a chunk at a time, so the count the client sent never sizes a buffer.
+			char[] results = new char[Math.min(count, RESULT_CHUNK) + 1];
+			int pending = 0;
+			long accepted = 0;
+			long symbols = 0;
+			long nanos = 0;
+			for (int i = 0; i < count; i++) {
+				String wordLine = in.readLine();
+				if (wordLine == null) {
+					return false;
+				}
+				if (machine == null) {
+					continue;
+				}
+				char[] word = wordLine.toCharArray();
+				symbols += word.length;
+				long start = System.nanoTime();
+				int result = machine.evaluate(snapshot, word);
+				if (result == WordCache.INVALID) {
+					results[pending++] = 'i';
+				} else if (result == WordCache.ACCEPT) {
+					results[pending++] = 'a';
+					accepted++;
+				} else {
+					results[pending++] = 'r';
+				}
+				nanos += System.nanoTime() - start;
+				if (pending == RESULT_CHUNK) {
+					out.write(results, 0, pending);
+					pending = 0;
+				}
+			}
+			if (machine == null) {
+				out.write("ERR no machine " + name + "\n");
+				return true;
+			}
+			machine.record(count, accepted, nanos);
+			if (event.shouldCommit()) {
+				event.source = "server";
+				event.words = count;
+				event.symbols = symbols;
+				event.accepted = accepted;
+				event.commit();
+			}
+			results[pending++] = '\n';
+			out.write(results, 0, pending);
+		} else {
+			if (machine == null) {
+				out.write("ERR no machine " + name + "\n");
+				return true;
+			}
+			long requests = machine.requests.get();
+			long words = machine.words.get();
+			double seconds = Math.max(System.nanoTime() - machine.loadedAt, 1) / 1e9;
+			String stats = String.format("%s words=%d accepted=%d requests=%d mean_us=%.3f max_us=%.3f avg_words_per_s_since_load=%.0f version=%d",
+										 name, words, machine.accepted.get(), requests,
+										 requests == 0 ? 0.0 : machine.totalNanos.get() / 1e3 / requests,
+										 machine.maxNanos.get() / 1e3, words / seconds, machine.snapshots.get().getVersion());
+			if (machine.wordCache != null) {
+				stats += String.format(" cache_hits=%d cache_misses=%d cache_evictions=%d",
+									   machine.wordCache.getHits(), machine.wordCache.getMisses(), machine.wordCache.getEvictions());
+			}
+			out.write(stats + "\n");
+		}
+		return true;
+	}
+
+	public static void main(String[] args) {
+		int port = 7878;
+		CompiledCache cache = null;
+		int memo = 0;
+		List<String> preload = new ArrayList<>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("--port") && i + 1 < args.length) {
+					port = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("--cache") && i + 1 < args.length) {
+					cache = new CompiledCache(new File(args[++i]), CACHE_BYTES);
+				} else if (args[i].equals("--memo") && i + 1 < args.length) {
+					memo = Integer.parseInt(args[++i]);
+				} else {
+					preload.add(args[i]);
+				}
+			}
+			EvaluationServer server = new EvaluationServer(port, cache, memo);
+			for (String machine : preload) {
+				int equals = machine.indexOf('=');
+				if (equals < 0) {
+					System.err.println("Usage: java fsmsketcher.engine.EvaluationServer [--port PORT] [--cache DIR] [--memo N] [name=machine-file ...]");
+					System.exit(2);
+				}
+				server.register(machine.substring(0, equals), BatchEvaluator.load(new File(machine.substring(equals + 1)), cache));
+			}
+			server.start();
+			System.err.println("Listening on localhost:" + server.getPort());
+			Thread.currentThread().join();
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		} catch (NumberFormatException e) {
+			System.err.println("Bad number: " + e.getMessage());
+			System.exit(2);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,589 @@
+package fsmsketcher.engine;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FSM implements StateMachine{
+	
+    public static class pair {
+        char ch;
+        int nS;
+        
+        public pair(char c, int ns) {
+            ch = c;
+            nS = ns;
+        }
+        
+        boolean isEqual(pair a)
+        {
+            return (a.ch == this.ch || a.nS == this.nS);
+        }
+    }
+    public static class AdjList extends ArrayList<ArrayList<pair>>{}
+    
+    /**
+     * A transition that steps on any code point of its label.
+     */
+    public static class RangePair {
+        final SymbolSet label;
+        final int nS;
+        
+        public RangePair(SymbolSet label, int ns) {
+            this.label = label;
+            nS = ns;
+        }
+    }
+    
+    private ArrayList<Integer> states;
+    private int initialState;
+    private ArrayList<Character> alphabet;
+    private AdjList transitions;
+    private TreeMap finalStates;
+    private ArrayList<ArrayList<RangePair>> rangeTransitions;
+    private int numberOfRanges;
+    /**
+     * The symbol classes used by validateWord, or null if an edit has made them stale.
+     */
+    private MachineAlphabet classes;
+    /**
+     * Versions come from one counter shared by every FSM, so a machine built to replace
+     * another always has a newer version than it. Only edits write it.
+     */
+    private static final AtomicLong VERSIONS = new AtomicLong();
+    private volatile long version = VERSIONS.incrementAndGet();
+    private WordCache wordCache;
+    
+    public FSM()
+    {
+        states = new ArrayList<>();
+        initialState = 0;
+        alphabet = new ArrayList<>();
+        transitions = new AdjList();
+        finalStates = new TreeMap();
+        rangeTransitions = new ArrayList<>();
+    }
+    
+    
+    @Override
+    public int getNumberOfStates() {
+        return states.size();
+    }
+
+    @Override
+    public void toggleStateAcceptance(int state) {
+        if(finalStates.get(state).equals(1)) {
+            finalStates.remove(state);
+        }
+        else
+        {
+            finalStates.put(state,1);
+        }
+        edited();
+    }
+
+    @Override
+    public boolean isAcceptState(int state) {
+        return (finalStates.get(state).equals(1));
+    }
+
+    @Override
+    public void setInitialState(int state) {
+        initialState = state;
+        edited();
+    }
+
+    @Override
+    public int getInitialState() {
+        return initialState;
+    }
+
+    @Override
+    public int addState() {
+        states.add(states.size());
+        ArrayList<pair> temp = new ArrayList<>();
+        transitions.add(temp);
+        rangeTransitions.add(new ArrayList<>());
+        edited();
+        return 0;
+    }
+
+    @Override
+    public void removeState(int state) {
+        states.remove(state);
+        edited();
+    }
+
+    @Override
+    public void addTransition(int fromState, int toState, char symbol) {
+        pair temp = new pair(symbol, toState);
+        transitions.get(fromState).add(temp);
+        edited();
+    }
+
+    @Override
+    public void removeTransition(int fromState, int toState, char symbol) {
+        pair temp = new pair(symbol, toState);
+        for(int i = 0; i < transitions.get(fromState).size(); i++)
+        {
+            if (transitions.get(fromState).get(i).isEqual(temp))
+            {
+                transitions.get(fromState).remove(i);
+                break;
+            }
+        }
+        edited();
+    }
+    
+    /**
+     * Creates a transition that steps on any code point of a label.
+     * 
+     * @param fromState The state the transition is moving from.
+     * @param toState The state the transition leads to.
+     * @param label The code points the transition steps on.
+     */
+    public void addRangeTransition(int fromState, int toState, SymbolSet label)
+    {
+        rangeTransitions.get(fromState).add(new RangePair(label, toState));
+        numberOfRanges++;
+        edited();
+    }
+    
+    /**
+     * Removes a range transition between two states.
+     * 
+     * @param fromState The state the transition is moving from.
+     * @param toState The state the transition leads to.
+     * @param label The code points the transition steps on.
+     */
+    public void removeRangeTransition(int fromState, int toState, SymbolSet label)
+    {
+        ArrayList<RangePair> from = rangeTransitions.get(fromState);
+        for (int i = 0; i < from.size(); i++)
+        {
+            if (from.get(i).nS == toState && from.get(i).label.equals(label))
+            {
+                from.remove(i);
+                numberOfRanges--;
+                edited();
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Creates a transition from a label as it is written on the canvas or in a file. A label
+     * of one character, or one code point above U+FFFF, steps on that symbol. A label such
+     * as [0-9] or \p{L} is parsed with SymbolSet.parse and becomes a range transition. Any
+     * other label steps on its first character.
+     * 
+     * @param fromState The state the transition is moving from.
+     * @param toState The state the transition leads to.
+     * @param label The label.
+     * @throws IllegalArgumentException If the label looks like a range but isn't one.
+     */
+    public void addLabeledTransition(int fromState, int toState, String label)
+    {
+        if (label.isEmpty())
+        {
+            return;
+        }
+        int first = label.codePointAt(0);
+        if (Character.charCount(first) == label.length() && first > Character.MAX_VALUE)
+        {
+            addRangeTransition(fromState, toState, SymbolSet.of(first));
+        }
+        else if (SymbolSet.isRangeLabel(label))
+        {
+            addRangeTransition(fromState, toState, SymbolSet.parse(label));
+        }
+        else
+        {
+            addTransition(fromState, toState, label.charAt(0));
+        }
+    }
+    
+    /**
+     * Returns whether the machine has any range transitions.
+     * 
+     * @return true if some transition steps on a range label.
+     */
+    public boolean hasRanges()
+    {
+        return numberOfRanges > 0;
+    }
+    
+    @Override
+    public void setFinalState(int state)
+    {
+        finalStates.put(state,1);
+        edited();
+    }
+    
+    /**
+     * Marks the machine as changed: its symbol classes are worked out again when next
+     * needed and it gets a new version.
+     */
+    private void edited()
+    {
+        classes = null;
+        version = VERSIONS.incrementAndGet();
+    }
+    
+    /**
+     * Returns a number that changes whenever the machine is edited, and is never reused by
+     * this or any other FSM. Reading it changes nothing, so threads testing words against a
+     * machine nobody is editing can share it.
+     * 
+     * @return The version.
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+    
+    /**
+     * Puts a cache of results in front of acceptsWord. Results are keyed by the machine's
+     * version, so editing the machine is enough to stop old results being used.
+     * 
+     * @param cache The cache, or null to test every word.
+     */
+    public void setWordCache(WordCache cache)
+    {
+        wordCache = cache;
+    }
+    
+    /**
+     * Returns the cache in front of acceptsWord.
+     * 
+     * @return The cache, or null if there isn't one.
+     */
+    public WordCache getWordCache()
+    {
+        return wordCache;
+    }
+
+    @Override
+    public ArrayList<Character> getTransitionsCharactersBetween(int fromState, int toState) 
+    {
+        ArrayList<Character> transitionChars = new ArrayList<>();
+        for(pair trans : transitions.get(fromState))
+        {
+            transitionChars.add(trans.ch);
+        }
+        return transitionChars;
+    }
+
+    
+    @Override
+    public HashSet<Integer> nextStates(HashSet<Integer> states, char symbol) 
+    {
+        return step(states, symbol);
+    }
+    
+    /**
+     * Steps the current states on a code point, through both single symbol and range
+     * transitions.
+     */
+    private HashSet<Integer> step(HashSet<Integer> states, int symbol)
+    {
+        HashSet<Integer> next = new HashSet<>(alphabet.size());
+        for (int state : states)
+        {
+            for (pair trans : transitions.get(state))
+            {
+                if (trans.ch == symbol)
+                {
+                    next.add(trans.nS);
+                }
+            }
+            if (numberOfRanges > 0)
+            {
+                for (RangePair trans : rangeTransitions.get(state))
+                {
+                    if (trans.label.contains(symbol))
+                    {
+                        next.add(trans.nS);
+                    }
+                }
+            }
+        }
+        return next;
+    }
+    
+    /**
+     * Returns the symbol classes of the machine, working them out again after an edit.
+     */
+    MachineAlphabet getClasses()
+    {
+        //Read once: two threads may both work the classes out, but neither sees them half built.
+        MachineAlphabet current = classes;
+        if (current == null)
+        {
+            current = MachineAlphabet.of(this);
+            classes = current;
+        }
+        return current;
+    }
+    
+    /**
+     * Tests whether every symbol of a word is in the alphabet or in some range label. Each
+     * lookup is two array reads however large the alphabet is. A surrogate pair is read as
+     * one code point when some label holds code points above U+FFFF.
+     */
+    @Override
+    public boolean validateWord(char[] word)
+    {
+        SymbolClasses symbols = getClasses().classes;
+        boolean codePoints = symbols.hasSupplementary();
+        for (int i = 0; i < word.length; i++)
+        {
+            int C = word[i];
+            if (codePoints && Character.isHighSurrogate(word[i]) && i + 1 < word.length && Character.isLowSurrogate(word[i + 1]))
+            {
+                C = Character.toCodePoint(word[i], word[++i]);
+            }
+            if (symbols.classOf(C) < 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public boolean acceptsWord(char[] word) 
+    {
+        WordCache cache = wordCache;
+        if (cache == null)
+        {
+            return evaluate(word);
+        }
+        long current = getVersion();
+        int result = cache.get(word, 0, word.length, current);
+        if (result == WordCache.MISS)
+        {
+            result = evaluate(word) ? WordCache.ACCEPT : WordCache.REJECT;
+            cache.put(word, 0, word.length, current, result);
+        }
+        return result == WordCache.ACCEPT;
+    }
+    
+    private boolean evaluate(char[] word)
+    {
+        if (validateWord(word))
+        {
+            boolean codePoints = getClasses().classes.hasSupplementary();
+            HashSet<Integer> current_states = new HashSet(alphabet.size());
+            current_states.add(initialState);
+            for(int i = 0; i < word.length; i++)
+            {
+                int C = word[i];
+                if (codePoints && Character.isHighSurrogate(word[i]) && i + 1 < word.length && Character.isLowSurrogate(word[i + 1]))
+                {
+                    C = Character.toCodePoint(word[i], word[++i]);
+                }
+                current_states = step(current_states,C);
+                if (current_states.isEmpty())
+                {
+                    return false;
+                }
+            }
+            for(int state : current_states)
+            {
+                if (finalStates.containsKey(state))
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    @Override
+    public ArrayList<Character> getAlphabet(int size)
+    {
+        char letter = 'a';
+        for(int i = 0; i < size; i++)
+        {
+            alphabet.add(letter);
+            letter++;
+        }
+        edited();
+        return alphabet; 
+    }
+    
+    /**
+     * Returns the symbols of the alphabet, in the order they were added. Add symbols with
+     * addSymbol rather than through the list, so the machine sees the edit.
+     * 
+     * @return The alphabet.
+     */
+    public ArrayList<Character> getAlphabet()
+    {
+        return alphabet;
+    }
+    
+    /**
+     * Adds a symbol to the alphabet if it isn't already in it.
+     * 
+     * @param symbol The symbol to add.
+     */
+    public void addSymbol(char symbol)
+    {
+        if (!alphabet.contains(symbol))
+        {
+            alphabet.add(symbol);
+            edited();
+        }
+    }
+    
+    /**
+     * Returns the transitions leaving a state.
+     * 
+     * @param state The state the transitions are moving from.
+     * @return The transitions, or an empty list if the state doesn't exist.
+     */
+    ArrayList<pair> getTransitions(int state)
+    {
+        if (state < 0 || state >= transitions.size())
+        {
+            return new ArrayList<>();
+        }
+        return transitions.get(state);
+    }
+    
+    /**
+     * Returns the range transitions leaving a state.
+     * 
+     * @param state The state the transitions are moving from.
+     * @return The transitions, or an empty list if the state doesn't exist.
+     */
+    ArrayList<RangePair> getRangeTransitions(int state)
+    {
+        if (state < 0 || state >= rangeTransitions.size())
+        {
+            return new ArrayList<>();
+        }
+        return rangeTransitions.get(state);
+    }
+    
+    /**
+     * Tests whether a state has been made final.
+     * 
+     * @param state The state to be tested.
+     * @return Whether the state is final.
+     */
+    boolean hasFinalState(int state)
+    {
+        return finalStates.containsKey(state);
+    }
+    
+    /**
+     * Returns one more than the largest state the machine refers to, as the initial state or
+     * the source or target of a transition. Removing a state leaves its transitions in place,
+     * so this can be more than getNumberOfStates().
+     */
+    int getStateBound()
+    {
+        int bound = Math.max(initialState + 1, Math.max(transitions.size(), rangeTransitions.size()));
+        for (ArrayList<pair> list : transitions)
+        {
+            for (pair trans : list)
+            {
+                bound = Math.max(bound, trans.nS + 1);
+            }
+        }
+        for (ArrayList<RangePair> list : rangeTransitions)
+        {
+            for (RangePair trans : list)
+            {
+                bound = Math.max(bound, trans.nS + 1);
+            }
+        }
+        return bound;
+    }
+    
+    /**
+     * Compiles the machine into a deterministic table on the heap.
+     * 
+     * @return The compiled machine.
+     */
+    public CompiledFSM compile()
+    {
+        return CompiledFSM.compile(this);
+    }
+    
+    /**
+     * Compiles the machine into a deterministic table.
+     * 
+     * @param offHeap If true, the table is stored outside of the Java heap.
+     * @return The compiled machine.
+     */
+    public CompiledFSM compile(boolean offHeap)
+    {
+        return CompiledFSM.compile(this, offHeap);
+    }
+    
+    /**
+     * Compiles the machine into a deterministic table using every core.
+     * The table is identical to the one compile() makes.
+     * 
+     * @param offHeap If true, the table is stored outside of the Java heap.
+     * @return The compiled machine.
+     */
+    public CompiledFSM compileParallel(boolean offHeap)
+    {
+        return CompiledFSM.compileParallel(this, offHeap);
+    }
+    
+    @Override
+    public boolean validateRE(char[] reg_exp)
+    {
+        HashSet<Character> non_bracket = new HashSet<>();
+        for(char a : alphabet)
+        {
+            non_bracket.add(a);
+        }
+        non_bracket.add('+');
+        non_bracket.add('*');
+        
+        HashMap<Character,Integer> open = new HashMap<>();
+        HashMap<Character,Integer> close = new HashMap<>();
+        
+        open.put('(', 1);
+        close.put(')', 1);
+        open.put('[', 2);
+        close.put(']', 2);
+        open.put('{', 3);
+        close.put('}', 3);
+        
+        Stack<Character> S = new Stack<>();
+        
+        for(char a : reg_exp)
+        {
+            if (!non_bracket.contains(a))
+            {
+                if (open.containsKey(a))
+                {
+                    S.add(a);
+                }
+                else if (close.containsKey(a))
+                {
+                    char b = S.pop();
+                    if (open.get(b) != close.get(a))
+                    {
+                        return false;
+                    }
+                }
+                else
+                {
+                    return false;
+                }
+            }
+        }
+        
+        return S.empty();
+    }
+    
+	
+}
\ No newline at end of file
@@ -0,0 +1,296 @@
+package fsmsketcher.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ * The editable description of a machine: its alphabet, its states with their labels and
+ * positions on the canvas, and its labeled transitions. This is what gets saved and loaded,
+ * and it doesn't depend on any UI classes so it can be used without a display.
+ *
+ * States are numbered in the order they were added. The data is kept in parallel arrays
+ * rather than one object per state so that very large machines stay compact.
+ *
+ */
+public class FSMDocument {
+
+	/**
+	 * Single character labels are shared instead of allocating one String per transition.
+	 */
+	private static final String[] SYMBOL_LABELS = new String[128];
+	static {
+		for (int i = 0; i < SYMBOL_LABELS.length; i++) {
+			SYMBOL_LABELS[i] = String.valueOf((char) i);
+		}
+	}
+
+	private final List<Character> alphabet;
+	private int initialState;
+
+	private int numberOfStates;
+	private String[] stateLabels;
+	private int[] stateX;
+	private int[] stateY;
+	private boolean[] finalStates;
+
+	private int numberOfTransitions;
+	private int[] transitionFrom;
+	private int[] transitionTo;
+	private String[] transitionLabels;
+
+	/**
+	 * Creates an empty document.
+	 */
+	public FSMDocument() {
+		alphabet = new ArrayList<>();
+		stateLabels = new String[16];
+		stateX = new int[16];
+		stateY = new int[16];
+		finalStates = new boolean[16];
+		transitionFrom = new int[16];
+		transitionTo = new int[16];
+		transitionLabels = new String[16];
+	}
+
+	/**
+	 * Creates a document describing an existing machine. The states are labeled by their
+	 * index and all placed at the origin.
+	 *
+	 * @param fsm The machine to describe.
+	 * @return The document.
+	 */
+	public static FSMDocument fromFSM(FSM fsm) {
+		FSMDocument document = new FSMDocument();
+		for (char symbol : fsm.getAlphabet()) {
+			document.addSymbol(symbol);
+		}
+		for (int state = 0; state < fsm.getNumberOfStates(); state++) {
+			document.addState("q" + state, 0, 0, fsm.hasFinalState(state));
+		}
+		document.setInitialState(fsm.getInitialState());
+		for (int state = 0; state < fsm.getNumberOfStates(); state++) {
+			for (FSM.pair trans : fsm.getTransitions(state)) {
+				document.addTransition(state, trans.nS, labelOf(trans.ch));
+			}
+			for (FSM.RangePair trans : fsm.getRangeTransitions(state)) {
+				document.addTransition(state, trans.nS, trans.label.toString());
+			}
+		}
+		return document;
+	}
+
+	/**
+	 * Returns the label used for a single symbol.
+	 *
+	 * @param symbol The symbol.
+	 * @return A label holding only the symbol.
+	 */
+	public static String labelOf(char symbol) {
+		return symbol < SYMBOL_LABELS.length ? SYMBOL_LABELS[symbol] : String.valueOf(symbol);
+	}
+
+	/**
+	 * Builds the machine the document describes. Each transition is added with
+	 * FSM.addLabeledTransition, so a label like [0-9] or \p{L} becomes a range transition.
+	 *
+	 * @return A new machine.
+	 * @throws IllegalArgumentException If a label looks like a range but isn't one.
+	 */
+	public FSM toFSM() {
+		FSM fsm = new FSM();
+		for (int i = 0; i < numberOfStates; i++) {
+			fsm.addState();
+		}
+		fsm.setInitialState(initialState);
+		for (int i = 0; i < numberOfStates; i++) {
+			if (finalStates[i]) {
+				fsm.setFinalState(i);
+			}
+		}
+		for (char symbol : alphabet) {
+			fsm.addSymbol(symbol);
+		}
+		for (int i = 0; i < numberOfTransitions; i++) {
+			fsm.addLabeledTransition(transitionFrom[i], transitionTo[i], transitionLabels[i]);
+		}
+		return fsm;
+	}
+
+	/**
+	 * Adds a symbol to the alphabet if it isn't already in it.
+	 *
+	 * @param symbol The symbol to add.
+	 */
+	public void addSymbol(char symbol) {
+		if (!alphabet.contains(symbol)) {
+			alphabet.add(symbol);
+		}
+	}
+
+	/**
+	 * Returns the alphabet, in the order the symbols were added.
+	 *
+	 * @return The alphabet.
+	 */
+	public List<Character> getAlphabet() {
+		return alphabet;
+	}
+
+	/**
+	 * Creates a new state.
+	 *
+	 * @param label The string displayed on the state.
+	 * @param x The x coordinate of the state's center.
+	 * @param y The y coordinate of the state's center.
+	 * @param isFinal Whether the state is a final state.
+	 * @return The index of the state created.
+	 */
+	public int addState(String label, int x, int y, boolean isFinal) {
+		if (numberOfStates == stateLabels.length) {
+			int capacity = 2 * numberOfStates;
+			stateLabels = Arrays.copyOf(stateLabels, capacity);
+			stateX = Arrays.copyOf(stateX, capacity);
+			stateY = Arrays.copyOf(stateY, capacity);
+			finalStates = Arrays.copyOf(finalStates, capacity);
+		}
+		stateLabels[numberOfStates] = label;
+		stateX[numberOfStates] = x;
+		stateY[numberOfStates] = y;
+		finalStates[numberOfStates] = isFinal;
+		return numberOfStates++;
+	}
+
+	/**
+	 * Creates a transition between two states.
+	 *
+	 * @param fromState The state the transition is moving from.
+	 * @param toState The state the transition leads to.
+	 * @param label The label of the transition.
+	 */
+	public void addTransition(int fromState, int toState, String label) {
+		if (numberOfTransitions == transitionLabels.length) {
+			int capacity = 2 * numberOfTransitions;
+			transitionFrom = Arrays.copyOf(transitionFrom, capacity);
+			transitionTo = Arrays.copyOf(transitionTo, capacity);
+			transitionLabels = Arrays.copyOf(transitionLabels, capacity);
+		}
+		transitionFrom[numberOfTransitions] = fromState;
+		transitionTo[numberOfTransitions] = toState;
+		transitionLabels[numberOfTransitions] = label;
+		numberOfTransitions++;
+	}
+
+	/**
+	 * Makes a given state the initial state.
+	 *
+	 * @param state The state to be made the initial state.
+	 */
+	public void setInitialState(int state) {
+		initialState = state;
+	}
+
+	/**
+	 * Marks whether a state is a final state.
+	 *
+	 * @param state The state.
+	 * @param isFinal true if it should be final, false otherwise.
+	 */
+	public void setFinalState(int state, boolean isFinal) {
+		finalStates[state] = isFinal;
+	}
+
+	/**
+	 * Sets the string displayed on a state.
+	 *
+	 * @param state The state.
+	 * @param label The new label.
+	 */
+	public void setStateLabel(int state, String label) {
+		stateLabels[state] = label;
+	}
+
+	/**
+	 * Moves a state.
+	 *
+	 * @param state The state.
+	 * @param x The new x coordinate of the state's center.
+	 * @param y The new y coordinate of the state's center.
+	 */
+	public void setStatePosition(int state, int x, int y) {
+		stateX[state] = x;
+		stateY[state] = y;
+	}
+
+	/**
+	 * Returns the state that is the initial state.
+	 * @return The initial state.
+	 */
+	public int getInitialState() {
+		return initialState;
+	}
+	/**
+	 * Returns the number of states.
+	 * @return The number of states.
+	 */
+	public int getNumberOfStates() {
+		return numberOfStates;
+	}
+	/**
+	 * Returns the string displayed on a state.
+	 * @return The state's label.
+	 */
+	public String getStateLabel(int state) {
+		return stateLabels[state];
+	}
+	/**
+	 * Returns the x coordinate of a state's center.
+	 * @return The x coordinate.
+	 */
+	public int getStateX(int state) {
+		return stateX[state];
+	}
+	/**
+	 * Returns the y coordinate of a state's center.
+	 * @return The y coordinate.
+	 */
+	public int getStateY(int state) {
+		return stateY[state];
+	}
+	/**
+	 * Returns whether a state is a final state.
+	 * @return Whether the state is final.
+	 */
+	public boolean isFinalState(int state) {
+		return finalStates[state];
+	}
+	/**
+	 * Returns the number of transitions. A transition with several labels is counted once per label.
+	 * @return The number of transitions.
+	 */
+	public int getNumberOfTransitions() {
+		return numberOfTransitions;
+	}
+	/**
+	 * Returns the state a transition is moving from.
+	 * @return The start state.
+	 */
+	public int getTransitionFrom(int transition) {
+		return transitionFrom[transition];
+	}
+	/**
+	 * Returns the state a transition leads to.
+	 * @return The end state.
+	 */
+	public int getTransitionTo(int transition) {
+		return transitionTo[transition];
+	}
+	/**
+	 * Returns the label of a transition.
+	 * @return The label.
+	 */
+	public String getTransitionLabel(int transition) {
+		return transitionLabels[transition];
+	}
+}
@@ -0,0 +1,122 @@
+package fsmsketcher.engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ *
+ * The Java Flight Recorder events emitted by the engine, so a recording of a slow job shows
+ * which phase the time went to. They all appear under "FSM Sketcher" in JDK Mission Control.
+ *
+ * Each event is begun before its phase and only committed, with its fields filled in, if
+ * shouldCommit() says a recording wants it. When nothing is recording, begin() and
+ * shouldCommit() compile down to nothing, so the events can be left in production code.
+ * Stack traces are off because the phases are already named by the events.
+ *
+ */
+final class FSMEvents {
+
+	private FSMEvents() {
+	}
+
+	@Name("fsmsketcher.Determinize")
+	@Label("Determinize")
+	@Description("The subset construction of an FSM into a CompiledFSM")
+	@Category({ "FSM Sketcher", "Compile" })
+	@StackTrace(false)
+	static final class Determinize extends Event {
+		@Label("NFA States")
+		int nfaStates;
+		@Label("DFA States")
+		int dfaStates;
+		@Label("Alphabet Size")
+		int symbols;
+		@Label("Off Heap")
+		boolean offHeap;
+		@Label("Parallel")
+		boolean parallel;
+	}
+
+	@Name("fsmsketcher.Minimize")
+	@Label("Minimize")
+	@Description("Hopcroft minimization of a CompiledFSM")
+	@Category({ "FSM Sketcher", "Compile" })
+	@StackTrace(false)
+	static final class Minimize extends Event {
+		@Label("States Before")
+		int statesBefore;
+		@Label("States After")
+		int statesAfter;
+	}
+
+	@Name("fsmsketcher.CacheLookup")
+	@Label("Compiled Cache Lookup")
+	@Description("A compile through the CompiledCache, filled on a miss")
+	@Category({ "FSM Sketcher", "Cache" })
+	@StackTrace(false)
+	static final class CacheLookup extends Event {
+		@Label("Fingerprint")
+		String fingerprint;
+		@Label("Hit")
+		boolean hit;
+		@Label("Entry Size")
+		@DataAmount
+		long bytes;
+	}
+
+	@Name("fsmsketcher.CacheEvict")
+	@Label("Compiled Cache Eviction")
+	@Description("Least recently used entries deleted to keep the CompiledCache under its limit")
+	@Category({ "FSM Sketcher", "Cache" })
+	@StackTrace(false)
+	static final class CacheEvict extends Event {
+		@Label("Entries Deleted")
+		int entries;
+		@Label("Space Freed")
+		@DataAmount
+		long bytesFreed;
+		@Label("Space Used")
+		@DataAmount
+		long bytesUsed;
+	}
+
+	@Name("fsmsketcher.EvaluationChunk")
+	@Label("Evaluation Chunk")
+	@Description("A run of words tested together by the batch evaluator or the evaluation server")
+	@Category({ "FSM Sketcher", "Evaluation" })
+	@StackTrace(false)
+	static final class EvaluationChunk extends Event {
+		@Label("Source")
+		String source;
+		@Label("Words")
+		long words;
+		@Label("Symbols")
+		long symbols;
+		@Label("Accepted")
+		long accepted;
+	}
+
+	@Name("fsmsketcher.FileScan")
+	@Label("Machine File Scan")
+	@Description("A machine file read or memory mapped")
+	@Category({ "FSM Sketcher", "Files" })
+	@StackTrace(false)
+	static final class FileScan extends Event {
+		@Label("Path")
+		String path;
+		@Label("Format")
+		String format;
+		@Label("File Size")
+		@DataAmount
+		long bytes;
+		@Label("States")
+		int states;
+		@Label("Transitions")
+		long transitions;
+	}
+}
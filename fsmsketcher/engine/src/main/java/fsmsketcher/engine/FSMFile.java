@@ -0,0 +1,401 @@
+package fsmsketcher.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ *
+ * Reads and writes machine files. A file holds up to two sections: the editable model
+ * (an FSMDocument) and the compiled table (a CompiledFSM).
+ *
+ * The file starts with a fixed 64 byte header giving the magic number, the format version,
+ * and the offset and length of each section. The model section is a plain data stream.
+ * The compiled section is little endian and 8 byte aligned throughout, laid out exactly
+ * like the pages of a TransitionTable, so it is loaded by memory mapping the file and
+ * reading the table in place with no parsing or copying.
+ *
+ * Version 2 added the code point ranges of each column, for machines with range transitions.
+ * Version 1 files are still read, with one column per symbol.
+ *
+ * Compiled section layout:
+ * <pre>
+ *   int states, int columns, int initialState, int rowsPerPage
+ *   char[columns] symbols               (padded to 8 bytes)
+ *   int ranges, int[3 * ranges] classes (first, last, column; padded; version 2 and up)
+ *   long[(states + 63) / 64] acceptBits
+ *   int[rows * columns] page, ...      (each page padded to 8 bytes)
+ * </pre>
+ *
+ */
+public final class FSMFile {
+
+	/**
+	 * "FSMS" in ASCII.
+	 */
+	public static final int MAGIC = 0x46534D53;
+	/**
+	 * The newest format version this class can read and the one it writes.
+	 */
+	public static final int VERSION = 2;
+
+	private static final int HEADER_SIZE = 64;
+	private static final int COPY_BUFFER_SIZE = 1 << 20;
+
+	private FSMFile() {
+	}
+
+	/**
+	 * Writes a machine file. Either section may be left out.
+	 *
+	 * @param file The file to write. It is replaced if it exists.
+	 * @param document The editable model, or null.
+	 * @param compiled The compiled table, or null.
+	 * @throws IOException If the file couldn't be written.
+	 */
+	public static void write(File file, FSMDocument document, CompiledFSM compiled) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+			channel.position(HEADER_SIZE);
+
+			long modelOffset = HEADER_SIZE;
+			if (document != null) {
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), COPY_BUFFER_SIZE));
+				writeDocument(out, document);
+				out.flush();
+			}
+			long modelLength = channel.position() - modelOffset;
+
+			long compiledOffset = align(channel.position());
+			long compiledLength = 0;
+			if (compiled != null) {
+				channel.position(compiledOffset);
+				writeCompiled(channel, compiled);
+				compiledLength = channel.position() - compiledOffset;
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION);
+			header.putLong(modelOffset).putLong(modelLength);
+			header.putLong(compiledOffset).putLong(compiledLength);
+			header.clear();
+			channel.write(header, 0);
+		}
+	}
+
+	/**
+	 * Reads the editable model of a machine file.
+	 *
+	 * @param file The file to read.
+	 * @return The model, or null if the file has no model section.
+	 * @throws IOException If the file couldn't be read or isn't a machine file.
+	 */
+	public static FSMDocument readDocument(File file) throws IOException {
+		Header header = readHeader(file);
+		if (header.modelLength == 0) {
+			return null;
+		}
+		try (InputStream raw = new FileInputStream(file)) {
+			long skipped = 0;
+			while (skipped < header.modelOffset) {
+				long n = raw.skip(header.modelOffset - skipped);
+				//skip() returns 0 at the end of the file, and the loop would never finish.
+				if (n <= 0) {
+					throw new EOFException(file + " is corrupt.");
+				}
+				skipped += n;
+			}
+			return readDocument(new DataInputStream(new BufferedInputStream(raw, COPY_BUFFER_SIZE)));
+		}
+	}
+
+	/**
+	 * Loads the compiled table of a machine file by memory mapping it. Nothing is parsed or
+	 * copied; the table is read straight out of the mapped file.
+	 *
+	 * @param file The file to load.
+	 * @return The compiled machine, or null if the file has no compiled section.
+	 * @throws IOException If the file couldn't be read, isn't a machine file or is corrupt.
+	 */
+	public static CompiledFSM mapCompiled(File file) throws IOException {
+		FSMEvents.FileScan event = new FSMEvents.FileScan();
+		event.begin();
+		Header header = readHeader(file);
+		if (header.compiledLength == 0) {
+			return null;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			FileChannel channel = raf.getChannel();
+			long offset = header.compiledOffset;
+			long end = header.compiledOffset + header.compiledLength;
+			ByteBuffer info = map(channel, offset, 16, end, file);
+			int states = info.getInt(0);
+			int columns = info.getInt(4);
+			int initialState = info.getInt(8);
+			int rowsPerPage = info.getInt(12);
+			offset += 16;
+			//Check the sizes before anything is allocated from them. The table alone is
+			//4 * states * columns bytes, so a section too short for it is corrupt.
+			if (states <= 0 || columns < 0 || rowsPerPage <= 0 || initialState < 0 || initialState >= states
+					|| (long) states * columns > (end - offset) / 4) {
+				throw corrupt(file);
+			}
+
+			ByteBuffer symbolBytes = map(channel, offset, 2L * columns, end, file);
+			char[] symbols = new char[columns];
+			symbolBytes.asCharBuffer().get(symbols);
+			offset = align(offset + 2L * columns);
+
+			SymbolClasses classes;
+			if (header.version >= 2) {
+				int ranges = map(channel, offset, 4, end, file).getInt(0);
+				if (ranges < 0) {
+					throw corrupt(file);
+				}
+				IntBuffer rangeInts = map(channel, offset + 4, 12L * ranges, end, file).asIntBuffer();
+				SymbolSet[] sets = new SymbolSet[columns];
+				Arrays.fill(sets, SymbolSet.EMPTY);
+				for (int r = 0; r < ranges; r++) {
+					int first = rangeInts.get(3 * r);
+					int last = rangeInts.get(3 * r + 1);
+					int column = rangeInts.get(3 * r + 2);
+					if (column < 0 || column >= columns || first < 0 || first > last || last > Character.MAX_CODE_POINT) {
+						throw corrupt(file);
+					}
+					sets[column] = sets[column].union(SymbolSet.range(first, last));
+				}
+				classes = SymbolClasses.build(sets);
+				offset = align(offset + 4 + 12L * ranges);
+			} else {
+				classes = SymbolClasses.of(symbols);
+			}
+
+			long acceptLength = 8L * ((states + 63) >>> 6);
+			LongBuffer acceptBits = map(channel, offset, acceptLength, end, file).asLongBuffer();
+			offset += acceptLength;
+
+			int pageCount = (int) ((states + (long) rowsPerPage - 1) / rowsPerPage);
+			IntBuffer[] pages = new IntBuffer[pageCount];
+			for (int p = 0; p < pageCount; p++) {
+				int rows = Math.min(rowsPerPage, states - p * rowsPerPage);
+				long length = 4L * rows * columns;
+				pages[p] = map(channel, offset, length, end, file).asIntBuffer();
+				offset = align(offset + length);
+			}
+			if (event.shouldCommit()) {
+				event.path = file.getPath();
+				event.format = "compiled";
+				event.bytes = header.compiledLength;
+				event.states = states;
+				event.transitions = (long) states * columns;
+				event.commit();
+			}
+			return new CompiledFSM(classes, initialState, TransitionTable.wrap(states, columns, rowsPerPage, pages, acceptBits));
+		}
+	}
+
+	/**
+	 * The offsets and lengths of the sections of a file.
+	 */
+	private static final class Header {
+		int version;
+		long modelOffset;
+		long modelLength;
+		long compiledOffset;
+		long compiledLength;
+	}
+
+	/**
+	 * Maps part of the compiled section, little endian, after checking it ends by the end
+	 * of the section.
+	 */
+	private static ByteBuffer map(FileChannel channel, long offset, long length, long end, File file) throws IOException {
+		if (length > end - offset) {
+			throw corrupt(file);
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static IOException corrupt(File file) {
+		return new IOException(file + " is corrupt.");
+	}
+
+	/**
+	 * Reads the header, checking that both sections lie inside the file.
+	 */
+	private static Header readHeader(File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(file + " is not a machine file.");
+			}
+			int version = in.readInt();
+			if (version < 1 || version > VERSION) {
+				throw new IOException("Unsupported machine file version " + version + " in " + file);
+			}
+			Header header = new Header();
+			header.version = version;
+			header.modelOffset = in.readLong();
+			header.modelLength = in.readLong();
+			header.compiledOffset = in.readLong();
+			header.compiledLength = in.readLong();
+			long length = file.length();
+			if (!inside(header.modelOffset, header.modelLength, length) || !inside(header.compiledOffset, header.compiledLength, length)) {
+				throw corrupt(file);
+			}
+			return header;
+		}
+	}
+
+	/**
+	 * Returns whether a section starts after the header and ends by the end of the file. An
+	 * empty section's offset isn't used, and can be past the end after padding.
+	 */
+	private static boolean inside(long offset, long length, long fileLength) {
+		return length == 0 || offset >= HEADER_SIZE && length > 0 && offset <= fileLength && length <= fileLength - offset;
+	}
+
+	private static void writeDocument(DataOutputStream out, FSMDocument document) throws IOException {
+		out.writeInt(document.getAlphabet().size());
+		for (char symbol : document.getAlphabet()) {
+			out.writeChar(symbol);
+		}
+		out.writeInt(document.getNumberOfStates());
+		out.writeInt(document.getInitialState());
+		for (int i = 0; i < document.getNumberOfStates(); i++) {
+			String label = document.getStateLabel(i);
+			out.writeUTF(label == null ? "" : label);
+			out.writeInt(document.getStateX(i));
+			out.writeInt(document.getStateY(i));
+			out.writeBoolean(document.isFinalState(i));
+		}
+		out.writeInt(document.getNumberOfTransitions());
+		for (int i = 0; i < document.getNumberOfTransitions(); i++) {
+			out.writeInt(document.getTransitionFrom(i));
+			out.writeInt(document.getTransitionTo(i));
+			out.writeUTF(document.getTransitionLabel(i));
+		}
+	}
+
+	private static FSMDocument readDocument(DataInputStream in) throws IOException {
+		FSMDocument document = new FSMDocument();
+		int symbols = in.readInt();
+		for (int i = 0; i < symbols; i++) {
+			document.addSymbol(in.readChar());
+		}
+		int states = in.readInt();
+		document.setInitialState(in.readInt());
+		for (int i = 0; i < states; i++) {
+			String label = in.readUTF();
+			int x = in.readInt();
+			int y = in.readInt();
+			document.addState(label, x, y, in.readBoolean());
+		}
+		int transitions = in.readInt();
+		for (int i = 0; i < transitions; i++) {
+			int from = in.readInt();
+			int to = in.readInt();
+			String label = in.readUTF();
+			document.addTransition(from, to, label.length() == 1 ? FSMDocument.labelOf(label.charAt(0)) : label);
+		}
+		return document;
+	}
+
+	/**
+	 * Writes the compiled section at the channel's position, leaving the position after it.
+	 */
+	private static void writeCompiled(FileChannel channel, CompiledFSM compiled) throws IOException {
+		int states = compiled.getNumberOfStates();
+		int columns = compiled.getNumberOfColumns();
+		int rowsPerPage = TransitionTable.rowsPerPage(columns);
+		ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+		buffer.putInt(states).putInt(columns).putInt(compiled.getInitialState()).putInt(rowsPerPage);
+		for (int c = 0; c < columns; c++) {
+			ensure(channel, buffer, 2);
+			buffer.putChar(compiled.getSymbol(c));
+		}
+		pad(channel, buffer);
+
+		int ranges = 0;
+		for (int c = 0; c < columns; c++) {
+			ranges += compiled.getSymbolSet(c).getNumberOfRanges();
+		}
+		ensure(channel, buffer, 4);
+		buffer.putInt(ranges);
+		for (int c = 0; c < columns; c++) {
+			SymbolSet set = compiled.getSymbolSet(c);
+			for (int r = 0; r < set.getNumberOfRanges(); r++) {
+				ensure(channel, buffer, 12);
+				buffer.putInt(set.getRangeStart(r)).putInt(set.getRangeEnd(r)).putInt(c);
+			}
+		}
+		pad(channel, buffer);
+
+		long bits = 0;
+		for (int s = 0; s < states; s++) {
+			if (compiled.isAcceptState(s)) {
+				bits |= 1L << s;
+			}
+			if ((s & 63) == 63 || s == states - 1) {
+				ensure(channel, buffer, 8);
+				buffer.putLong(bits);
+				bits = 0;
+			}
+		}
+
+		for (int s = 0; s < states; s++) {
+			for (int c = 0; c < columns; c++) {
+				ensure(channel, buffer, 4);
+				buffer.putInt(compiled.next(s, c));
+			}
+			if ((s + 1) % rowsPerPage == 0 || s == states - 1) {
+				pad(channel, buffer);
+			}
+		}
+		drain(channel, buffer);
+	}
+
+	private static void ensure(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			drain(channel, buffer);
+		}
+	}
+
+	/**
+	 * Pads with zeros up to the next 8 byte boundary of the file.
+	 */
+	private static void pad(FileChannel channel, ByteBuffer buffer) throws IOException {
+		long position = channel.position() + buffer.position();
+		for (long i = position; i < align(position); i++) {
+			ensure(channel, buffer, 1);
+			buffer.put((byte) 0);
+		}
+	}
+
+	private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private static long align(long offset) {
+		return (offset + 7) & ~7L;
+	}
+}
@@ -0,0 +1,170 @@
+package fsmsketcher.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ *
+ * Computes a structural fingerprint of an FSM: a SHA-256 hash that is the same for any two
+ * machines with the same alphabet and the same reachable structure, no matter how their
+ * states are numbered or in which order their transitions were added.
+ *
+ * States are renumbered breadth first from the initial state, visiting each state's
+ * transitions in symbol order, and unreachable states are left out. Duplicate transitions
+ * are counted once. The only remaining dependence on the original numbering is the order in
+ * which two undiscovered targets of the same state and symbol are visited, which only
+ * nondeterministic machines have.
+ *
+ * Range transitions are hashed by their canonical label, so two ways of writing the same
+ * set of code points give the same fingerprint. A machine without ranges hashes exactly as
+ * it did before ranges existed, so its cache entries stay valid.
+ *
+ * Computing a fingerprint is linear in the size of the machine and much cheaper than
+ * compiling it, which is what lets CompiledCache skip compilation.
+ *
+ */
+public final class FSMFingerprint {
+
+	/**
+	 * Changing how fingerprints are computed must change this, so old cache entries are not reused.
+	 */
+	private static final String SCHEME = "FSMS-fingerprint-1";
+
+	private FSMFingerprint() {
+	}
+
+	/**
+	 * Computes the fingerprint of a machine.
+	 *
+	 * @param fsm The machine.
+	 * @return The fingerprint as 64 lowercase hex digits.
+	 */
+	public static String of(FSM fsm) {
+		MessageDigest digest = sha256();
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		buffer.put(SCHEME.getBytes(StandardCharsets.US_ASCII));
+
+		char[] symbols = CompiledFSM.sortedSymbols(fsm.getAlphabet());
+		buffer.putInt(symbols.length);
+		for (char symbol : symbols) {
+			flushIfFull(digest, buffer, 2);
+			buffer.putChar(symbol);
+		}
+
+		//Range labels are numbered in label order, after every char, so their edges sort last.
+		HashMap<SymbolSet, Integer> rangeKeys = new HashMap<>();
+		if (fsm.hasRanges()) {
+			TreeMap<String, SymbolSet> labels = new TreeMap<>();
+			for (int state = 0; state < fsm.getNumberOfStates(); state++) {
+				for (FSM.RangePair trans : fsm.getRangeTransitions(state)) {
+					labels.put(trans.label.toString(), trans.label);
+				}
+			}
+			flushIfFull(digest, buffer, 4);
+			buffer.putInt(labels.size());
+			for (Map.Entry<String, SymbolSet> label : labels.entrySet()) {
+				rangeKeys.put(label.getValue(), Character.MAX_VALUE + 1 + rangeKeys.size());
+				byte[] bytes = label.getKey().getBytes(StandardCharsets.UTF_8);
+				flushIfFull(digest, buffer, 4);
+				buffer.putInt(bytes.length);
+				for (byte b : bytes) {
+					flushIfFull(digest, buffer, 1);
+					buffer.put(b);
+				}
+			}
+		}
+
+		int states = fsm.getNumberOfStates();
+		int[] canonical = new int[Math.max(states, fsm.getInitialState() + 1)];
+		Arrays.fill(canonical, -1);
+		int[] order = new int[canonical.length];
+		int count = 0;
+		canonical[fsm.getInitialState()] = count;
+		order[count++] = fsm.getInitialState();
+
+		long[] edges = new long[16];
+		for (int i = 0; i < count; i++) {
+			int state = order[i];
+			int size = 0;
+			//Sort by (symbol, original target) so discovery order only depends on the symbols.
+			for (FSM.pair trans : fsm.getTransitions(state)) {
+				if (size == edges.length) {
+					edges = Arrays.copyOf(edges, 2 * size);
+				}
+				edges[size++] = ((long) trans.ch << 32) | trans.nS;
+			}
+			for (FSM.RangePair trans : fsm.getRangeTransitions(state)) {
+				if (size == edges.length) {
+					edges = Arrays.copyOf(edges, 2 * size);
+				}
+				edges[size++] = ((long) rangeKeys.get(trans.label) << 32) | trans.nS;
+			}
+			Arrays.sort(edges, 0, size);
+			for (int e = 0; e < size; e++) {
+				int target = (int) edges[e];
+				if (target >= canonical.length) {
+					int old = canonical.length;
+					int length = Math.max(2 * old, target + 1);
+					order = Arrays.copyOf(order, length);
+					canonical = Arrays.copyOf(canonical, length);
+					Arrays.fill(canonical, old, length, -1);
+				}
+				if (canonical[target] < 0) {
+					canonical[target] = count;
+					order[count++] = target;
+				}
+				edges[e] = (edges[e] & 0xFFFFFFFF00000000L) | canonical[target];
+			}
+			Arrays.sort(edges, 0, size);
+
+			flushIfFull(digest, buffer, 9);
+			buffer.put((byte) (fsm.hasFinalState(state) ? 1 : 0));
+			int distinct = 0;
+			for (int e = 0; e < size; e++) {
+				if (e == 0 || edges[e] != edges[e - 1]) {
+					distinct++;
+				}
+			}
+			buffer.putInt(distinct);
+			for (int e = 0; e < size; e++) {
+				if (e == 0 || edges[e] != edges[e - 1]) {
+					flushIfFull(digest, buffer, 8);
+					buffer.putLong(edges[e]);
+				}
+			}
+		}
+		buffer.flip();
+		digest.update(buffer);
+		return toHex(digest.digest());
+	}
+
+	private static void flushIfFull(MessageDigest digest, ByteBuffer buffer, int needed) {
+		if (buffer.remaining() < needed) {
+			buffer.flip();
+			digest.update(buffer);
+			buffer.clear();
+		}
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(2 * bytes.length);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,325 @@
+package fsmsketcher.engine;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ *
+ * Wraps an FSM to record where evaluation time goes: how often each state is in the active
+ * set, how often each transition is taken, how large the active set gets, and how long each
+ * word takes. Words are stepped the same way FSM.acceptsWord steps them, so results and
+ * relative costs match the unwrapped machine.
+ *
+ * Instrumentation costs nothing unless it is asked for. Code that wants it optional should
+ * get its machine from wrap(), which hands back the FSM itself unless the
+ * fsmsketcher.instrument system property is true. A wrapper can also be switched off with
+ * setEnabled(false), which leaves one volatile read per call. All counters are striped, so
+ * any number of threads can evaluate words through one wrapper.
+ *
+ * Counts are kept per state and per transition of the machine as it was at the last reset.
+ * Edits made through the wrapper reset the counts; after edits made on the FSM directly,
+ * call reset() before trusting them.
+ *
+ */
+public class InstrumentedStateMachine implements StateMachine {
+
+	/**
+	 * Whether wrap() instruments machines, from the fsmsketcher.instrument system property.
+	 */
+	public static final boolean INSTRUMENT = Boolean.getBoolean("fsmsketcher.instrument");
+
+	private final FSM fsm;
+	private volatile boolean enabled;
+	private volatile Counts counts;
+	private final StripedHistogram wordNanos;
+	private final StripedHistogram activeSetSizes;
+
+	/**
+	 * The counters for one shape of the machine.
+	 */
+	private static final class Counts {
+		final StripedCounters visits;
+		/** The hits of transition i of state s are at hits[edgeStart[s] + i]. */
+		final int[] edgeStart;
+		final StripedCounters hits;
+
+		Counts(FSM fsm) {
+			int n = fsm.getNumberOfStates();
+			visits = new StripedCounters(n);
+			edgeStart = new int[n + 1];
+			for (int s = 0; s < n; s++) {
+				edgeStart[s + 1] = edgeStart[s] + fsm.getTransitions(s).size();
+			}
+			hits = new StripedCounters(edgeStart[n]);
+		}
+
+		void visit(int state) {
+			if (state >= 0 && state < visits.size()) {
+				visits.increment(state);
+			}
+		}
+
+		void hit(int state, int index) {
+			if (state >= 0 && state < visits.size() && index < edgeStart[state + 1] - edgeStart[state]) {
+				hits.increment(edgeStart[state] + index);
+			}
+		}
+	}
+
+	/**
+	 * Wraps a machine, enabled.
+	 *
+	 * @param fsm The machine to instrument.
+	 */
+	public InstrumentedStateMachine(FSM fsm) {
+		this.fsm = fsm;
+		this.enabled = true;
+		this.wordNanos = new StripedHistogram();
+		this.activeSetSizes = new StripedHistogram();
+		this.counts = new Counts(fsm);
+	}
+
+	/**
+	 * Returns the machine instrumented if the fsmsketcher.instrument system property is true,
+	 * and the machine itself otherwise.
+	 *
+	 * @param fsm The machine.
+	 * @return The machine to evaluate words with.
+	 */
+	public static StateMachine wrap(FSM fsm) {
+		return INSTRUMENT ? new InstrumentedStateMachine(fsm) : fsm;
+	}
+
+	/**
+	 * Returns the machine being instrumented.
+	 *
+	 * @return The machine.
+	 */
+	public FSM getMachine() {
+		return fsm;
+	}
+
+	/**
+	 * Turns recording on or off. While it's off, calls go straight to the machine.
+	 *
+	 * @param enabled Whether to record.
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Returns whether recording is on.
+	 *
+	 * @return Whether calls are recorded.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Forgets everything recorded and sizes the counters to the machine as it is now.
+	 */
+	public void reset() {
+		counts = new Counts(fsm);
+		wordNanos.reset();
+		activeSetSizes.reset();
+	}
+
+	/**
+	 * Returns how many times a state has been in the active set, counting the initial set and
+	 * the set after each symbol.
+	 *
+	 * @param state The state.
+	 * @return The number of visits, or 0 for a state added since the last reset.
+	 */
+	public long getStateVisits(int state) {
+		Counts c = counts;
+		return state >= 0 && state < c.visits.size() ? c.visits.get(state) : 0;
+	}
+
+	/**
+	 * Returns the visits of every state.
+	 *
+	 * @return The visits, indexed by state, as of the last reset's machine.
+	 */
+	public long[] getStateVisits() {
+		return counts.visits.toArray();
+	}
+
+	/**
+	 * Returns how many times a transition has been taken.
+	 *
+	 * @param state The state the transition leaves.
+	 * @param index The index of the transition among the state's transitions, in the order they were added.
+	 * @return The number of hits, or 0 for a transition added since the last reset.
+	 */
+	public long getTransitionHits(int state, int index) {
+		Counts c = counts;
+		if (state < 0 || state >= c.visits.size() || index < 0 || index >= c.edgeStart[state + 1] - c.edgeStart[state]) {
+			return 0;
+		}
+		return c.hits.get(c.edgeStart[state] + index);
+	}
+
+	/**
+	 * Returns the time taken by each word given to acceptsWord, in nanoseconds.
+	 *
+	 * @return The latency histogram.
+	 */
+	public StripedHistogram getWordNanos() {
+		return wordNanos;
+	}
+
+	/**
+	 * Returns the sizes of the active sets stepped, one per symbol. Sizes above 1 show
+	 * nondeterminism that an NFA run pays for on every symbol.
+	 *
+	 * @return The active set size histogram.
+	 */
+	public StripedHistogram getActiveSetSizes() {
+		return activeSetSizes;
+	}
+
+	private HashSet<Integer> step(Counts c, HashSet<Integer> states, int symbol) {
+		activeSetSizes.record(states.size());
+		HashSet<Integer> next = new HashSet<>(fsm.getAlphabet().size());
+		for (int state : states) {
+			c.visit(state);
+			ArrayList<FSM.pair> transitions = fsm.getTransitions(state);
+			for (int i = 0; i < transitions.size(); i++) {
+				FSM.pair trans = transitions.get(i);
+				if (trans.ch == symbol) {
+					c.hit(state, i);
+					next.add(trans.nS);
+				}
+			}
+			//Range transitions aren't counted per edge; the states they reach are still visited.
+			for (FSM.RangePair trans : fsm.getRangeTransitions(state)) {
+				if (trans.label.contains(symbol)) {
+					next.add(trans.nS);
+				}
+			}
+		}
+		return next;
+	}
+
+	@Override
+	public HashSet<Integer> nextStates(HashSet<Integer> states, char symbol) {
+		if (!enabled) {
+			return fsm.nextStates(states, symbol);
+		}
+		return step(counts, states, symbol);
+	}
+
+	@Override
+	public boolean acceptsWord(char[] word) {
+		if (!enabled) {
+			return fsm.acceptsWord(word);
+		}
+		long start = System.nanoTime();
+		boolean accepted = run(counts, word);
+		wordNanos.record(System.nanoTime() - start);
+		return accepted;
+	}
+
+	private boolean run(Counts c, char[] word) {
+		if (!fsm.validateWord(word)) {
+			return false;
+		}
+		HashSet<Integer> current = new HashSet<>(fsm.getAlphabet().size());
+		current.add(fsm.getInitialState());
+		boolean codePoints = fsm.getClasses().classes.hasSupplementary();
+		for (int i = 0; i < word.length; i++) {
+			int symbol = word[i];
+			if (codePoints && Character.isHighSurrogate(word[i]) && i + 1 < word.length && Character.isLowSurrogate(word[i + 1])) {
+				symbol = Character.toCodePoint(word[i], word[++i]);
+			}
+			current = step(c, current, symbol);
+			if (current.isEmpty()) {
+				return false;
+			}
+		}
+		boolean accepted = false;
+		for (int state : current) {
+			c.visit(state);
+			accepted |= fsm.hasFinalState(state);
+		}
+		return accepted;
+	}
+
+	@Override
+	public boolean validateWord(char[] word) {
+		return fsm.validateWord(word);
+	}
+
+	@Override
+	public boolean validateRE(char[] word) {
+		return fsm.validateRE(word);
+	}
+
+	@Override
+	public int getNumberOfStates() {
+		return fsm.getNumberOfStates();
+	}
+
+	@Override
+	public void toggleStateAcceptance(int state) {
+		fsm.toggleStateAcceptance(state);
+	}
+
+	@Override
+	public boolean isAcceptState(int state) {
+		return fsm.isAcceptState(state);
+	}
+
+	@Override
+	public void setInitialState(int state) {
+		fsm.setInitialState(state);
+	}
+
+	@Override
+	public int getInitialState() {
+		return fsm.getInitialState();
+	}
+
+	@Override
+	public void setFinalState(int state) {
+		fsm.setFinalState(state);
+	}
+
+	@Override
+	public int addState() {
+		int state = fsm.addState();
+		reset();
+		return state;
+	}
+
+	@Override
+	public void removeState(int state) {
+		fsm.removeState(state);
+		reset();
+	}
+
+	@Override
+	public void addTransition(int fromState, int toState, char symbol) {
+		fsm.addTransition(fromState, toState, symbol);
+		reset();
+	}
+
+	@Override
+	public void removeTransition(int fromState, int toState, char symbol) {
+		fsm.removeTransition(fromState, toState, symbol);
+		reset();
+	}
+
+	@Override
+	public ArrayList<Character> getTransitionsCharactersBetween(int fromState, int toState) {
+		return fsm.getTransitionsCharactersBetween(fromState, toState);
+	}
+
+	@Override
+	public ArrayList<Character> getAlphabet(int size) {
+		return fsm.getAlphabet(size);
+	}
+}
@@ -0,0 +1,397 @@
+package fsmsketcher.engine;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.LinkedHashSet;
+
+/**
+ *
+ * Reads and writes machines as JSON. Both directions stream: the reader pulls one token at
+ * a time and builds the FSMDocument as it goes, and the writer emits one state or
+ * transition at a time, so memory use depends on the size of the machine and never on the
+ * size of the text.
+ *
+ * The schema:
+ * <pre>
+ * {
+ *   "alphabet": ["a", "b"],
+ *   "initial": "q0",
+ *   "states": [
+ *     { "id": "q0", "label": "start", "initial": true, "final": false, "x": 40, "y": 80 }
+ *   ],
+ *   "transitions": [
+ *     { "from": "q0", "to": "q1", "symbol": "a" }
+ *   ]
+ * }
+ * </pre>
+ * Ids may be strings or numbers. Only "id" is required for a state, and states first
+ * mentioned by a transition are created with their id as the label. Without an "alphabet"
+ * the alphabet is every single symbol used by a transition; a range symbol such as "[0-9]"
+ * or "\\p{L}" is kept as a range label instead. Unknown members are skipped. The top
+ * level "initial" and a state's "initial" flag are interchangeable, and must name a state
+ * the file declares or uses in a transition; a machine without states has no "initial".
+ *
+ */
+public final class JsonFormat {
+
+	private JsonFormat() {
+	}
+
+	/**
+	 * Reads a machine.
+	 *
+	 * @param in The JSON text.
+	 * @return The machine described.
+	 * @throws IOException If the text couldn't be read or doesn't follow the schema.
+	 */
+	public static FSMDocument read(Reader in) throws IOException {
+		Parser parser = new Parser(in);
+		FSMDocument document = new FSMDocument();
+		StateIds ids = new StateIds(document);
+		LinkedHashSet<Character> usedSymbols = new LinkedHashSet<>();
+		boolean declaredAlphabet = false;
+		String initial = null;
+
+		parser.expect('{');
+		if (!parser.endOf('}')) {
+			do {
+				String name = parser.readString();
+				parser.expect(':');
+				if (name.equals("alphabet")) {
+					declaredAlphabet = true;
+					parser.expect('[');
+					if (!parser.endOf(']')) {
+						do {
+							for (char symbol : parser.readString().toCharArray()) {
+								document.addSymbol(symbol);
+							}
+						} while (parser.next(']'));
+					}
+				} else if (name.equals("initial")) {
+					initial = parser.readScalar();
+				} else if (name.equals("states")) {
+					parser.expect('[');
+					if (!parser.endOf(']')) {
+						do {
+							String state = readState(parser, document, ids);
+							if (state != null) {
+								initial = state;
+							}
+						} while (parser.next(']'));
+					}
+				} else if (name.equals("transitions")) {
+					parser.expect('[');
+					if (!parser.endOf(']')) {
+						do {
+							String label = readTransition(parser, document, ids);
+							if (!SymbolSet.isRangeLabel(label)) {
+								usedSymbols.add(label.charAt(0));
+							}
+						} while (parser.next(']'));
+					}
+				} else {
+					parser.skipValue();
+				}
+			} while (parser.next('}'));
+		}
+
+		if (!declaredAlphabet) {
+			for (char symbol : usedSymbols) {
+				document.addSymbol(symbol);
+			}
+		}
+		if (initial != null) {
+			int state = ids.find(initial);
+			if (state < 0) {
+				throw parser.error("Initial state " + initial + " isn't a state");
+			}
+			document.setInitialState(state);
+		}
+		return document;
+	}
+
+	/**
+	 * Reads one state object.
+	 *
+	 * @return The state's id if it is marked initial, null otherwise.
+	 */
+	private static String readState(Parser parser, FSMDocument document, StateIds ids) throws IOException {
+		String id = null;
+		String label = null;
+		boolean isInitial = false;
+		boolean isFinal = false;
+		int x = 0;
+		int y = 0;
+		parser.expect('{');
+		if (!parser.endOf('}')) {
+			do {
+				String name = parser.readString();
+				parser.expect(':');
+				if (name.equals("id")) {
+					id = parser.readScalar();
+				} else if (name.equals("label")) {
+					label = parser.readScalar();
+				} else if (name.equals("initial")) {
+					isInitial = Boolean.parseBoolean(parser.readScalar());
+				} else if (name.equals("final")) {
+					isFinal = Boolean.parseBoolean(parser.readScalar());
+				} else if (name.equals("x")) {
+					x = parser.readInt();
+				} else if (name.equals("y")) {
+					y = parser.readInt();
+				} else {
+					parser.skipValue();
+				}
+			} while (parser.next('}'));
+		}
+		if (id == null) {
+			throw parser.error("State without an id");
+		}
+		int state = ids.get(id);
+		document.setStateLabel(state, label == null ? id : label);
+		document.setStatePosition(state, x, y);
+		document.setFinalState(state, isFinal);
+		return isInitial ? id : null;
+	}
+
+	/**
+	 * Reads one transition object.
+	 *
+	 * @return The label of the transition.
+	 */
+	private static String readTransition(Parser parser, FSMDocument document, StateIds ids) throws IOException {
+		String from = null;
+		String to = null;
+		String symbol = null;
+		parser.expect('{');
+		if (!parser.endOf('}')) {
+			do {
+				String name = parser.readString();
+				parser.expect(':');
+				if (name.equals("from")) {
+					from = parser.readScalar();
+				} else if (name.equals("to")) {
+					to = parser.readScalar();
+				} else if (name.equals("symbol") || name.equals("label")) {
+					symbol = parser.readScalar();
+				} else {
+					parser.skipValue();
+				}
+			} while (parser.next('}'));
+		}
+		if (from == null || to == null || symbol == null || symbol.isEmpty()) {
+			throw parser.error("Transitions need a from, to and symbol");
+		}
+		String label = symbol.length() == 1 ? FSMDocument.labelOf(symbol.charAt(0)) : symbol;
+		document.addTransition(ids.get(from), ids.get(to), label);
+		return label;
+	}
+
+
+	/**
+	 * Writes a machine. States are identified by their index.
+	 *
+	 * @param document The machine to write.
+	 * @param out Where to write it. It is not closed, but it is flushed.
+	 * @throws IOException If the text couldn't be written.
+	 */
+	public static void write(FSMDocument document, Writer out) throws IOException {
+		out.write("{\n  \"alphabet\": [");
+		boolean first = true;
+		for (char symbol : document.getAlphabet()) {
+			out.write(first ? "" : ", ");
+			writeString(out, FSMDocument.labelOf(symbol));
+			first = false;
+		}
+		out.write("],\n  ");
+		if (document.getNumberOfStates() > 0) {
+			out.write("\"initial\": ");
+			out.write(Integer.toString(document.getInitialState()));
+			out.write(",\n  ");
+		}
+		out.write("\"states\": [");
+		for (int i = 0; i < document.getNumberOfStates(); i++) {
+			out.write(i == 0 ? "\n    { \"id\": " : ",\n    { \"id\": ");
+			out.write(Integer.toString(i));
+			out.write(", \"label\": ");
+			writeString(out, document.getStateLabel(i) == null ? "" : document.getStateLabel(i));
+			if (i == document.getInitialState()) {
+				out.write(", \"initial\": true");
+			}
+			if (document.isFinalState(i)) {
+				out.write(", \"final\": true");
+			}
+			out.write(", \"x\": ");
+			out.write(Integer.toString(document.getStateX(i)));
+			out.write(", \"y\": ");
+			out.write(Integer.toString(document.getStateY(i)));
+			out.write(" }");
+		}
+		out.write("\n  ],\n  \"transitions\": [");
+		for (int i = 0; i < document.getNumberOfTransitions(); i++) {
+			out.write(i == 0 ? "\n    { \"from\": " : ",\n    { \"from\": ");
+			out.write(Integer.toString(document.getTransitionFrom(i)));
+			out.write(", \"to\": ");
+			out.write(Integer.toString(document.getTransitionTo(i)));
+			out.write(", \"symbol\": ");
+			writeString(out, document.getTransitionLabel(i));
+			out.write(" }");
+		}
+		out.write("\n  ]\n}\n");
+		out.flush();
+	}
+
+	private static void writeString(Writer out, String s) throws IOException {
+		out.write('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				out.write('\\');
+				out.write(c);
+			} else if (c < 0x20) {
+				out.write(String.format("\\u%04x", (int) c));
+			} else {
+				out.write(c);
+			}
+		}
+		out.write('"');
+	}
+
+	/**
+	 * A pull parser over the JSON tokens the schema needs.
+	 */
+	private static final class Parser extends TextScanner {
+		private final StringBuilder token = new StringBuilder();
+
+		Parser(Reader in) {
+			super(in);
+		}
+
+		/**
+		 * Consumes the closing character of an empty object or array.
+		 *
+		 * @return true if the object or array is empty.
+		 */
+		boolean endOf(char close) throws IOException {
+			if (skipWhitespace() == close) {
+				read();
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Consumes the separator after an element.
+		 *
+		 * @return true if another element follows, false if the closing character was consumed.
+		 */
+		boolean next(char close) throws IOException {
+			int c = skipWhitespace();
+			read();
+			if (c == ',') {
+				return true;
+			}
+			if (c == close) {
+				return false;
+			}
+			throw error("Expected ',' or '" + close + "' but found " + describe(c));
+		}
+
+		String readString() throws IOException {
+			expect('"');
+			token.setLength(0);
+			while (true) {
+				int c = appendUntil(token, '"', '\\');
+				read();
+				if (c < 0) {
+					throw error("Unterminated string");
+				}
+				if (c == '"') {
+					return token.toString();
+				}
+				if (c == '\\') {
+					c = read();
+					switch (c) {
+					case 'n': token.append('\n'); break;
+					case 't': token.append('\t'); break;
+					case 'r': token.append('\r'); break;
+					case 'b': token.append('\b'); break;
+					case 'f': token.append('\f'); break;
+					case 'u':
+						int code = 0;
+						for (int i = 0; i < 4; i++) {
+							int digit = Character.digit(read(), 16);
+							if (digit < 0) {
+								throw error("Bad unicode escape");
+							}
+							code = 16 * code + digit;
+						}
+						token.append((char) code);
+						break;
+					default:
+						if (c < 0) {
+							throw error("Unterminated string");
+						}
+						token.append((char) c);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Reads a string, number, boolean or null as text.
+		 */
+		String readScalar() throws IOException {
+			int c = skipWhitespace();
+			if (c == '"') {
+				return readString();
+			}
+			token.setLength(0);
+			while (c >= 0 && (Character.isLetterOrDigit(c) || c == '-' || c == '+' || c == '.')) {
+				token.append((char) read());
+				c = peek();
+			}
+			if (token.length() == 0) {
+				throw error("Expected a value but found " + describe(c));
+			}
+			return token.toString();
+		}
+
+		int readInt() throws IOException {
+			String value = readScalar();
+			try {
+				if (value.indexOf('.') < 0 && value.indexOf('e') < 0 && value.indexOf('E') < 0) {
+					return Integer.parseInt(value);
+				}
+				return (int) Math.round(Double.parseDouble(value));
+			} catch (NumberFormatException e) {
+				throw error("Expected a number but found " + value);
+			}
+		}
+
+		void skipValue() throws IOException {
+			int c = skipWhitespace();
+			if (c == '{' || c == '[') {
+				int depth = 0;
+				do {
+					c = skipWhitespace();
+					if (c == '"') {
+						readString();
+						continue;
+					}
+					read();
+					if (c == '{' || c == '[') {
+						depth++;
+					} else if (c == '}' || c == ']') {
+						depth--;
+					} else if (c < 0) {
+						throw error("Unexpected end of input");
+					}
+				} while (depth > 0);
+			} else {
+				readScalar();
+			}
+		}
+	}
+}
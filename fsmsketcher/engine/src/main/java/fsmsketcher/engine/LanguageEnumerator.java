@@ -0,0 +1,386 @@
+package fsmsketcher.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ *
+ * Lists the words a machine accepts in shortlex order: shorter words first, and words of the
+ * same length in alphabetical order. The list is produced lazily, so the first few words of
+ * an infinite language are cheap. A column made from ranges stands for each of its code
+ * points in turn, and the order is by code point across all the columns.
+ *
+ * The machine is compiled and minimized, which leaves only states that are reachable and can
+ * reach an accept state. For each length n it keeps the set of states that reach an accept
+ * state in exactly n steps, one bit set per length. Words of one length are then found by a
+ * depth first walk that only takes steps into those sets, so it never backs out of a dead
+ * end, and only the path to the current word is held in memory rather than a whole level of
+ * words. When a length's set is empty, so are all longer ones, and the iterator ends.
+ *
+ * It can also be run on a machine file:
+ * <pre>
+ *   java fsmsketcher.engine.LanguageEnumerator [--limit K] [--shortest] [--cache DIR] machine-file
+ * </pre>
+ *
+ */
+public final class LanguageEnumerator implements Iterator<String> {
+
+	private static final int DEFAULT_LIMIT = 20;
+	private static final long CACHE_BYTES = 1L << 30;
+
+	private final CompiledFSM dfa;
+	private final int columns;
+	/** Every range of every column, sorted by first code point, so walking them lists symbols in order. */
+	private final int[] rangeFirst;
+	private final int[] rangeLast;
+	private final int[] rangeColumn;
+	/** finish.get(n) holds the states that reach an accept state in exactly n steps. */
+	private final List<BitSet> finish;
+
+	/** The length of the words being listed, or -1 before the first. */
+	private int length;
+	/** The depth the walk carries on from, or -1 when the current length is done. */
+	private int depth;
+	/** The state after each symbol of the current word, starting with the initial state. */
+	private int[] path;
+	/** The range taken at each depth of the current word. */
+	private int[] chosen;
+	/** The code point taken at each depth, which is the current word. */
+	private int[] word;
+	/** The word next() returns, or null if it hasn't been found yet. */
+	private String next;
+	private boolean exhausted;
+
+	/**
+	 * Lists the words a machine accepts.
+	 *
+	 * @param fsm The machine.
+	 */
+	public LanguageEnumerator(FSM fsm) {
+		this(fsm.compile());
+	}
+
+	/**
+	 * Lists the words a compiled machine accepts.
+	 *
+	 * @param dfa The machine.
+	 */
+	public LanguageEnumerator(CompiledFSM dfa) {
+		this.dfa = dfa.minimize();
+		this.columns = this.dfa.getNumberOfColumns();
+		int ranges = 0;
+		for (int c = 0; c < columns; c++) {
+			ranges += this.dfa.getSymbolSet(c).getNumberOfRanges();
+		}
+		int[] first = new int[ranges];
+		int[] last = new int[ranges];
+		int[] column = new int[ranges];
+		long[] order = new long[ranges];
+		int n = 0;
+		for (int c = 0; c < columns; c++) {
+			SymbolSet set = this.dfa.getSymbolSet(c);
+			for (int r = 0; r < set.getNumberOfRanges(); r++, n++) {
+				first[n] = set.getRangeStart(r);
+				last[n] = set.getRangeEnd(r);
+				column[n] = c;
+				order[n] = ((long) first[n] << 32) | n;
+			}
+		}
+		Arrays.sort(order);
+		this.rangeFirst = new int[ranges];
+		this.rangeLast = new int[ranges];
+		this.rangeColumn = new int[ranges];
+		for (int i = 0; i < ranges; i++) {
+			int r = (int) order[i];
+			rangeFirst[i] = first[r];
+			rangeLast[i] = last[r];
+			rangeColumn[i] = column[r];
+		}
+		this.finish = new ArrayList<>();
+		this.length = -1;
+		this.depth = -1;
+		this.path = new int[16];
+		this.chosen = new int[16];
+		this.word = new int[16];
+	}
+
+	/**
+	 * Returns the accepted words of a machine as a sequential stream in shortlex order.
+	 * Infinite languages give infinite streams, so limit it.
+	 *
+	 * @param fsm The machine.
+	 * @return The accepted words.
+	 */
+	public static Stream<String> words(FSM fsm) {
+		return new LanguageEnumerator(fsm).stream();
+	}
+
+	/**
+	 * Returns the rest of this iterator's words as a sequential stream.
+	 *
+	 * @return The words not yet returned by next().
+	 */
+	public Stream<String> stream() {
+		int characteristics = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.IMMUTABLE;
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, characteristics), false);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null && !exhausted) {
+			next = advance();
+			exhausted = next == null;
+		}
+		return next != null;
+	}
+
+	@Override
+	public String next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		String result = next;
+		next = null;
+		return result;
+	}
+
+	/**
+	 * Returns the length of the words being listed.
+	 *
+	 * @return The length of the last word returned, or -1 before the first.
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the states that reach an accept state in exactly n steps, working them out
+	 * from the shorter lengths if they haven't been yet.
+	 */
+	private BitSet finish(int n) {
+		while (finish.size() <= n) {
+			int states = dfa.getNumberOfStates();
+			BitSet row = new BitSet(states);
+			if (finish.isEmpty()) {
+				for (int s = 0; s < states; s++) {
+					if (dfa.isAcceptState(s)) {
+						row.set(s);
+					}
+				}
+			} else {
+				BitSet previous = finish.get(finish.size() - 1);
+				for (int s = 0; s < states; s++) {
+					for (int c = 0; c < columns; c++) {
+						int t = dfa.next(s, c);
+						if (t != CompiledFSM.DEAD && previous.get(t)) {
+							row.set(s);
+							break;
+						}
+					}
+				}
+			}
+			finish.add(row);
+		}
+		return finish.get(n);
+	}
+
+	/**
+	 * Finds the next word, moving on to longer lengths as each one runs out.
+	 *
+	 * @return The word, or null if there are no more.
+	 */
+	private String advance() {
+		int initial = dfa.getInitialState();
+		while (true) {
+			if (depth >= 0 && nextOfLength()) {
+				return new String(word, 0, length);
+			}
+			length++;
+			BitSet row = finish(length);
+			if (row.isEmpty()) {
+				return null;
+			}
+			if (!row.get(initial)) {
+				depth = -1;
+				continue;
+			}
+			if (length == 0) {
+				depth = -1;
+				return "";
+			}
+			if (length >= path.length) {
+				int capacity = Math.max(2 * path.length, length + 1);
+				path = Arrays.copyOf(path, capacity);
+				chosen = Arrays.copyOf(chosen, capacity);
+				word = Arrays.copyOf(word, capacity);
+			}
+			path[0] = initial;
+			chosen[0] = -1;
+			depth = 0;
+		}
+	}
+
+	/**
+	 * Moves the walk to the next word of the current length.
+	 *
+	 * @return Whether there was one. If so it's in word.
+	 */
+	private boolean nextOfLength() {
+		while (depth >= 0) {
+			int state = path[depth];
+			int r = chosen[depth];
+			if (r >= 0 && word[depth] < rangeLast[r]) {
+				//The rest of the range steps to the same state, so it can still finish.
+				word[depth]++;
+			} else {
+				BitSet rest = finish(length - depth - 1);
+				for (r++; r < rangeFirst.length; r++) {
+					int t = dfa.next(state, rangeColumn[r]);
+					if (t != CompiledFSM.DEAD && rest.get(t)) {
+						break;
+					}
+				}
+				if (r == rangeFirst.length) {
+					depth--;
+					continue;
+				}
+				chosen[depth] = r;
+				word[depth] = rangeFirst[r];
+			}
+			if (depth == length - 1) {
+				//Stay at this depth, so the next call tries the following code point.
+				return true;
+			}
+			int t = dfa.next(state, rangeColumn[chosen[depth]]);
+			depth++;
+			path[depth] = t;
+			chosen[depth] = -1;
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the shortest word a machine accepts, taking the alphabetically first of equally
+	 * short words. This is a breadth first search, so it's cheaper than starting a list.
+	 *
+	 * @param dfa The machine.
+	 * @return The word, or null if the machine accepts nothing.
+	 */
+	public static String shortestAccepted(CompiledFSM dfa) {
+		return shortest(dfa, true);
+	}
+
+	/**
+	 * Finds the shortest word over a machine's alphabet that it rejects, taking the
+	 * alphabetically first of equally short words.
+	 *
+	 * @param dfa The machine.
+	 * @return The word, or null if the machine accepts every word.
+	 */
+	public static String shortestRejected(CompiledFSM dfa) {
+		return shortest(dfa, false);
+	}
+
+	/**
+	 * Searches breadth first, stepping columns in order, so the first state found with the
+	 * wanted acceptance is reached by the shortlex least word. Columns are numbered by their
+	 * smallest code point, which is the one each stands for here. DEAD is a rejecting state
+	 * with the index n.
+	 */
+	private static String shortest(CompiledFSM dfa, boolean accepted) {
+		int n = dfa.getNumberOfStates();
+		int columns = dfa.getNumberOfColumns();
+		int dead = n;
+		int[] parent = new int[n + 1];
+		int[] parentColumn = new int[n + 1];
+		Arrays.fill(parent, -2);
+		int[] queue = new int[n + 1];
+		int queued = 0;
+		int initial = dfa.getInitialState();
+		int start = initial >= 0 && initial < n ? initial : dead;
+		parent[start] = -1;
+		queue[queued++] = start;
+		for (int head = 0; head < queued; head++) {
+			int s = queue[head];
+			boolean accepts = s != dead && dfa.isAcceptState(s);
+			if (accepts == accepted) {
+				StringBuilder sb = new StringBuilder();
+				for (int at = s; parent[at] >= 0; at = parent[at]) {
+					sb.appendCodePoint(dfa.getSymbolSet(parentColumn[at]).first());
+				}
+				return sb.reverse().toString();
+			}
+			if (s == dead) {
+				continue;
+			}
+			for (int c = 0; c < columns; c++) {
+				int t = dfa.next(s, c);
+				if (t == CompiledFSM.DEAD) {
+					t = dead;
+				}
+				if (parent[t] == -2) {
+					parent[t] = s;
+					parentColumn[t] = c;
+					queue[queued++] = t;
+				}
+			}
+		}
+		return null;
+	}
+
+	public static void main(String[] args) {
+		int limit = DEFAULT_LIMIT;
+		boolean shortest = false;
+		File cacheDirectory = null;
+		File machineFile = null;
+		boolean usage = false;
+		try {
+			for (int i = 0; i < args.length && !usage; i++) {
+				boolean hasValue = i + 1 < args.length;
+				if (args[i].equals("--limit") && hasValue) {
+					limit = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("--shortest")) {
+					shortest = true;
+				} else if (args[i].equals("--cache") && hasValue) {
+					cacheDirectory = new File(args[++i]);
+				} else if (machineFile == null && !args[i].startsWith("--")) {
+					machineFile = new File(args[i]);
+				} else {
+					usage = true;
+				}
+			}
+		} catch (NumberFormatException e) {
+			usage = true;
+		}
+		if (usage || machineFile == null || limit < 0) {
+			System.err.println("Usage: java fsmsketcher.engine.LanguageEnumerator [--limit K] [--shortest] [--cache DIR] machine-file");
+			System.exit(2);
+		}
+
+		try {
+			CompiledCache cache = cacheDirectory == null ? null : new CompiledCache(cacheDirectory, CACHE_BYTES);
+			CompiledFSM dfa = BatchEvaluator.load(machineFile, cache);
+			if (shortest) {
+				String accepted = shortestAccepted(dfa);
+				String rejected = shortestRejected(dfa);
+				System.out.println("accepted " + (accepted == null ? "none" : "\"" + accepted + "\""));
+				System.out.println("rejected " + (rejected == null ? "none" : "\"" + rejected + "\""));
+			} else {
+				new LanguageEnumerator(dfa).stream().limit(limit).forEach(System.out::println);
+			}
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package fsmsketcher.engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ *
+ * The symbol classes of an FSM, with the columns each of its transitions steps on. This is
+ * what compiling and validateWord use to turn symbols and range labels into columns.
+ *
+ * A machine without range transitions gets one class per alphabet symbol, as it always
+ * did, and a transition on a symbol outside the alphabet never fires. With ranges, the
+ * labels are the alphabet symbols, every distinct range label, and the symbols of single
+ * symbol transitions that some range covers, since FSM.acceptsWord lets those fire too.
+ *
+ */
+final class MachineAlphabet {
+
+	final SymbolClasses classes;
+	private final HashMap<SymbolSet, int[]> rangeColumns;
+
+	private MachineAlphabet(SymbolClasses classes, HashMap<SymbolSet, int[]> rangeColumns) {
+		this.classes = classes;
+		this.rangeColumns = rangeColumns;
+	}
+
+	/**
+	 * Works out the classes of a machine.
+	 *
+	 * @param fsm The machine.
+	 * @return Its classes.
+	 */
+	static MachineAlphabet of(FSM fsm) {
+		char[] symbols = CompiledFSM.sortedSymbols(fsm.getAlphabet());
+		if (!fsm.hasRanges()) {
+			return new MachineAlphabet(SymbolClasses.of(symbols), new HashMap<>());
+		}
+		LinkedHashSet<SymbolSet> ranges = new LinkedHashSet<>();
+		for (int state = 0; state < fsm.getNumberOfStates(); state++) {
+			for (FSM.RangePair trans : fsm.getRangeTransitions(state)) {
+				ranges.add(trans.label);
+			}
+		}
+		SymbolSet covered = SymbolSet.EMPTY;
+		for (SymbolSet range : ranges) {
+			covered = covered.union(range);
+		}
+		LinkedHashSet<SymbolSet> labels = new LinkedHashSet<>();
+		for (char symbol : symbols) {
+			labels.add(SymbolSet.of(symbol));
+		}
+		for (int state = 0; state < fsm.getNumberOfStates(); state++) {
+			for (FSM.pair trans : fsm.getTransitions(state)) {
+				if (covered.contains(trans.ch)) {
+					labels.add(SymbolSet.of(trans.ch));
+				}
+			}
+		}
+		labels.addAll(ranges);
+
+		List<SymbolSet> list = new ArrayList<>(labels);
+		List<int[]> columns = new ArrayList<>(list.size());
+		SymbolClasses classes = SymbolClasses.partition(list, columns);
+		HashMap<SymbolSet, int[]> rangeColumns = new HashMap<>();
+		for (int l = 0; l < list.size(); l++) {
+			rangeColumns.put(list.get(l), columns.get(l));
+		}
+		return new MachineAlphabet(classes, rangeColumns);
+	}
+
+	/**
+	 * Returns the column a single symbol transition steps on.
+	 *
+	 * @param symbol The symbol of the transition.
+	 * @return The column, or -1 if the transition never fires.
+	 */
+	int columnOf(char symbol) {
+		int column = classes.classOf(symbol);
+		//A symbol inside a range class but not a label itself is outside the alphabet.
+		return column >= 0 && classes.get(column).size() == 1 ? column : -1;
+	}
+
+	/**
+	 * Returns the columns a range transition steps on.
+	 *
+	 * @param label The label of the transition.
+	 * @return The columns, in order.
+	 */
+	int[] columnsOf(SymbolSet label) {
+		return rangeColumns.get(label);
+	}
+}
@@ -0,0 +1,90 @@
+package fsmsketcher.engine;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *
+ * Picks the machine format of a file from its extension: .dot and .gv are Graphviz DOT,
+ * .json is JSON, and anything else is the binary FSMFile format.
+ *
+ */
+public final class MachineFiles {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private MachineFiles() {
+	}
+
+	/**
+	 * Reads the editable model of a machine file in any supported format.
+	 *
+	 * @param file The file to read.
+	 * @return The model, or null if a binary file has no model section.
+	 * @throws IOException If the file couldn't be read.
+	 */
+	public static FSMDocument readDocument(File file) throws IOException {
+		FSMEvents.FileScan event = new FSMEvents.FileScan();
+		event.begin();
+		FSMDocument document;
+		if (isText(file)) {
+			try (Reader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+				document = isDot(file) ? DotFormat.read(in) : JsonFormat.read(in);
+			}
+		} else {
+			document = FSMFile.readDocument(file);
+		}
+		if (event.shouldCommit()) {
+			event.path = file.getPath();
+			event.format = isText(file) ? (isDot(file) ? "dot" : "json") : "binary";
+			event.bytes = file.length();
+			if (document != null) {
+				event.states = document.getNumberOfStates();
+				event.transitions = document.getNumberOfTransitions();
+			}
+			event.commit();
+		}
+		return document;
+	}
+
+	/**
+	 * Writes a machine file in the format its extension names. The compiled table is only
+	 * stored by the binary format.
+	 *
+	 * @param file The file to write.
+	 * @param document The editable model.
+	 * @param compiled The compiled table, or null.
+	 * @throws IOException If the file couldn't be written.
+	 */
+	public static void write(File file, FSMDocument document, CompiledFSM compiled) throws IOException {
+		if (isText(file)) {
+			try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+				if (isDot(file)) {
+					DotFormat.write(document, out);
+				} else {
+					JsonFormat.write(document, out);
+				}
+			}
+		} else {
+			FSMFile.write(file, document, compiled);
+		}
+	}
+
+	private static boolean isText(File file) {
+		return isDot(file) || file.getName().toLowerCase().endsWith(".json");
+	}
+
+	private static boolean isDot(File file) {
+		String name = file.getName().toLowerCase();
+		return name.endsWith(".dot") || name.endsWith(".gv");
+	}
+}
@@ -0,0 +1,249 @@
+package fsmsketcher.engine;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+/**
+ *
+ * Generates random machines from a seed, for benchmarks and soak tests that need machines
+ * far larger than anyone will draw. The same seed and settings always give the same machine.
+ *
+ * Every state gets outDegree transitions on average. The nondeterminism setting is the
+ * chance that a transition reuses a symbol its state already has a transition on, so 0 gives
+ * a deterministic machine. Every state but the last gets at least one transition, even when
+ * the out-degree is below one, and its first one goes to the next state, so every state is
+ * reachable from state 0 and the machine doesn't fall apart into pieces that can never be
+ * tested.
+ *
+ * Words for a generated machine come from WordCorpus.
+ *
+ */
+public class MachineGenerator {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final long seed;
+	private int alphabetSize;
+	private double outDegree;
+	private double nondeterminism;
+	private double acceptDensity;
+
+	/**
+	 * Creates a generator with an alphabet of two symbols, two transitions per state, no
+	 * nondeterminism and a quarter of the states accepting.
+	 *
+	 * @param seed The seed every machine is generated from.
+	 */
+	public MachineGenerator(long seed) {
+		this.seed = seed;
+		this.alphabetSize = 2;
+		this.outDegree = 2;
+		this.nondeterminism = 0;
+		this.acceptDensity = 0.25;
+	}
+
+	/**
+	 * Sets the number of symbols. The symbols start at 'a', the same as FSM.getAlphabet(int).
+	 *
+	 * @param alphabetSize The number of symbols.
+	 */
+	public void setAlphabetSize(int alphabetSize) {
+		if (alphabetSize < 1 || 'a' + alphabetSize > Character.MAX_VALUE) {
+			throw new IllegalArgumentException("Bad alphabet size " + alphabetSize);
+		}
+		this.alphabetSize = alphabetSize;
+	}
+
+	/**
+	 * Sets the average number of transitions leaving a state. A fractional part means some
+	 * states get one more transition than others. Below one, the average is higher than asked,
+	 * since every state but the last keeps the transition to the next state.
+	 *
+	 * @param outDegree The average out-degree.
+	 */
+	public void setOutDegree(double outDegree) {
+		if (outDegree < 0) {
+			throw new IllegalArgumentException("Bad out-degree " + outDegree);
+		}
+		this.outDegree = outDegree;
+	}
+
+	/**
+	 * Sets the chance that a transition reuses a symbol its state already steps on. Once a
+	 * state has used every symbol, its remaining transitions reuse one regardless.
+	 *
+	 * @param nondeterminism The chance, from 0 for deterministic to 1.
+	 */
+	public void setNondeterminism(double nondeterminism) {
+		if (nondeterminism < 0 || nondeterminism > 1) {
+			throw new IllegalArgumentException("Bad nondeterminism ratio " + nondeterminism);
+		}
+		this.nondeterminism = nondeterminism;
+	}
+
+	/**
+	 * Sets the chance that a state is an accept state.
+	 *
+	 * @param acceptDensity The chance, from 0 to 1.
+	 */
+	public void setAcceptDensity(double acceptDensity) {
+		if (acceptDensity < 0 || acceptDensity > 1) {
+			throw new IllegalArgumentException("Bad accept density " + acceptDensity);
+		}
+		this.acceptDensity = acceptDensity;
+	}
+
+	/**
+	 * Generates a machine. State 0 is the initial state.
+	 *
+	 * @param states The number of states.
+	 * @return The machine.
+	 */
+	public FSM generate(int states) {
+		SplittableRandom random = new SplittableRandom(seed);
+		FSM fsm = new FSM();
+		fsm.getAlphabet(alphabetSize);
+		for (int s = 0; s < states; s++) {
+			fsm.addState();
+		}
+		fsm.setInitialState(0);
+
+		int whole = (int) outDegree;
+		double fraction = outDegree - whole;
+		//The symbols a state has used so far, shuffled into place as they are picked.
+		char[] symbols = new char[alphabetSize];
+		for (int s = 0; s < states; s++) {
+			if (random.nextDouble() < acceptDensity) {
+				fsm.setFinalState(s);
+			}
+			int degree = whole + (random.nextDouble() < fraction ? 1 : 0);
+			//The chain to the next state is what keeps every state reachable.
+			if (degree == 0 && s + 1 < states) {
+				degree = 1;
+			}
+			for (int c = 0; c < alphabetSize; c++) {
+				symbols[c] = (char) ('a' + c);
+			}
+			int used = 0;
+			for (int e = 0; e < degree; e++) {
+				char symbol;
+				if (used > 0 && (used == alphabetSize || random.nextDouble() < nondeterminism)) {
+					symbol = symbols[random.nextInt(used)];
+				} else {
+					int pick = used + random.nextInt(alphabetSize - used);
+					symbol = symbols[pick];
+					symbols[pick] = symbols[used];
+					symbols[used++] = symbol;
+				}
+				int to = e == 0 && s + 1 < states ? s + 1 : random.nextInt(states);
+				fsm.addTransition(s, to, symbol);
+			}
+		}
+		return fsm;
+	}
+
+	public static void main(String[] args) {
+		long seed = 1;
+		int states = -1;
+		String alphabet = null;
+		String outDegree = null;
+		String nondeterminism = null;
+		String acceptDensity = null;
+		long words = 0;
+		File wordsFile = null;
+		String kind = "mixed";
+		int minLength = 1;
+		int maxLength = 64;
+		double tail = 0;
+		File machineFile = null;
+		boolean usage = false;
+		try {
+			for (int i = 0; i < args.length && !usage; i++) {
+				boolean hasValue = i + 1 < args.length;
+				if (args[i].equals("--seed") && hasValue) {
+					seed = Long.parseLong(args[++i]);
+				} else if (args[i].equals("--states") && hasValue) {
+					states = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("--alphabet") && hasValue) {
+					alphabet = args[++i];
+				} else if (args[i].equals("--out-degree") && hasValue) {
+					outDegree = args[++i];
+				} else if (args[i].equals("--nondeterminism") && hasValue) {
+					nondeterminism = args[++i];
+				} else if (args[i].equals("--accept-density") && hasValue) {
+					acceptDensity = args[++i];
+				} else if (args[i].equals("--words") && hasValue) {
+					words = Long.parseLong(args[++i]);
+				} else if (args[i].equals("--words-file") && hasValue) {
+					wordsFile = new File(args[++i]);
+				} else if (args[i].equals("--kind") && hasValue) {
+					kind = args[++i];
+				} else if (args[i].equals("--min-length") && hasValue) {
+					minLength = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("--max-length") && hasValue) {
+					maxLength = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("--tail") && hasValue) {
+					tail = Double.parseDouble(args[++i]);
+				} else if (machineFile == null && !args[i].startsWith("--")) {
+					machineFile = new File(args[i]);
+				} else {
+					usage = true;
+				}
+			}
+		} catch (NumberFormatException e) {
+			usage = true;
+		}
+		if (usage || machineFile == null || states < 0 || (words > 0 && wordsFile == null)) {
+			System.err.println("Usage: java fsmsketcher.engine.MachineGenerator --states N [--seed S] [--alphabet K] [--out-degree D]");
+			System.err.println("           [--nondeterminism R] [--accept-density A] [--words N --words-file FILE");
+			System.err.println("           [--kind accept|reject|uniform|mixed] [--min-length L] [--max-length L] [--tail ALPHA]] machine-file");
+			System.exit(2);
+		}
+
+		try {
+			MachineGenerator generator = new MachineGenerator(seed);
+			if (alphabet != null) {
+				generator.setAlphabetSize(Integer.parseInt(alphabet));
+			}
+			if (outDegree != null) {
+				generator.setOutDegree(Double.parseDouble(outDegree));
+			}
+			if (nondeterminism != null) {
+				generator.setNondeterminism(Double.parseDouble(nondeterminism));
+			}
+			if (acceptDensity != null) {
+				generator.setAcceptDensity(Double.parseDouble(acceptDensity));
+			}
+			long start = System.nanoTime();
+			FSM fsm = generator.generate(states);
+			long generated = System.nanoTime();
+			//Only a deterministic machine is sure to compile to a table of a sensible size.
+			CompiledFSM compiled = generator.nondeterminism == 0 ? fsm.compile(true) : null;
+			MachineFiles.write(machineFile, FSMDocument.fromFSM(fsm), compiled);
+			System.err.printf("Generated %d states in %.1f ms and wrote %s in %.1f ms.%n", states,
+							  (generated - start) / 1e6, machineFile, (System.nanoTime() - generated) / 1e6);
+
+			if (words > 0) {
+				WordCorpus corpus = new WordCorpus(fsm, seed);
+				corpus.setLengths(minLength, maxLength, tail);
+				start = System.nanoTime();
+				try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(wordsFile), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+					corpus.write(out, words, WordCorpus.Kind.valueOf(kind.toUpperCase()));
+				}
+				System.err.printf("Wrote %d words to %s in %.1f ms.%n", words, wordsFile, (System.nanoTime() - start) / 1e6);
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(2);
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+}
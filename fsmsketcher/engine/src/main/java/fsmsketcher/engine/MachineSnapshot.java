@@ -0,0 +1,65 @@
+package fsmsketcher.engine;
+
+/**
+ *
+ * A compiled machine as it was when an editor published it, with a version number that goes
+ * up by one with every publish. Every field is final and CompiledFSM is never changed after
+ * it's built, so a snapshot can be handed to any number of threads without locking, and a
+ * reader holding one keeps seeing the same machine however the editor carries on.
+ *
+ */
+public final class MachineSnapshot {
+
+	private final CompiledFSM machine;
+	private final long version;
+	private final long publishedAt;
+
+	/**
+	 * Creates a snapshot.
+	 *
+	 * @param machine The compiled machine.
+	 * @param version The number of publishes before this one.
+	 */
+	MachineSnapshot(CompiledFSM machine, long version) {
+		this.machine = machine;
+		this.version = version;
+		this.publishedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns the compiled machine.
+	 *
+	 * @return The machine.
+	 */
+	public CompiledFSM getMachine() {
+		return machine;
+	}
+
+	/**
+	 * Returns the version, which is 0 for the first snapshot and goes up by one with each publish.
+	 *
+	 * @return The version.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns when the snapshot was published.
+	 *
+	 * @return The time, in milliseconds since the epoch.
+	 */
+	public long getPublishedAt() {
+		return publishedAt;
+	}
+
+	/**
+	 * Tests a word against the machine.
+	 *
+	 * @param word The word to test.
+	 * @return Whether the machine accepts the word.
+	 */
+	public boolean acceptsWord(char[] word) {
+		return machine.acceptsWord(word);
+	}
+}
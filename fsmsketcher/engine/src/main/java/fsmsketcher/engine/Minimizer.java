@@ -0,0 +1,265 @@
+package fsmsketcher.engine;
+
+import java.util.Arrays;
+
+/**
+ *
+ * Minimizes a CompiledFSM with Hopcroft's partition refinement, in the block-at-a-time form
+ * described by Valmari and Lehtinen: a popped splitter block is processed for every column
+ * at once, so the worklist holds blocks instead of (block, column) pairs and needs only one
+ * flag per block.
+ *
+ * DEAD is treated as an extra sink state while refining. Every block that ends up with the
+ * sink in it can never reach an accept state, so those transitions become DEAD again in the
+ * result. The result is numbered breadth first from the initial state, which makes it
+ * canonical: two machines with the same language and alphabet minimize to identical tables.
+ *
+ */
+final class Minimizer {
+
+	private final CompiledFSM dfa;
+	private final int columns;
+	/**
+	 * The number of states including the sink, which is state n - 1.
+	 */
+	private final int n;
+
+	/** Predecessors of (column, state), stored compressed: preds[predStart[c * n + t] ...]. */
+	private int[] predStart;
+	private int[] preds;
+
+	/** The states, grouped so that each block is a contiguous range. */
+	private int[] elements;
+	/** The index of each state in elements. */
+	private int[] location;
+	/** The block of each state. */
+	private int[] blockOf;
+	private int[] blockStart;
+	private int[] blockEnd;
+	/** The end of the marked prefix of each block. */
+	private int[] blockMarked;
+	private int blocks;
+
+	private int[] worklist;
+	private int worklistSize;
+	private boolean[] inWorklist;
+
+	private int[] touched;
+	private int touchedSize;
+
+	private Minimizer(CompiledFSM dfa) {
+		this.dfa = dfa;
+		this.columns = dfa.getNumberOfColumns();
+		this.n = dfa.getNumberOfStates() + 1;
+	}
+
+	/**
+	 * Minimizes a machine.
+	 *
+	 * @param dfa The machine to minimize.
+	 * @param offHeap Whether the result's table should be stored off the heap.
+	 * @return The minimal machine for the same language.
+	 */
+	static CompiledFSM minimize(CompiledFSM dfa, boolean offHeap) {
+		FSMEvents.Minimize event = new FSMEvents.Minimize();
+		event.begin();
+		Minimizer minimizer = new Minimizer(dfa);
+		minimizer.buildPredecessors();
+		minimizer.refine();
+		CompiledFSM minimal = minimizer.build(offHeap);
+		if (event.shouldCommit()) {
+			event.statesBefore = dfa.getNumberOfStates();
+			event.statesAfter = minimal.getNumberOfStates();
+			event.commit();
+		}
+		return minimal;
+	}
+
+	private int target(int state, int column) {
+		if (state == n - 1) {
+			return n - 1;
+		}
+		int t = dfa.next(state, column);
+		return t == CompiledFSM.DEAD ? n - 1 : t;
+	}
+
+	private void buildPredecessors() {
+		predStart = new int[columns * n + 1];
+		for (int s = 0; s < n; s++) {
+			for (int c = 0; c < columns; c++) {
+				predStart[c * n + target(s, c) + 1]++;
+			}
+		}
+		for (int i = 1; i < predStart.length; i++) {
+			predStart[i] += predStart[i - 1];
+		}
+		preds = new int[columns * n];
+		int[] fill = Arrays.copyOf(predStart, predStart.length - 1);
+		for (int s = 0; s < n; s++) {
+			for (int c = 0; c < columns; c++) {
+				preds[fill[c * n + target(s, c)]++] = s;
+			}
+		}
+	}
+
+	private void refine() {
+		elements = new int[n];
+		location = new int[n];
+		blockOf = new int[n];
+		blockStart = new int[n];
+		blockEnd = new int[n];
+		blockMarked = new int[n];
+		worklist = new int[n];
+		inWorklist = new boolean[n];
+		touched = new int[n];
+
+		//Accept states first, then everything else.
+		int i = 0;
+		for (int s = 0; s < n - 1; s++) {
+			if (dfa.isAcceptState(s)) {
+				elements[i++] = s;
+			}
+		}
+		int accepting = i;
+		for (int s = 0; s < n; s++) {
+			if (s == n - 1 || !dfa.isAcceptState(s)) {
+				elements[i++] = s;
+			}
+		}
+		for (i = 0; i < n; i++) {
+			location[elements[i]] = i;
+		}
+		if (accepting == 0) {
+			addBlock(0, n);
+		} else {
+			addBlock(0, accepting);
+			addBlock(accepting, n);
+		}
+		for (int b = 0; b < blocks; b++) {
+			for (int k = blockStart[b]; k < blockEnd[b]; k++) {
+				blockOf[elements[k]] = b;
+			}
+		}
+		push(blocks == 2 && accepting > n - accepting ? 1 : 0);
+
+		int[] splitter = new int[n];
+		while (worklistSize > 0) {
+			int b = worklist[--worklistSize];
+			inWorklist[b] = false;
+			int size = blockEnd[b] - blockStart[b];
+			System.arraycopy(elements, blockStart[b], splitter, 0, size);
+			for (int c = 0; c < columns; c++) {
+				for (int k = 0; k < size; k++) {
+					int t = splitter[k];
+					for (int p = predStart[c * n + t]; p < predStart[c * n + t + 1]; p++) {
+						mark(preds[p]);
+					}
+				}
+				split();
+			}
+		}
+	}
+
+	private void addBlock(int start, int end) {
+		blockStart[blocks] = start;
+		blockEnd[blocks] = end;
+		blockMarked[blocks] = start;
+		blocks++;
+	}
+
+	private void push(int block) {
+		if (!inWorklist[block]) {
+			inWorklist[block] = true;
+			worklist[worklistSize++] = block;
+		}
+	}
+
+	/**
+	 * Moves a state into the marked prefix of its block.
+	 */
+	private void mark(int s) {
+		int b = blockOf[s];
+		int at = location[s];
+		int to = blockMarked[b];
+		if (at < to) {
+			return;
+		}
+		if (to == blockStart[b]) {
+			touched[touchedSize++] = b;
+		}
+		int other = elements[to];
+		elements[to] = s;
+		location[s] = to;
+		elements[at] = other;
+		location[other] = at;
+		blockMarked[b] = to + 1;
+	}
+
+	/**
+	 * Splits every touched block into its marked and unmarked parts.
+	 */
+	private void split() {
+		while (touchedSize > 0) {
+			int b = touched[--touchedSize];
+			int marked = blockMarked[b];
+			blockMarked[b] = blockStart[b];
+			if (marked == blockEnd[b]) {
+				continue;
+			}
+			//The smaller part becomes the new block.
+			int y = blocks;
+			if (marked - blockStart[b] <= blockEnd[b] - marked) {
+				addBlock(blockStart[b], marked);
+				blockStart[b] = marked;
+			} else {
+				addBlock(marked, blockEnd[b]);
+				blockEnd[b] = marked;
+			}
+			blockMarked[b] = blockStart[b];
+			for (int k = blockStart[y]; k < blockEnd[y]; k++) {
+				blockOf[elements[k]] = y;
+			}
+			//Valmari: if b is still waiting it will be processed whole, so y must be too.
+			//Otherwise the smaller half is enough, and y is the smaller half.
+			push(y);
+		}
+	}
+
+	private CompiledFSM build(boolean offHeap) {
+		int sinkBlock = blockOf[n - 1];
+		SymbolClasses classes = dfa.getClasses();
+		TransitionTable.Builder builder = new TransitionTable.Builder(columns, offHeap);
+		int initialBlock = blockOf[dfa.getInitialState()];
+		if (initialBlock == sinkBlock) {
+			builder.addState(false);
+			return new CompiledFSM(classes, 0, builder.build());
+		}
+
+		//A representative state of each block, and each block's new number.
+		int[] representative = new int[blocks];
+		for (int s = n - 2; s >= 0; s--) {
+			representative[blockOf[s]] = s;
+		}
+		int[] number = new int[blocks];
+		Arrays.fill(number, -1);
+		int[] order = new int[blocks];
+		int count = 0;
+		number[initialBlock] = builder.addState(dfa.isAcceptState(representative[initialBlock]));
+		order[count++] = initialBlock;
+		for (int i = 0; i < count; i++) {
+			int rep = representative[order[i]];
+			for (int c = 0; c < columns; c++) {
+				int b = blockOf[target(rep, c)];
+				if (b == sinkBlock) {
+					continue;
+				}
+				if (number[b] < 0) {
+					number[b] = builder.addState(dfa.isAcceptState(representative[b]));
+					order[count++] = b;
+				}
+				builder.set(i, c, number[b]);
+			}
+		}
+		return new CompiledFSM(classes, 0, builder.build());
+	}
+}
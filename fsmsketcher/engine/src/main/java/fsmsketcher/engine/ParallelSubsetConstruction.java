@@ -0,0 +1,231 @@
+package fsmsketcher.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ * The subset construction run one breadth first level at a time on a ForkJoinPool. Every
+ * subset in the current level is stepped on every column in parallel. New subsets are
+ * interned in a ConcurrentHashMap, whose computeIfAbsent hands each one a dense ID from an
+ * atomic counter exactly once, however many threads find it at the same time. Subsets that
+ * got a new ID make up the next level.
+ *
+ * The IDs depend on thread timing, so the finished table is renumbered breadth first from
+ * the initial state with the columns in alphabet order. That is the order the sequential
+ * construction numbers states in, so both give identical tables.
+ *
+ */
+final class ParallelSubsetConstruction {
+
+	/** Levels are split into tasks of about this many subsets. */
+	private static final int GRAIN = 64;
+
+	private final int columns;
+	/** The targets of NFA state s on column c are targets[targetStart[s * columns + c] ...]. */
+	private final int[] targetStart;
+	private final int[] targets;
+	private final boolean[] accept;
+
+	private final ConcurrentHashMap<CompiledFSM.StateSet, Integer> ids = new ConcurrentHashMap<>();
+	private final AtomicInteger nextId = new AtomicInteger();
+
+	/**
+	 * A DFA state found during the construction, with its row of the table.
+	 */
+	private static final class Subset {
+		final CompiledFSM.StateSet set;
+		final int id;
+		int[] row;
+
+		Subset(CompiledFSM.StateSet set, int id) {
+			this.set = set;
+			this.id = id;
+		}
+	}
+
+	/**
+	 * Copies the machine into flat arrays, so the construction doesn't walk the FSM's lists
+	 * or look up its final states in a tree.
+	 */
+	private ParallelSubsetConstruction(FSM fsm, MachineAlphabet alphabet, int columns) {
+		//Every state referred to gets a row, even one that was removed or never added, the same
+		//as compile(), which reads whatever state a transition leads to.
+		int n = fsm.getStateBound();
+		this.columns = columns;
+		this.targetStart = new int[n * columns + 1];
+		this.accept = new boolean[n];
+		for (int s = 0; s < n; s++) {
+			accept[s] = fsm.hasFinalState(s);
+			for (FSM.pair trans : fsm.getTransitions(s)) {
+				int column = alphabet.columnOf(trans.ch);
+				if (column >= 0) {
+					targetStart[s * columns + column + 1]++;
+				}
+			}
+			for (FSM.RangePair trans : fsm.getRangeTransitions(s)) {
+				for (int column : alphabet.columnsOf(trans.label)) {
+					targetStart[s * columns + column + 1]++;
+				}
+			}
+		}
+		for (int i = 0; i < n * columns; i++) {
+			targetStart[i + 1] += targetStart[i];
+		}
+		this.targets = new int[targetStart[n * columns]];
+		int[] fill = Arrays.copyOf(targetStart, n * columns);
+		for (int s = 0; s < n; s++) {
+			for (FSM.pair trans : fsm.getTransitions(s)) {
+				int column = alphabet.columnOf(trans.ch);
+				if (column >= 0) {
+					targets[fill[s * columns + column]++] = trans.nS;
+				}
+			}
+			for (FSM.RangePair trans : fsm.getRangeTransitions(s)) {
+				for (int column : alphabet.columnsOf(trans.label)) {
+					targets[fill[s * columns + column]++] = trans.nS;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compiles a machine.
+	 *
+	 * @param fsm The machine to compile.
+	 * @param alphabet The machine's symbol classes, one per column.
+	 * @param offHeap Whether the table is stored off the heap.
+	 * @param pool The pool the levels are stepped on.
+	 * @return The table, numbered the way the sequential construction numbers it.
+	 */
+	static TransitionTable build(FSM fsm, MachineAlphabet alphabet, boolean offHeap, ForkJoinPool pool) {
+		ParallelSubsetConstruction construction = new ParallelSubsetConstruction(fsm, alphabet, alphabet.classes.size());
+		return construction.run(fsm.getInitialState(), offHeap, pool);
+	}
+
+	private TransitionTable run(int initialState, boolean offHeap, ForkJoinPool pool) {
+		Subset start = new Subset(new CompiledFSM.StateSet(new int[] { initialState }), nextId.getAndIncrement());
+		ids.put(start.set, start.id);
+		List<Subset> all = new ArrayList<>();
+		List<Subset> level = new ArrayList<>();
+		level.add(start);
+		while (!level.isEmpty()) {
+			all.addAll(level);
+			Subset[] current = level.toArray(new Subset[0]);
+			level = pool.invoke(new Step(current, 0, current.length));
+		}
+
+		Subset[] byId = new Subset[all.size()];
+		for (Subset subset : all) {
+			byId[subset.id] = subset;
+		}
+
+		//Renumber breadth first from the initial state, which is the sequential order.
+		int[] order = new int[byId.length];
+		int[] renumbered = new int[byId.length];
+		Arrays.fill(renumbered, -1);
+		TransitionTable.Builder builder = new TransitionTable.Builder(columns, offHeap);
+		renumbered[start.id] = builder.addState(isAccept(start.set));
+		order[0] = start.id;
+		int found = 1;
+		for (int head = 0; head < found; head++) {
+			int[] row = byId[order[head]].row;
+			for (int column = 0; column < columns; column++) {
+				int to = row[column];
+				if (to < 0) {
+					continue;
+				}
+				if (renumbered[to] < 0) {
+					renumbered[to] = builder.addState(isAccept(byId[to].set));
+					order[found++] = to;
+				}
+				builder.set(head, column, renumbered[to]);
+			}
+		}
+		return builder.build();
+	}
+
+	private boolean isAccept(CompiledFSM.StateSet set) {
+		for (int state : set.states) {
+			if (accept[state]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Steps a range of one level on every column, returning the subsets it found first.
+	 */
+	private final class Step extends RecursiveTask<List<Subset>> {
+		private static final long serialVersionUID = 1L;
+
+		private final Subset[] level;
+		private final int from;
+		private final int to;
+
+		Step(Subset[] level, int from, int to) {
+			this.level = level;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected List<Subset> compute() {
+			if (to - from > GRAIN) {
+				int middle = (from + to) >>> 1;
+				Step left = new Step(level, from, middle);
+				left.fork();
+				List<Subset> right = new Step(level, middle, to).compute();
+				List<Subset> found = left.join();
+				found.addAll(right);
+				return found;
+			}
+			List<Subset> found = new ArrayList<>();
+			int[] bucket = new int[16];
+			for (int i = from; i < to; i++) {
+				Subset subset = level[i];
+				int[] row = new int[columns];
+				for (int column = 0; column < columns; column++) {
+					int size = 0;
+					for (int state : subset.set.states) {
+						int end = targetStart[state * columns + column + 1];
+						for (int t = targetStart[state * columns + column]; t < end; t++) {
+							if (size == bucket.length) {
+								bucket = Arrays.copyOf(bucket, 2 * size);
+							}
+							bucket[size++] = targets[t];
+						}
+					}
+					row[column] = size == 0 ? -1 : intern(CompiledFSM.StateSet.of(bucket, size), found);
+				}
+				subset.row = row;
+			}
+			return found;
+		}
+	}
+
+	/**
+	 * Returns the ID of a subset, giving it the next one and adding it to found if it's new.
+	 */
+	private int intern(CompiledFSM.StateSet set, List<Subset> found) {
+		Integer id = ids.get(set);
+		if (id != null) {
+			return id;
+		}
+		Subset[] created = new Subset[1];
+		id = ids.computeIfAbsent(set, key -> {
+			created[0] = new Subset(key, nextId.getAndIncrement());
+			return created[0].id;
+		});
+		if (created[0] != null) {
+			found.add(created[0]);
+		}
+		return id;
+	}
+}
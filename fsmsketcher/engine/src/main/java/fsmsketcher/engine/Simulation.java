@@ -0,0 +1,321 @@
+package fsmsketcher.engine;
+
+import java.util.Arrays;
+
+/**
+ *
+ * Steps a machine through a word one symbol at a time, keeping the set of states it could
+ * be in. It answers the same as FSM.acceptsWord, but the word can be fed in pieces, so a
+ * caller can report how far it has got, show the active states, or give up part way.
+ *
+ * The machine is copied into flat arrays when the simulation is made, with each state's
+ * transitions sorted by symbol, so later edits to the FSM don't affect it. A simulation is
+ * for one thread at a time.
+ *
+ */
+public final class Simulation {
+
+	private final int numberOfStates;
+	private final int initialState;
+	private final boolean[] accept;
+	/** The transitions of state s are at [transitionStart[s], transitionStart[s + 1]), sorted by symbol. */
+	private final int[] transitionStart;
+	private final char[] symbols;
+	private final int[] targets;
+	/** The range transitions of state s are at [rangeStart[s], rangeStart[s + 1]). */
+	private final int[] rangeStart;
+	private final SymbolSet[] rangeLabels;
+	private final int[] rangeTargets;
+	private final SymbolClasses alphabet;
+
+	/** The active states are active[0 ... activeCount - 1], in no particular order. */
+	private int[] active;
+	private int activeCount;
+	private int[] next;
+	/** A state is in the set being built when its mark is the current generation. */
+	private final int[] mark;
+	private int generation;
+	private long position;
+
+	/**
+	 * Makes a simulation of a machine, at its initial state.
+	 *
+	 * @param fsm The machine.
+	 */
+	public Simulation(FSM fsm) {
+		//Transitions can lead to states past the count after a state is removed, so make room for them.
+		int n = Math.max(fsm.getNumberOfStates(), fsm.getInitialState() + 1);
+		for (int s = 0; s < n; s++) {
+			for (FSM.pair trans : fsm.getTransitions(s)) {
+				n = Math.max(n, trans.nS + 1);
+			}
+			for (FSM.RangePair trans : fsm.getRangeTransitions(s)) {
+				n = Math.max(n, trans.nS + 1);
+			}
+		}
+		this.numberOfStates = n;
+		this.initialState = fsm.getInitialState();
+		this.accept = new boolean[n];
+		this.transitionStart = new int[n + 1];
+		for (int s = 0; s < n; s++) {
+			accept[s] = fsm.hasFinalState(s);
+			transitionStart[s + 1] = transitionStart[s] + fsm.getTransitions(s).size();
+		}
+		this.symbols = new char[transitionStart[n]];
+		this.targets = new int[transitionStart[n]];
+		long[] sorted = new long[16];
+		for (int s = 0; s < n; s++) {
+			int count = transitionStart[s + 1] - transitionStart[s];
+			if (sorted.length < count) {
+				sorted = new long[count];
+			}
+			int i = 0;
+			for (FSM.pair trans : fsm.getTransitions(s)) {
+				sorted[i++] = ((long) trans.ch << 32) | trans.nS;
+			}
+			Arrays.sort(sorted, 0, count);
+			for (i = 0; i < count; i++) {
+				symbols[transitionStart[s] + i] = (char) (sorted[i] >>> 32);
+				targets[transitionStart[s] + i] = (int) sorted[i];
+			}
+		}
+		this.rangeStart = new int[n + 1];
+		for (int s = 0; s < n; s++) {
+			rangeStart[s + 1] = rangeStart[s] + fsm.getRangeTransitions(s).size();
+		}
+		this.rangeLabels = new SymbolSet[rangeStart[n]];
+		this.rangeTargets = new int[rangeStart[n]];
+		for (int s = 0; s < n; s++) {
+			int i = rangeStart[s];
+			for (FSM.RangePair trans : fsm.getRangeTransitions(s)) {
+				rangeLabels[i] = trans.label;
+				rangeTargets[i++] = trans.nS;
+			}
+		}
+		this.alphabet = fsm.getClasses().classes;
+		this.active = new int[Math.max(n, 1)];
+		this.next = new int[Math.max(n, 1)];
+		this.mark = new int[n];
+		reset();
+	}
+
+	/**
+	 * Makes another simulation of the same machine, at its initial state. The flattened
+	 * machine is shared rather than copied, as nothing changes it.
+	 *
+	 * @param other The simulation whose machine is used.
+	 */
+	Simulation(Simulation other) {
+		this.numberOfStates = other.numberOfStates;
+		this.initialState = other.initialState;
+		this.accept = other.accept;
+		this.transitionStart = other.transitionStart;
+		this.symbols = other.symbols;
+		this.targets = other.targets;
+		this.rangeStart = other.rangeStart;
+		this.rangeLabels = other.rangeLabels;
+		this.rangeTargets = other.rangeTargets;
+		this.alphabet = other.alphabet;
+		this.active = new int[other.active.length];
+		this.next = new int[other.next.length];
+		this.mark = new int[numberOfStates];
+		reset();
+	}
+
+	/**
+	 * Goes back to the start of a word, with only the initial state active.
+	 */
+	public void reset() {
+		activeCount = 0;
+		if (initialState >= 0 && initialState < numberOfStates) {
+			active[activeCount++] = initialState;
+		}
+		position = 0;
+	}
+
+	/**
+	 * Puts the simulation part way through a word, with a set of states active.
+	 *
+	 * @param states The active states, each listed once.
+	 * @param count The number of states in the set, which are states[0 ... count - 1].
+	 * @param position The number of symbols given since the start of the word.
+	 */
+	public void restore(int[] states, int count, long position) {
+		System.arraycopy(states, 0, active, 0, count);
+		activeCount = count;
+		this.position = position;
+	}
+
+	/**
+	 * Returns whether a symbol is in the machine's alphabet.
+	 *
+	 * @param symbol The symbol.
+	 * @return Whether the machine can be given it.
+	 */
+	public boolean isInAlphabet(char symbol) {
+		return alphabet.classOf(symbol) >= 0;
+	}
+
+	/**
+	 * Finds the first symbol of part of a word that isn't in the alphabet.
+	 *
+	 * @param word The word.
+	 * @param offset Where the part starts.
+	 * @param length The length of the part.
+	 * @return The index in word of the symbol, or -1 if every symbol is in the alphabet.
+	 */
+	public int findInvalid(char[] word, int offset, int length) {
+		int end = offset + length;
+		boolean codePoints = alphabet.hasSupplementary();
+		for (int i = offset; i < end; i++) {
+			int symbol = word[i];
+			if (codePoints && Character.isHighSurrogate(word[i]) && i + 1 < end && Character.isLowSurrogate(word[i + 1])) {
+				symbol = Character.toCodePoint(word[i], word[i + 1]);
+			}
+			if (alphabet.classOf(symbol) < 0) {
+				return i;
+			}
+			i += Character.charCount(symbol) - 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Moves every active state along its transitions on a symbol.
+	 *
+	 * @param symbol The symbol.
+	 * @return Whether any states are still active.
+	 */
+	public boolean step(char symbol) {
+		return stepCodePoint(symbol);
+	}
+
+	/**
+	 * Moves every active state along its transitions on a code point, which only range
+	 * transitions can step on if it is above U+FFFF.
+	 *
+	 * @param symbol The code point.
+	 * @return Whether any states are still active.
+	 */
+	public boolean stepCodePoint(int symbol) {
+		position++;
+		if (activeCount == 0) {
+			return false;
+		}
+		if (++generation == 0) {
+			Arrays.fill(mark, 0);
+			generation = 1;
+		}
+		int count = 0;
+		for (int a = 0; a < activeCount; a++) {
+			int s = active[a];
+			int end = transitionStart[s + 1];
+			for (int t = transitionStart[s]; t < end && symbols[t] <= symbol; t++) {
+				if (symbols[t] == symbol && mark[targets[t]] != generation) {
+					mark[targets[t]] = generation;
+					next[count++] = targets[t];
+				}
+			}
+			for (int r = rangeStart[s]; r < rangeStart[s + 1]; r++) {
+				if (mark[rangeTargets[r]] != generation && rangeLabels[r].contains(symbol)) {
+					mark[rangeTargets[r]] = generation;
+					next[count++] = rangeTargets[r];
+				}
+			}
+		}
+		int[] swap = active;
+		active = next;
+		next = swap;
+		activeCount = count;
+		return count > 0;
+	}
+
+	/**
+	 * Steps through part of a word.
+	 *
+	 * @param word The word.
+	 * @param offset Where the part starts.
+	 * @param length The length of the part.
+	 * @return Whether any states are still active.
+	 */
+	public boolean run(char[] word, int offset, int length) {
+		int end = offset + length;
+		boolean codePoints = alphabet.hasSupplementary();
+		for (int i = offset; i < end; i++) {
+			int symbol = word[i];
+			if (codePoints && Character.isHighSurrogate(word[i]) && i + 1 < end && Character.isLowSurrogate(word[i + 1])) {
+				symbol = Character.toCodePoint(word[i], word[++i]);
+			}
+			if (!stepCodePoint(symbol)) {
+				position += end - i - 1;
+				return false;
+			}
+		}
+		return activeCount > 0;
+	}
+
+	/**
+	 * Returns whether any active state is an accept state, so the symbols given so far
+	 * make an accepted word.
+	 *
+	 * @return Whether the machine accepts what it has been given.
+	 */
+	public boolean isAccepting() {
+		for (int a = 0; a < activeCount; a++) {
+			if (accept[active[a]]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of symbols given since the start of the word.
+	 *
+	 * @return The number of symbols.
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Returns the number of active states.
+	 *
+	 * @return The size of the active set.
+	 */
+	public int getActiveCount() {
+		return activeCount;
+	}
+
+	/**
+	 * Returns the active states.
+	 *
+	 * @return The states, in increasing order.
+	 */
+	public int[] getActiveStates() {
+		int[] states = Arrays.copyOf(active, activeCount);
+		Arrays.sort(states);
+		return states;
+	}
+
+	/**
+	 * Copies the active states into an array without allocating one.
+	 *
+	 * @param into Where the states are copied, in increasing order. It must have room for every state.
+	 * @return The number of states copied.
+	 */
+	int copyActiveStates(int[] into) {
+		System.arraycopy(active, 0, into, 0, activeCount);
+		Arrays.sort(into, 0, activeCount);
+		return activeCount;
+	}
+
+	/**
+	 * Returns the number of states in the machine.
+	 *
+	 * @return The number of states.
+	 */
+	public int getNumberOfStates() {
+		return numberOfStates;
+	}
+}
@@ -0,0 +1,431 @@
+package fsmsketcher.engine;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *
+ * A recorded run of a machine over a word, which can be moved to any step without running
+ * the word again from the start.
+ *
+ * The active set is only kept in full at checkpoints, one every interval steps. Each step
+ * in between is kept as the states that left the set and the states that joined it, written
+ * as gaps between sorted state numbers in variable length bytes, so a step that changes
+ * nothing takes two bytes. Moving to a step starts from the checkpoint before it and
+ * applies at most one interval of deltas, or carries on from the step before when stepping
+ * forward.
+ *
+ * Memory stays bounded however long the word is. When there are MAX_CHECKPOINTS
+ * checkpoints, or they take more than CHECKPOINT_BYTES, every other one is dropped and the
+ * interval doubles. The deltas of each interval are kept up to DELTA_BYTES in all, the
+ * least recently used going first, and an interval whose deltas were dropped is run again
+ * from its checkpoint the next time it's needed.
+ *
+ * A trace is for one thread at a time.
+ *
+ */
+public final class SimulationTrace {
+
+	private static final int FIRST_INTERVAL = 16;
+	private static final int MAX_CHECKPOINTS = 1024;
+	private static final long CHECKPOINT_BYTES = 16L << 20;
+	private static final long DELTA_BYTES = 32L << 20;
+
+	private final char[] word;
+	/** Runs the word as it's recorded. */
+	private final Simulation recorder;
+	/** Runs intervals again when their deltas were dropped, and holds the current step. */
+	private final Simulation replayer;
+	private int recorded;
+	private int interval = FIRST_INTERVAL;
+
+	/** The active set at step k * interval, as written by Bytes.writeSet. */
+	private byte[][] checkpoints = new byte[16][];
+	private int checkpointCount;
+	private long checkpointBytes;
+	/** The deltas of each complete interval by its index, least recently used first. */
+	private final LinkedHashMap<Integer, byte[]> deltas = new LinkedHashMap<>(16, 0.75f, true);
+	private long deltaBytes;
+	/** The deltas of the interval being recorded. */
+	private final Bytes open = new Bytes();
+	/** The active set at step recorded, sorted. */
+	private int[] last;
+	private int lastCount;
+
+	/** The active set at step position, sorted. */
+	private int[] current;
+	private int currentCount;
+	private int position;
+	/** The deltas being read to move forward from position, which belong to interval cursorIndex. */
+	private byte[] cursorBytes;
+	private int cursorIndex;
+	private final int[] cursorOffset = new int[1];
+
+	private int[] scratch;
+	private int[] removed;
+	private int[] added;
+
+	/**
+	 * Starts a trace of a machine over a word, with nothing recorded yet.
+	 *
+	 * @param fsm The machine.
+	 * @param word The word, which must not change while the trace is used.
+	 */
+	public SimulationTrace(FSM fsm, char[] word) {
+		this.word = word;
+		this.recorder = new Simulation(fsm);
+		this.replayer = new Simulation(recorder);
+		int n = Math.max(recorder.getNumberOfStates(), 1);
+		this.last = new int[n];
+		this.current = new int[n];
+		this.scratch = new int[n];
+		this.removed = new int[n];
+		this.added = new int[n];
+		lastCount = recorder.copyActiveStates(last);
+		addCheckpoint();
+		seek(0);
+	}
+
+	/**
+	 * Records more of the run.
+	 *
+	 * @param steps The most steps to record.
+	 * @return Whether the whole word has been recorded.
+	 */
+	public boolean record(int steps) {
+		int end = (int) Math.min((long) recorded + steps, word.length);
+		int[] next = scratch;
+		while (recorded < end) {
+			recorder.step(word[recorded++]);
+			int nextCount = recorder.copyActiveStates(next);
+			writeDelta(open, last, lastCount, next, nextCount);
+			int[] swap = last;
+			last = next;
+			next = swap;
+			lastCount = nextCount;
+			if (recorded % interval == 0) {
+				storeDeltas(recorded / interval - 1, open.toArray());
+				open.clear();
+				addCheckpoint();
+			}
+		}
+		scratch = next;
+		return isComplete();
+	}
+
+	/**
+	 * Moves to a step of the run.
+	 *
+	 * @param step The number of symbols given, up to the number recorded.
+	 */
+	public void seek(int step) {
+		if (step < 0 || step > recorded) {
+			throw new IllegalArgumentException("Step " + step + " has not been recorded");
+		}
+		int k = step / interval;
+		if (cursorBytes == null || cursorIndex != k || step < position) {
+			cursorOffset[0] = 0;
+			currentCount = Bytes.readSet(checkpoints[k], cursorOffset, current);
+			position = k * interval;
+			cursorBytes = deltasOf(k);
+			cursorIndex = k;
+			cursorOffset[0] = 0;
+		}
+		while (position < step) {
+			int removedCount = Bytes.readSet(cursorBytes, cursorOffset, removed);
+			int addedCount = Bytes.readSet(cursorBytes, cursorOffset, added);
+			currentCount = apply(current, currentCount, removed, removedCount, added, addedCount, scratch);
+			int[] swap = current;
+			current = scratch;
+			scratch = swap;
+			position++;
+		}
+		replayer.restore(current, currentCount, position);
+	}
+
+	/**
+	 * Returns the length of the word.
+	 *
+	 * @return The number of steps in the whole run.
+	 */
+	public int getLength() {
+		return word.length;
+	}
+
+	/**
+	 * Returns a symbol of the word.
+	 *
+	 * @param step The index of the symbol, which is the one given at that step.
+	 * @return The symbol.
+	 */
+	public char getSymbol(int step) {
+		return word[step];
+	}
+
+	/**
+	 * Returns how many steps have been recorded.
+	 *
+	 * @return The number of steps that can be moved to.
+	 */
+	public int getRecorded() {
+		return recorded;
+	}
+
+	/**
+	 * Returns whether the whole word has been recorded.
+	 *
+	 * @return Whether every step can be moved to.
+	 */
+	public boolean isComplete() {
+		return recorded == word.length;
+	}
+
+	/**
+	 * Returns the step moved to.
+	 *
+	 * @return The number of symbols given.
+	 */
+	public int getPosition() {
+		return position;
+	}
+
+	/**
+	 * Returns the number of states active at the step moved to.
+	 *
+	 * @return The size of the active set.
+	 */
+	public int getActiveCount() {
+		return currentCount;
+	}
+
+	/**
+	 * Returns the states active at the step moved to.
+	 *
+	 * @return The states, in increasing order.
+	 */
+	public int[] getActiveStates() {
+		return Arrays.copyOf(current, currentCount);
+	}
+
+	/**
+	 * Returns whether the symbols up to the step moved to make an accepted word.
+	 *
+	 * @return Whether any active state is an accept state.
+	 */
+	public boolean isAccepting() {
+		return replayer.isAccepting();
+	}
+
+	/**
+	 * Returns roughly how much memory the recorded checkpoints and deltas take.
+	 *
+	 * @return The number of bytes.
+	 */
+	public long getBytes() {
+		return checkpointBytes + deltaBytes + open.length;
+	}
+
+	/**
+	 * Stores the active set at step recorded as the next checkpoint, first halving the
+	 * checkpoints if there are too many. Halving only happens at an even count, so the
+	 * new checkpoint still falls on the doubled interval.
+	 */
+	private void addCheckpoint() {
+		if (checkpointCount == MAX_CHECKPOINTS || (checkpointBytes > CHECKPOINT_BYTES && checkpointCount % 2 == 0)) {
+			halve();
+		}
+		Bytes bytes = new Bytes();
+		bytes.writeSet(last, lastCount);
+		if (checkpointCount == checkpoints.length) {
+			checkpoints = Arrays.copyOf(checkpoints, 2 * checkpointCount);
+		}
+		checkpoints[checkpointCount++] = bytes.toArray();
+		checkpointBytes += bytes.length;
+	}
+
+	/**
+	 * Drops every other checkpoint and doubles the interval, joining the deltas of each pair
+	 * of intervals that are both still kept.
+	 */
+	private void halve() {
+		checkpointBytes = 0;
+		for (int k = 0; k < checkpointCount / 2; k++) {
+			checkpoints[k] = checkpoints[2 * k];
+			checkpointBytes += checkpoints[k].length;
+		}
+		Arrays.fill(checkpoints, checkpointCount / 2, checkpointCount, null);
+		checkpointCount /= 2;
+		interval *= 2;
+
+		Map<Integer, byte[]> old = new LinkedHashMap<>(deltas);
+		deltas.clear();
+		deltaBytes = 0;
+		for (Map.Entry<Integer, byte[]> entry : old.entrySet()) {
+			int k = entry.getKey();
+			byte[] second = old.get(k + 1);
+			if (k % 2 == 0 && second != null) {
+				byte[] joined = Arrays.copyOf(entry.getValue(), entry.getValue().length + second.length);
+				System.arraycopy(second, 0, joined, entry.getValue().length, second.length);
+				deltas.put(k / 2, joined);
+				deltaBytes += joined.length;
+			}
+		}
+		cursorBytes = null;
+	}
+
+	/**
+	 * Keeps the deltas of a complete interval, dropping the least recently used ones to stay
+	 * within DELTA_BYTES.
+	 */
+	private void storeDeltas(int k, byte[] bytes) {
+		deltas.put(k, bytes);
+		deltaBytes += bytes.length;
+		Iterator<byte[]> eldest = deltas.values().iterator();
+		while (deltaBytes > DELTA_BYTES && deltas.size() > 1) {
+			deltaBytes -= eldest.next().length;
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Returns the deltas of an interval, running it again from its checkpoint if they were
+	 * dropped.
+	 */
+	private byte[] deltasOf(int k) {
+		if (k == recorded / interval) {
+			return open.bytes;
+		}
+		byte[] bytes = deltas.get(k);
+		if (bytes != null) {
+			return bytes;
+		}
+		int[] from = new int[current.length];
+		int[] to = new int[current.length];
+		int[] offset = { 0 };
+		int fromCount = Bytes.readSet(checkpoints[k], offset, from);
+		replayer.restore(from, fromCount, (long) k * interval);
+		Bytes rerun = new Bytes();
+		for (int i = k * interval; i < (k + 1) * interval; i++) {
+			replayer.step(word[i]);
+			int toCount = replayer.copyActiveStates(to);
+			writeDelta(rerun, from, fromCount, to, toCount);
+			int[] swap = from;
+			from = to;
+			to = swap;
+			fromCount = toCount;
+		}
+		bytes = rerun.toArray();
+		storeDeltas(k, bytes);
+		return bytes;
+	}
+
+	/**
+	 * Writes the step from one sorted active set to the next, as the states that left and
+	 * then the states that joined.
+	 */
+	private void writeDelta(Bytes out, int[] from, int fromCount, int[] to, int toCount) {
+		int removedCount = 0, addedCount = 0;
+		int i = 0, j = 0;
+		while (i < fromCount || j < toCount) {
+			if (j == toCount || (i < fromCount && from[i] < to[j])) {
+				removed[removedCount++] = from[i++];
+			} else if (i == fromCount || to[j] < from[i]) {
+				added[addedCount++] = to[j++];
+			} else {
+				i++;
+				j++;
+			}
+		}
+		out.writeSet(removed, removedCount);
+		out.writeSet(added, addedCount);
+	}
+
+	/**
+	 * Applies a step to a sorted active set, writing the next set into into.
+	 *
+	 * @return The size of the next set.
+	 */
+	private static int apply(int[] set, int count, int[] removed, int removedCount, int[] added, int addedCount, int[] into) {
+		int size = 0, r = 0, a = 0, i = 0;
+		while (i < count || a < addedCount) {
+			if (a == addedCount || (i < count && set[i] < added[a])) {
+				int state = set[i++];
+				if (r < removedCount && removed[r] == state) {
+					r++;
+				} else {
+					into[size++] = state;
+				}
+			} else {
+				into[size++] = added[a++];
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * A growable array of bytes holding sets of states. A set is its size followed by its
+	 * first state and the gaps between the rest, each as a variable length int.
+	 */
+	private static final class Bytes {
+		byte[] bytes = new byte[64];
+		int length;
+
+		void writeSet(int[] states, int count) {
+			writeInt(count);
+			int previous = 0;
+			for (int i = 0; i < count; i++) {
+				writeInt(states[i] - previous);
+				previous = states[i];
+			}
+		}
+
+		void writeInt(int value) {
+			if (length + 5 > bytes.length) {
+				bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+			}
+			while ((value & ~0x7f) != 0) {
+				bytes[length++] = (byte) (value | 0x80);
+				value >>>= 7;
+			}
+			bytes[length++] = (byte) value;
+		}
+
+		byte[] toArray() {
+			return Arrays.copyOf(bytes, length);
+		}
+
+		void clear() {
+			//A new array, as a seek may still be reading the old one.
+			bytes = new byte[64];
+			length = 0;
+		}
+
+		/**
+		 * Reads a set starting at offset[0], moving offset[0] past it.
+		 *
+		 * @return The size of the set.
+		 */
+		static int readSet(byte[] bytes, int[] offset, int[] into) {
+			int count = readInt(bytes, offset);
+			int state = 0;
+			for (int i = 0; i < count; i++) {
+				state += readInt(bytes, offset);
+				into[i] = state;
+			}
+			return count;
+		}
+
+		static int readInt(byte[] bytes, int[] offset) {
+			int value = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = bytes[offset[0]++];
+				value |= (b & 0x7f) << shift;
+				if (b >= 0) {
+					return value;
+				}
+			}
+		}
+	}
+}
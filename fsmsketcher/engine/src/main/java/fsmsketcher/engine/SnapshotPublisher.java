@@ -0,0 +1,177 @@
+package fsmsketcher.engine;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ *
+ * Shares a machine that one thread edits with threads that evaluate it. FSM has no locking, so
+ * readers must never touch the live model. Instead the editor calls publish() when an edit is
+ * done, which compiles the model and swaps the result in with a single atomic write. Readers
+ * call get() and use the snapshot they got for as long as they like: it never blocks, and
+ * they see either the whole of an edit or none of it.
+ *
+ * publish(FSM) reads the model, so it has to run on the thread that edits it. An editor that
+ * replaces its model on every edit instead of changing it, such as the Swing event thread,
+ * can call publishLater(FSM), which compiles the model on a background thread. Readers keep
+ * getting the last snapshot until the new one is out; one that needs the edit it just made
+ * calls latest().
+ *
+ * Every publish takes a ticket when it's called, and a machine is only swapped in if nothing
+ * with a later ticket is out yet. A slow compile that finishes after a newer one is dropped,
+ * so versions follow the order of the edits, not the order the compiles happened to finish.
+ *
+ */
+public final class SnapshotPublisher {
+
+	/**
+	 * The snapshot readers get, with the ticket of the publish that made it.
+	 */
+	private static final class Published {
+		final MachineSnapshot snapshot;
+		final long ticket;
+
+		Published(MachineSnapshot snapshot, long ticket) {
+			this.snapshot = snapshot;
+			this.ticket = ticket;
+		}
+	}
+
+	/**
+	 * A model handed to publishLater, with the ticket it took.
+	 */
+	private static final class Pending {
+		final FSM fsm;
+		final long ticket;
+
+		Pending(FSM fsm, long ticket) {
+			this.fsm = fsm;
+			this.ticket = ticket;
+		}
+	}
+
+	private final AtomicReference<Published> current;
+	private final AtomicLong tickets = new AtomicLong();
+	/**
+	 * The newest model handed to publishLater that no compile has taken yet, or null.
+	 */
+	private final AtomicReference<Pending> pending = new AtomicReference<>();
+	/**
+	 * Runs the compiles for publishLater one at a time. Its thread ends when it has been idle
+	 * for a second, so a publisher nobody edits holds no thread.
+	 */
+	private final ThreadPoolExecutor compiler;
+
+	/**
+	 * Creates a publisher whose first snapshot is a machine that accepts nothing.
+	 */
+	public SnapshotPublisher() {
+		this(new FSM().compile());
+	}
+
+	/**
+	 * Creates a publisher with a first snapshot.
+	 *
+	 * @param machine The machine readers get until the first publish.
+	 */
+	public SnapshotPublisher(CompiledFSM machine) {
+		this.current = new AtomicReference<>(new Published(new MachineSnapshot(machine, 0), 0));
+		this.compiler = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "fsm-snapshot-compiler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		compiler.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Returns the latest published snapshot. This never blocks or compiles anything; a model
+	 * handed to publishLater shows up once its compile is done.
+	 *
+	 * @return The snapshot. Never null.
+	 */
+	public MachineSnapshot get() {
+		return current.get().snapshot;
+	}
+
+	/**
+	 * Waits for every model handed to publishLater before this call to be compiled, then
+	 * returns the latest snapshot. Call this from a background thread.
+	 *
+	 * @return The snapshot. Never null.
+	 */
+	public MachineSnapshot latest() {
+		//The compiler runs its tasks in order, so this one runs after any compile queued before it.
+		return CompletableFuture.supplyAsync(this::get, compiler).join();
+	}
+
+	/**
+	 * Compiles the model as it is now and publishes it. Call this from the thread that edits
+	 * the model.
+	 *
+	 * @param fsm The live model.
+	 * @return The new snapshot, or a newer one if another publish overtook this one.
+	 */
+	public MachineSnapshot publish(FSM fsm) {
+		long ticket = tickets.incrementAndGet();
+		return publish(fsm.compile(), ticket);
+	}
+
+	/**
+	 * Compiles the model on a background thread and publishes it when it's done. The model
+	 * must not be edited after this call, since it is read from that thread; hand over a model
+	 * that the next edit replaces. A model still waiting when a newer one is handed over is
+	 * never compiled.
+	 *
+	 * @param fsm The model, which is not edited again.
+	 */
+	public void publishLater(FSM fsm) {
+		pending.set(new Pending(fsm, tickets.incrementAndGet()));
+		compiler.execute(this::compilePending);
+	}
+
+	/**
+	 * Compiles and publishes the pending model, unless a later publish is already out.
+	 */
+	private void compilePending() {
+		Pending next = pending.getAndSet(null);
+		if (next != null && next.ticket > current.get().ticket) {
+			publish(next.fsm.compile(), next.ticket);
+		}
+	}
+
+	/**
+	 * Publishes an already compiled machine. Any thread may call this; when several publish at
+	 * once, readers are left with the machine from the call that started last.
+	 *
+	 * @param machine The machine.
+	 * @return The new snapshot, or a newer one if another publish overtook this one.
+	 */
+	public MachineSnapshot publish(CompiledFSM machine) {
+		return publish(machine, tickets.incrementAndGet());
+	}
+
+	/**
+	 * Swaps in a machine unless a publish with a later ticket is already out.
+	 */
+	private MachineSnapshot publish(CompiledFSM machine, long ticket) {
+		while (true) {
+			Published previous = current.get();
+			if (previous.ticket > ticket) {
+				return previous.snapshot;
+			}
+			MachineSnapshot next = new MachineSnapshot(machine, previous.snapshot.getVersion() + 1);
+			if (current.compareAndSet(previous, new Published(next, ticket))) {
+				return next;
+			}
+		}
+	}
+}
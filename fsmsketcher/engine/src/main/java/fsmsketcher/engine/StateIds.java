@@ -0,0 +1,109 @@
+package fsmsketcher.engine;
+
+import java.util.HashMap;
+
+/**
+ *
+ * Maps the state ids used in a text machine file to state indexes in an FSMDocument,
+ * creating states the first time an id is seen.
+ *
+ * Generated files almost always number their states in order with a fixed prefix
+ * ("0", "1", ... or "s0", "s1", ...). While that holds the index is parsed straight out of
+ * the id and no map is kept, which saves a hash lookup per transition and the memory of
+ * one map entry per state. The first id that breaks the pattern moves every id seen so far
+ * into a HashMap and the map is used from then on.
+ *
+ */
+class StateIds {
+
+	private final FSMDocument document;
+	private HashMap<String, Integer> ids;
+	private String prefix;
+
+	/**
+	 * Creates an empty mapping.
+	 *
+	 * @param document The document states are created in.
+	 */
+	StateIds(FSMDocument document) {
+		this.document = document;
+	}
+
+	/**
+	 * Returns the state with an id, creating it if it hasn't been seen.
+	 *
+	 * @param id The id used in the file.
+	 * @return The index of the state in the document.
+	 */
+	int get(String id) {
+		if (ids == null) {
+			int count = document.getNumberOfStates();
+			if (prefix == null) {
+				prefix = prefixOf(id);
+			}
+			int index = parseIndex(id);
+			if (index >= 0 && index < count) {
+				return index;
+			}
+			if (index == count) {
+				return document.addState(id, 0, 0, false);
+			}
+			ids = new HashMap<>();
+			for (int i = 0; i < count; i++) {
+				ids.put(prefix + i, i);
+			}
+		}
+		Integer state = ids.get(id);
+		if (state == null) {
+			state = document.addState(id, 0, 0, false);
+			ids.put(id, state);
+		}
+		return state;
+	}
+
+	/**
+	 * Returns the state with an id without creating it.
+	 *
+	 * @param id The id used in the file.
+	 * @return The index of the state in the document, or -1 if the id hasn't been seen.
+	 */
+	int find(String id) {
+		if (ids == null) {
+			int index = prefix == null ? -1 : parseIndex(id);
+			return index < document.getNumberOfStates() ? index : -1;
+		}
+		Integer state = ids.get(id);
+		return state == null ? -1 : state;
+	}
+
+	/**
+	 * Parses the number after the prefix.
+	 *
+	 * @return The number, or -1 if the id doesn't have the prefix and a plain number after it.
+	 */
+	private int parseIndex(String id) {
+		int length = id.length();
+		int start = prefix.length();
+		if (length == start || length - start > 9 || !id.startsWith(prefix)
+				|| (id.charAt(start) == '0' && length - start > 1)) {
+			return -1;
+		}
+		int value = 0;
+		for (int i = start; i < length; i++) {
+			char c = id.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = 10 * value + (c - '0');
+		}
+		return value;
+	}
+
+	private static String prefixOf(String id) {
+		int end = id.length();
+		while (end > 0 && Character.isDigit(id.charAt(end - 1))) {
+			end--;
+		}
+		return id.substring(0, end);
+	}
+}
@@ -0,0 +1,55 @@
+package fsmsketcher.engine;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *
+ * A fixed number of counters that many threads can increment at once. Each thread adds to
+ * one of a few copies of the array, picked by thread, and reads sum the copies. Fewer stripes
+ * are used than in StripedHistogram because there is one counter per state or transition,
+ * which for a large machine is a lot of memory per stripe.
+ *
+ */
+final class StripedCounters {
+
+	private final AtomicLongArray[] stripes;
+
+	/**
+	 * Creates counters that all start at 0.
+	 *
+	 * @param size The number of counters.
+	 */
+	StripedCounters(int size) {
+		int n = Integer.highestOneBit(Math.min(Runtime.getRuntime().availableProcessors(), 4) * 2 - 1);
+		stripes = new AtomicLongArray[n];
+		for (int i = 0; i < n; i++) {
+			stripes[i] = new AtomicLongArray(size);
+		}
+	}
+
+	int size() {
+		return stripes[0].length();
+	}
+
+	void increment(int index) {
+		stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)].incrementAndGet(index);
+	}
+
+	long get(int index) {
+		long total = 0;
+		for (AtomicLongArray stripe : stripes) {
+			total += stripe.get(index);
+		}
+		return total;
+	}
+
+	long[] toArray() {
+		long[] totals = new long[size()];
+		for (AtomicLongArray stripe : stripes) {
+			for (int i = 0; i < totals.length; i++) {
+				totals[i] += stripe.get(i);
+			}
+		}
+		return totals;
+	}
+}
@@ -0,0 +1,175 @@
+package fsmsketcher.engine;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *
+ * A histogram of non-negative longs, such as latencies in nanoseconds, that many threads can
+ * record into at once. Buckets are log-linear the way HdrHistogram's are: values under 64 get
+ * a bucket each, and every power of two above that is split into 32 buckets, so a reported
+ * value is within about 3% of the real one over the whole range of a long.
+ *
+ * Recording is a bucket computation and two atomic adds. The counts are striped over several
+ * arrays chosen by thread, so threads recording at the same time rarely touch the same cache
+ * line. Reading sums the stripes, so it is meant for reports rather than hot paths.
+ *
+ */
+public final class StripedHistogram {
+
+	private static final int EXACT = 64;
+	private static final int SUB_BUCKETS = 32;
+	private static final int BUCKETS = EXACT + (63 - 6) * SUB_BUCKETS;
+	/** Each stripe holds the bucket counts, then the sum and the maximum. */
+	private static final int SUM = BUCKETS;
+	private static final int MAX = BUCKETS + 1;
+
+	private final AtomicLongArray[] stripes;
+
+	/**
+	 * Creates an empty histogram with a stripe per processor, up to 16.
+	 */
+	public StripedHistogram() {
+		int n = Integer.highestOneBit(Math.min(Runtime.getRuntime().availableProcessors(), 16) * 2 - 1);
+		stripes = new AtomicLongArray[n];
+		for (int i = 0; i < n; i++) {
+			stripes[i] = new AtomicLongArray(BUCKETS + 2);
+		}
+	}
+
+	/**
+	 * Returns the bucket a value is counted in.
+	 */
+	static int bucketOf(long value) {
+		if (value < EXACT) {
+			return (int) Math.max(value, 0);
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - 5));
+		return EXACT + (exponent - 6) * SUB_BUCKETS + sub - SUB_BUCKETS;
+	}
+
+	/**
+	 * Returns the largest value counted in a bucket.
+	 */
+	static long highestIn(int bucket) {
+		if (bucket < EXACT) {
+			return bucket;
+		}
+		int exponent = 6 + (bucket - EXACT) / SUB_BUCKETS;
+		long sub = SUB_BUCKETS + (bucket - EXACT) % SUB_BUCKETS;
+		return ((sub + 1) << (exponent - 5)) - 1;
+	}
+
+	/**
+	 * Counts a value. Negative values are counted as 0.
+	 *
+	 * @param value The value.
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		AtomicLongArray stripe = stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+		stripe.incrementAndGet(bucketOf(value));
+		stripe.addAndGet(SUM, value);
+		long max = stripe.get(MAX);
+		while (value > max && !stripe.compareAndSet(MAX, max, value)) {
+			max = stripe.get(MAX);
+		}
+	}
+
+	/**
+	 * Returns the number of values counted.
+	 *
+	 * @return The count.
+	 */
+	public long getCount() {
+		long count = 0;
+		for (AtomicLongArray stripe : stripes) {
+			for (int b = 0; b < BUCKETS; b++) {
+				count += stripe.get(b);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the mean of the values counted.
+	 *
+	 * @return The mean, or 0 if nothing has been counted.
+	 */
+	public double getMean() {
+		long count = getCount();
+		long sum = 0;
+		for (AtomicLongArray stripe : stripes) {
+			sum += stripe.get(SUM);
+		}
+		return count == 0 ? 0 : (double) sum / count;
+	}
+
+	/**
+	 * Returns the largest value counted.
+	 *
+	 * @return The exact maximum, or 0 if nothing has been counted.
+	 */
+	public long getMax() {
+		long max = 0;
+		for (AtomicLongArray stripe : stripes) {
+			max = Math.max(max, stripe.get(MAX));
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the value that the given percentage of the counted values are at or below.
+	 *
+	 * @param percentile The percentage, from 0 to 100.
+	 * @return The value, or 0 if nothing has been counted.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (AtomicLongArray stripe : stripes) {
+			for (int b = 0; b < BUCKETS; b++) {
+				counts[b] += stripe.get(b);
+			}
+		}
+		for (long count : counts) {
+			total += count;
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+		long seen = 0;
+		for (int b = 0; b < BUCKETS; b++) {
+			seen += counts[b];
+			if (seen >= rank) {
+				return Math.min(highestIn(b), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Forgets every value counted. Values recorded while resetting may or may not be kept.
+	 */
+	public void reset() {
+		for (AtomicLongArray stripe : stripes) {
+			for (int i = 0; i < stripe.length(); i++) {
+				stripe.set(i, 0);
+			}
+		}
+	}
+
+	/**
+	 * Summarizes the histogram on one line.
+	 *
+	 * @return The count, mean, median, 99th and 99.9th percentiles and maximum.
+	 */
+	@Override
+	public String toString() {
+		return String.format("count=%d mean=%.1f p50=%d p99=%d p99.9=%d max=%d", getCount(), getMean(),
+							 getValueAtPercentile(50), getValueAtPercentile(99), getValueAtPercentile(99.9), getMax());
+	}
+}
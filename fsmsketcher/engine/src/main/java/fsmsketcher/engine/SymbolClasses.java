@@ -0,0 +1,314 @@
+package fsmsketcher.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ *
+ * Splits all of Unicode into the disjoint classes of code points that a machine's labels
+ * can't tell apart. Two code points are in the same class when every label either holds
+ * both or neither, so a compiled machine needs one table column per class rather than one
+ * per code point, however large its ranges are.
+ *
+ * Classes are numbered by their smallest code point. A machine with only single symbol
+ * labels gets one class per symbol in alphabet order, the same columns it always had.
+ *
+ * Looking up the class of a code point takes two array reads. The code point space is cut
+ * into blocks of 256; the first level maps a block to one of a few distinct leaf blocks,
+ * and the leaf block holds the class of each of its 256 code points. Blocks with identical
+ * contents share one leaf, so the whole of Unicode outside the labels costs one leaf, and
+ * a machine over \p{L} still only needs a leaf for each block where letters start or stop.
+ *
+ */
+public final class SymbolClasses {
+
+	private static final int BLOCK_BITS = 8;
+	private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+	private static final int BLOCKS = (SymbolSet.MAX_CODE_POINT + 1) >>> BLOCK_BITS;
+
+	/**
+	 * The leaf of each block, as an index into leaves in units of BLOCK_SIZE.
+	 */
+	private final char[] blockLeaf;
+	/**
+	 * The class of each code point in each distinct leaf, or -1 if no label holds it.
+	 */
+	private final int[] leaves;
+	private final SymbolSet[] classes;
+	private final boolean supplementary;
+
+	private SymbolClasses(char[] blockLeaf, int[] leaves, SymbolSet[] classes) {
+		this.blockLeaf = blockLeaf;
+		this.leaves = leaves;
+		this.classes = classes;
+		boolean supplementary = false;
+		for (SymbolSet set : classes) {
+			supplementary |= set.hasSupplementary();
+		}
+		this.supplementary = supplementary;
+	}
+
+	/**
+	 * Returns the classes of an alphabet of single symbols: one class per symbol.
+	 *
+	 * @param symbols The alphabet, sorted with no duplicates.
+	 * @return The classes, in the same order as the symbols.
+	 */
+	public static SymbolClasses of(char[] symbols) {
+		SymbolSet[] labels = new SymbolSet[symbols.length];
+		for (int i = 0; i < symbols.length; i++) {
+			labels[i] = SymbolSet.of(symbols[i]);
+		}
+		return build(labels);
+	}
+
+	/**
+	 * Returns the classes of a list of labels that may overlap.
+	 *
+	 * @param labels The labels, with no duplicates.
+	 * @param columnsOfLabel Filled with the classes each label is split into, in label order.
+	 * @return The classes.
+	 */
+	public static SymbolClasses partition(List<SymbolSet> labels, List<int[]> columnsOfLabel) {
+		//Each label adds one at the start of each of its ranges and removes one after the end.
+		int events = 0;
+		for (SymbolSet label : labels) {
+			events += 2 * label.getNumberOfRanges();
+		}
+		long[] boundaries = new long[events];
+		int n = 0;
+		for (int l = 0; l < labels.size(); l++) {
+			SymbolSet label = labels.get(l);
+			for (int r = 0; r < label.getNumberOfRanges(); r++) {
+				boundaries[n++] = ((long) label.getRangeStart(r) << 32) | l;
+				boundaries[n++] = ((long) (label.getRangeEnd(r) + 1) << 32) | l;
+			}
+		}
+		Arrays.sort(boundaries);
+
+		//Sweep the boundaries, giving each distinct set of active labels a class.
+		BitSet active = new BitSet(labels.size());
+		HashMap<BitSet, Integer> ids = new HashMap<>();
+		List<BitSet> members = new ArrayList<>();
+		List<SymbolSet> classes = new ArrayList<>();
+		for (int i = 0; i < boundaries.length; ) {
+			int at = (int) (boundaries[i] >>> 32);
+			for (; i < boundaries.length && (int) (boundaries[i] >>> 32) == at; i++) {
+				active.flip((int) boundaries[i]);
+			}
+			if (active.isEmpty() || i == boundaries.length) {
+				continue;
+			}
+			SymbolSet segment = SymbolSet.range(at, (int) (boundaries[i] >>> 32) - 1);
+			Integer id = ids.get(active);
+			if (id == null) {
+				BitSet key = (BitSet) active.clone();
+				ids.put(key, classes.size());
+				members.add(key);
+				classes.add(segment);
+			} else {
+				classes.set(id, classes.get(id).union(segment));
+			}
+		}
+
+		int[] sizes = new int[labels.size()];
+		for (BitSet member : members) {
+			for (int l = member.nextSetBit(0); l >= 0; l = member.nextSetBit(l + 1)) {
+				sizes[l]++;
+			}
+		}
+		int[][] columns = new int[labels.size()][];
+		for (int l = 0; l < columns.length; l++) {
+			columns[l] = new int[sizes[l]];
+		}
+		Arrays.fill(sizes, 0);
+		for (int c = 0; c < members.size(); c++) {
+			BitSet member = members.get(c);
+			for (int l = member.nextSetBit(0); l >= 0; l = member.nextSetBit(l + 1)) {
+				columns[l][sizes[l]++] = c;
+			}
+		}
+		columnsOfLabel.addAll(Arrays.asList(columns));
+		return build(classes.toArray(new SymbolSet[0]));
+	}
+
+	/**
+	 * Builds the lookup table for classes that are disjoint and numbered by their first
+	 * code point.
+	 *
+	 * @param classes The classes.
+	 * @return The classes with their lookup table.
+	 */
+	static SymbolClasses build(SymbolSet[] classes) {
+		//Every range of every class, sorted by where it starts.
+		int total = 0;
+		for (SymbolSet set : classes) {
+			total += set.getNumberOfRanges();
+		}
+		long[] order = new long[total];
+		int[] segmentStart = new int[total];
+		int[] segmentEnd = new int[total];
+		int[] segmentClass = new int[total];
+		int n = 0;
+		for (int c = 0; c < classes.length; c++) {
+			for (int r = 0; r < classes[c].getNumberOfRanges(); r++) {
+				order[n] = ((long) classes[c].getRangeStart(r) << 32) | n;
+				n++;
+			}
+		}
+		Arrays.sort(order);
+		n = 0;
+		for (int c = 0; c < classes.length; c++) {
+			for (int r = 0; r < classes[c].getNumberOfRanges(); r++) {
+				segmentStart[n] = classes[c].getRangeStart(r);
+				segmentEnd[n] = classes[c].getRangeEnd(r);
+				segmentClass[n] = c;
+				n++;
+			}
+		}
+
+		char[] blockLeaf = new char[BLOCKS];
+		int[] leaves = new int[4 * BLOCK_SIZE];
+		int leafCount = 0;
+		HashMap<Leaf, Integer> distinct = new HashMap<>();
+		int[] leaf = new int[BLOCK_SIZE];
+		int emptyLeaf = -1;
+		int s = 0;
+		for (int block = 0; block < BLOCKS; block++) {
+			int base = block << BLOCK_BITS;
+			while (s < total && segmentEnd[(int) order[s]] < base) {
+				s++;
+			}
+			//Most of Unicode is in no class, and those blocks all share one leaf.
+			boolean empty = s == total || segmentStart[(int) order[s]] >= base + BLOCK_SIZE;
+			if (empty && emptyLeaf >= 0) {
+				blockLeaf[block] = (char) emptyLeaf;
+				continue;
+			}
+			Arrays.fill(leaf, -1);
+			for (int t = s; t < total && segmentStart[(int) order[t]] < base + BLOCK_SIZE; t++) {
+				int segment = (int) order[t];
+				int from = Math.max(segmentStart[segment], base) - base;
+				int to = Math.min(segmentEnd[segment], base + BLOCK_SIZE - 1) - base;
+				Arrays.fill(leaf, from, to + 1, segmentClass[segment]);
+			}
+			Leaf key = new Leaf(leaf);
+			Integer index = distinct.get(key);
+			if (index == null) {
+				index = leafCount++;
+				if (leafCount * BLOCK_SIZE > leaves.length) {
+					leaves = Arrays.copyOf(leaves, 2 * leaves.length);
+				}
+				System.arraycopy(leaf, 0, leaves, index * BLOCK_SIZE, BLOCK_SIZE);
+				distinct.put(new Leaf(leaf.clone()), index);
+			}
+			if (empty) {
+				emptyLeaf = index;
+			}
+			blockLeaf[block] = (char) index.intValue();
+		}
+		return new SymbolClasses(blockLeaf, Arrays.copyOf(leaves, leafCount * BLOCK_SIZE), classes);
+	}
+
+	/**
+	 * A leaf block used as a hash key.
+	 */
+	private static final class Leaf {
+		final int[] classes;
+		final int hash;
+
+		Leaf(int[] classes) {
+			this.classes = classes;
+			this.hash = Arrays.hashCode(classes);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Leaf && Arrays.equals(classes, ((Leaf) o).classes);
+		}
+	}
+
+	/**
+	 * Returns the class of a code point.
+	 *
+	 * @param codePoint The code point.
+	 * @return The class, or -1 if no label holds the code point.
+	 */
+	public int classOf(int codePoint) {
+		if (codePoint < 0 || codePoint > SymbolSet.MAX_CODE_POINT) {
+			return -1;
+		}
+		return leaves[(blockLeaf[codePoint >>> BLOCK_BITS] << BLOCK_BITS) | (codePoint & (BLOCK_SIZE - 1))];
+	}
+
+	/**
+	 * Returns the class of a char. This skips the range check classOf(int) needs.
+	 *
+	 * @param symbol The char.
+	 * @return The class, or -1 if no label holds the char.
+	 */
+	public int classOf(char symbol) {
+		return leaves[(blockLeaf[symbol >>> BLOCK_BITS] << BLOCK_BITS) | (symbol & (BLOCK_SIZE - 1))];
+	}
+
+	/**
+	 * Returns the number of classes.
+	 *
+	 * @return The number of classes.
+	 */
+	public int size() {
+		return classes.length;
+	}
+
+	/**
+	 * Returns the code points of a class.
+	 *
+	 * @param c The class.
+	 * @return The code points in it.
+	 */
+	public SymbolSet get(int c) {
+		return classes[c];
+	}
+
+	/**
+	 * Returns whether every class holds a single code point, which is the case for a machine
+	 * without range transitions.
+	 *
+	 * @return Whether each class is one symbol.
+	 */
+	public boolean isSingleSymbols() {
+		for (SymbolSet set : classes) {
+			if (set.getNumberOfRanges() != 1 || set.getRangeStart(0) != set.getRangeEnd(0)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether any class holds a code point above U+FFFF. Only then does a surrogate
+	 * pair in a word need to be read as one code point.
+	 *
+	 * @return Whether the classes reach the supplementary planes.
+	 */
+	public boolean hasSupplementary() {
+		return supplementary;
+	}
+
+	/**
+	 * Returns the number of distinct leaf blocks in the lookup table.
+	 *
+	 * @return The number of leaves.
+	 */
+	public int getNumberOfLeaves() {
+		return leaves.length / BLOCK_SIZE;
+	}
+}
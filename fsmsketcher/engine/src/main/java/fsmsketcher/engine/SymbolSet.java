@@ -0,0 +1,528 @@
+package fsmsketcher.engine;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ *
+ * An immutable set of Unicode code points, kept as sorted, disjoint, non-adjacent ranges.
+ * This is the label of a range transition, which steps on any code point in the set.
+ *
+ * Labels are written the way regular expressions write character classes:
+ * <pre>
+ *   [0-9]  [a-zA-Z_]  [^"]  [\x{C0}-\x{24F}]  [\x{1F600}-\x{1F64F}]
+ *   \p{L}  \P{Nd}  \p{IsGreek}  \d  \w  \s
+ * </pre>
+ * A \p{...} property is anything java.util.regex accepts. Its code points are found once
+ * by testing all of Unicode and then shared by every label that uses the property.
+ *
+ */
+public final class SymbolSet {
+
+	/**
+	 * The largest Unicode code point.
+	 */
+	public static final int MAX_CODE_POINT = Character.MAX_CODE_POINT;
+
+	/**
+	 * The set holding no code points.
+	 */
+	public static final SymbolSet EMPTY = new SymbolSet(new int[0]);
+
+	/**
+	 * The set holding every code point.
+	 */
+	public static final SymbolSet ALL = new SymbolSet(new int[] { 0, MAX_CODE_POINT });
+
+	private static final ConcurrentHashMap<String, SymbolSet> PROPERTIES = new ConcurrentHashMap<>();
+
+	/**
+	 * The first and last code point of each range: ranges[2 * i] to ranges[2 * i + 1].
+	 */
+	private final int[] ranges;
+	private final int hash;
+
+	private SymbolSet(int[] ranges) {
+		this.ranges = ranges;
+		this.hash = Arrays.hashCode(ranges);
+	}
+
+	/**
+	 * Returns the set holding one code point.
+	 *
+	 * @param codePoint The code point.
+	 * @return The set.
+	 */
+	public static SymbolSet of(int codePoint) {
+		return range(codePoint, codePoint);
+	}
+
+	/**
+	 * Returns the set holding a range of code points.
+	 *
+	 * @param first The first code point.
+	 * @param last The last code point, inclusive.
+	 * @return The set.
+	 */
+	public static SymbolSet range(int first, int last) {
+		if (first < 0 || last > MAX_CODE_POINT || first > last) {
+			throw new IllegalArgumentException(String.format("Bad range U+%04X-U+%04X", first, last));
+		}
+		return new SymbolSet(new int[] { first, last });
+	}
+
+	/**
+	 * Parses a range label.
+	 *
+	 * @param label The label, either a bracketed class or a single escape such as \p{L}.
+	 * @return The set of code points the label matches.
+	 * @throws IllegalArgumentException If the label isn't a range label.
+	 */
+	public static SymbolSet parse(String label) {
+		Parser parser = new Parser(label);
+		SymbolSet set;
+		if (parser.peek() == '[') {
+			set = parser.parseClass();
+		} else if (parser.peek() == '\\') {
+			set = parser.parseEscape();
+			if (set == null) {
+				throw parser.error("Expected a class escape");
+			}
+		} else {
+			throw parser.error("Expected [ or \\");
+		}
+		if (parser.more()) {
+			throw parser.error("Unexpected text after the label");
+		}
+		return set;
+	}
+
+	/**
+	 * Tests whether a label is written as a range label rather than a single symbol.
+	 *
+	 * @param label The label.
+	 * @return Whether it starts with [ or \ and is longer than one character.
+	 */
+	public static boolean isRangeLabel(String label) {
+		return label.length() > 1 && (label.charAt(0) == '[' || label.charAt(0) == '\\');
+	}
+
+	/**
+	 * Tests whether a code point is in the set.
+	 *
+	 * @param codePoint The code point.
+	 * @return Whether the set holds it.
+	 */
+	public boolean contains(int codePoint) {
+		int lo = 0;
+		int hi = ranges.length / 2 - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (codePoint < ranges[2 * mid]) {
+				hi = mid - 1;
+			} else if (codePoint > ranges[2 * mid + 1]) {
+				lo = mid + 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of ranges.
+	 *
+	 * @return The number of ranges.
+	 */
+	public int getNumberOfRanges() {
+		return ranges.length / 2;
+	}
+
+	/**
+	 * Returns the first code point of a range.
+	 *
+	 * @param range The range.
+	 * @return Its first code point.
+	 */
+	public int getRangeStart(int range) {
+		return ranges[2 * range];
+	}
+
+	/**
+	 * Returns the last code point of a range.
+	 *
+	 * @param range The range.
+	 * @return Its last code point, inclusive.
+	 */
+	public int getRangeEnd(int range) {
+		return ranges[2 * range + 1];
+	}
+
+	/**
+	 * Returns whether the set holds no code points.
+	 *
+	 * @return true if the set is empty.
+	 */
+	public boolean isEmpty() {
+		return ranges.length == 0;
+	}
+
+	/**
+	 * Returns the smallest code point in the set.
+	 *
+	 * @return The first code point, or -1 if the set is empty.
+	 */
+	public int first() {
+		return ranges.length == 0 ? -1 : ranges[0];
+	}
+
+	/**
+	 * Returns the number of code points in the set.
+	 *
+	 * @return The number of code points.
+	 */
+	public int size() {
+		int size = 0;
+		for (int i = 0; i < ranges.length; i += 2) {
+			size += ranges[i + 1] - ranges[i] + 1;
+		}
+		return size;
+	}
+
+	/**
+	 * Returns a code point by its position in the set, counting up from the smallest.
+	 *
+	 * @param index The position, from 0 to size() - 1.
+	 * @return The code point.
+	 */
+	public int get(int index) {
+		int left = index;
+		for (int i = 0; i < ranges.length && left >= 0; i += 2) {
+			int length = ranges[i + 1] - ranges[i] + 1;
+			if (left < length) {
+				return ranges[i] + left;
+			}
+			left -= length;
+		}
+		throw new IndexOutOfBoundsException("No code point at " + index);
+	}
+
+	/**
+	 * Returns whether any code point in the set is above U+FFFF and so takes two chars.
+	 *
+	 * @return Whether the set reaches the supplementary planes.
+	 */
+	public boolean hasSupplementary() {
+		return ranges.length > 0 && ranges[ranges.length - 1] > Character.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the code points in this set or the other.
+	 *
+	 * @param other The other set.
+	 * @return The union.
+	 */
+	public SymbolSet union(SymbolSet other) {
+		int[] merged = new int[ranges.length + other.ranges.length];
+		int n = 0;
+		int i = 0;
+		int j = 0;
+		while (i < ranges.length || j < other.ranges.length) {
+			int first;
+			int last;
+			if (j >= other.ranges.length || i < ranges.length && ranges[i] <= other.ranges[j]) {
+				first = ranges[i];
+				last = ranges[i + 1];
+				i += 2;
+			} else {
+				first = other.ranges[j];
+				last = other.ranges[j + 1];
+				j += 2;
+			}
+			//Ranges that overlap or touch are joined, so every set has one representation.
+			if (n > 0 && first <= merged[n - 1] + 1) {
+				merged[n - 1] = Math.max(merged[n - 1], last);
+			} else {
+				merged[n++] = first;
+				merged[n++] = last;
+			}
+		}
+		return new SymbolSet(n == merged.length ? merged : Arrays.copyOf(merged, n));
+	}
+
+	/**
+	 * Returns every code point not in this set.
+	 *
+	 * @return The complement.
+	 */
+	public SymbolSet complement() {
+		int[] gaps = new int[ranges.length + 2];
+		int n = 0;
+		int next = 0;
+		for (int i = 0; i < ranges.length; i += 2) {
+			if (ranges[i] > next) {
+				gaps[n++] = next;
+				gaps[n++] = ranges[i] - 1;
+			}
+			next = ranges[i + 1] + 1;
+		}
+		if (next <= MAX_CODE_POINT) {
+			gaps[n++] = next;
+			gaps[n++] = MAX_CODE_POINT;
+		}
+		return new SymbolSet(Arrays.copyOf(gaps, n));
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof SymbolSet && Arrays.equals(ranges, ((SymbolSet) o).ranges);
+	}
+
+	/**
+	 * Returns the set as a bracketed label that parses back to the same set. Sets written
+	 * from the same code points always give the same label.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder label = new StringBuilder("[");
+		for (int i = 0; i < ranges.length; i += 2) {
+			appendCodePoint(label, ranges[i]);
+			if (ranges[i + 1] > ranges[i]) {
+				if (ranges[i + 1] > ranges[i] + 1) {
+					label.append('-');
+				}
+				appendCodePoint(label, ranges[i + 1]);
+			}
+		}
+		return label.append(']').toString();
+	}
+
+	private static void appendCodePoint(StringBuilder label, int codePoint) {
+		if (codePoint > ' ' && codePoint < 0x7F) {
+			if ("[]\\-^".indexOf(codePoint) >= 0) {
+				label.append('\\');
+			}
+			label.append((char) codePoint);
+		} else if (codePoint <= Character.MAX_VALUE) {
+			label.append(String.format("\\u%04X", codePoint));
+		} else {
+			label.append(String.format("\\x{%X}", codePoint));
+		}
+	}
+
+	/**
+	 * Returns the code points of a java.util.regex property such as L or IsGreek, computed
+	 * once per property.
+	 */
+	private static SymbolSet property(String name) {
+		SymbolSet set = PROPERTIES.get(name);
+		if (set != null) {
+			return set;
+		}
+		Matcher matcher;
+		try {
+			matcher = Pattern.compile("\\p{" + name + "}").matcher("");
+		} catch (PatternSyntaxException e) {
+			throw new IllegalArgumentException("Unknown property \\p{" + name + "}", e);
+		}
+		int[] found = new int[64];
+		int n = 0;
+		char[] chars = new char[2];
+		CharBuffer buffer = CharBuffer.wrap(chars);
+		boolean in = false;
+		for (int c = 0; c <= MAX_CODE_POINT; c++) {
+			buffer.clear().limit(Character.toChars(c, chars, 0));
+			boolean matches = matcher.reset(buffer).matches();
+			if (matches != in) {
+				if (n == found.length) {
+					found = Arrays.copyOf(found, 2 * n);
+				}
+				found[n++] = matches ? c : c - 1;
+				in = matches;
+			}
+		}
+		if (in) {
+			if (n == found.length) {
+				found = Arrays.copyOf(found, n + 1);
+			}
+			found[n++] = MAX_CODE_POINT;
+		}
+		set = new SymbolSet(Arrays.copyOf(found, n));
+		SymbolSet raced = PROPERTIES.putIfAbsent(name, set);
+		return raced != null ? raced : set;
+	}
+
+	/**
+	 * A recursive descent parser for labels.
+	 */
+	private static final class Parser {
+		private final String text;
+		private int at;
+		/** The code point of the last escape that stood for a single code point. */
+		private int lastLiteral;
+
+		Parser(String text) {
+			this.text = text;
+		}
+
+		boolean more() {
+			return at < text.length();
+		}
+
+		int peek() {
+			return more() ? text.codePointAt(at) : -1;
+		}
+
+		int next() {
+			if (!more()) {
+				throw error("Unexpected end of label");
+			}
+			int c = text.codePointAt(at);
+			at += Character.charCount(c);
+			return c;
+		}
+
+		IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(message + " at " + at + " in \"" + text + "\"");
+		}
+
+		SymbolSet parseClass() {
+			next();
+			boolean negated = peek() == '^';
+			if (negated) {
+				next();
+			}
+			SymbolSet set = EMPTY;
+			//A ] straight after the opening bracket is a literal, as in regular expressions.
+			boolean first = true;
+			while (first || peek() != ']') {
+				first = false;
+				SymbolSet escaped = null;
+				int start;
+				if (peek() == '\\') {
+					escaped = parseEscape();
+					if (escaped != null) {
+						set = set.union(escaped);
+						continue;
+					}
+					start = lastLiteral;
+				} else {
+					start = next();
+				}
+				int end = start;
+				if (peek() == '-' && at + 1 < text.length() && text.charAt(at + 1) != ']') {
+					next();
+					if (peek() == '\\') {
+						if (parseEscape() != null) {
+							throw error("A range can't end in a class escape");
+						}
+						end = lastLiteral;
+					} else {
+						end = next();
+					}
+					if (end < start) {
+						throw error("Range out of order");
+					}
+				}
+				set = set.union(range(start, end));
+			}
+			next();
+			return negated ? set.complement() : set;
+		}
+
+		/**
+		 * Parses an escape. Returns the set for a class escape, or null for an escape that
+		 * stands for one code point, which is left in lastLiteral.
+		 */
+		SymbolSet parseEscape() {
+			next();
+			int c = next();
+			switch (c) {
+				case 'p':
+				case 'P': {
+					String name;
+					if (peek() == '{') {
+						int close = text.indexOf('}', at);
+						if (close < 0) {
+							throw error("Unclosed property");
+						}
+						name = text.substring(at + 1, close);
+						at = close + 1;
+					} else {
+						name = new String(Character.toChars(next()));
+					}
+					SymbolSet set = property(name);
+					return c == 'p' ? set : set.complement();
+				}
+				case 'd':
+					return range('0', '9');
+				case 'D':
+					return range('0', '9').complement();
+				case 'w':
+					return range('a', 'z').union(range('A', 'Z')).union(range('0', '9')).union(of('_'));
+				case 'W':
+					return range('a', 'z').union(range('A', 'Z')).union(range('0', '9')).union(of('_')).complement();
+				case 's':
+					return range('\t', '\r').union(of(' '));
+				case 'S':
+					return range('\t', '\r').union(of(' ')).complement();
+				case 'u':
+					lastLiteral = hex(4);
+					return null;
+				case 'x':
+					if (peek() == '{') {
+						int close = text.indexOf('}', at);
+						if (close < 0) {
+							throw error("Unclosed code point");
+						}
+						next();
+						lastLiteral = hex(close - at);
+						next();
+					} else {
+						lastLiteral = hex(2);
+					}
+					if (lastLiteral > MAX_CODE_POINT) {
+						throw error("Code point out of range");
+					}
+					return null;
+				case 't':
+					lastLiteral = '\t';
+					return null;
+				case 'n':
+					lastLiteral = '\n';
+					return null;
+				case 'r':
+					lastLiteral = '\r';
+					return null;
+				default:
+					if (Character.isLetterOrDigit(c)) {
+						throw error("Unknown escape \\" + new String(Character.toChars(c)));
+					}
+					lastLiteral = c;
+					return null;
+			}
+		}
+
+		private int hex(int digits) {
+			if (digits <= 0 || digits > 6 || at + digits > text.length()) {
+				throw error("Bad hex escape");
+			}
+			try {
+				int value = Integer.parseInt(text.substring(at, at + digits), 16);
+				at += digits;
+				return value;
+			} catch (NumberFormatException e) {
+				throw error("Bad hex escape");
+			}
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package fsmsketcher.engine;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ *
+ * A small buffered character scanner shared by the text machine formats. It reads the
+ * input in fixed size chunks, so a file of any size is scanned in constant memory, and
+ * keeps track of the line number for error messages.
+ *
+ */
+class TextScanner {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final Reader in;
+	private final char[] buffer;
+	private int position;
+	private int limit;
+	private int line;
+
+	/**
+	 * Creates a scanner over a reader.
+	 *
+	 * @param in The text to scan.
+	 */
+	TextScanner(Reader in) {
+		this.in = in;
+		this.buffer = new char[BUFFER_SIZE];
+		this.line = 1;
+	}
+
+	/**
+	 * Returns the next character without consuming it.
+	 *
+	 * @return The next character, or -1 at the end of the input.
+	 * @throws IOException If the input couldn't be read.
+	 */
+	int peek() throws IOException {
+		if (position == limit) {
+			limit = in.read(buffer, 0, buffer.length);
+			position = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return -1;
+			}
+		}
+		return buffer[position];
+	}
+
+	/**
+	 * Consumes the next character.
+	 *
+	 * @return The character, or -1 at the end of the input.
+	 * @throws IOException If the input couldn't be read.
+	 */
+	int read() throws IOException {
+		int c = peek();
+		if (c >= 0) {
+			position++;
+			if (c == '\n') {
+				line++;
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Appends characters to a builder up to, but not including, the first of two stop
+	 * characters. Runs are copied straight out of the buffer.
+	 *
+	 * @param out Where the characters are appended.
+	 * @param stop The first stop character.
+	 * @param otherStop The second stop character.
+	 * @return The stop character found, not consumed, or -1 at the end of the input.
+	 * @throws IOException If the input couldn't be read.
+	 */
+	int appendUntil(StringBuilder out, char stop, char otherStop) throws IOException {
+		while (peek() >= 0) {
+			int start = position;
+			int end = start;
+			while (end < limit && buffer[end] != stop && buffer[end] != otherStop) {
+				if (buffer[end] == '\n') {
+					line++;
+				}
+				end++;
+			}
+			out.append(buffer, start, end - start);
+			position = end;
+			if (end < limit) {
+				return buffer[end];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Appends the characters of an identifier or number (letters, digits, '_', '.' and
+	 * anything outside of ASCII) to a builder.
+	 *
+	 * @param out Where the characters are appended.
+	 * @throws IOException If the input couldn't be read.
+	 */
+	void appendIdentifier(StringBuilder out) throws IOException {
+		while (peek() >= 0) {
+			int start = position;
+			int end = start;
+			while (end < limit && isIdentifierPart(buffer[end])) {
+				end++;
+			}
+			out.append(buffer, start, end - start);
+			position = end;
+			if (end < limit) {
+				return;
+			}
+		}
+	}
+
+	private static boolean isIdentifierPart(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+				|| c == '_' || c == '.' || c >= 0x80;
+	}
+
+	/**
+	 * Skips spaces, tabs and line breaks.
+	 *
+	 * @return The next character after the whitespace, not consumed, or -1.
+	 * @throws IOException If the input couldn't be read.
+	 */
+	int skipWhitespace() throws IOException {
+		int c = peek();
+		while (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f') {
+			read();
+			c = peek();
+		}
+		return c;
+	}
+
+	/**
+	 * Consumes an expected character after any whitespace.
+	 *
+	 * @param expected The character that must come next.
+	 * @throws IOException If the next character is something else.
+	 */
+	void expect(char expected) throws IOException {
+		int c = skipWhitespace();
+		if (c != expected) {
+			throw error("Expected '" + expected + "' but found " + describe(c));
+		}
+		read();
+	}
+
+	/**
+	 * Creates an exception pointing at the current line.
+	 *
+	 * @param message What went wrong.
+	 * @return The exception to throw.
+	 */
+	IOException error(String message) {
+		return new IOException("Line " + line + ": " + message);
+	}
+
+	/**
+	 * Describes a character for an error message.
+	 */
+	static String describe(int c) {
+		return c < 0 ? "end of input" : "'" + (char) c + "'";
+	}
+}
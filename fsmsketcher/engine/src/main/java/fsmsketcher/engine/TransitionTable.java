@@ -0,0 +1,322 @@
+package fsmsketcher.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ * The storage behind a CompiledFSM. A table holds one row per deterministic state, with one
+ * target state per alphabet column, plus one accept bit per state. Missing transitions are
+ * stored as CompiledFSM.DEAD.
+ *
+ * Rows are kept in fixed size pages so that tables larger than a single Java array or
+ * ByteBuffer can be held. The pages either live on the heap as int arrays or off the heap
+ * in direct (or memory mapped) buffers, which keeps very large machines out of the
+ * garbage collector's way.
+ *
+ */
+public abstract class TransitionTable {
+
+	/**
+	 * The target size of a single page in bytes.
+	 */
+	static final int PAGE_BYTES = 1 << 26;
+
+	/**
+	 * The number of states in the table.
+	 */
+	protected final int numberOfStates;
+	/**
+	 * The number of alphabet columns in each row.
+	 */
+	protected final int numberOfColumns;
+	/**
+	 * The number of rows held by each page.
+	 */
+	protected final int rowsPerPage;
+
+	private TransitionTable(int numberOfStates, int numberOfColumns, int rowsPerPage) {
+		this.numberOfStates = numberOfStates;
+		this.numberOfColumns = numberOfColumns;
+		this.rowsPerPage = rowsPerPage;
+	}
+
+	/**
+	 * Returns the target of a state on a column.
+	 *
+	 * @param state The state the transition is moving from.
+	 * @param column The alphabet column of the symbol.
+	 * @return The state the transition leads to, or CompiledFSM.DEAD.
+	 */
+	public abstract int get(int state, int column);
+
+	/**
+	 * Tests whether a given state is an accept state.
+	 *
+	 * @param state The state to be tested.
+	 * @return Whether the given state is an accept state.
+	 */
+	public abstract boolean isAccept(int state);
+
+	/**
+	 * Returns whether the table is stored outside of the Java heap.
+	 *
+	 * @return true if the rows live in direct or mapped buffers.
+	 */
+	public abstract boolean isOffHeap();
+
+	/**
+	 * Returns the number of states in the table.
+	 *
+	 * @return The number of states.
+	 */
+	public int getNumberOfStates() {
+		return numberOfStates;
+	}
+
+	/**
+	 * Returns the number of alphabet columns in each row.
+	 *
+	 * @return The number of columns.
+	 */
+	public int getNumberOfColumns() {
+		return numberOfColumns;
+	}
+
+	/**
+	 * Returns the number of rows held by each page.
+	 *
+	 * @return The rows per page.
+	 */
+	public int getRowsPerPage() {
+		return rowsPerPage;
+	}
+
+	/**
+	 * Computes how many rows fit in a page for a given row width.
+	 *
+	 * @param numberOfColumns The number of columns in each row.
+	 * @return The number of rows in each page.
+	 */
+	static int rowsPerPage(int numberOfColumns) {
+		return Math.max(1, PAGE_BYTES / (4 * Math.max(1, numberOfColumns)));
+	}
+
+	/**
+	 * Wraps existing buffers as a table without copying them. Used to load tables that were
+	 * memory mapped from a file.
+	 *
+	 * @param numberOfStates The number of states in the table.
+	 * @param numberOfColumns The number of columns in each row.
+	 * @param rowsPerPage The number of rows in each page.
+	 * @param pages The pages of rows. Every page but the last must hold rowsPerPage rows.
+	 * @param acceptBits The accept bits, one per state.
+	 * @return A table reading from the given buffers.
+	 */
+	static TransitionTable wrap(int numberOfStates, int numberOfColumns, int rowsPerPage,
+								IntBuffer[] pages, LongBuffer acceptBits) {
+		return new BufferTable(numberOfStates, numberOfColumns, rowsPerPage, pages, acceptBits);
+	}
+
+	/**
+	 * A table whose pages are plain int arrays on the heap.
+	 */
+	private static final class HeapTable extends TransitionTable {
+		private final int[][] pages;
+		private final long[] acceptBits;
+
+		HeapTable(int numberOfStates, int numberOfColumns, int rowsPerPage, int[][] pages, long[] acceptBits) {
+			super(numberOfStates, numberOfColumns, rowsPerPage);
+			this.pages = pages;
+			this.acceptBits = acceptBits;
+		}
+
+		@Override
+		public int get(int state, int column) {
+			return pages[state / rowsPerPage][(state % rowsPerPage) * numberOfColumns + column];
+		}
+
+		@Override
+		public boolean isAccept(int state) {
+			return (acceptBits[state >>> 6] & (1L << state)) != 0;
+		}
+
+		@Override
+		public boolean isOffHeap() {
+			return false;
+		}
+	}
+
+	/**
+	 * A table whose pages are int views of direct or mapped byte buffers.
+	 */
+	private static final class BufferTable extends TransitionTable {
+		private final IntBuffer[] pages;
+		private final LongBuffer acceptBits;
+
+		BufferTable(int numberOfStates, int numberOfColumns, int rowsPerPage, IntBuffer[] pages, LongBuffer acceptBits) {
+			super(numberOfStates, numberOfColumns, rowsPerPage);
+			this.pages = pages;
+			this.acceptBits = acceptBits;
+		}
+
+		@Override
+		public int get(int state, int column) {
+			return pages[state / rowsPerPage].get((state % rowsPerPage) * numberOfColumns + column);
+		}
+
+		@Override
+		public boolean isAccept(int state) {
+			return (acceptBits.get(state >>> 6) & (1L << state)) != 0;
+		}
+
+		@Override
+		public boolean isOffHeap() {
+			return true;
+		}
+	}
+
+	/**
+	 * Builds a table one state at a time. New rows start out with every column DEAD.
+	 */
+	public static final class Builder {
+		private final int numberOfColumns;
+		private final int rowsPerPage;
+		private final boolean offHeap;
+		private final List<int[]> heapPages;
+		private final List<IntBuffer> bufferPages;
+		private long[] acceptBits;
+		private int numberOfStates;
+
+		/**
+		 * Creates an empty builder.
+		 *
+		 * @param numberOfColumns The number of alphabet columns in each row.
+		 * @param offHeap Whether the rows should be stored in direct buffers.
+		 */
+		public Builder(int numberOfColumns, boolean offHeap) {
+			this.numberOfColumns = numberOfColumns;
+			this.rowsPerPage = rowsPerPage(numberOfColumns);
+			this.offHeap = offHeap;
+			this.heapPages = new ArrayList<>();
+			this.bufferPages = new ArrayList<>();
+			this.acceptBits = new long[1];
+		}
+
+		/**
+		 * Appends a new state with every transition DEAD.
+		 *
+		 * @param accept Whether the new state is an accept state.
+		 * @return The index of the state created.
+		 */
+		public int addState(boolean accept) {
+			int state = numberOfStates++;
+			int row = state % rowsPerPage;
+			if (row == 0) {
+				addPage(Math.min(rowsPerPage, 64));
+			} else if (row * numberOfColumns >= lastPageSize()) {
+				growLastPage(Math.min(rowsPerPage, 2 * row));
+			}
+			if ((state >>> 6) >= acceptBits.length) {
+				acceptBits = Arrays.copyOf(acceptBits, acceptBits.length * 2);
+			}
+			if (accept) {
+				acceptBits[state >>> 6] |= 1L << state;
+			}
+			return state;
+		}
+
+		/**
+		 * Sets the target of a state on a column.
+		 *
+		 * @param state The state the transition is moving from.
+		 * @param column The alphabet column of the symbol.
+		 * @param toState The state the transition leads to.
+		 */
+		public void set(int state, int column, int toState) {
+			int index = (state % rowsPerPage) * numberOfColumns + column;
+			if (offHeap) {
+				bufferPages.get(state / rowsPerPage).put(index, toState);
+			} else {
+				heapPages.get(state / rowsPerPage)[index] = toState;
+			}
+		}
+
+		/**
+		 * Returns the number of states added so far.
+		 *
+		 * @return The number of states.
+		 */
+		public int getNumberOfStates() {
+			return numberOfStates;
+		}
+
+		/**
+		 * Pages start small and double until they hold rowsPerPage rows, so small machines
+		 * don't pay for a full page.
+		 */
+		private void addPage(int rows) {
+			if (offHeap) {
+				bufferPages.add(newBufferPage(rows * numberOfColumns));
+			} else {
+				int[] page = new int[rows * numberOfColumns];
+				Arrays.fill(page, CompiledFSM.DEAD);
+				heapPages.add(page);
+			}
+		}
+
+		private int lastPageSize() {
+			return offHeap ? bufferPages.get(bufferPages.size() - 1).capacity()
+						   : heapPages.get(heapPages.size() - 1).length;
+		}
+
+		private void growLastPage(int rows) {
+			int size = rows * numberOfColumns;
+			if (offHeap) {
+				IntBuffer old = bufferPages.get(bufferPages.size() - 1);
+				IntBuffer page = newBufferPage(size);
+				old.clear();
+				page.put(old);
+				page.clear();
+				bufferPages.set(bufferPages.size() - 1, page);
+			} else {
+				int[] old = heapPages.get(heapPages.size() - 1);
+				int[] page = Arrays.copyOf(old, size);
+				Arrays.fill(page, old.length, size, CompiledFSM.DEAD);
+				heapPages.set(heapPages.size() - 1, page);
+			}
+		}
+
+		private static IntBuffer newBufferPage(int size) {
+			IntBuffer page = ByteBuffer.allocateDirect(4 * size).order(ByteOrder.nativeOrder()).asIntBuffer();
+			for (int i = 0; i < size; i++) {
+				page.put(i, CompiledFSM.DEAD);
+			}
+			return page;
+		}
+
+		/**
+		 * Finishes the table.
+		 *
+		 * @return The table holding every state added.
+		 */
+		public TransitionTable build() {
+			long[] bits = Arrays.copyOf(acceptBits, (numberOfStates + 63) >>> 6);
+			if (offHeap) {
+				LongBuffer accept = ByteBuffer.allocateDirect(8 * Math.max(1, bits.length))
+											  .order(ByteOrder.nativeOrder()).asLongBuffer();
+				accept.put(bits);
+				accept.clear();
+				return new BufferTable(numberOfStates, numberOfColumns, rowsPerPage,
+									   bufferPages.toArray(new IntBuffer[0]), accept);
+			}
+			return new HeapTable(numberOfStates, numberOfColumns, rowsPerPage,
+								 heapPages.toArray(new int[0][]), bits);
+		}
+	}
+}
@@ -0,0 +1,530 @@
+package fsmsketcher.engine;
+
+import java.util.Arrays;
+
+/**
+ *
+ * A bounded cache of word results, for workloads where the same words come up again and
+ * again. Entries are keyed by the word's content and a machine version, so a cache can sit
+ * in front of a machine that is being edited: once a newer version is asked about, every
+ * entry for older versions is dropped.
+ *
+ * Eviction follows W-TinyLFU. New words enter a small LRU window. A word pushed out of the
+ * window only gets into the main area, a segmented LRU, if a frequency sketch says it has
+ * been asked for more often than the word it would push out. One-off words therefore pass
+ * through the window without disturbing the popular ones, which is what keeps the hit rate
+ * high on skewed (Zipfian) inputs. The sketch is a count-min sketch of 4-bit counters that
+ * are halved every 10 * capacity accesses, so popularity fades.
+ *
+ * The cache is split into segments by hash, each with its own lock, window, main area and
+ * sketch, so threads only contend when they hit the same segment. Lookups hash the word in
+ * place; a word is only copied when it is inserted. Words longer than MAX_WORD_LENGTH
+ * aren't cached, as testing them costs far more than a lookup saves.
+ *
+ */
+public final class WordCache {
+
+	/** The result get() returns when the word isn't cached. */
+	public static final int MISS = -1;
+	/** A word the machine rejects. */
+	public static final int REJECT = 0;
+	/** A word the machine accepts. */
+	public static final int ACCEPT = 1;
+	/** A word with a symbol outside of the alphabet. */
+	public static final int INVALID = 2;
+
+	/** Longer words are neither looked up nor stored. */
+	public static final int MAX_WORD_LENGTH = 1 << 16;
+
+	private final Segment[] segments;
+	private final int maximumSize;
+
+	/**
+	 * Creates an empty cache.
+	 *
+	 * @param maximumSize The most words the cache holds.
+	 */
+	public WordCache(int maximumSize) {
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("The cache must hold at least one word.");
+		}
+		//Enough segments to spread the threads out, but not so many that each is tiny.
+		int wanted = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+		int n = Math.max(1, Math.min(wanted, Integer.highestOneBit(Math.max(maximumSize / 64, 1))));
+		this.segments = new Segment[n];
+		for (int i = 0; i < n; i++) {
+			segments[i] = new Segment(maximumSize / n + (i < maximumSize % n ? 1 : 0));
+		}
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * Looks up a word.
+	 *
+	 * @param word The array holding the word.
+	 * @param offset Where the word starts.
+	 * @param length The length of the word.
+	 * @param version The version of the machine the result must be for.
+	 * @return The cached result, or MISS.
+	 */
+	public int get(char[] word, int offset, int length, long version) {
+		if (length > MAX_WORD_LENGTH) {
+			return MISS;
+		}
+		long hash = hash(word, offset, length);
+		return segmentFor(hash).get(word, offset, length, hash, version);
+	}
+
+	/**
+	 * Stores the result of a word. Nothing is stored if the version is older than one the
+	 * cache has already seen.
+	 *
+	 * @param word The array holding the word. The word is copied.
+	 * @param offset Where the word starts.
+	 * @param length The length of the word.
+	 * @param version The version of the machine the result is for.
+	 * @param result ACCEPT, REJECT or INVALID.
+	 */
+	public void put(char[] word, int offset, int length, long version, int result) {
+		if (length > MAX_WORD_LENGTH) {
+			return;
+		}
+		long hash = hash(word, offset, length);
+		segmentFor(hash).put(word, offset, length, hash, version, (byte) result);
+	}
+
+	/**
+	 * Tests a word against a compiled machine, through the cache.
+	 *
+	 * @param machine The machine.
+	 * @param version The version of the machine.
+	 * @param word The array holding the word.
+	 * @param offset Where the word starts.
+	 * @param length The length of the word.
+	 * @return ACCEPT, REJECT or INVALID.
+	 */
+	public int evaluate(CompiledFSM machine, long version, char[] word, int offset, int length) {
+		int result = get(word, offset, length, version);
+		if (result == MISS) {
+			if (!machine.validateWord(word, offset, length)) {
+				result = INVALID;
+			} else {
+				result = machine.acceptsWord(word, offset, length) ? ACCEPT : REJECT;
+			}
+			put(word, offset, length, version, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Drops every entry. The counters are kept.
+	 */
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns the most words the cache holds.
+	 *
+	 * @return The maximum size.
+	 */
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * Returns the number of words cached now.
+	 *
+	 * @return The size.
+	 */
+	public int getSize() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the number of lookups answered from the cache.
+	 *
+	 * @return The number of hits.
+	 */
+	public long getHits() {
+		long hits = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				hits += segment.hits;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that weren't in the cache.
+	 *
+	 * @return The number of misses.
+	 */
+	public long getMisses() {
+		long misses = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				misses += segment.misses;
+			}
+		}
+		return misses;
+	}
+
+	/**
+	 * Returns the number of words dropped to make room, including new words the admission
+	 * filter turned away.
+	 *
+	 * @return The number of evictions.
+	 */
+	public long getEvictions() {
+		long evictions = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				evictions += segment.evictions;
+			}
+		}
+		return evictions;
+	}
+
+	/**
+	 * Returns the fraction of lookups answered from the cache.
+	 *
+	 * @return The hit rate, or 0 before any lookups.
+	 */
+	public double getHitRate() {
+		long hits = getHits();
+		long lookups = hits + getMisses();
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	private Segment segmentFor(long hash) {
+		return segments[(int) (hash >>> 40) & (segments.length - 1)];
+	}
+
+	/**
+	 * Hashes part of an array in place.
+	 */
+	static long hash(char[] word, int offset, int length) {
+		long h = length * 0x9E3779B97F4A7C15L;
+		int i = offset;
+		int end = offset + length;
+		//Four chars at a time, so long words take a quarter of the multiplies.
+		for (; i + 3 < end; i += 4) {
+			long block = word[i] | (long) word[i + 1] << 16 | (long) word[i + 2] << 32 | (long) word[i + 3] << 48;
+			h = (h ^ block) * 0xBF58476D1CE4E5B9L;
+			h ^= h >>> 31;
+		}
+		for (; i < end; i++) {
+			h = (h ^ word[i]) * 0x94D049BB133111EBL;
+		}
+		h ^= h >>> 29;
+		h *= 0xBF58476D1CE4E5B9L;
+		return h ^ (h >>> 32);
+	}
+
+	/**
+	 * A cached word, linked into its hash bucket and into one of the three LRU queues.
+	 */
+	private static final class Node {
+		static final byte WINDOW = 0;
+		static final byte PROBATION = 1;
+		static final byte PROTECTED = 2;
+
+		final long hash;
+		final char[] word;
+		byte result;
+		byte queue;
+		Node nextInBucket;
+		Node prev;
+		Node next;
+
+		Node(long hash, char[] word, byte result) {
+			this.hash = hash;
+			this.word = word;
+			this.result = result;
+		}
+
+		boolean matches(long hash, char[] word, int offset, int length) {
+			if (this.hash != hash || this.word.length != length) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (this.word[i] != word[offset + i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * A doubly linked LRU queue with a sentinel. The head is the most recently used.
+	 */
+	private static final class Queue {
+		final Node sentinel = new Node(0, new char[0], (byte) 0);
+		int size;
+
+		Queue() {
+			sentinel.prev = sentinel;
+			sentinel.next = sentinel;
+		}
+
+		void addFirst(Node node) {
+			node.next = sentinel.next;
+			node.prev = sentinel;
+			sentinel.next.prev = node;
+			sentinel.next = node;
+			size++;
+		}
+
+		void remove(Node node) {
+			node.prev.next = node.next;
+			node.next.prev = node.prev;
+			node.prev = null;
+			node.next = null;
+			size--;
+		}
+
+		Node last() {
+			return sentinel.prev == sentinel ? null : sentinel.prev;
+		}
+
+		void clear() {
+			sentinel.prev = sentinel;
+			sentinel.next = sentinel;
+			size = 0;
+		}
+	}
+
+	/**
+	 * One independently locked part of the cache.
+	 */
+	private static final class Segment {
+		final int capacity;
+		final int windowCapacity;
+		final int protectedCapacity;
+		final Queue window = new Queue();
+		final Queue probation = new Queue();
+		final Queue protectedQueue = new Queue();
+		final FrequencySketch sketch;
+		Node[] table;
+		int size;
+		long version = Long.MIN_VALUE;
+		long hits;
+		long misses;
+		long evictions;
+
+		Segment(int capacity) {
+			this.capacity = Math.max(capacity, 1);
+			//1% window, and 80% of the rest protected, as in the W-TinyLFU paper.
+			this.windowCapacity = Math.max(1, this.capacity / 100);
+			this.protectedCapacity = (this.capacity - windowCapacity) * 4 / 5;
+			this.sketch = new FrequencySketch(this.capacity);
+			this.table = new Node[Integer.highestOneBit(Math.max(this.capacity, 2) * 2 - 1) * 2];
+		}
+
+		synchronized int get(char[] word, int offset, int length, long hash, long version) {
+			sketch.increment(hash);
+			if (version != this.version) {
+				advance(version);
+				misses++;
+				return MISS;
+			}
+			Node node = find(hash, word, offset, length);
+			if (node == null) {
+				misses++;
+				return MISS;
+			}
+			hits++;
+			touch(node);
+			return node.result;
+		}
+
+		synchronized void put(char[] word, int offset, int length, long hash, long version, byte result) {
+			if (!advance(version)) {
+				return;
+			}
+			Node node = find(hash, word, offset, length);
+			if (node != null) {
+				node.result = result;
+				return;
+			}
+			char[] copy = new char[length];
+			System.arraycopy(word, offset, copy, 0, length);
+			node = new Node(hash, copy, result);
+			int bucket = (int) hash & (table.length - 1);
+			node.nextInBucket = table[bucket];
+			table[bucket] = node;
+			size++;
+			node.queue = Node.WINDOW;
+			window.addFirst(node);
+			if (window.size > windowCapacity) {
+				evictFromWindow();
+			}
+		}
+
+		/**
+		 * Moves to a newer version, dropping every entry. Returns false if the version is
+		 * older than the current one, in which case the caller is behind and mustn't store.
+		 */
+		boolean advance(long version) {
+			if (version == this.version) {
+				return true;
+			}
+			if (version < this.version) {
+				return false;
+			}
+			clear();
+			this.version = version;
+			return true;
+		}
+
+		void clear() {
+			Arrays.fill(table, null);
+			window.clear();
+			probation.clear();
+			protectedQueue.clear();
+			size = 0;
+		}
+
+		Node find(long hash, char[] word, int offset, int length) {
+			for (Node node = table[(int) hash & (table.length - 1)]; node != null; node = node.nextInBucket) {
+				if (node.matches(hash, word, offset, length)) {
+					return node;
+				}
+			}
+			return null;
+		}
+
+		void touch(Node node) {
+			if (node.queue == Node.WINDOW) {
+				window.remove(node);
+				window.addFirst(node);
+			} else if (node.queue == Node.PROBATION) {
+				//A second hit in the main area earns a protected place.
+				probation.remove(node);
+				node.queue = Node.PROTECTED;
+				protectedQueue.addFirst(node);
+				if (protectedQueue.size > protectedCapacity) {
+					Node demoted = protectedQueue.last();
+					protectedQueue.remove(demoted);
+					demoted.queue = Node.PROBATION;
+					probation.addFirst(demoted);
+				}
+			} else {
+				protectedQueue.remove(node);
+				protectedQueue.addFirst(node);
+			}
+		}
+
+		/**
+		 * Moves the window's oldest word into the main area if there is room, or if it is
+		 * asked for more often than the main area's oldest probation word; otherwise drops it.
+		 */
+		void evictFromWindow() {
+			Node candidate = window.last();
+			window.remove(candidate);
+			if (size <= capacity) {
+				candidate.queue = Node.PROBATION;
+				probation.addFirst(candidate);
+				return;
+			}
+			Node victim = probation.last();
+			if (victim == null) {
+				victim = protectedQueue.last();
+			}
+			if (victim == null || sketch.frequency(candidate.hash) <= sketch.frequency(victim.hash)) {
+				unlink(candidate);
+				return;
+			}
+			if (victim.queue == Node.PROBATION) {
+				probation.remove(victim);
+			} else {
+				protectedQueue.remove(victim);
+			}
+			unlink(victim);
+			candidate.queue = Node.PROBATION;
+			probation.addFirst(candidate);
+		}
+
+		/**
+		 * Removes a node that is already out of its queue from the hash table.
+		 */
+		void unlink(Node node) {
+			int bucket = (int) node.hash & (table.length - 1);
+			Node prev = null;
+			for (Node n = table[bucket]; n != null; prev = n, n = n.nextInBucket) {
+				if (n == node) {
+					if (prev == null) {
+						table[bucket] = n.nextInBucket;
+					} else {
+						prev.nextInBucket = n.nextInBucket;
+					}
+					break;
+				}
+			}
+			size--;
+			evictions++;
+		}
+	}
+
+	/**
+	 * A count-min sketch of 4-bit counters, 16 to a long. Each hash picks one counter in
+	 * each of four rows of the table.
+	 */
+	private static final class FrequencySketch {
+		private static final long[] SEEDS = { 0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L };
+		private static final long RESET_MASK = 0x7777777777777777L;
+
+		private final long[] table;
+		private final int sampleSize;
+		private int additions;
+
+		FrequencySketch(int capacity) {
+			this.table = new long[Integer.highestOneBit(Math.max(capacity, 4) * 2 - 1)];
+			this.sampleSize = 10 * Math.max(capacity, 4);
+		}
+
+		int frequency(long hash) {
+			int frequency = Integer.MAX_VALUE;
+			for (int i = 0; i < 4; i++) {
+				long h = (hash + SEEDS[i]) * SEEDS[i];
+				int index = (int) (h >>> 32) & (table.length - 1);
+				int shift = (int) (h >>> 60) << 2;
+				frequency = Math.min(frequency, (int) ((table[index] >>> shift) & 0xF));
+			}
+			return frequency;
+		}
+
+		void increment(long hash) {
+			boolean added = false;
+			for (int i = 0; i < 4; i++) {
+				long h = (hash + SEEDS[i]) * SEEDS[i];
+				int index = (int) (h >>> 32) & (table.length - 1);
+				int shift = (int) (h >>> 60) << 2;
+				if (((table[index] >>> shift) & 0xF) != 0xF) {
+					table[index] += 1L << shift;
+					added = true;
+				}
+			}
+			if (added && ++additions == sampleSize) {
+				//Halve every counter so that old popularity fades.
+				for (int i = 0; i < table.length; i++) {
+					table[i] = (table[i] >>> 1) & RESET_MASK;
+				}
+				additions /= 2;
+			}
+		}
+	}
+}
@@ -0,0 +1,311 @@
+package fsmsketcher.engine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ *
+ * Draws test words for a machine from a seed. Words are made by walking the machine's
+ * transitions, so they look like the words the machine was built for instead of random noise:
+ * <ul>
+ * <li>ACCEPT words walk towards an accept state and end on one, so the machine accepts them.
+ * If no accept state can be reached, they are plain walks.</li>
+ * <li>REJECT words walk the machine and take their last step to a state that doesn't accept,
+ * or leave the machine. A deterministic machine rejects them unless the walk ends at a state
+ * that steps on every symbol, only ever to accept states.</li>
+ * <li>UNIFORM words are random symbols from the alphabet.</li>
+ * <li>MIXED draws ACCEPT and REJECT words half of the time each.</li>
+ * </ul>
+ * Lengths are uniform between the minimum and maximum, or follow a Pareto distribution when a
+ * tail exponent is set, so most words are short and a few are very long.
+ *
+ */
+public class WordCorpus {
+
+	/**
+	 * The kinds of word a corpus can draw.
+	 */
+	public enum Kind {
+		ACCEPT, REJECT, UNIFORM, MIXED
+	}
+
+	private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	private final SplittableRandom random;
+	private final char[] symbols;
+	private final int initialState;
+	/**
+	 * The machine copied into flat arrays, which are much quicker to walk than the FSM's lists:
+	 * the transitions of state s are edgeTo[edgeStart[s] ...] and edgeSymbol[edgeStart[s] ...].
+	 */
+	private final int[] edgeStart;
+	private final int[] edgeTo;
+	private final char[] edgeSymbol;
+	private final boolean[] accepting;
+	/**
+	 * The fewest steps from each state to an accept state, built the first time an ACCEPT word is drawn.
+	 */
+	private int[] distance;
+
+	private int minLength;
+	private int maxLength;
+	private double tail;
+
+	private char[] buffer;
+	private int length;
+
+	/**
+	 * Creates a corpus drawing words of length 1 to 64.
+	 *
+	 * @param fsm The machine the words are for.
+	 * @param seed The seed every word is drawn from.
+	 */
+	public WordCorpus(FSM fsm, long seed) {
+		this.random = new SplittableRandom(seed);
+		List<Character> alphabet = fsm.getAlphabet();
+		this.symbols = new char[alphabet.size()];
+		for (int i = 0; i < symbols.length; i++) {
+			symbols[i] = alphabet.get(i);
+		}
+		this.initialState = fsm.getInitialState();
+		int n = fsm.getNumberOfStates();
+		this.edgeStart = new int[n + 1];
+		this.accepting = new boolean[n];
+		for (int s = 0; s < n; s++) {
+			edgeStart[s + 1] = edgeStart[s] + fsm.getTransitions(s).size();
+			accepting[s] = fsm.hasFinalState(s);
+		}
+		this.edgeTo = new int[edgeStart[n]];
+		this.edgeSymbol = new char[edgeStart[n]];
+		for (int s = 0; s < n; s++) {
+			int e = edgeStart[s];
+			for (FSM.pair trans : fsm.getTransitions(s)) {
+				edgeTo[e] = trans.nS;
+				edgeSymbol[e++] = trans.ch;
+			}
+		}
+		this.minLength = 1;
+		this.maxLength = 64;
+		this.tail = 0;
+		this.buffer = new char[64];
+	}
+
+	/**
+	 * Sets how long words are. ACCEPT words may run past the maximum when an accept state is
+	 * further away than that.
+	 *
+	 * @param minLength The shortest length.
+	 * @param maxLength The longest length.
+	 * @param tail The Pareto tail exponent, or 0 or less for lengths that are uniform.
+	 * Smaller exponents give longer tails; 1 to 2 is typical.
+	 */
+	public void setLengths(int minLength, int maxLength, double tail) {
+		if (minLength < 0 || maxLength < minLength) {
+			throw new IllegalArgumentException("Bad word lengths " + minLength + " to " + maxLength);
+		}
+		this.minLength = minLength;
+		this.maxLength = maxLength;
+		this.tail = tail;
+	}
+
+	/**
+	 * Draws a word.
+	 *
+	 * @param kind The kind of word.
+	 * @return The word.
+	 */
+	public String nextWord(Kind kind) {
+		draw(kind);
+		return new String(buffer, 0, length);
+	}
+
+	/**
+	 * Draws words and writes them one per line.
+	 *
+	 * @param out Where the words are written.
+	 * @param count The number of words.
+	 * @param kind The kind of words.
+	 * @throws IOException If the words couldn't be written.
+	 */
+	public void write(Writer out, long count, Kind kind) throws IOException {
+		for (long i = 0; i < count; i++) {
+			draw(kind);
+			append('\n');
+			out.write(buffer, 0, length);
+		}
+		out.flush();
+	}
+
+	private void draw(Kind kind) {
+		length = 0;
+		if (kind == Kind.MIXED) {
+			kind = random.nextBoolean() ? Kind.ACCEPT : Kind.REJECT;
+		}
+		int target = nextLength();
+		if (symbols.length == 0) {
+			return;
+		}
+		if (kind == Kind.UNIFORM) {
+			for (int i = 0; i < target; i++) {
+				append(randomSymbol());
+			}
+		} else if (kind == Kind.ACCEPT && edgeStart.length > 1 && distances()[initialState] != UNREACHABLE) {
+			drawAccepted(target);
+		} else {
+			drawWalk(target, kind == Kind.REJECT);
+		}
+	}
+
+	private int nextLength() {
+		if (tail <= 0) {
+			return minLength + random.nextInt(maxLength - minLength + 1);
+		}
+		double scale = Math.max(minLength, 1);
+		double u = 1 - random.nextDouble();
+		double extra = scale * (Math.pow(u, -1 / tail) - 1);
+		return (int) Math.min(maxLength, minLength + extra);
+	}
+
+	private char randomSymbol() {
+		return symbols[random.nextInt(symbols.length)];
+	}
+
+	/**
+	 * Walks randomly while an accept state can still be reached in the steps that are left,
+	 * then takes the shortest way to one.
+	 */
+	private void drawAccepted(int target) {
+		int[] distance = distances();
+		int state = initialState;
+		while (length < target || distance[state] > 0) {
+			int left = target - length - 1;
+			int chosen = -1;
+			int seen = 0;
+			for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+				if (distance[edgeTo[e]] <= left && random.nextInt(++seen) == 0) {
+					chosen = e;
+				}
+			}
+			if (chosen < 0) {
+				for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+					if (distance[edgeTo[e]] == distance[state] - 1 && random.nextInt(++seen) == 0) {
+						chosen = e;
+					}
+				}
+			}
+			if (chosen < 0) {
+				//An accept state with no way on, so the word ends early.
+				return;
+			}
+			append(edgeSymbol[chosen]);
+			state = edgeTo[chosen];
+		}
+	}
+
+	/**
+	 * Walks randomly. A walk that gets stuck carries on with random symbols. For a reject
+	 * word, the last step goes to a state that doesn't accept if there is one.
+	 */
+	private void drawWalk(int target, boolean reject) {
+		int state = initialState < accepting.length ? initialState : -1;
+		for (int i = 0; i < target; i++) {
+			int degree = state < 0 ? 0 : edgeStart[state + 1] - edgeStart[state];
+			if (degree == 0) {
+				append(randomSymbol());
+				state = -1;
+				continue;
+			}
+			int chosen = -1;
+			if (reject && i == target - 1) {
+				int seen = 0;
+				for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+					if (!accepting[edgeTo[e]] && random.nextInt(++seen) == 0) {
+						chosen = e;
+					}
+				}
+				if (chosen < 0) {
+					//Every step accepts, so step on a symbol this state has no transition on if there is one.
+					int offset = random.nextInt(symbols.length);
+					for (int k = 0; k < symbols.length; k++) {
+						char symbol = symbols[(offset + k) % symbols.length];
+						if (!stepsOn(state, symbol)) {
+							append(symbol);
+							return;
+						}
+					}
+				}
+			}
+			if (chosen < 0) {
+				chosen = edgeStart[state] + random.nextInt(degree);
+			}
+			append(edgeSymbol[chosen]);
+			state = edgeTo[chosen];
+		}
+	}
+
+	private boolean stepsOn(int state, char symbol) {
+		for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+			if (edgeSymbol[e] == symbol) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the fewest steps from every state to an accept state, with a breadth first search
+	 * backwards from the accept states.
+	 */
+	private int[] distances() {
+		if (distance != null) {
+			return distance;
+		}
+		int n = accepting.length;
+		int[] start = new int[n + 1];
+		for (int to : edgeTo) {
+			start[to + 1]++;
+		}
+		for (int s = 0; s < n; s++) {
+			start[s + 1] += start[s];
+		}
+		int[] predecessors = new int[edgeTo.length];
+		int[] fill = Arrays.copyOf(start, n);
+		for (int s = 0; s < n; s++) {
+			for (int e = edgeStart[s]; e < edgeStart[s + 1]; e++) {
+				predecessors[fill[edgeTo[e]]++] = s;
+			}
+		}
+
+		distance = new int[n];
+		Arrays.fill(distance, UNREACHABLE);
+		int[] queue = new int[n];
+		int end = 0;
+		for (int s = 0; s < n; s++) {
+			if (accepting[s]) {
+				distance[s] = 0;
+				queue[end++] = s;
+			}
+		}
+		for (int head = 0; head < end; head++) {
+			int s = queue[head];
+			for (int p = start[s]; p < start[s + 1]; p++) {
+				int from = predecessors[p];
+				if (distance[from] == UNREACHABLE) {
+					distance[from] = distance[s] + 1;
+					queue[end++] = from;
+				}
+			}
+		}
+		return distance;
+	}
+
+	private void append(char c) {
+		if (length == buffer.length) {
+			buffer = Arrays.copyOf(buffer, 2 * length);
+		}
+		buffer[length++] = c;
+	}
+}
@@ -0,0 +1,634 @@
+package fsmsketcher.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ *
+ * Counts the words of each length that a CompiledFSM accepts, without listing them. A
+ * compiled machine is deterministic, so every accepted word is exactly one path from the
+ * initial state to an accept state, and the number of words of length n is u A^n f, where
+ * A[s][t] is the number of symbols that step s to t. A column made from ranges counts once
+ * for every code point of its class.
+ *
+ * Short lengths are counted by pushing a vector of path counts through the transitions once
+ * per symbol. Long lengths raise A to the n-th power by repeated squaring instead, which
+ * costs about the cube of the number of states per bit of n, with the rows of each product
+ * computed in parallel. count() picks whichever is cheaper. Counts are exact with BigInteger,
+ * or reduced modulo a number up to 2^31 when only the residue is wanted. An exact count has
+ * about n log2(alphabet) bits, and multiplying numbers that size dominates for long words,
+ * so lengths in the millions should be counted modulo something.
+ *
+ * States that can't be reached or can't reach an accept state are dropped first, so they
+ * don't add to the matrices. Minimizing the machine beforehand keeps them smaller still.
+ *
+ * It can also be run on a machine file:
+ * <pre>
+ *   java fsmsketcher.engine.WordCounter [--modulus M] [--generating-function] [--cache DIR] machine-file [length ...]
+ * </pre>
+ * which minimizes the machine and writes "length count" for each length.
+ *
+ */
+public final class WordCounter {
+
+	/** The largest modulus, so that a product of two residues fits in a long. */
+	public static final long MAX_MODULUS = 1L << 31;
+	/** Products with fewer rows than this aren't worth splitting over threads. */
+	private static final int PARALLEL_ROWS = 64;
+	/** A running sum is reduced once it passes this, so adding one more product can't overflow. */
+	private static final long REDUCE_AT = 1L << 62;
+	private static final long CACHE_BYTES = 1L << 30;
+
+	/** The number of live states. State 0 is the initial state. */
+	private final int size;
+	/** The number of code points the columns step on, which bounds how fast counts grow with the length. */
+	private final int symbols;
+	private final boolean[] accept;
+	/** The transitions of live state s go to edgeTo[edgeStart[s] ...], each on edgeCount symbols. */
+	private final int[] edgeStart;
+	private final int[] edgeTo;
+	private final int[] edgeCount;
+
+	/**
+	 * A generating function sum a_n z^n for the number of accepted words of each length, as
+	 * the ratio of two polynomials with integer coefficients. The denominator is
+	 * det(I - zA), so its constant term is 1. The ratio isn't always in lowest terms.
+	 */
+	public static final class GeneratingFunction {
+		private final BigInteger[] numerator;
+		private final BigInteger[] denominator;
+
+		GeneratingFunction(BigInteger[] numerator, BigInteger[] denominator) {
+			this.numerator = numerator;
+			this.denominator = denominator;
+		}
+
+		/**
+		 * Returns the numerator's coefficients, lowest power first.
+		 *
+		 * @return A copy of the coefficients.
+		 */
+		public BigInteger[] getNumerator() {
+			return numerator.clone();
+		}
+
+		/**
+		 * Returns the denominator's coefficients, lowest power first.
+		 *
+		 * @return A copy of the coefficients.
+		 */
+		public BigInteger[] getDenominator() {
+			return denominator.clone();
+		}
+
+		/**
+		 * Expands the series, which gives the number of accepted words of every length up to
+		 * a limit. Each coefficient follows from the ones before it by the linear recurrence
+		 * the denominator defines.
+		 *
+		 * @param count The number of coefficients.
+		 * @return The number of accepted words of length 0 to count - 1.
+		 */
+		public BigInteger[] coefficients(int count) {
+			BigInteger[] a = new BigInteger[count];
+			for (int n = 0; n < count; n++) {
+				BigInteger sum = n < numerator.length ? numerator[n] : BigInteger.ZERO;
+				for (int i = 1; i < denominator.length && i <= n; i++) {
+					if (denominator[i].signum() != 0) {
+						sum = sum.subtract(denominator[i].multiply(a[n - i]));
+					}
+				}
+				a[n] = sum;
+			}
+			return a;
+		}
+
+		/**
+		 * Writes the function as a ratio in z.
+		 *
+		 * @return The ratio, such as "(1) / (1 - 2z)".
+		 */
+		@Override
+		public String toString() {
+			return "(" + format(numerator) + ") / (" + format(denominator) + ")";
+		}
+
+		private static String format(BigInteger[] polynomial) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < polynomial.length; i++) {
+				BigInteger coefficient = polynomial[i];
+				if (coefficient.signum() == 0) {
+					continue;
+				}
+				if (sb.length() > 0) {
+					sb.append(coefficient.signum() < 0 ? " - " : " + ");
+				} else if (coefficient.signum() < 0) {
+					sb.append('-');
+				}
+				BigInteger magnitude = coefficient.abs();
+				if (i == 0 || !magnitude.equals(BigInteger.ONE)) {
+					sb.append(magnitude);
+				}
+				if (i > 0) {
+					sb.append('z');
+				}
+				if (i > 1) {
+					sb.append('^').append(i);
+				}
+			}
+			return sb.length() == 0 ? "0" : sb.toString();
+		}
+	}
+
+	/**
+	 * Prepares to count the words a machine accepts.
+	 *
+	 * @param dfa The machine.
+	 */
+	public WordCounter(CompiledFSM dfa) {
+		int n = dfa.getNumberOfStates();
+		int columns = dfa.getNumberOfColumns();
+		int initial = dfa.getInitialState();
+		//A column steps on every code point of its class, so it stands for that many symbols.
+		int[] weight = new int[columns];
+		int total = 0;
+		for (int c = 0; c < columns; c++) {
+			weight[c] = dfa.getSymbolSet(c).size();
+			total += weight[c];
+		}
+		symbols = total;
+
+		//Breadth first from the initial state, so the initial state comes first.
+		int[] order = new int[n];
+		int reached = 0;
+		boolean[] reachable = new boolean[n];
+		if (initial >= 0 && initial < n) {
+			reachable[initial] = true;
+			order[reached++] = initial;
+		}
+		for (int head = 0; head < reached; head++) {
+			for (int c = 0; c < columns; c++) {
+				int t = dfa.next(order[head], c);
+				if (t != CompiledFSM.DEAD && !reachable[t]) {
+					reachable[t] = true;
+					order[reached++] = t;
+				}
+			}
+		}
+
+		//Then backwards from the reachable accept states.
+		int[] predStart = new int[n + 1];
+		for (int i = 0; i < reached; i++) {
+			for (int c = 0; c < columns; c++) {
+				int t = dfa.next(order[i], c);
+				if (t != CompiledFSM.DEAD) {
+					predStart[t + 1]++;
+				}
+			}
+		}
+		for (int t = 0; t < n; t++) {
+			predStart[t + 1] += predStart[t];
+		}
+		int[] preds = new int[predStart[n]];
+		int[] fill = Arrays.copyOf(predStart, n);
+		for (int i = 0; i < reached; i++) {
+			for (int c = 0; c < columns; c++) {
+				int t = dfa.next(order[i], c);
+				if (t != CompiledFSM.DEAD) {
+					preds[fill[t]++] = order[i];
+				}
+			}
+		}
+		boolean[] live = new boolean[n];
+		int[] queue = new int[n];
+		int queued = 0;
+		for (int i = 0; i < reached; i++) {
+			if (dfa.isAcceptState(order[i])) {
+				live[order[i]] = true;
+				queue[queued++] = order[i];
+			}
+		}
+		for (int head = 0; head < queued; head++) {
+			int t = queue[head];
+			for (int p = predStart[t]; p < predStart[t + 1]; p++) {
+				if (!live[preds[p]]) {
+					live[preds[p]] = true;
+					queue[queued++] = preds[p];
+				}
+			}
+		}
+
+		int[] index = new int[n];
+		Arrays.fill(index, -1);
+		int count = 0;
+		for (int i = 0; i < reached; i++) {
+			if (live[order[i]]) {
+				index[order[i]] = count++;
+			}
+		}
+		if (count > 0 && index[initial] != 0) {
+			//The initial state can't reach an accept state, so nothing is accepted.
+			count = 0;
+		}
+		size = count;
+		accept = new boolean[size];
+		edgeStart = new int[size + 1];
+
+		//Merge the columns between each pair of live states into one edge with a symbol count.
+		int[] symbolsTo = new int[size];
+		int[] targets = new int[size];
+		List<int[]> rows = new ArrayList<>(size);
+		for (int i = 0; i < reached && rows.size() < size; i++) {
+			int s = order[i];
+			if (index[s] < 0) {
+				continue;
+			}
+			accept[index[s]] = dfa.isAcceptState(s);
+			int distinct = 0;
+			for (int c = 0; c < columns; c++) {
+				int t = dfa.next(s, c);
+				if (t == CompiledFSM.DEAD || index[t] < 0) {
+					continue;
+				}
+				if (symbolsTo[index[t]] == 0) {
+					targets[distinct++] = index[t];
+				}
+				symbolsTo[index[t]] += weight[c];
+			}
+			int[] row = new int[2 * distinct];
+			for (int d = 0; d < distinct; d++) {
+				row[2 * d] = targets[d];
+				row[2 * d + 1] = symbolsTo[targets[d]];
+				symbolsTo[targets[d]] = 0;
+			}
+			rows.add(row);
+			edgeStart[rows.size()] = edgeStart[rows.size() - 1] + distinct;
+		}
+		edgeTo = new int[edgeStart[size]];
+		edgeCount = new int[edgeStart[size]];
+		for (int s = 0; s < size; s++) {
+			int[] row = rows.get(s);
+			for (int d = 0; d < row.length / 2; d++) {
+				edgeTo[edgeStart[s] + d] = row[2 * d];
+				edgeCount[edgeStart[s] + d] = row[2 * d + 1];
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of states that are counted over: those reachable from the initial
+	 * state that can reach an accept state.
+	 *
+	 * @return The number of live states, or 0 if the machine accepts nothing.
+	 */
+	public int getNumberOfLiveStates() {
+		return size;
+	}
+
+	/**
+	 * Counts the accepted words of a length exactly.
+	 *
+	 * @param length The word length.
+	 * @return The number of accepted words of that length.
+	 */
+	public BigInteger count(long length) {
+		checkLength(length);
+		if (size == 0) {
+			return BigInteger.ZERO;
+		}
+		BigInteger[] vector = new BigInteger[size];
+		Arrays.fill(vector, BigInteger.ZERO);
+		vector[0] = BigInteger.ONE;
+		if (stepIsCheaper(length, true)) {
+			for (long i = 0; i < length; i++) {
+				vector = step(vector);
+			}
+		} else {
+			BigInteger[] matrix = new BigInteger[size * size];
+			Arrays.fill(matrix, BigInteger.ZERO);
+			for (int s = 0; s < size; s++) {
+				for (int e = edgeStart[s]; e < edgeStart[s + 1]; e++) {
+					matrix[s * size + edgeTo[e]] = BigInteger.valueOf(edgeCount[e]);
+				}
+			}
+			for (long n = length; n > 0; n >>>= 1) {
+				if ((n & 1) != 0) {
+					vector = multiply(vector, matrix);
+				}
+				if (n > 1) {
+					matrix = multiply(matrix, matrix);
+				}
+			}
+		}
+		BigInteger total = BigInteger.ZERO;
+		for (int s = 0; s < size; s++) {
+			if (accept[s]) {
+				total = total.add(vector[s]);
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Counts the accepted words of a length modulo a number.
+	 *
+	 * @param length The word length.
+	 * @param modulus The modulus, from 1 to MAX_MODULUS.
+	 * @return The number of accepted words of that length, modulo modulus.
+	 */
+	public long count(long length, long modulus) {
+		checkLength(length);
+		if (modulus < 1 || modulus > MAX_MODULUS) {
+			throw new IllegalArgumentException("The modulus must be from 1 to " + MAX_MODULUS + ".");
+		}
+		if (size == 0) {
+			return 0;
+		}
+		long[] vector = new long[size];
+		vector[0] = 1 % modulus;
+		if (stepIsCheaper(length, false)) {
+			for (long i = 0; i < length; i++) {
+				vector = step(vector, modulus);
+			}
+		} else {
+			long[] matrix = new long[size * size];
+			for (int s = 0; s < size; s++) {
+				for (int e = edgeStart[s]; e < edgeStart[s + 1]; e++) {
+					matrix[s * size + edgeTo[e]] = edgeCount[e] % modulus;
+				}
+			}
+			for (long n = length; n > 0; n >>>= 1) {
+				if ((n & 1) != 0) {
+					vector = multiply(vector, matrix, modulus);
+				}
+				if (n > 1) {
+					matrix = multiply(matrix, matrix, modulus);
+				}
+			}
+		}
+		long total = 0;
+		for (int s = 0; s < size; s++) {
+			if (accept[s]) {
+				total = (total + vector[s]) % modulus;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Works out the generating function for the number of accepted words of every length.
+	 * The denominator is found with the Faddeev-LeVerrier recurrence, one sparse product per
+	 * live state, so this is meant for machines of up to a few hundred live states.
+	 *
+	 * @return The generating function.
+	 */
+	public GeneratingFunction generatingFunction() {
+		if (size == 0) {
+			return new GeneratingFunction(new BigInteger[] { BigInteger.ZERO }, new BigInteger[] { BigInteger.ONE });
+		}
+		//c[i] is the coefficient of z^i in det(I - zA), which is the characteristic
+		//polynomial of A with its coefficients reversed.
+		BigInteger[] c = new BigInteger[size + 1];
+		c[0] = BigInteger.ONE;
+		BigInteger[] m = new BigInteger[size * size];
+		Arrays.fill(m, BigInteger.ZERO);
+		for (int s = 0; s < size; s++) {
+			m[s * size + s] = BigInteger.ONE;
+		}
+		for (int i = 1; i <= size; i++) {
+			BigInteger[] am = multiplyByTransitions(m);
+			BigInteger trace = BigInteger.ZERO;
+			for (int s = 0; s < size; s++) {
+				trace = trace.add(am[s * size + s]);
+			}
+			c[i] = trace.divide(BigInteger.valueOf(i)).negate();
+			for (int s = 0; s < size; s++) {
+				am[s * size + s] = am[s * size + s].add(c[i]);
+			}
+			m = am;
+		}
+
+		//The numerator is the denominator times the series, which stops below z^size.
+		BigInteger[] vector = new BigInteger[size];
+		Arrays.fill(vector, BigInteger.ZERO);
+		vector[0] = BigInteger.ONE;
+		BigInteger[] a = new BigInteger[size];
+		for (int n = 0; n < size; n++) {
+			BigInteger total = BigInteger.ZERO;
+			for (int s = 0; s < size; s++) {
+				if (accept[s]) {
+					total = total.add(vector[s]);
+				}
+			}
+			a[n] = total;
+			vector = step(vector);
+		}
+		BigInteger[] p = new BigInteger[size];
+		for (int j = 0; j < size; j++) {
+			BigInteger sum = BigInteger.ZERO;
+			for (int i = 0; i <= j; i++) {
+				if (c[i].signum() != 0) {
+					sum = sum.add(c[i].multiply(a[j - i]));
+				}
+			}
+			p[j] = sum;
+		}
+		return new GeneratingFunction(trim(p), trim(c));
+	}
+
+	private static BigInteger[] trim(BigInteger[] polynomial) {
+		int length = polynomial.length;
+		while (length > 1 && polynomial[length - 1].signum() == 0) {
+			length--;
+		}
+		return Arrays.copyOf(polynomial, length);
+	}
+
+	private static void checkLength(long length) {
+		if (length < 0) {
+			throw new IllegalArgumentException("The word length must not be negative.");
+		}
+	}
+
+	/**
+	 * Returns whether stepping the vector once per symbol costs less than squaring the matrix
+	 * once per bit of the length. Exact counts grow to about length log2(symbols) bits, and
+	 * multiplying two of them costs more than adding them by roughly the square root of their
+	 * length in words, which the steps only add.
+	 */
+	private boolean stepIsCheaper(long length, boolean exact) {
+		int bits = 64 - Long.numberOfLeadingZeros(length);
+		double power = (double) size * size * size * bits;
+		if (exact) {
+			power *= Math.sqrt(Math.max(1, length * Math.log(Math.max(symbols, 2)) / Math.log(2) / 64));
+		}
+		return (double) length * Math.max(edgeTo.length, 1) <= power;
+	}
+
+	private void forEachRow(IntConsumer row) {
+		IntStream rows = IntStream.range(0, size);
+		(size < PARALLEL_ROWS ? rows : rows.parallel()).forEach(row);
+	}
+
+	private BigInteger[] step(BigInteger[] from) {
+		BigInteger[] to = new BigInteger[size];
+		Arrays.fill(to, BigInteger.ZERO);
+		for (int s = 0; s < size; s++) {
+			if (from[s].signum() == 0) {
+				continue;
+			}
+			for (int e = edgeStart[s]; e < edgeStart[s + 1]; e++) {
+				BigInteger paths = edgeCount[e] == 1 ? from[s] : from[s].multiply(BigInteger.valueOf(edgeCount[e]));
+				to[edgeTo[e]] = to[edgeTo[e]].add(paths);
+			}
+		}
+		return to;
+	}
+
+	private long[] step(long[] from, long modulus) {
+		long[] to = new long[size];
+		for (int s = 0; s < size; s++) {
+			if (from[s] == 0) {
+				continue;
+			}
+			for (int e = edgeStart[s]; e < edgeStart[s + 1]; e++) {
+				to[edgeTo[e]] = (to[edgeTo[e]] + from[s] * (edgeCount[e] % modulus)) % modulus;
+			}
+		}
+		return to;
+	}
+
+	/**
+	 * Multiplies a row vector, or each row of a matrix, by a matrix.
+	 */
+	private BigInteger[] multiply(BigInteger[] a, BigInteger[] b) {
+		BigInteger[] product = new BigInteger[a.length];
+		Arrays.fill(product, BigInteger.ZERO);
+		IntConsumer row = i -> {
+			int r = i * size;
+			for (int k = 0; k < size; k++) {
+				BigInteger aik = a[r + k];
+				if (aik.signum() == 0) {
+					continue;
+				}
+				for (int j = 0, bk = k * size; j < size; j++) {
+					if (b[bk + j].signum() != 0) {
+						product[r + j] = product[r + j].add(aik.multiply(b[bk + j]));
+					}
+				}
+			}
+		};
+		if (a.length == size) {
+			row.accept(0);
+		} else {
+			forEachRow(row);
+		}
+		return product;
+	}
+
+	private long[] multiply(long[] a, long[] b, long modulus) {
+		long[] product = new long[a.length];
+		IntConsumer row = i -> {
+			int r = i * size;
+			for (int k = 0; k < size; k++) {
+				long aik = a[r + k];
+				if (aik == 0) {
+					continue;
+				}
+				for (int j = 0, bk = k * size; j < size; j++) {
+					long sum = product[r + j] + aik * b[bk + j];
+					product[r + j] = sum >= REDUCE_AT ? sum % modulus : sum;
+				}
+			}
+			for (int j = 0; j < size; j++) {
+				product[r + j] %= modulus;
+			}
+		};
+		if (a.length == size) {
+			row.accept(0);
+		} else {
+			forEachRow(row);
+		}
+		return product;
+	}
+
+	/**
+	 * Multiplies a matrix on the left by A, using the transitions instead of a dense A.
+	 */
+	private BigInteger[] multiplyByTransitions(BigInteger[] m) {
+		BigInteger[] product = new BigInteger[size * size];
+		Arrays.fill(product, BigInteger.ZERO);
+		forEachRow(s -> {
+			int r = s * size;
+			for (int e = edgeStart[s]; e < edgeStart[s + 1]; e++) {
+				BigInteger count = BigInteger.valueOf(edgeCount[e]);
+				for (int j = 0, t = edgeTo[e] * size; j < size; j++) {
+					if (m[t + j].signum() != 0) {
+						product[r + j] = product[r + j].add(count.multiply(m[t + j]));
+					}
+				}
+			}
+		});
+		return product;
+	}
+
+	public static void main(String[] args) {
+		long modulus = 0;
+		boolean generatingFunction = false;
+		File cacheDirectory = null;
+		File machineFile = null;
+		List<Long> lengths = new ArrayList<>();
+		boolean usage = false;
+		try {
+			for (int i = 0; i < args.length && !usage; i++) {
+				boolean hasValue = i + 1 < args.length;
+				if (args[i].equals("--modulus") && hasValue) {
+					modulus = Long.parseLong(args[++i]);
+				} else if (args[i].equals("--generating-function")) {
+					generatingFunction = true;
+				} else if (args[i].equals("--cache") && hasValue) {
+					cacheDirectory = new File(args[++i]);
+				} else if (machineFile == null && !args[i].startsWith("--")) {
+					machineFile = new File(args[i]);
+				} else if (machineFile != null && !args[i].startsWith("--")) {
+					lengths.add(Long.parseLong(args[i]));
+				} else {
+					usage = true;
+				}
+			}
+		} catch (NumberFormatException e) {
+			usage = true;
+		}
+		if (usage || machineFile == null || (lengths.isEmpty() && !generatingFunction)) {
+			System.err.println("Usage: java fsmsketcher.engine.WordCounter [--modulus M] [--generating-function] [--cache DIR]");
+			System.err.println("           machine-file [length ...]");
+			System.exit(2);
+		}
+
+		try {
+			CompiledCache cache = cacheDirectory == null ? null : new CompiledCache(cacheDirectory, CACHE_BYTES);
+			WordCounter counter = new WordCounter(BatchEvaluator.load(machineFile, cache).minimize());
+			if (generatingFunction) {
+				System.out.println(counter.generatingFunction());
+			}
+			for (long length : lengths) {
+				long start = System.nanoTime();
+				String count = modulus > 0 ? Long.toString(counter.count(length, modulus)) : counter.count(length).toString();
+				System.out.println(length + " " + count);
+				System.err.printf("Counted length %d in %.1f ms.%n", length, (System.nanoTime() - start) / 1e6);
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(2);
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,379 @@
+package fsmsketcher.engine;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ *
+ * Draws accepted words of a given length uniformly at random, so every accepted word of that
+ * length is equally likely. It counts, for every state and every number of symbols left, how
+ * many ways there are to finish in an accept state. A word is then one random number below
+ * the total for its length, unranked one symbol at a time: each step takes the column whose
+ * range of completions the number falls in, then the code point of the column's class that
+ * the number picks out. Nothing is rejected and retried, so sparse languages cost the same as
+ * dense ones. Lengths count code points, so a word over ranges above U+FFFF has more chars.
+ *
+ * The counts take (maxLength + 1) * states entries. They are longs while they fit, and
+ * BigIntegers otherwise, which makes drawing slower by the length of the numbers.
+ *
+ * Words for files are drawn in chunks, each from its own SplittableRandom split off one seeded
+ * root in order, so the same seed gives the same words however many threads draw them:
+ * <pre>
+ *   java fsmsketcher.engine.WordSampler [--seed S] [--threads T] [--cache DIR] machine-file length count
+ * </pre>
+ *
+ */
+public final class WordSampler {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final long CACHE_BYTES = 1L << 30;
+	/** The number of words drawn from each split random. */
+	private static final int CHUNK = 4096;
+
+	private final CompiledFSM dfa;
+	private final int states;
+	private final int maxLength;
+	/** The number of code points each column steps on. */
+	private final int[] weight;
+	/** The most chars one symbol takes: 2 if some column reaches above U+FFFF, 1 otherwise. */
+	private final int width;
+	/** The ways to finish from state s with r symbols left are at [r * states + s]. */
+	private final long[] counts;
+	/** The same counts, when some of them don't fit in a long. */
+	private final BigInteger[] bigCounts;
+
+	/**
+	 * Counts the completions of every length up to a limit.
+	 *
+	 * @param dfa The machine.
+	 * @param maxLength The longest word that will be drawn.
+	 */
+	public WordSampler(CompiledFSM dfa, int maxLength) {
+		if (maxLength < 0) {
+			throw new IllegalArgumentException("The word length must not be negative.");
+		}
+		this.dfa = dfa;
+		this.states = dfa.getNumberOfStates();
+		this.maxLength = maxLength;
+		this.weight = new int[dfa.getNumberOfColumns()];
+		for (int c = 0; c < weight.length; c++) {
+			weight[c] = dfa.getSymbolSet(c).size();
+		}
+		this.width = dfa.getClasses().hasSupplementary() ? 2 : 1;
+		long[] table = countLongs();
+		this.counts = table;
+		this.bigCounts = table == null ? countBigIntegers() : null;
+	}
+
+	/**
+	 * Returns the counts as longs, or null if one of them overflows.
+	 */
+	private long[] countLongs() {
+		int columns = dfa.getNumberOfColumns();
+		long[] table = new long[Math.multiplyExact(maxLength + 1, states)];
+		for (int s = 0; s < states; s++) {
+			table[s] = dfa.isAcceptState(s) ? 1 : 0;
+		}
+		for (int r = 1; r <= maxLength; r++) {
+			int row = r * states;
+			int previous = row - states;
+			for (int s = 0; s < states; s++) {
+				long total = 0;
+				for (int c = 0; c < columns; c++) {
+					int t = dfa.next(s, c);
+					if (t != CompiledFSM.DEAD) {
+						try {
+							total = Math.addExact(total, Math.multiplyExact(weight[c], table[previous + t]));
+						} catch (ArithmeticException e) {
+							return null;
+						}
+					}
+				}
+				table[row + s] = total;
+			}
+		}
+		return table;
+	}
+
+	private BigInteger[] countBigIntegers() {
+		int columns = dfa.getNumberOfColumns();
+		BigInteger[] table = new BigInteger[(maxLength + 1) * states];
+		for (int s = 0; s < states; s++) {
+			table[s] = dfa.isAcceptState(s) ? BigInteger.ONE : BigInteger.ZERO;
+		}
+		for (int r = 1; r <= maxLength; r++) {
+			int row = r * states;
+			int previous = row - states;
+			for (int s = 0; s < states; s++) {
+				BigInteger total = BigInteger.ZERO;
+				for (int c = 0; c < columns; c++) {
+					int t = dfa.next(s, c);
+					if (t != CompiledFSM.DEAD) {
+						BigInteger ways = table[previous + t];
+						total = total.add(weight[c] == 1 ? ways : ways.multiply(BigInteger.valueOf(weight[c])));
+					}
+				}
+				table[row + s] = total;
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Returns the longest word that can be drawn.
+	 *
+	 * @return The length the counts were made for.
+	 */
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	/**
+	 * Returns the number of accepted words of a length, each of which sample() is equally
+	 * likely to draw.
+	 *
+	 * @param length The word length, up to getMaxLength().
+	 * @return The number of accepted words of that length.
+	 */
+	public BigInteger count(int length) {
+		checkLength(length);
+		int initial = dfa.getInitialState();
+		if (states == 0) {
+			return BigInteger.ZERO;
+		}
+		return counts != null ? BigInteger.valueOf(counts[length * states + initial]) : bigCounts[length * states + initial];
+	}
+
+	private void checkLength(int length) {
+		if (length < 0 || length > maxLength) {
+			throw new IllegalArgumentException("The word length must be from 0 to " + maxLength + ".");
+		}
+	}
+
+	/**
+	 * Draws an accepted word.
+	 *
+	 * @param length The word length, up to getMaxLength().
+	 * @param random Where the randomness comes from.
+	 * @return The word, or null if no word of that length is accepted.
+	 */
+	public char[] sample(int length, SplittableRandom random) {
+		checkLength(length);
+		char[] word = new char[length * width];
+		int end = sample(word, 0, length, random);
+		return end < 0 ? null : end == word.length ? word : Arrays.copyOf(word, end);
+	}
+
+	/**
+	 * Draws an accepted word into a buffer, which needs room for length * width chars.
+	 *
+	 * @return The offset after the word, or -1 if there was no word to draw.
+	 */
+	private int sample(char[] buffer, int offset, int length, SplittableRandom random) {
+		if (states == 0) {
+			return -1;
+		}
+		int state = dfa.getInitialState();
+		int columns = dfa.getNumberOfColumns();
+		if (counts != null) {
+			long total = counts[length * states + state];
+			if (total == 0) {
+				return -1;
+			}
+			long rank = random.nextLong(total);
+			for (int r = length; r > 0; r--) {
+				int previous = (r - 1) * states;
+				for (int c = 0; c < columns; c++) {
+					int t = dfa.next(state, c);
+					if (t == CompiledFSM.DEAD) {
+						continue;
+					}
+					//Each code point of the column has ways completions, and the total fits since the state's does.
+					long ways = counts[previous + t];
+					long columnWays = ways * weight[c];
+					if (rank < columnWays) {
+						offset += Character.toChars(dfa.getSymbolSet(c).get((int) (rank / ways)), buffer, offset);
+						rank %= ways;
+						state = t;
+						break;
+					}
+					rank -= columnWays;
+				}
+			}
+		} else {
+			BigInteger total = bigCounts[length * states + state];
+			if (total.signum() == 0) {
+				return -1;
+			}
+			BigInteger rank = below(total, random);
+			for (int r = length; r > 0; r--) {
+				int previous = (r - 1) * states;
+				for (int c = 0; c < columns; c++) {
+					int t = dfa.next(state, c);
+					if (t == CompiledFSM.DEAD) {
+						continue;
+					}
+					BigInteger ways = bigCounts[previous + t];
+					BigInteger columnWays = weight[c] == 1 ? ways : ways.multiply(BigInteger.valueOf(weight[c]));
+					if (rank.compareTo(columnWays) < 0) {
+						BigInteger[] position = rank.divideAndRemainder(ways);
+						offset += Character.toChars(dfa.getSymbolSet(c).get(position[0].intValue()), buffer, offset);
+						rank = position[1];
+						state = t;
+						break;
+					}
+					rank = rank.subtract(columnWays);
+				}
+			}
+		}
+		return offset;
+	}
+
+	/**
+	 * Returns a uniformly random number from 0 to bound - 1.
+	 */
+	private static BigInteger below(BigInteger bound, SplittableRandom random) {
+		int bits = bound.bitLength();
+		byte[] bytes = new byte[(bits + 7) / 8 + 1];
+		while (true) {
+			for (int i = 1; i < bytes.length; i++) {
+				bytes[i] = (byte) random.nextInt();
+			}
+			//Clear the bits above the bound's length, so each try succeeds at least half of the time.
+			bytes[1] &= (byte) (0xff >>> (8 * (bytes.length - 1) - bits));
+			BigInteger candidate = new BigInteger(bytes);
+			if (candidate.compareTo(bound) < 0) {
+				return candidate;
+			}
+		}
+	}
+
+	/**
+	 * Draws words and writes them one per line. Chunks of words are drawn on several threads
+	 * and written in order.
+	 *
+	 * @param out Where the words are written.
+	 * @param length The word length, up to getMaxLength().
+	 * @param count The number of words.
+	 * @param seed The seed the words are drawn from.
+	 * @param threads The number of threads drawing words.
+	 * @throws IOException If the words couldn't be written.
+	 */
+	public void write(Writer out, int length, long count, long seed, int threads) throws IOException {
+		checkLength(length);
+		if (count > 0 && count(length).signum() == 0) {
+			throw new IllegalArgumentException("No word of length " + length + " is accepted.");
+		}
+		threads = Math.max(threads, 1);
+		SplittableRandom root = new SplittableRandom(seed);
+		ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "fsm-sampler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			ArrayDeque<Future<char[]>> pending = new ArrayDeque<>();
+			long left = count;
+			while (left > 0 || !pending.isEmpty()) {
+				//Keep a few chunks ahead of the writer so no thread waits on it.
+				while (left > 0 && pending.size() < 2 * threads) {
+					int words = (int) Math.min(CHUNK, left);
+					SplittableRandom random = root.split();
+					pending.add(pool.submit(() -> drawChunk(length, words, random)));
+					left -= words;
+				}
+				try {
+					out.write(pending.poll().get());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while drawing words.");
+				} catch (ExecutionException e) {
+					throw new IOException("Couldn't draw words.", e.getCause());
+				}
+			}
+			out.flush();
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private char[] drawChunk(int length, int words, SplittableRandom random) {
+		char[] chunk = new char[words * (length * width + 1)];
+		int offset = 0;
+		for (int i = 0; i < words; i++) {
+			offset = sample(chunk, offset, length, random);
+			chunk[offset++] = '\n';
+		}
+		return offset == chunk.length ? chunk : Arrays.copyOf(chunk, offset);
+	}
+
+	public static void main(String[] args) {
+		long seed = 1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		File cacheDirectory = null;
+		File machineFile = null;
+		int length = -1;
+		long count = -1;
+		boolean usage = false;
+		try {
+			for (int i = 0; i < args.length && !usage; i++) {
+				boolean hasValue = i + 1 < args.length;
+				if (args[i].equals("--seed") && hasValue) {
+					seed = Long.parseLong(args[++i]);
+				} else if (args[i].equals("--threads") && hasValue) {
+					threads = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("--cache") && hasValue) {
+					cacheDirectory = new File(args[++i]);
+				} else if (machineFile == null && !args[i].startsWith("--")) {
+					machineFile = new File(args[i]);
+				} else if (length < 0 && !args[i].startsWith("--")) {
+					length = Integer.parseInt(args[i]);
+				} else if (count < 0 && !args[i].startsWith("--")) {
+					count = Long.parseLong(args[i]);
+				} else {
+					usage = true;
+				}
+			}
+		} catch (NumberFormatException e) {
+			usage = true;
+		}
+		if (usage || machineFile == null || length < 0 || count < 0 || threads < 1) {
+			System.err.println("Usage: java fsmsketcher.engine.WordSampler [--seed S] [--threads T] [--cache DIR] machine-file length count");
+			System.exit(2);
+		}
+
+		try {
+			long start = System.nanoTime();
+			CompiledCache cache = cacheDirectory == null ? null : new CompiledCache(cacheDirectory, CACHE_BYTES);
+			WordSampler sampler = new WordSampler(BatchEvaluator.load(machineFile, cache).minimize(), length);
+			long counted = System.nanoTime();
+			Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), BUFFER_SIZE);
+			sampler.write(out, length, count, seed, threads);
+			System.err.printf("Counted %s words of length %d in %.1f ms. Drew %d of them in %.1f ms.%n", sampler.count(length),
+							  length, (counted - start) / 1e6, count, (System.nanoTime() - counted) / 1e6);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(2);
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+}
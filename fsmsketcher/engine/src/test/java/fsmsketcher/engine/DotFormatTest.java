@@ -0,0 +1,28 @@
+package fsmsketcher.engine;
+
+import static fsmsketcher.engine.TestMachines.assertSameDocument;
+import static fsmsketcher.engine.TestMachines.sampleDocument;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+class DotFormatTest {
+
+	@Test
+	void writtenDocumentReadsBackTheSame() throws IOException {
+		FSMDocument document = sampleDocument();
+		StringWriter out = new StringWriter();
+		DotFormat.write(document, out);
+		assertSameDocument(document, DotFormat.read(new StringReader(out.toString())));
+	}
+
+	@Test
+	void emptyDocumentReadsBackEmpty() throws IOException {
+		StringWriter out = new StringWriter();
+		DotFormat.write(new FSMDocument(), out);
+		assertSameDocument(new FSMDocument(), DotFormat.read(new StringReader(out.toString())));
+	}
+}
@@ -0,0 +1,76 @@
+package fsmsketcher.engine;
+
+import static fsmsketcher.engine.TestMachines.assertSameDocument;
+import static fsmsketcher.engine.TestMachines.assertSameTable;
+import static fsmsketcher.engine.TestMachines.sampleDocument;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FSMFileTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void bothSectionsReadBackTheSame() throws IOException {
+		FSMDocument document = sampleDocument();
+		CompiledFSM compiled = document.toFSM().compile();
+		File file = directory.resolve("machine.fsm").toFile();
+		FSMFile.write(file, document, compiled);
+		assertSameDocument(document, FSMFile.readDocument(file));
+		assertSameTable("sample", compiled, FSMFile.mapCompiled(file));
+	}
+
+	@Test
+	void largeTableSpanningPagesReadsBackTheSame() throws IOException {
+		MachineGenerator generator = new MachineGenerator(7);
+		generator.setAlphabetSize(20);
+		generator.setNondeterminism(0);
+		CompiledFSM compiled = generator.generate(5000).compile();
+		File file = directory.resolve("large.fsm").toFile();
+		FSMFile.write(file, null, compiled);
+		assertNull(FSMFile.readDocument(file));
+		assertSameTable("large", compiled, FSMFile.mapCompiled(file));
+	}
+
+	@Test
+	void documentOnlyHasNoCompiledSection() throws IOException {
+		FSMDocument document = sampleDocument();
+		File file = directory.resolve("document.fsm").toFile();
+		FSMFile.write(file, document, null);
+		assertSameDocument(document, FSMFile.readDocument(file));
+		assertNull(FSMFile.mapCompiled(file));
+	}
+
+	@Test
+	void corruptCompiledSectionIsRejected() throws IOException {
+		File file = directory.resolve("corrupt.fsm").toFile();
+		FSMFile.write(file, sampleDocument(), sampleDocument().toFSM().compile());
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		int compiledOffset = (int) ByteBuffer.wrap(bytes).getLong(24);
+		//rowsPerPage of 0.
+		ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(compiledOffset + 12, 0);
+		Files.write(file.toPath(), bytes);
+		assertThrows(IOException.class, () -> FSMFile.mapCompiled(file));
+	}
+
+	@Test
+	void sectionPastTheEndIsRejected() throws IOException {
+		File file = directory.resolve("truncated.fsm").toFile();
+		FSMFile.write(file, sampleDocument(), null);
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		ByteBuffer.wrap(bytes).putLong(8, 1L << 40);
+		Files.write(file.toPath(), bytes);
+		assertThrows(IOException.class, () -> FSMFile.readDocument(file));
+	}
+}
@@ -0,0 +1,77 @@
+package fsmsketcher.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * Checks that the results FSM caches, in a WordCache and in its symbol classes, are dropped
+ * when the machine is edited.
+ *
+ */
+class FSMTest {
+
+	private static FSM ab() {
+		FSM fsm = new FSM();
+		fsm.addState();
+		fsm.addState();
+		fsm.addState();
+		fsm.addSymbol('a');
+		fsm.addSymbol('b');
+		fsm.addTransition(0, 1, 'a');
+		fsm.addTransition(1, 2, 'b');
+		fsm.setFinalState(2);
+		return fsm;
+	}
+
+	@Test
+	void readingTheVersionChangesNothing() {
+		FSM fsm = ab();
+		long version = fsm.getVersion();
+		assertEquals(version, fsm.getVersion());
+		fsm.acceptsWord("ab".toCharArray());
+		fsm.compile();
+		assertEquals(version, fsm.getVersion());
+		fsm.addState();
+		assertNotEquals(version, fsm.getVersion());
+	}
+
+	@Test
+	void editDropsCachedResults() {
+		FSM fsm = ab();
+		WordCache cache = new WordCache(64);
+		fsm.setWordCache(cache);
+		char[] word = "ab".toCharArray();
+		assertTrue(fsm.acceptsWord(word));
+		assertTrue(fsm.acceptsWord(word));
+		assertEquals(1, cache.getHits());
+
+		fsm.toggleStateAcceptance(2);
+		assertFalse(fsm.acceptsWord(word));
+		fsm.setFinalState(2);
+		assertTrue(fsm.acceptsWord(word));
+
+		fsm.removeTransition(1, 2, 'b');
+		assertFalse(fsm.acceptsWord(word));
+		fsm.addTransition(1, 2, 'b');
+		assertTrue(fsm.acceptsWord(word));
+	}
+
+	@Test
+	void editDropsTheSymbolClasses() {
+		FSM fsm = ab();
+		assertFalse(fsm.compile().acceptsWord("a5".toCharArray()));
+		fsm.addLabeledTransition(1, 2, "[0-9]");
+		CompiledFSM compiled = fsm.compile();
+		assertTrue(compiled.acceptsWord("a5".toCharArray()));
+		assertTrue(compiled.acceptsWord("ab".toCharArray()));
+		fsm.addSymbol('c');
+		fsm.addTransition(1, 2, 'c');
+		assertTrue(fsm.compile().acceptsWord("ac".toCharArray()));
+		assertTrue(fsm.acceptsWord("ac".toCharArray()));
+	}
+}
@@ -0,0 +1,28 @@
+package fsmsketcher.engine;
+
+import static fsmsketcher.engine.TestMachines.assertSameDocument;
+import static fsmsketcher.engine.TestMachines.sampleDocument;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+class JsonFormatTest {
+
+	@Test
+	void writtenDocumentReadsBackTheSame() throws IOException {
+		FSMDocument document = sampleDocument();
+		StringWriter out = new StringWriter();
+		JsonFormat.write(document, out);
+		assertSameDocument(document, JsonFormat.read(new StringReader(out.toString())));
+	}
+
+	@Test
+	void emptyDocumentReadsBackEmpty() throws IOException {
+		StringWriter out = new StringWriter();
+		JsonFormat.write(new FSMDocument(), out);
+		assertSameDocument(new FSMDocument(), JsonFormat.read(new StringReader(out.toString())));
+	}
+}
@@ -0,0 +1,66 @@
+package fsmsketcher.engine;
+
+import static fsmsketcher.engine.TestMachines.assertSameTable;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * Checks that the parallel subset construction gives the same table as the sequential one.
+ * The pool is made explicitly, since compileParallel runs compile() itself on a pool with
+ * one thread, and the common pool has one thread on a two core machine.
+ *
+ */
+class ParallelSubsetConstructionTest {
+
+	private static ForkJoinPool pool;
+
+	@BeforeAll
+	static void startPool() {
+		pool = new ForkJoinPool(4);
+	}
+
+	@AfterAll
+	static void stopPool() {
+		pool.shutdown();
+	}
+
+	@Test
+	void randomMachinesGiveIdenticalTables() {
+		for (long seed = 0; seed < 40; seed++) {
+			MachineGenerator generator = new MachineGenerator(seed);
+			generator.setAlphabetSize(2 + (int) (seed % 7));
+			generator.setOutDegree(1 + seed % 4);
+			generator.setNondeterminism(0.2 + 0.1 * (seed % 5));
+			FSM fsm = generator.generate(10 + (int) (seed * 7 % 90));
+			if (seed % 2 == 0) {
+				fsm.addLabeledTransition(0, fsm.getNumberOfStates() - 1, "[a-c]");
+			}
+			assertSameTable("seed " + seed, CompiledFSM.compile(fsm, false),
+					CompiledFSM.compileParallel(fsm, seed % 3 == 0, pool));
+		}
+	}
+
+	@Test
+	void removedStateKeepsItsTransitions() {
+		FSM fsm = new FSM();
+		fsm.addState();
+		fsm.addState();
+		fsm.addState();
+		fsm.addSymbol('a');
+		fsm.addSymbol('b');
+		fsm.addTransition(0, 1, 'a');
+		fsm.addTransition(1, 2, 'b');
+		fsm.setFinalState(2);
+		fsm.removeState(1);
+
+		CompiledFSM parallel = CompiledFSM.compileParallel(fsm, false, pool);
+		assertSameTable("removed state", CompiledFSM.compile(fsm, false), parallel);
+		assertTrue(parallel.acceptsWord("ab".toCharArray()));
+	}
+}
@@ -0,0 +1,70 @@
+package fsmsketcher.engine;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * Checks that seeking a trace gives the same active set as running the word from the start,
+ * however the steps are reached. The word is long enough for the checkpoints to be halved.
+ *
+ */
+class SimulationTraceTest {
+
+	private static final int LENGTH = 40_000;
+
+	@Test
+	void seekMatchesARunFromTheStart() {
+		MachineGenerator generator = new MachineGenerator(11);
+		generator.setAlphabetSize(4);
+		generator.setOutDegree(3);
+		generator.setNondeterminism(0.6);
+		FSM fsm = generator.generate(60);
+		Random random = new Random(11);
+
+		//The word follows a transition out of some active state at every step, so the run
+		//never dies out. The active set after every step comes from one uninterrupted run.
+		char[] word = new char[LENGTH];
+		List<int[]> expected = new ArrayList<>(LENGTH + 1);
+		List<Boolean> accepting = new ArrayList<>(LENGTH + 1);
+		Simulation simulation = new Simulation(fsm);
+		expected.add(simulation.getActiveStates());
+		accepting.add(simulation.isAccepting());
+		for (int i = 0; i < LENGTH; i++) {
+			int[] active = expected.get(i);
+			List<FSM.pair> out = fsm.getTransitions(active[random.nextInt(active.length)]);
+			word[i] = out.get(random.nextInt(out.size())).ch;
+			simulation.step(word[i]);
+			expected.add(simulation.getActiveStates());
+			accepting.add(simulation.isAccepting());
+		}
+
+		SimulationTrace trace = new SimulationTrace(fsm, word);
+		while (!trace.record(997)) {
+			//Seeking while recording goes on must also work.
+			check(trace, random.nextInt(trace.getRecorded() + 1), expected, accepting);
+		}
+		for (int i = 0; i < 2000; i++) {
+			check(trace, random.nextInt(LENGTH + 1), expected, accepting);
+		}
+		for (int step = LENGTH; step > LENGTH - 300; step--) {
+			check(trace, step, expected, accepting);
+		}
+		for (int step = 5000; step < 5300; step++) {
+			check(trace, step, expected, accepting);
+		}
+	}
+
+	private static void check(SimulationTrace trace, int step, List<int[]> expected, List<Boolean> accepting) {
+		trace.seek(step);
+		assertEquals(step, trace.getPosition());
+		assertArrayEquals(expected.get(step), trace.getActiveStates(), "step " + step);
+		assertEquals(accepting.get(step), trace.isAccepting(), "step " + step);
+	}
+}
@@ -0,0 +1,66 @@
+package fsmsketcher.engine;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * Checks that snapshots compiled in the background come out in the order they were handed
+ * over, and that latest() waits for them.
+ *
+ */
+class SnapshotPublisherTest {
+
+	/**
+	 * Returns a machine that accepts exactly the word of n a's.
+	 */
+	private static FSM chain(int n) {
+		FSM fsm = new FSM();
+		fsm.addSymbol('a');
+		for (int s = 0; s <= n; s++) {
+			fsm.addState();
+		}
+		for (int s = 0; s < n; s++) {
+			fsm.addTransition(s, s + 1, 'a');
+		}
+		fsm.setFinalState(n);
+		return fsm;
+	}
+
+	private static char[] word(int n) {
+		char[] word = new char[n];
+		Arrays.fill(word, 'a');
+		return word;
+	}
+
+	@Test
+	void latestSeesTheLastModelHandedOver() {
+		SnapshotPublisher snapshots = new SnapshotPublisher();
+		long seen = 0;
+		for (int n = 1; n <= 200; n++) {
+			snapshots.publishLater(chain(n));
+			long version = snapshots.get().getVersion();
+			assertTrue(version >= seen, "version went back");
+			seen = version;
+		}
+		MachineSnapshot latest = snapshots.latest();
+		assertTrue(latest.getMachine().acceptsWord(word(200)));
+		assertFalse(latest.getMachine().acceptsWord(word(199)));
+		assertSame(latest, snapshots.get());
+	}
+
+	@Test
+	void olderCompileIsNotPublishedOverANewerOne() {
+		SnapshotPublisher snapshots = new SnapshotPublisher();
+		snapshots.publishLater(chain(3000));
+		MachineSnapshot direct = snapshots.publish(chain(1));
+		MachineSnapshot latest = snapshots.latest();
+		assertSame(direct, latest);
+		assertTrue(latest.getMachine().acceptsWord(word(1)));
+	}
+}
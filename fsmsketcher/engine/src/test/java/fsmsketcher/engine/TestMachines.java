@@ -0,0 +1,73 @@
+package fsmsketcher.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ *
+ * Machines and assertions shared by the engine tests.
+ *
+ */
+final class TestMachines {
+
+	private TestMachines() {
+	}
+
+	/**
+	 * Returns a document using everything the file formats have to carry: labels that need
+	 * escaping, negative positions, range and property labels, a supplementary symbol and an
+	 * initial state other than 0.
+	 */
+	static FSMDocument sampleDocument() {
+		FSMDocument document = new FSMDocument();
+		document.addSymbol('a');
+		document.addSymbol('b');
+		document.addSymbol('"');
+		document.addSymbol('\\');
+		document.addState("start", 10, 20, false);
+		document.addState("quote \"q\"", -30, 40, true);
+		document.addState("back\\slash", 50, -60, false);
+		document.addState("über", 0, 0, true);
+		document.setInitialState(2);
+		document.addTransition(2, 0, "a");
+		document.addTransition(0, 1, "b");
+		document.addTransition(0, 0, "\"");
+		document.addTransition(1, 3, "\\");
+		document.addTransition(3, 1, "[0-9]");
+		document.addTransition(3, 0, "\\p{L}");
+		document.addTransition(1, 2, "😀");
+		return document;
+	}
+
+	static void assertSameDocument(FSMDocument expected, FSMDocument actual) {
+		assertEquals(expected.getAlphabet(), actual.getAlphabet(), "alphabet");
+		assertEquals(expected.getInitialState(), actual.getInitialState(), "initial state");
+		assertEquals(expected.getNumberOfStates(), actual.getNumberOfStates(), "states");
+		for (int i = 0; i < expected.getNumberOfStates(); i++) {
+			assertEquals(expected.getStateLabel(i), actual.getStateLabel(i), "label of state " + i);
+			assertEquals(expected.getStateX(i), actual.getStateX(i), "x of state " + i);
+			assertEquals(expected.getStateY(i), actual.getStateY(i), "y of state " + i);
+			assertEquals(expected.isFinalState(i), actual.isFinalState(i), "state " + i + " final");
+		}
+		assertEquals(expected.getNumberOfTransitions(), actual.getNumberOfTransitions(), "transitions");
+		for (int i = 0; i < expected.getNumberOfTransitions(); i++) {
+			assertEquals(expected.getTransitionFrom(i), actual.getTransitionFrom(i), "from of transition " + i);
+			assertEquals(expected.getTransitionTo(i), actual.getTransitionTo(i), "to of transition " + i);
+			assertEquals(expected.getTransitionLabel(i), actual.getTransitionLabel(i), "label of transition " + i);
+		}
+	}
+
+	static void assertSameTable(String machine, CompiledFSM expected, CompiledFSM actual) {
+		assertEquals(expected.getInitialState(), actual.getInitialState(), machine);
+		assertEquals(expected.getNumberOfStates(), actual.getNumberOfStates(), machine);
+		assertEquals(expected.getNumberOfColumns(), actual.getNumberOfColumns(), machine);
+		for (int c = 0; c < expected.getNumberOfColumns(); c++) {
+			assertEquals(expected.getSymbolSet(c), actual.getSymbolSet(c), machine + ", column " + c);
+		}
+		for (int s = 0; s < expected.getNumberOfStates(); s++) {
+			assertEquals(expected.isAcceptState(s), actual.isAcceptState(s), machine + ", state " + s);
+			for (int c = 0; c < expected.getNumberOfColumns(); c++) {
+				assertEquals(expected.next(s, c), actual.next(s, c), machine + ", state " + s + ", column " + c);
+			}
+		}
+	}
+}
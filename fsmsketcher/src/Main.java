@@ -1,6 +0,0 @@
-
-public class Main {
-	public static void main(String[] args) {
-		new SketchFrame();
-	}
-}
\ No newline at end of file
@@ -0,0 +1,230 @@
+package fsmsketcher.ui;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ *
+ * The states and transitions shown by a SketchFrame, indexed so that editing one touches
+ * only it and its transitions. States are found by label and by ID, each transition by the
+ * pair of states it joins, and each state keeps the transitions into and out of it.
+ *
+ * States and transitions are kept in the order they were added. Labels and IDs needn't be
+ * unique; looking one up returns the first state added with it that is still here, as
+ * scanning the states in order did. A state's label and ID are indexed when it's added,
+ * so they must not change while it's in the model.
+ *
+ */
+final class DisplayModel {
+
+	private final LinkedHashSet<StateDisplay> states = new LinkedHashSet<>();
+	private final LinkedHashSet<TransitionDisplay> transitions = new LinkedHashSet<>();
+	private final HashMap<String, List<StateDisplay>> byLabel = new HashMap<>();
+	private final HashMap<Integer, List<StateDisplay>> byId = new HashMap<>();
+	/**
+	 * The transitions out of each state, by the state they lead to.
+	 */
+	private final HashMap<StateDisplay, HashMap<StateDisplay, TransitionDisplay>> outgoing = new HashMap<>();
+	/**
+	 * The transitions into each state, by the state they start from.
+	 */
+	private final HashMap<StateDisplay, HashMap<StateDisplay, TransitionDisplay>> incoming = new HashMap<>();
+	private StateDisplay initialState;
+
+	/**
+	 * Returns the states.
+	 *
+	 * @return The states in the order they were added, which can't be changed through it.
+	 */
+	Collection<StateDisplay> getStates() {
+		return Collections.unmodifiableCollection(states);
+	}
+
+	/**
+	 * Returns the transitions.
+	 *
+	 * @return The transitions in the order they were added, which can't be changed through it.
+	 */
+	Collection<TransitionDisplay> getTransitions() {
+		return Collections.unmodifiableCollection(transitions);
+	}
+
+	/**
+	 * Returns the number of states.
+	 *
+	 * @return The number of states.
+	 */
+	int getNumberOfStates() {
+		return states.size();
+	}
+
+	/**
+	 * Adds a state, with no transitions.
+	 *
+	 * @param sd The state.
+	 */
+	void addState(StateDisplay sd) {
+		if (!states.add(sd)) {
+			return;
+		}
+		byLabel.computeIfAbsent(sd.getLabel(), k -> new ArrayList<>(1)).add(sd);
+		byId.computeIfAbsent(sd.getStateID(), k -> new ArrayList<>(1)).add(sd);
+		outgoing.put(sd, new HashMap<>());
+		incoming.put(sd, new HashMap<>());
+		if (sd.isInitialState()) {
+			setInitialState(sd);
+		}
+	}
+
+	/**
+	 * Removes a state and the transitions into and out of it.
+	 *
+	 * @param sd The state.
+	 * @return The transitions that were removed with it.
+	 */
+	List<TransitionDisplay> removeState(StateDisplay sd) {
+		List<TransitionDisplay> removed = getTransitions(sd);
+		if (!states.remove(sd)) {
+			return removed;
+		}
+		for (TransitionDisplay td : removed) {
+			removeTransition(td);
+		}
+		unindex(byLabel, sd.getLabel(), sd);
+		unindex(byId, sd.getStateID(), sd);
+		outgoing.remove(sd);
+		incoming.remove(sd);
+		if (initialState == sd) {
+			initialState = null;
+		}
+		return removed;
+	}
+
+	private static <K> void unindex(HashMap<K, List<StateDisplay>> index, K key, StateDisplay sd) {
+		List<StateDisplay> list = index.get(key);
+		if (list != null && list.remove(sd) && list.isEmpty()) {
+			index.remove(key);
+		}
+	}
+
+	/**
+	 * Returns the first state added with a label.
+	 *
+	 * @param label The label.
+	 * @return The state, or null if there isn't one.
+	 */
+	StateDisplay getState(String label) {
+		List<StateDisplay> list = byLabel.get(label);
+		return list == null ? null : list.get(0);
+	}
+
+	/**
+	 * Returns the first state added with an ID.
+	 *
+	 * @param stateID The ID.
+	 * @return The state, or null if there isn't one.
+	 */
+	StateDisplay getState(int stateID) {
+		List<StateDisplay> list = byId.get(stateID);
+		return list == null ? null : list.get(0);
+	}
+
+	/**
+	 * Makes a state the initial state, so the one that was stops being it.
+	 *
+	 * @param sd The state, which must be in the model, or null for none.
+	 */
+	void setInitialState(StateDisplay sd) {
+		if (initialState != null && initialState != sd) {
+			initialState.setIsInitialState(false);
+		}
+		initialState = sd;
+		if (sd != null) {
+			sd.setIsInitialState(true);
+		}
+	}
+
+	/**
+	 * Returns the initial state.
+	 *
+	 * @return The state, or null if there isn't one.
+	 */
+	StateDisplay getInitialState() {
+		return initialState;
+	}
+
+	/**
+	 * Adds a transition between two states in the model. There must not already be one
+	 * between them in the same direction.
+	 *
+	 * @param td The transition.
+	 */
+	void addTransition(TransitionDisplay td) {
+		if (transitions.add(td)) {
+			outgoing.get(td.getFromState()).put(td.getToState(), td);
+			incoming.get(td.getToState()).put(td.getFromState(), td);
+		}
+	}
+
+	/**
+	 * Removes a transition.
+	 *
+	 * @param td The transition.
+	 */
+	void removeTransition(TransitionDisplay td) {
+		if (transitions.remove(td)) {
+			outgoing.get(td.getFromState()).remove(td.getToState());
+			incoming.get(td.getToState()).remove(td.getFromState());
+		}
+	}
+
+	/**
+	 * Returns the transition from one state to another.
+	 *
+	 * @param from The state it starts from.
+	 * @param to The state it leads to.
+	 * @return The transition, or null if there isn't one.
+	 */
+	TransitionDisplay getTransition(StateDisplay from, StateDisplay to) {
+		HashMap<StateDisplay, TransitionDisplay> out = outgoing.get(from);
+		return out == null ? null : out.get(to);
+	}
+
+	/**
+	 * Returns the transitions into and out of a state.
+	 *
+	 * @param sd The state.
+	 * @return The transitions, each once, including any self loop.
+	 */
+	List<TransitionDisplay> getTransitions(StateDisplay sd) {
+		List<TransitionDisplay> list = new ArrayList<>();
+		HashMap<StateDisplay, TransitionDisplay> out = outgoing.get(sd);
+		if (out == null) {
+			return list;
+		}
+		list.addAll(out.values());
+		for (TransitionDisplay td : incoming.get(sd).values()) {
+			if (td.getFromState() != sd) {
+				list.add(td);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Removes every state and transition.
+	 */
+	void clear() {
+		states.clear();
+		transitions.clear();
+		byLabel.clear();
+		byId.clear();
+		outgoing.clear();
+		incoming.clear();
+		initialState = null;
+	}
+}
@@ -0,0 +1,86 @@
+package fsmsketcher.ui;
+
+import java.util.ArrayDeque;
+
+/**
+ *
+ * The edits made in a SketchFrame, so they can be undone and redone. Each edit is a pair
+ * of actions that hold on to the states and transitions it touched rather than a copy of
+ * the whole machine, so an entry costs only as much as the edit: adding a transition keeps
+ * the transition and its label, and a layout keeps the old and new positions of the states
+ * it moved. Edits that change everything at once, such as loading a file, keep the whole
+ * old and new models, which are shared with the frame rather than copied.
+ *
+ * Making a new edit forgets the edits that were undone. Only the last MAX_EDITS are kept.
+ *
+ */
+final class EditHistory {
+
+	/**
+	 * The most edits that can be undone.
+	 */
+	static final int MAX_EDITS = 1000;
+
+	/**
+	 * An edit that has been made.
+	 */
+	private static final class Edit {
+		final String name;
+		final Runnable undo;
+		final Runnable redo;
+
+		Edit(String name, Runnable undo, Runnable redo) {
+			this.name = name;
+			this.undo = undo;
+			this.redo = redo;
+		}
+	}
+
+	private final ArrayDeque<Edit> undone = new ArrayDeque<>();
+	private final ArrayDeque<Edit> done = new ArrayDeque<>();
+
+	/**
+	 * Records an edit that has just been made.
+	 *
+	 * @param name What the edit is called, such as "Add State".
+	 * @param undo Puts things back the way they were before the edit.
+	 * @param redo Makes the edit again after it has been undone.
+	 */
+	void record(String name, Runnable undo, Runnable redo) {
+		done.push(new Edit(name, undo, redo));
+		if (done.size() > MAX_EDITS) {
+			done.removeLast();
+		}
+		undone.clear();
+	}
+
+	/**
+	 * Undoes the last edit that hasn't been undone.
+	 *
+	 * @return The name of the edit, or null if there was nothing to undo.
+	 */
+	String undo() {
+		Edit edit = done.poll();
+		if (edit == null) {
+			return null;
+		}
+		edit.undo.run();
+		undone.push(edit);
+		return edit.name;
+	}
+
+	/**
+	 * Redoes the last edit that was undone.
+	 *
+	 * @return The name of the edit, or null if there was nothing to redo.
+	 */
+	String redo() {
+		Edit edit = undone.poll();
+		if (edit == null) {
+			return null;
+		}
+		edit.redo.run();
+		done.push(edit);
+		return edit.name;
+	}
+}
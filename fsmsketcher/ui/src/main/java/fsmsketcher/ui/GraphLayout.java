@@ -0,0 +1,610 @@
+package fsmsketcher.ui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ *
+ * Places the states of a machine so it can be read. It works on plain arrays of positions
+ * and edges, so it can run on any thread while the states are still drawn at their old
+ * positions.
+ *
+ * The force-directed layout treats edges as springs and pushes every pair of states apart,
+ * with a weak pull towards the middle that keeps separate parts of the machine together.
+ * The push between all pairs is estimated with a Barnes-Hut quadtree: a distant cell of
+ * states pushes as one body at its center of mass, which makes each step O(n log n). The
+ * forces on different states are independent, so they are summed in parallel. Each step
+ * moves states by at most a temperature that cools as the layout settles.
+ *
+ * The layered layout suits machines that are mostly acyclic. Back edges found by a depth
+ * first search from the initial state are set aside, the rest are ranked by the longest
+ * path to each state, and each rank becomes a column ordered to keep edges short.
+ *
+ */
+final class GraphLayout {
+
+	/**
+	 * The length edges settle at.
+	 */
+	static final double EDGE_LENGTH = 8 * StateDisplay.RADIUS;
+	/**
+	 * The number of steps the force-directed layout takes.
+	 */
+	static final int ITERATIONS = 300;
+	/**
+	 * How far apart columns and the states in them are in the layered layout.
+	 */
+	private static final double LAYER_GAP = 8 * StateDisplay.RADIUS;
+	private static final double NODE_GAP = 4 * StateDisplay.RADIUS;
+	/**
+	 * A cell further away than its width divided by this pushes as one body.
+	 */
+	private static final double THETA = 1.0;
+	private static final double GRAVITY = 0.02;
+	/**
+	 * The quadtree stops splitting at this depth, so states in the same spot share a leaf.
+	 */
+	private static final int MAX_DEPTH = 48;
+	/**
+	 * Machines smaller than this are stepped on one thread.
+	 */
+	private static final int PARALLEL_THRESHOLD = 512;
+
+	/**
+	 * Sees the positions as the layout goes.
+	 */
+	interface Listener {
+		/**
+		 * Called on the layout's thread after each step. The arrays keep changing, so copy
+		 * them to keep them.
+		 *
+		 * @param x The x coordinates.
+		 * @param y The y coordinates.
+		 */
+		void moved(double[] x, double[] y);
+	}
+
+	private final int n;
+	/** The states joined to state i in either direction are neighbors[neighborStart[i] ...]. */
+	private final int[] neighborStart;
+	private final int[] neighbors;
+	/** The targets of the edges from state i are successors[successorStart[i] ...]. */
+	private final int[] successorStart;
+	private final int[] successors;
+	private final double[] x;
+	private final double[] y;
+	private volatile boolean cancelled;
+
+	/**
+	 * Sets up a layout. Self loops are ignored.
+	 *
+	 * @param x The x coordinates to start from. The layout writes its positions here.
+	 * @param y The y coordinates to start from. The layout writes its positions here.
+	 * @param edgeFrom The state each edge starts from.
+	 * @param edgeTo The state each edge leads to.
+	 */
+	GraphLayout(double[] x, double[] y, int[] edgeFrom, int[] edgeTo) {
+		this.n = x.length;
+		this.x = x;
+		this.y = y;
+		this.neighborStart = new int[n + 1];
+		this.successorStart = new int[n + 1];
+		for (int e = 0; e < edgeFrom.length; e++) {
+			if (edgeFrom[e] != edgeTo[e]) {
+				neighborStart[edgeFrom[e] + 1]++;
+				neighborStart[edgeTo[e] + 1]++;
+				successorStart[edgeFrom[e] + 1]++;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			neighborStart[i + 1] += neighborStart[i];
+			successorStart[i + 1] += successorStart[i];
+		}
+		this.neighbors = new int[neighborStart[n]];
+		this.successors = new int[successorStart[n]];
+		int[] neighborFill = Arrays.copyOf(neighborStart, n);
+		int[] successorFill = Arrays.copyOf(successorStart, n);
+		for (int e = 0; e < edgeFrom.length; e++) {
+			if (edgeFrom[e] != edgeTo[e]) {
+				neighbors[neighborFill[edgeFrom[e]]++] = edgeTo[e];
+				neighbors[neighborFill[edgeTo[e]]++] = edgeFrom[e];
+				successors[successorFill[edgeFrom[e]]++] = edgeTo[e];
+			}
+		}
+	}
+
+	/**
+	 * Returns the x coordinates the layout has got to.
+	 *
+	 * @return The array the layout writes to.
+	 */
+	double[] getX() {
+		return x;
+	}
+
+	/**
+	 * Returns the y coordinates the layout has got to.
+	 *
+	 * @return The array the layout writes to.
+	 */
+	double[] getY() {
+		return y;
+	}
+
+	/**
+	 * Stops the layout after the step it's taking. Safe to call from any thread.
+	 */
+	void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Returns whether the layout was stopped before it finished.
+	 *
+	 * @return Whether cancel() was called.
+	 */
+	boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Runs the force-directed layout from the current positions.
+	 *
+	 * @param iterations The number of steps.
+	 * @param listener Sees the positions after each step, or null.
+	 */
+	void forceDirected(int iterations, Listener listener) {
+		if (n == 0) {
+			return;
+		}
+		separateCoincident();
+		double spread = Math.sqrt(n) * EDGE_LENGTH;
+		double hot = Math.max(EDGE_LENGTH, spread / 10);
+		double cold = EDGE_LENGTH / 50;
+		double[] fx = new double[n];
+		double[] fy = new double[n];
+		for (int step = 0; step < iterations && !cancelled; step++) {
+			QuadTree tree = new QuadTree(x, y);
+			double centerX = 0, centerY = 0;
+			for (int i = 0; i < n; i++) {
+				centerX += x[i];
+				centerY += y[i];
+			}
+			double cx = centerX / n, cy = centerY / n;
+			IntStream states = IntStream.range(0, n);
+			if (n >= PARALLEL_THRESHOLD) {
+				states = states.parallel();
+			}
+			states.forEach(i -> force(i, tree, cx, cy, fx, fy));
+
+			double temperature = cold + (hot - cold) * (1 - step / (double) iterations);
+			for (int i = 0; i < n; i++) {
+				double length = Math.hypot(fx[i], fy[i]);
+				if (length > 0) {
+					double move = Math.min(length, temperature) / length;
+					x[i] += fx[i] * move;
+					y[i] += fy[i] * move;
+				}
+			}
+			if (listener != null) {
+				listener.moved(x, y);
+			}
+		}
+	}
+
+	/**
+	 * Works out the force on one state: pushed from every other, pulled along its edges and
+	 * pulled a little towards the middle.
+	 */
+	private void force(int i, QuadTree tree, double centerX, double centerY, double[] fx, double[] fy) {
+		double[] f = new double[2];
+		tree.repulsion(i, f);
+		double k = EDGE_LENGTH;
+		for (int e = neighborStart[i]; e < neighborStart[i + 1]; e++) {
+			int j = neighbors[e];
+			double dx = x[j] - x[i], dy = y[j] - y[i];
+			double d = Math.hypot(dx, dy);
+			f[0] += dx * d / k;
+			f[1] += dy * d / k;
+		}
+		f[0] += (centerX - x[i]) * GRAVITY;
+		f[1] += (centerY - y[i]) * GRAVITY;
+		fx[i] = f[0];
+		fy[i] = f[1];
+	}
+
+	/**
+	 * Spreads out states that start in the same spot, as ones that are loaded without
+	 * positions do, so the forces between them have a direction.
+	 */
+	private void separateCoincident() {
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, Comparator.<Integer>comparingDouble(i -> x[i]).thenComparingDouble(i -> y[i]));
+		for (int a = 0; a < n; ) {
+			int b = a + 1;
+			while (b < n && x[order[b]] == x[order[a]] && y[order[b]] == y[order[a]]) {
+				b++;
+			}
+			//Put the states on a spiral around the spot, about an edge apart.
+			for (int c = a + 1; c < b; c++) {
+				double angle = 2.399963 * (c - a);
+				double radius = EDGE_LENGTH * Math.sqrt(c - a) / 2;
+				x[order[c]] += radius * Math.cos(angle);
+				y[order[c]] += radius * Math.sin(angle);
+			}
+			a = b;
+		}
+	}
+
+	/**
+	 * Runs the layered layout, placing columns of states left to right.
+	 *
+	 * @param initial The state the first column starts from, or -1.
+	 * @param listener Sees the positions once they are placed, or null.
+	 */
+	void layered(int initial, Listener listener) {
+		if (n == 0) {
+			return;
+		}
+		boolean[] backEdge = findBackEdges(initial);
+		int[] rank = rankByLongestPath(backEdge);
+		int layers = 0;
+		for (int r : rank) {
+			layers = Math.max(layers, r + 1);
+		}
+		List<List<Integer>> columns = new ArrayList<>();
+		for (int r = 0; r < layers; r++) {
+			columns.add(new ArrayList<>());
+		}
+		for (int v : discoveryOrder(initial)) {
+			columns.get(rank[v]).add(v);
+		}
+		if (cancelled) {
+			return;
+		}
+
+		//Sweep right and then left, sorting each column by where its neighbors in the columns already placed are.
+		int[] position = new int[n];
+		for (List<Integer> column : columns) {
+			for (int p = 0; p < column.size(); p++) {
+				position[column.get(p)] = p;
+			}
+		}
+		double[] barycenter = new double[n];
+		for (int sweep = 0; sweep < 8 && !cancelled; sweep++) {
+			boolean rightward = sweep % 2 == 0;
+			for (int c = 1; c < layers; c++) {
+				int r = rightward ? c : layers - 1 - c;
+				List<Integer> column = columns.get(r);
+				for (int v : column) {
+					double sum = 0;
+					int count = 0;
+					for (int e = neighborStart[v]; e < neighborStart[v + 1]; e++) {
+						int u = neighbors[e];
+						if (rightward ? rank[u] < r : rank[u] > r) {
+							sum += position[u];
+							count++;
+						}
+					}
+					barycenter[v] = count == 0 ? position[v] : sum / count;
+				}
+				column.sort(Comparator.comparingDouble(v -> barycenter[v]));
+				for (int p = 0; p < column.size(); p++) {
+					position[column.get(p)] = p;
+				}
+			}
+		}
+
+		int tallest = 0;
+		for (List<Integer> column : columns) {
+			tallest = Math.max(tallest, column.size());
+		}
+		for (int r = 0; r < layers; r++) {
+			List<Integer> column = columns.get(r);
+			double top = (tallest - column.size()) / 2.0;
+			for (int p = 0; p < column.size(); p++) {
+				x[column.get(p)] = LAYER_GAP * (r + 1);
+				y[column.get(p)] = NODE_GAP * (top + p + 1);
+			}
+		}
+		if (listener != null) {
+			listener.moved(x, y);
+		}
+	}
+
+	/**
+	 * Searches depth first from the initial state and then from every state not yet
+	 * reached, marking the edges that lead back to a state on the search's path.
+	 *
+	 * @return Whether each edge in successors is a back edge.
+	 */
+	private boolean[] findBackEdges(int initial) {
+		boolean[] backEdge = new boolean[successors.length];
+		byte[] color = new byte[n]; //0 unseen, 1 on the path, 2 done
+		int[] stack = new int[n];
+		int[] next = new int[n];
+		for (int root : roots(initial)) {
+			if (color[root] != 0) {
+				continue;
+			}
+			int depth = 0;
+			stack[0] = root;
+			next[root] = successorStart[root];
+			color[root] = 1;
+			while (depth >= 0) {
+				int v = stack[depth];
+				if (next[v] == successorStart[v + 1]) {
+					color[v] = 2;
+					depth--;
+					continue;
+				}
+				int e = next[v]++;
+				int w = successors[e];
+				if (color[w] == 1) {
+					backEdge[e] = true;
+				} else if (color[w] == 0) {
+					color[w] = 1;
+					next[w] = successorStart[w];
+					stack[++depth] = w;
+				}
+			}
+		}
+		return backEdge;
+	}
+
+	/**
+	 * Ranks each state one past the highest ranked state with an edge to it, leaving out
+	 * the back edges, so every other edge points to a higher rank.
+	 */
+	private int[] rankByLongestPath(boolean[] backEdge) {
+		int[] inDegree = new int[n];
+		for (int e = 0; e < successors.length; e++) {
+			if (!backEdge[e]) {
+				inDegree[successors[e]]++;
+			}
+		}
+		int[] rank = new int[n];
+		int[] queue = new int[n];
+		int queued = 0;
+		for (int v = 0; v < n; v++) {
+			if (inDegree[v] == 0) {
+				queue[queued++] = v;
+			}
+		}
+		for (int head = 0; head < queued; head++) {
+			int v = queue[head];
+			for (int e = successorStart[v]; e < successorStart[v + 1]; e++) {
+				if (backEdge[e]) {
+					continue;
+				}
+				int w = successors[e];
+				rank[w] = Math.max(rank[w], rank[v] + 1);
+				if (--inDegree[w] == 0) {
+					queue[queued++] = w;
+				}
+			}
+		}
+		return rank;
+	}
+
+	/**
+	 * Returns the states breadth first from the initial state and then the rest, which
+	 * is the order the columns start in.
+	 */
+	private int[] discoveryOrder(int initial) {
+		int[] order = new int[n];
+		boolean[] seen = new boolean[n];
+		int found = 0;
+		for (int root : roots(initial)) {
+			if (seen[root]) {
+				continue;
+			}
+			seen[root] = true;
+			int head = found;
+			order[found++] = root;
+			for (; head < found; head++) {
+				int v = order[head];
+				for (int e = successorStart[v]; e < successorStart[v + 1]; e++) {
+					if (!seen[successors[e]]) {
+						seen[successors[e]] = true;
+						order[found++] = successors[e];
+					}
+				}
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * Returns the initial state followed by every state.
+	 */
+	private int[] roots(int initial) {
+		int[] roots = new int[n + 1];
+		roots[0] = initial >= 0 && initial < n ? initial : 0;
+		for (int v = 0; v < n; v++) {
+			roots[v + 1] = v;
+		}
+		return roots;
+	}
+
+	/**
+	 * A quadtree over the positions, holding the mass and center of mass of every cell. The
+	 * cells are kept in arrays, children after their parents.
+	 */
+	private static final class QuadTree {
+		private final double[] px;
+		private final double[] py;
+		/** The next state in the same leaf, for states that share a leaf at the deepest level. */
+		private final int[] nextBody;
+
+		private int cells;
+		private double[] centerX = new double[64];
+		private double[] centerY = new double[64];
+		private double[] half = new double[64];
+		/** The first of a cell's four children, or -1 for a leaf. */
+		private int[] firstChild = new int[64];
+		/** The first state in a leaf, or -1. */
+		private int[] body = new int[64];
+		private double[] mass = new double[64];
+		/** The sums of the positions in each cell while the tree is built, and then the centers of mass. */
+		private double[] massX = new double[64];
+		private double[] massY = new double[64];
+
+		QuadTree(double[] px, double[] py) {
+			this.px = px;
+			this.py = py;
+			int n = px.length;
+			this.nextBody = new int[n];
+			double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+			double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < n; i++) {
+				minX = Math.min(minX, px[i]);
+				minY = Math.min(minY, py[i]);
+				maxX = Math.max(maxX, px[i]);
+				maxY = Math.max(maxY, py[i]);
+			}
+			double size = Math.max(Math.max(maxX - minX, maxY - minY), 1);
+			addCell((minX + maxX) / 2, (minY + maxY) / 2, size / 2 + 1);
+			for (int i = 0; i < n; i++) {
+				insert(i);
+			}
+			//Children come after their parents, so going backwards sums them first.
+			for (int c = cells - 1; c >= 0; c--) {
+				if (firstChild[c] < 0) {
+					for (int b = body[c]; b >= 0; b = nextBody[b]) {
+						mass[c]++;
+						massX[c] += px[b];
+						massY[c] += py[b];
+					}
+				} else {
+					for (int k = firstChild[c]; k < firstChild[c] + 4; k++) {
+						mass[c] += mass[k];
+						massX[c] += massX[k];
+						massY[c] += massY[k];
+					}
+				}
+			}
+			for (int c = 0; c < cells; c++) {
+				if (mass[c] > 0) {
+					massX[c] /= mass[c];
+					massY[c] /= mass[c];
+				}
+			}
+		}
+
+		private int addCell(double cx, double cy, double h) {
+			if (cells == half.length) {
+				int capacity = 2 * cells;
+				centerX = Arrays.copyOf(centerX, capacity);
+				centerY = Arrays.copyOf(centerY, capacity);
+				half = Arrays.copyOf(half, capacity);
+				firstChild = Arrays.copyOf(firstChild, capacity);
+				body = Arrays.copyOf(body, capacity);
+				mass = Arrays.copyOf(mass, capacity);
+				massX = Arrays.copyOf(massX, capacity);
+				massY = Arrays.copyOf(massY, capacity);
+			}
+			centerX[cells] = cx;
+			centerY[cells] = cy;
+			half[cells] = h;
+			firstChild[cells] = -1;
+			body[cells] = -1;
+			return cells++;
+		}
+
+		private int quadrant(int cell, int i) {
+			return (px[i] < centerX[cell] ? 0 : 1) + (py[i] < centerY[cell] ? 0 : 2);
+		}
+
+		private void insert(int i) {
+			int cell = 0;
+			nextBody[i] = -1;
+			for (int depth = 0; ; depth++) {
+				if (firstChild[cell] >= 0) {
+					cell = firstChild[cell] + quadrant(cell, i);
+					continue;
+				}
+				if (body[cell] < 0) {
+					body[cell] = i;
+					return;
+				}
+				if (depth >= MAX_DEPTH) {
+					nextBody[i] = body[cell];
+					body[cell] = i;
+					return;
+				}
+				//Split the leaf and move its state down into a child.
+				double h = half[cell] / 2;
+				int first = -1;
+				for (int q = 0; q < 4; q++) {
+					int child = addCell(centerX[cell] + ((q & 1) == 0 ? -h : h), centerY[cell] + ((q & 2) == 0 ? -h : h), h);
+					if (q == 0) {
+						first = child;
+					}
+				}
+				int moved = body[cell];
+				body[cell] = -1;
+				firstChild[cell] = first;
+				body[first + quadrant(cell, moved)] = moved;
+				cell = first + quadrant(cell, i);
+			}
+		}
+
+		/**
+		 * Adds the push on state i from every other state to f.
+		 */
+		void repulsion(int i, double[] f) {
+			double k2 = EDGE_LENGTH * EDGE_LENGTH;
+			int[] stack = new int[4 * MAX_DEPTH + 4];
+			int top = 0;
+			stack[top++] = 0;
+			while (top > 0) {
+				int cell = stack[--top];
+				if (mass[cell] == 0) {
+					continue;
+				}
+				if (firstChild[cell] < 0) {
+					for (int b = body[cell]; b >= 0; b = nextBody[b]) {
+						if (b != i) {
+							push(px[i] - px[b], py[i] - py[b], 1, k2, i, b, f);
+						}
+					}
+					continue;
+				}
+				double dx = px[i] - massX[cell];
+				double dy = py[i] - massY[cell];
+				double width = 2 * half[cell];
+				if (width * width < THETA * THETA * (dx * dx + dy * dy)) {
+					push(dx, dy, mass[cell], k2, i, cell, f);
+				} else {
+					for (int k = firstChild[cell]; k < firstChild[cell] + 4; k++) {
+						stack[top++] = k;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Adds a push of k2 * mass / d away from something at (-dx, -dy). Things in the same
+		 * spot push in a direction picked from their indices.
+		 */
+		private static void push(double dx, double dy, double mass, double k2, int i, int other, double[] f) {
+			double d2 = dx * dx + dy * dy;
+			if (d2 < 1e-6) {
+				double angle = (i * 31 + other) * 2.399963;
+				dx = Math.cos(angle);
+				dy = Math.sin(angle);
+				d2 = 1;
+			}
+			double scale = k2 * mass / d2;
+			f[0] += dx * scale;
+			f[1] += dy * scale;
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package fsmsketcher.ui;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ *
+ * Draws the states and transitions in part of the canvas, with less detail the further the
+ * view is zoomed out:
+ * <ul>
+ * <li>From LABEL_SCALE up everything is drawn in full.</li>
+ * <li>From POINT_SCALE up states are drawn without labels. Transitions are plain lines with
+ * their arrowheads, all stroked as one path and filled as another, and transitions that
+ * land on the same pixels, such as the two directions between a pair of states, are only
+ * drawn once.</li>
+ * <li>Below POINT_SCALE states are a few pixels across, so they are drawn as a density map
+ * instead, each block of pixels shaded by how many states are in it. Transitions are one
+ * faint path of lines.</li>
+ * </ul>
+ * The simplified levels are drawn in pixels, so lines stay one pixel wide however far out
+ * the view is.
+ *
+ */
+final class GraphRenderer {
+
+	/**
+	 * Below this scale labels are too small to read.
+	 */
+	static final double LABEL_SCALE = 0.5;
+	/**
+	 * Below this scale states are drawn as a density map.
+	 */
+	static final double POINT_SCALE = 0.2;
+
+	/**
+	 * The width and height of a block of the density map, in pixels.
+	 */
+	private static final int DENSITY_BLOCK = 2;
+	/**
+	 * Shades of the density map, from one state to many.
+	 */
+	private static final Color[] DENSITY_COLORS = new Color[8];
+	static {
+		for (int i = 0; i < DENSITY_COLORS.length; i++) {
+			DENSITY_COLORS[i] = new Color(0, 0, 0, 96 + i * (255 - 96) / (DENSITY_COLORS.length - 1));
+		}
+	}
+	private static final Color FAINT_LINE_COLOR = new Color(0, 0, 0, 64);
+	private static final BasicStroke THIN_STROKE = new BasicStroke(1f);
+
+	private GraphRenderer() {
+	}
+
+	/**
+	 * Draws the states whose centers are in an area and the transitions that may cross it.
+	 *
+	 * @param g The graphics used to draw, already transformed to the canvas' coordinates.
+	 * @param scale The number of pixels per unit of the canvas.
+	 * @param area The area, in the canvas' coordinates.
+	 * @param states The states to draw, if they are in the area.
+	 * @param transitions The transitions to draw, if they cross the area.
+	 */
+	static void draw(Graphics2D g, double scale, Rectangle2D area, List<StateDisplay> states, List<TransitionDisplay> transitions) {
+		if (scale >= LABEL_SCALE) {
+			for (StateDisplay sd : states) {
+				if (area.contains(sd.getX(), sd.getY())) {
+					sd.draw(g, false);
+				}
+			}
+			for (TransitionDisplay td : transitions) {
+				if (td.intersects(area)) {
+					td.draw(g);
+				}
+			}
+			return;
+		}
+
+		AffineTransform toDevice = g.getTransform();
+		if (scale >= POINT_SCALE) {
+			for (StateDisplay sd : states) {
+				if (area.contains(sd.getX(), sd.getY())) {
+					sd.draw(g, false, false);
+				}
+			}
+			g.setTransform(new AffineTransform());
+			drawLines(g, toDevice, area, transitions, true);
+		} else {
+			g.setTransform(new AffineTransform());
+			drawDensity(g, toDevice, area, states);
+			drawLines(g, toDevice, area, transitions, false);
+		}
+		g.setTransform(toDevice);
+	}
+
+	/**
+	 * Shades each block of pixels by the number of states in it, darker for more.
+	 */
+	private static void drawDensity(Graphics2D g, AffineTransform toDevice, Rectangle2D area, List<StateDisplay> states) {
+		HashMap<Long, int[]> blocks = new HashMap<>();
+		Point2D.Double p = new Point2D.Double();
+		for (StateDisplay sd : states) {
+			if (!area.contains(sd.getX(), sd.getY())) {
+				continue;
+			}
+			p.setLocation(sd.getX(), sd.getY());
+			toDevice.transform(p, p);
+			int bx = (int) Math.floor(p.x / DENSITY_BLOCK);
+			int by = (int) Math.floor(p.y / DENSITY_BLOCK);
+			//Each block is its count and where it is.
+			blocks.computeIfAbsent(SpatialIndex.key(bx, by), k -> new int[] { 0, bx, by })[0]++;
+		}
+		for (int[] block : blocks.values()) {
+			int shade = Math.min(31 - Integer.numberOfLeadingZeros(block[0]), DENSITY_COLORS.length - 1);
+			g.setColor(DENSITY_COLORS[shade]);
+			g.fillRect(block[1] * DENSITY_BLOCK, block[2] * DENSITY_BLOCK, DENSITY_BLOCK, DENSITY_BLOCK);
+		}
+	}
+
+	/**
+	 * Draws transitions as one path of lines in pixels, skipping any that land on the same
+	 * pixels as one already added.
+	 */
+	private static void drawLines(Graphics2D g, AffineTransform toDevice, Rectangle2D area, List<TransitionDisplay> transitions,
+			boolean withArrowheads) {
+		int r = StateDisplay.RADIUS;
+		double scale = toDevice.getScaleX();
+		Path2D.Float lines = new Path2D.Float();
+		Path2D.Float heads = new Path2D.Float();
+		HashSet<Long> drawn = new HashSet<>();
+		double[] points = new double[6];
+		for (TransitionDisplay td : transitions) {
+			if (!td.intersects(area)) {
+				continue;
+			}
+			StateDisplay from = td.getFromState();
+			if (from == td.getToState()) {
+				//The same loop as TransitionDisplay draws, with its arrowhead.
+				points[0] = from.getX() - r;
+				points[1] = from.getY();
+				points[2] = from.getX() - 2 * r;
+				points[3] = from.getY() - 2 * r;
+				points[4] = from.getX();
+				points[5] = from.getY() - r;
+				toDevice.transform(points, 0, points, 0, 3);
+				lines.moveTo(points[0], points[1]);
+				lines.quadTo(points[2], points[3], points[4], points[5]);
+			} else {
+				points[0] = td.getStartX();
+				points[1] = from.getY();
+				points[2] = td.getEndX();
+				points[3] = td.getToState().getY();
+				toDevice.transform(points, 0, points, 0, 2);
+				points[4] = points[2];
+				points[5] = points[3];
+				//The arrowhead is still drawn, so both directions of a pair show.
+				Long key = lineKey(points[0], points[1], points[2], points[3]);
+				if (key == null || drawn.add(key)) {
+					lines.moveTo(points[0], points[1]);
+					lines.lineTo(points[2], points[3]);
+				}
+			}
+			if (withArrowheads) {
+				heads.append(new Ellipse2D.Double(points[4] - 5 * scale, points[5] - 5 * scale, 10 * scale, 10 * scale), false);
+			}
+		}
+		g.setStroke(THIN_STROKE);
+		if (withArrowheads) {
+			g.setColor(Color.BLACK);
+			g.draw(lines);
+			g.fill(heads);
+		} else {
+			//Faint lines a pixel wide look the same without antialiasing, which costs most of the time here.
+			Object antialiasing = g.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+			g.setColor(FAINT_LINE_COLOR);
+			g.draw(lines);
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialiasing);
+		}
+	}
+
+	/**
+	 * Returns a key for a line rounded to whole pixels, the same whichever way it goes, or
+	 * null if its ends are too far out to pack into one.
+	 */
+	private static Long lineKey(double x1, double y1, double x2, double y2) {
+		long a = Math.round(x1), b = Math.round(y1), c = Math.round(x2), d = Math.round(y2);
+		if (Math.max(Math.max(Math.abs(a), Math.abs(b)), Math.max(Math.abs(c), Math.abs(d))) >= 1 << 15) {
+			return null;
+		}
+		if (a > c || (a == c && b > d)) {
+			long t = a; a = c; c = t;
+			t = b; b = d; d = t;
+		}
+		return ((a & 0xffff) << 48) | ((b & 0xffff) << 32) | ((c & 0xffff) << 16) | (d & 0xffff);
+	}
+}
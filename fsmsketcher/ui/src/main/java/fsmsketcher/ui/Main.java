@@ -0,0 +1,14 @@
+package fsmsketcher.ui;
+
+import fsmsketcher.engine.BatchEvaluator;
+
+public class Main {
+	public static void main(String[] args) {
+		//With arguments, run headless without loading any AWT classes.
+		if (args.length > 0) {
+			BatchEvaluator.main(args);
+			return;
+		}
+		new SketchFrame();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,1792 @@
+package fsmsketcher.ui;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GridLayout;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Stack;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+import javax.swing.JTextField;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.MouseInputListener;
+
+import fsmsketcher.engine.CompiledFSM;
+import fsmsketcher.engine.FSM;
+import fsmsketcher.engine.FSMDocument;
+import fsmsketcher.engine.InstrumentedStateMachine;
+import fsmsketcher.engine.MachineFiles;
+import fsmsketcher.engine.Simulation;
+import fsmsketcher.engine.SimulationTrace;
+import fsmsketcher.engine.SnapshotPublisher;
+import fsmsketcher.engine.SymbolSet;
+
+/**
+ * 
+ * @author Leonardo Gutierrez
+ * 
+ * The window that is used by the user. Responsible for displaying the FSM information
+ * correctly and handling input.
+ *
+ */
+public class SketchFrame extends JFrame implements MouseInputListener, MouseWheelListener, KeyListener {
+	private static final long serialVersionUID = 1L; //Boiler Code
+	
+	/**
+	 * The states and transitions currently displayed.
+	 */
+	private DisplayModel displays;
+	/**
+	 * Finds the displayed states by position, for clicks and for drawing only what is visible.
+	 */
+	private SpatialIndex spatialIndex;
+	/**
+	 * The states currently selected.
+	 */
+	private Stack<StateDisplay> selectedStates;
+	/**
+	 * Text used to notify the user of the program's status.
+	 */
+	private JTextField notificationTextField;
+	/**
+	 * The state machine logic.
+	 */
+	private FSM stateMachine;
+	/**
+	 * Records how often tested strings visit each state while the heat map is shown, or null when it isn't.
+	 */
+	private InstrumentedStateMachine heatMachine;
+	/**
+	 * The machine as of the last edit, for threads other than the event thread. It is compiled when first asked for.
+	 */
+	private final SnapshotPublisher snapshots = new SnapshotPublisher();
+	/**
+	 * The alphabet size.
+	 */
+	private int alphabetSize;
+	/**
+	 * The alphabet symbols.
+	 */
+	private List<Character> alphabet;
+	
+	double moveX, moveY;
+	
+	private AffineTransform transform;
+	private SketchPanel sketchPanel;
+	/**
+	 * The layout being run, or null if none is.
+	 */
+	private LayoutWorker layoutWorker;
+	/**
+	 * The test being run, or null if none is.
+	 */
+	private TestWorker testWorker;
+	private JButton cancelTestButton;
+	/**
+	 * The edits that can be undone and redone.
+	 */
+	private final EditHistory history = new EditHistory();
+	/**
+	 * The player showing a recorded run, or null if none is open.
+	 */
+	private TracePlayer tracePlayer;
+	/**
+	 * The states active at the step the player is showing, which are drawn over the graph.
+	 */
+	private List<StateDisplay> currentStates = new ArrayList<>();
+	
+	/**
+	 * Creates a SketchFrame. Upon calling this, the program is started.
+	 * The screen starts off in a 800x600 resolution, but it can be resized.
+	 */
+	public SketchFrame() {
+		//Setup JFrame
+		super("FSM Sketcher");
+		sketchPanel = new SketchPanel();
+		sketchPanel.addMouseListener(this);
+		sketchPanel.addMouseWheelListener(this);
+		sketchPanel.setFocusable(true);
+		setFocusable(true);
+		sketchPanel.addKeyListener(this);
+		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		setSize(800, 600);
+		setLayout(new BorderLayout());
+		//setResizable(false);
+		setLocationRelativeTo(null);
+		add(sketchPanel);
+		
+		JPanel westPanel = new JPanel();
+		westPanel.setLayout(new GridLayout(10, 1));
+		JPanel eastPanel = new JPanel();
+		eastPanel.setLayout(new GridLayout(7, 1));
+		
+		//Initialize members
+		displays = new DisplayModel();
+		spatialIndex = new SpatialIndex();
+		transform = new AffineTransform();
+		selectedStates = new Stack<>();
+		notificationTextField = new JTextField();
+		stateMachine = null;
+		
+		//Hook up the listener and the text field.
+		notificationTextField.setText("Let's get started!");
+		notificationTextField.setEditable(false);
+		notificationTextField.setHorizontalAlignment(JTextField.CENTER);
+		add(notificationTextField, BorderLayout.SOUTH);
+		
+		//Create and hook up the Add State button.
+		JButton addStateButton = new JButton();
+		addStateButton.setText("Add State");
+		addStateButton.addActionListener(new ActionListener() {
+			Random random = new Random();
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				String label = JOptionPane.showInputDialog("Enter State Label");
+				if (label == null) {
+					updateJFrame("State label not entered.");
+					return;
+				}
+				stopLayout();
+				int x = StateDisplay.RADIUS + random.nextInt(sketchPanel.getWidth() - StateDisplay.RADIUS);
+				int y = StateDisplay.RADIUS + random.nextInt(sketchPanel.getHeight() - StateDisplay.RADIUS);
+				StateDisplay state = new StateDisplay(label, x, y, displays.getNumberOfStates());
+				state.setIsInitialState(displays.getNumberOfStates() == 0);
+				List<StateDisplay> added = Collections.singletonList(state);
+				addDisplays(added, Collections.emptyList());
+				history.record("Add State", () -> removeDisplays(added), () -> addDisplays(added, Collections.emptyList()));
+				validateStateMachine();
+				updateJFrame(null);
+			}
+		});
+		westPanel.add(addStateButton);
+		
+		//Create and hook up the Remove State button.
+		JButton removeStateButton = new JButton("Remove State");
+		removeStateButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (!selectedStates.isEmpty()) {
+					stopLayout();
+					List<StateDisplay> removed = new ArrayList<>(selectedStates);
+					deselectAllStates();
+					List<TransitionDisplay> removedTransitions = removeDisplays(removed);
+					history.record("Remove State", () -> addDisplays(removed, removedTransitions), () -> removeDisplays(removed));
+					validateStateMachine();
+					updateJFrame(null);
+				} else {
+					updateJFrame("No states were selected.");
+				}
+			}
+		});
+		westPanel.add(removeStateButton);
+		
+		//Create and hook up the Add Transition button.
+		JButton addTransitionButton = new JButton("Add Transition");
+		addTransitionButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (selectedStates.size() > 2) {
+					updateJFrame("Too many states selected.");
+					return;
+				}
+				if (selectedStates.isEmpty()) {
+					updateJFrame("No states selected");
+					return;
+				}
+				
+				String transitionLabel = JOptionPane.showInputDialog("Enter Transition Label, or a range like [0-9] or \\p{L}");
+				if (transitionLabel == null || transitionLabel.isEmpty()) {
+					updateJFrame("Transition label was not given.");
+					return;
+				}
+				if (SymbolSet.isRangeLabel(transitionLabel)) {
+					try {
+						SymbolSet.parse(transitionLabel);
+					} catch (IllegalArgumentException ex) {
+						updateJFrame(ex.getMessage());
+						return;
+					}
+				}
+				
+				//StateD
+				TransitionDisplay transition;
+				if (selectedStates.size() == 1) {
+					transition = getTransitionDisplay(selectedStates.get(0), selectedStates.get(0));
+				} else {
+					transition = getTransitionDisplay(selectedStates.get(0), selectedStates.get(1));
+				}
+				if (transition == null) {
+					if (selectedStates.size() == 1) {
+						transition = new TransitionDisplay(selectedStates.get(0), selectedStates.get(0));
+					} else {
+						transition = new TransitionDisplay(selectedStates.get(0), selectedStates.get(1));
+					}
+				}
+				if (transition.hasLabel(transitionLabel)) {
+					updateJFrame("That transition already exists.");
+				} else {
+					TransitionDisplay changed = transition;
+					setLabel(changed, transitionLabel, true);
+					history.record("Add Transition", () -> setLabel(changed, transitionLabel, false), () -> setLabel(changed, transitionLabel, true));
+					validateStateMachine();
+					updateJFrame(null);
+				}
+				deselectAllStates();
+			}
+		});
+		westPanel.add(addTransitionButton, BorderLayout.WEST);
+		
+		//Create and hook up the Remove Transition button
+		JButton removeTransitionButton = new JButton("Remove Transition");
+		removeTransitionButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (selectedStates.size() < 2) {
+					updateJFrame("Too few states selected.");
+					return;
+				}
+				if (selectedStates.size() > 2) {
+					updateJFrame("Too many states selected.");
+					return;
+				}
+				
+				String transitionLabel = JOptionPane.showInputDialog("Enter Transition Label");
+				if (transitionLabel == null) {
+					updateJFrame("Transition label was not given.");
+					return;
+				}
+				
+
+				TransitionDisplay transition = getTransitionDisplay(selectedStates.get(0), selectedStates.get(1));
+				if (transition == null) {
+					updateJFrame("No such transition.");
+					return;
+				} else {
+					if (transition.hasLabel(transitionLabel)) {
+						setLabel(transition, transitionLabel, false);
+						history.record("Remove Transition", () -> setLabel(transition, transitionLabel, true), () -> setLabel(transition, transitionLabel, false));
+						validateStateMachine();
+						updateJFrame(null);
+					} else {
+						updateJFrame("No such transition symbol.");
+					}
+				}
+				deselectAllStates();
+			}
+		});
+		westPanel.add(removeTransitionButton);
+		
+		//Create and hook up Select Initial State Button.
+		JButton selectInitialButton = new JButton("Select Initial State");
+		selectInitialButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (selectedStates.size() != 1) {
+					updateJFrame("Invalid number of selected states.");
+					return;
+				}
+				StateDisplay previous = displays.getInitialState();
+				StateDisplay initial = selectedStates.get(0);
+				setInitialState(initial);
+				history.record("Select Initial State", () -> setInitialState(previous), () -> setInitialState(initial));
+				validateStateMachine();
+				updateJFrame(null);
+			}
+		});
+		westPanel.add(selectInitialButton);
+		
+		//Create and hook up Toggle Final State Button.
+		JButton toggleFinalStatesButton = new JButton("Toggle Finale States");
+		toggleFinalStatesButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				List<StateDisplay> toggled = new ArrayList<>(selectedStates);
+				toggleFinalStates(toggled);
+				history.record("Toggle Final States", () -> toggleFinalStates(toggled), () -> toggleFinalStates(toggled));
+				deselectAllStates();
+				validateStateMachine();
+				updateJFrame(null);
+			}
+		});
+		westPanel.add(toggleFinalStatesButton);
+		
+		//Create and hook up and Test String Button
+		JButton testStringButton = new JButton("Test String");
+		testStringButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (testWorker != null) {
+					updateJFrame("A test is already running.");
+					return;
+				}
+				String subject = JOptionPane.showInputDialog("Enter string to test");
+				if (subject == null) {
+					return;
+				}
+				if (stateMachine == null) {
+					validateStateMachine();
+				}
+				startTest(new WordTest(subject.toCharArray(), stateMachine, heatMachine));
+			}
+		});
+		eastPanel.add(testStringButton);
+		
+		//Create and hook up the Test File button, which tests each line of a file.
+		JButton testFileButton = new JButton("Test File");
+		testFileButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (testWorker != null) {
+					updateJFrame("A test is already running.");
+					return;
+				}
+				JFileChooser chooser = new JFileChooser();
+				if (chooser.showOpenDialog(SketchFrame.this) != JFileChooser.APPROVE_OPTION) {
+					return;
+				}
+				startTest(new FileTest(chooser.getSelectedFile(), snapshots, heatMachine));
+			}
+		});
+		eastPanel.add(testFileButton);
+		
+		//Create and hook up the Cancel Test button, which is only enabled while a test runs.
+		cancelTestButton = new JButton("Cancel Test");
+		cancelTestButton.setEnabled(false);
+		cancelTestButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (testWorker != null) {
+					testWorker.cancel(false);
+				}
+			}
+		});
+		eastPanel.add(cancelTestButton);
+		
+		//Create and hook up the Step Through button, which records a run and opens a player for it.
+		JButton stepThroughButton = new JButton("Step Through");
+		stepThroughButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (testWorker != null) {
+					updateJFrame("A test is already running.");
+					return;
+				}
+				String subject = JOptionPane.showInputDialog("Enter string to step through");
+				if (subject == null) {
+					return;
+				}
+				validateStateMachine();
+				if (!stateMachine.validateWord(subject.toCharArray())) {
+					updateJFrame("Not a valid string!");
+					return;
+				}
+				startTest(new TraceRecording(subject.toCharArray(), stateMachine));
+			}
+		});
+		eastPanel.add(stepThroughButton);
+		
+		//Create and hook up the Heat Map button.
+		JButton heatMapButton = new JButton("Heat Map");
+		heatMapButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (heatMachine == null) {
+					validateStateMachine();
+					heatMachine = new InstrumentedStateMachine(stateMachine);
+					updateHeat();
+					updateJFrame("Tested strings now heat up the states they visit.");
+				} else {
+					heatMachine = null;
+					updateHeat();
+					updateJFrame(null);
+				}
+			}
+		});
+		eastPanel.add(heatMapButton);
+		
+		//Create and hook up the layout buttons. Pressing either while a layout runs stops it.
+		JButton autoLayoutButton = new JButton("Auto Layout");
+		autoLayoutButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (!stopLayout()) {
+					startLayout(false);
+				}
+			}
+		});
+		eastPanel.add(autoLayoutButton);
+		JButton layeredLayoutButton = new JButton("Layered Layout");
+		layeredLayoutButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (!stopLayout()) {
+					startLayout(true);
+				}
+			}
+		});
+		eastPanel.add(layeredLayoutButton);
+		
+		//Create and hook up the Save Machine button.
+		JButton saveButton = new JButton("Save Machine");
+		saveButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				JFileChooser chooser = new JFileChooser();
+				if (chooser.showSaveDialog(SketchFrame.this) != JFileChooser.APPROVE_OPTION) {
+					return;
+				}
+				validateStateMachine();
+				updateJFrame("Saving...");
+				new MachineSave(chooser.getSelectedFile(), toDocument(), snapshots).execute();
+			}
+		});
+		westPanel.add(saveButton);
+		
+		//Create and hook up the Load Machine button.
+		JButton loadButton = new JButton("Load Machine");
+		loadButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				JFileChooser chooser = new JFileChooser();
+				if (chooser.showOpenDialog(SketchFrame.this) != JFileChooser.APPROVE_OPTION) {
+					return;
+				}
+				try {
+					FSMDocument document = MachineFiles.readDocument(chooser.getSelectedFile());
+					if (document == null) {
+						updateJFrame("That file has no editable machine.");
+						return;
+					}
+					loadDocument(document);
+					updateJFrame("Loaded " + chooser.getSelectedFile().getName());
+				} catch (IOException ex) {
+					updateJFrame("Could not load: " + ex.getMessage());
+				}
+			}
+		});
+		westPanel.add(loadButton);
+		
+		//Create and hook up the Undo and Redo buttons.
+		JButton undoButton = new JButton("Undo");
+		undoButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				undo(false);
+			}
+		});
+		westPanel.add(undoButton);
+		JButton redoButton = new JButton("Redo");
+		redoButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				undo(true);
+			}
+		});
+		westPanel.add(redoButton);
+		
+		
+		add(westPanel, BorderLayout.WEST);
+		add(eastPanel, BorderLayout.EAST);
+		
+		//Finish creating the JFrame
+		setVisible(true);
+		
+		while(true) {
+			try {
+				alphabetSize = Integer.parseInt(JOptionPane.showInputDialog("Enter the size of the alphabet"));
+				alphabet = new FSM().getAlphabet(alphabetSize);
+				break;
+			}
+			catch(Exception e) {
+				
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Redraws the JFrame and sets the notification text.
+	 * 
+	 * @param notificationText The notification text. If null, the text field will be invisible.
+	 */
+	public void updateJFrame(String notificationText) {
+		if (notificationText != null) {
+			notificationTextField.setText(notificationText);
+			notificationTextField.setVisible(true);
+		} else {
+			notificationTextField.setVisible(false);
+		}
+		revalidate();
+		repaint();
+	}
+	
+	/**
+	 * Updates the FSM class to match what the visuals show.
+	 */
+	public void validateStateMachine() {
+		//A recorded run belongs to the old machine.
+		if (tracePlayer != null) {
+			tracePlayer.dispose();
+		}
+		stateMachine = new FSM();
+		//Removing states, or undoing, leaves gaps in the IDs, so there is a state for every ID up to the largest.
+		int numberOfStates = displays.getNumberOfStates();
+		for (StateDisplay sd : displays.getStates()) {
+			numberOfStates = Math.max(numberOfStates, sd.getStateID() + 1);
+		}
+		for (int i = 0; i < numberOfStates; i++) stateMachine.addState();
+		for (StateDisplay sd : displays.getStates()) {
+			if (sd.isInitialState()) {
+				stateMachine.setInitialState(sd.getStateID());
+			}
+			if (sd.isFinalState()) {
+				stateMachine.setFinalState(sd.getStateID());
+			}
+		}
+		for (char symbol : alphabet) {
+			stateMachine.addSymbol(symbol);
+		}
+		for (TransitionDisplay td : displays.getTransitions()) {
+			for (String label : td.getLabels()) {
+				try {
+					stateMachine.addLabeledTransition(td.getFromState().getStateID(), 
+													  td.getToState().getStateID(), 
+													  label);
+				} catch (IllegalArgumentException e) {
+					//A loaded file can hold a label that isn't a valid range; it steps on its first character as before.
+					stateMachine.addTransition(td.getFromState().getStateID(), 
+											   td.getToState().getStateID(), 
+											   label.charAt(0));
+				}
+			}
+		}
+		//The old counts belong to the old machine, so the heat map starts over.
+		if (heatMachine != null) {
+			heatMachine = new InstrumentedStateMachine(stateMachine);
+			updateHeat();
+		}
+		//Compiling can take a while for an NFA, so it happens off the event thread.
+		snapshots.publishLater(stateMachine);
+	}
+	
+	/**
+	 * Returns where the machine is published after every edit. Other threads, such as an
+	 * EvaluationServer, should evaluate its snapshots and never the live FSM. The machine is
+	 * compiled on a background thread after each edit, and get() returns the last one done.
+	 * 
+	 * @return The publisher.
+	 */
+	public SnapshotPublisher getSnapshots() {
+		return snapshots;
+	}
+	
+	/**
+	 * Colors the states by how often tested strings have visited them, or clears the colors
+	 * if the heat map isn't shown. The scale is logarithmic so that rarely visited states
+	 * still stand out from ones that were never visited.
+	 */
+	public void updateHeat() {
+		if (heatMachine == null) {
+			for (StateDisplay sd : displays.getStates()) {
+				setHeat(sd, -1);
+			}
+			return;
+		}
+		long[] visits = heatMachine.getStateVisits();
+		long max = 0;
+		for (long v : visits) {
+			max = Math.max(max, v);
+		}
+		for (StateDisplay sd : displays.getStates()) {
+			long v = sd.getStateID() < visits.length ? visits[sd.getStateID()] : 0;
+			setHeat(sd, max == 0 ? 0 : Math.log1p(v) / Math.log1p(max));
+		}
+	}
+	
+	private void setHeat(StateDisplay sd, double heat) {
+		if (sd.getHeat() != heat) {
+			sd.setHeat(heat);
+			redraw(sd, false);
+		}
+	}
+	
+	/**
+	 * Describes what is currently displayed as a document that can be saved.
+	 * 
+	 * @return The document.
+	 */
+	public FSMDocument toDocument() {
+		FSMDocument document = new FSMDocument();
+		for (char symbol : alphabet) {
+			document.addSymbol(symbol);
+		}
+		HashMap<StateDisplay, Integer> index = new HashMap<>();
+		for (StateDisplay sd : displays.getStates()) {
+			index.put(sd, document.addState(sd.getLabel(), sd.getX(), sd.getY(), sd.isFinalState()));
+			if (sd.isInitialState()) {
+				document.setInitialState(index.get(sd));
+			}
+		}
+		for (TransitionDisplay td : displays.getTransitions()) {
+			for (String label : td.getLabels()) {
+				document.addTransition(index.get(td.getFromState()), index.get(td.getToState()), label);
+			}
+		}
+		return document;
+	}
+	
+	/**
+	 * Replaces what is displayed with the contents of a document.
+	 * 
+	 * @param document The document to display.
+	 */
+	public void loadDocument(FSMDocument document) {
+		stopLayout();
+		DisplayModel loaded = new DisplayModel();
+		StateDisplay[] states = new StateDisplay[document.getNumberOfStates()];
+		for (int i = 0; i < states.length; i++) {
+			StateDisplay sd = new StateDisplay(document.getStateLabel(i), document.getStateX(i), document.getStateY(i), i);
+			sd.setIsFinalState(document.isFinalState(i));
+			sd.setIsInitialState(i == document.getInitialState());
+			states[i] = sd;
+			loaded.addState(sd);
+		}
+		for (int i = 0; i < document.getNumberOfTransitions(); i++) {
+			StateDisplay from = states[document.getTransitionFrom(i)];
+			StateDisplay to = states[document.getTransitionTo(i)];
+			TransitionDisplay td = loaded.getTransition(from, to);
+			if (td == null) {
+				td = new TransitionDisplay(from, to);
+				loaded.addTransition(td);
+			}
+			td.addLabel(document.getTransitionLabel(i));
+		}
+		List<Character> loadedAlphabet = new ArrayList<>(document.getAlphabet());
+		DisplayModel previous = displays;
+		List<Character> previousAlphabet = alphabet;
+		showModel(loaded, loadedAlphabet);
+		//The replaced model is kept whole, as nothing edits it once it's no longer shown.
+		history.record("Load Machine", () -> showModel(previous, previousAlphabet), () -> showModel(loaded, loadedAlphabet));
+		updateJFrame(null);
+	}
+	
+	/**
+	 * Shows a different model in place of the one shown.
+	 * 
+	 * @param model The states and transitions to show.
+	 * @param symbols Their alphabet.
+	 */
+	private void showModel(DisplayModel model, List<Character> symbols) {
+		deselectAllStates();
+		displays = model;
+		spatialIndex.clear();
+		for (StateDisplay sd : model.getStates()) {
+			spatialIndex.add(sd);
+		}
+		alphabet = symbols;
+		alphabetSize = symbols.size();
+		sketchPanel.invalidateAll();
+		validateStateMachine();
+	}
+	
+	/**
+	 * Adds states and transitions to those shown.
+	 * 
+	 * @param states The states, which keep whether they are the initial state.
+	 * @param transitions The transitions, which must be between states that are shown.
+	 */
+	private void addDisplays(List<StateDisplay> states, List<TransitionDisplay> transitions) {
+		for (StateDisplay sd : states) {
+			displays.addState(sd);
+			spatialIndex.add(sd);
+			redraw(sd, false);
+		}
+		for (TransitionDisplay td : transitions) {
+			displays.addTransition(td);
+			redraw(td);
+		}
+	}
+	
+	/**
+	 * Removes states and the transitions into and out of them from those shown.
+	 * 
+	 * @param states The states.
+	 * @return The transitions that were removed.
+	 */
+	private List<TransitionDisplay> removeDisplays(List<StateDisplay> states) {
+		List<TransitionDisplay> removed = new ArrayList<>();
+		for (StateDisplay sd : states) {
+			redraw(sd, true);
+			spatialIndex.remove(sd);
+			removed.addAll(displays.removeState(sd));
+		}
+		return removed;
+	}
+	
+	/**
+	 * Adds a symbol to a transition or removes one from it. A transition is shown while it
+	 * has any symbols.
+	 * 
+	 * @param td The transition.
+	 * @param label The symbol.
+	 * @param present Whether the transition should have the symbol.
+	 */
+	private void setLabel(TransitionDisplay td, String label, boolean present) {
+		if (present) {
+			td.addLabel(label);
+			displays.addTransition(td);
+		} else {
+			td.removeLabel(label);
+			if (td.getLabels().isEmpty()) {
+				displays.removeTransition(td);
+			}
+		}
+		redraw(td);
+	}
+	
+	/**
+	 * Makes a state the initial state.
+	 * 
+	 * @param sd The state, or null for none.
+	 */
+	private void setInitialState(StateDisplay sd) {
+		StateDisplay previous = displays.getInitialState();
+		displays.setInitialState(sd);
+		if (previous != null) {
+			redraw(previous, false);
+		}
+		if (sd != null) {
+			redraw(sd, false);
+		}
+	}
+	
+	/**
+	 * Makes states that are final not final and states that aren't final final.
+	 * 
+	 * @param states The states.
+	 */
+	private void toggleFinalStates(List<StateDisplay> states) {
+		for (StateDisplay sd : states) {
+			sd.setIsFinalState(!sd.isFinalState());
+			redraw(sd, false);
+		}
+	}
+	
+	/**
+	 * Undoes or redoes the last edit.
+	 * 
+	 * @param redo Whether to redo rather than undo.
+	 */
+	private void undo(boolean redo) {
+		stopLayout();
+		deselectAllStates();
+		String name = redo ? history.redo() : history.undo();
+		if (name == null) {
+			updateJFrame(redo ? "Nothing to redo." : "Nothing to undo.");
+			return;
+		}
+		validateStateMachine();
+		updateJFrame((redo ? "Redid " : "Undid ") + name + ".");
+	}
+	
+	/**
+	 * Returns a state display with the given label.
+	 * 
+	 * @param label The label used to select a StateDisplay.
+	 * 
+	 * @return The StateDisplay with the givel label.
+	 */
+	public StateDisplay getStateDisplay(String label) {
+		if (label == null) return null;
+		return displays.getState(label);
+	}
+	
+	/**
+	 * Returns a state display with the given stateID.
+	 * 
+	 * @param stateID The id used to select a StateDisplay.
+	 * 
+	 * @return The StateDisplay with the givel label.
+	 */
+	public StateDisplay getStateDisplay(int stateID) {
+		return displays.getState(stateID);
+	}
+	
+	/**
+	 * Starts laying out the states on a background thread. The states move as it goes.
+	 * 
+	 * @param layered Whether to use the layered layout rather than the force-directed one.
+	 */
+	private void startLayout(boolean layered) {
+		List<StateDisplay> states = new ArrayList<>(displays.getStates());
+		HashMap<StateDisplay, Integer> index = new HashMap<>();
+		double[] x = new double[states.size()];
+		double[] y = new double[states.size()];
+		int initial = -1;
+		for (int i = 0; i < states.size(); i++) {
+			StateDisplay sd = states.get(i);
+			index.put(sd, i);
+			x[i] = sd.getX();
+			y[i] = sd.getY();
+			if (sd.isInitialState()) {
+				initial = i;
+			}
+		}
+		int[] from = new int[displays.getTransitions().size()];
+		int[] to = new int[from.length];
+		int e = 0;
+		for (TransitionDisplay td : displays.getTransitions()) {
+			from[e] = index.get(td.getFromState());
+			to[e++] = index.get(td.getToState());
+		}
+		layoutWorker = new LayoutWorker(states, new GraphLayout(x, y, from, to), layered, initial);
+		layoutWorker.execute();
+		updateJFrame(layered ? "Laying out in layers..." : "Laying out...");
+	}
+	
+	/**
+	 * Stops the layout being run, leaving the states where it got them to.
+	 * 
+	 * @return Whether there was one to stop.
+	 */
+	private boolean stopLayout() {
+		if (layoutWorker == null) {
+			return false;
+		}
+		layoutWorker.layout.cancel();
+		layoutWorker.cancel(false);
+		layoutWorker.record();
+		layoutWorker = null;
+		updateJFrame("Layout stopped.");
+		return true;
+	}
+	
+	/**
+	 * Moves states to laid out positions.
+	 */
+	private void moveStates(List<StateDisplay> states, double[] x, double[] y) {
+		for (int i = 0; i < states.size(); i++) {
+			if (!Double.isNaN(x[i]) && !Double.isNaN(y[i])) {
+				spatialIndex.move(states.get(i), (int) Math.round(x[i]), (int) Math.round(y[i]));
+			}
+		}
+		sketchPanel.invalidateAll();
+	}
+	
+	/**
+	 * Moves states, redrawing only around them if there are a few and everything if there
+	 * are more.
+	 */
+	private void moveStates(List<StateDisplay> states, int[] x, int[] y) {
+		boolean few = states.size() <= 16;
+		for (int i = 0; i < states.size(); i++) {
+			if (few) {
+				redraw(states.get(i), true);
+			}
+			spatialIndex.move(states.get(i), x[i], y[i]);
+			if (few) {
+				redraw(states.get(i), true);
+			}
+		}
+		if (!few) {
+			sketchPanel.invalidateAll();
+		}
+	}
+	
+	/**
+	 * Runs a layout off the event thread, handing its positions back at most once a frame.
+	 */
+	private class LayoutWorker extends SwingWorker<Void, double[][]> {
+		/**
+		 * The shortest time between positions handed back, in nanoseconds.
+		 */
+		private static final long FRAME_NANOS = 1_000_000_000L / 30;
+		
+		private final List<StateDisplay> states;
+		private final GraphLayout layout;
+		private final boolean layered;
+		private final int initial;
+		/**
+		 * Where the states were before the layout, so it can be undone.
+		 */
+		private final int[] startX, startY;
+		private long lastPublished = System.nanoTime();
+		
+		LayoutWorker(List<StateDisplay> states, GraphLayout layout, boolean layered, int initial) {
+			this.states = states;
+			this.layout = layout;
+			this.layered = layered;
+			this.initial = initial;
+			this.startX = new int[states.size()];
+			this.startY = new int[states.size()];
+			for (int i = 0; i < states.size(); i++) {
+				startX[i] = states.get(i).getX();
+				startY[i] = states.get(i).getY();
+			}
+		}
+		
+		/**
+		 * Records the layout as one edit, from where the states started to where they are now.
+		 */
+		void record() {
+			int[] endX = new int[states.size()];
+			int[] endY = new int[states.size()];
+			for (int i = 0; i < states.size(); i++) {
+				endX[i] = states.get(i).getX();
+				endY[i] = states.get(i).getY();
+			}
+			history.record(layered ? "Layered Layout" : "Auto Layout",
+					() -> moveStates(states, startX, startY), () -> moveStates(states, endX, endY));
+		}
+		
+		@Override
+		protected Void doInBackground() {
+			if (layered) {
+				layout.layered(initial, null);
+			} else {
+				layout.forceDirected(GraphLayout.ITERATIONS, (x, y) -> {
+					if (System.nanoTime() - lastPublished >= FRAME_NANOS) {
+						publish(new double[][] { x.clone(), y.clone() });
+						lastPublished = System.nanoTime();
+					}
+				});
+			}
+			return null;
+		}
+		
+		@Override
+		protected void process(List<double[][]> positions) {
+			if (layoutWorker == this) {
+				double[][] latest = positions.get(positions.size() - 1);
+				moveStates(states, latest[0], latest[1]);
+			}
+		}
+		
+		@Override
+		protected void done() {
+			if (layoutWorker != this) {
+				return;
+			}
+			layoutWorker = null;
+			try {
+				get();
+			} catch (InterruptedException | ExecutionException e) {
+				record();
+				updateJFrame("Layout failed: " + e.getMessage());
+				return;
+			}
+			moveStates(states, layout.getX(), layout.getY());
+			record();
+			updateJFrame(null);
+		}
+	}
+	
+	/**
+	 * Starts testing strings on a background thread.
+	 * 
+	 * @param test The test.
+	 */
+	private void startTest(TestWorker test) {
+		testWorker = test;
+		cancelTestButton.setEnabled(true);
+		updateJFrame("Testing...");
+		test.execute();
+	}
+	
+	/**
+	 * Tests strings off the event thread, showing its progress in the notification text
+	 * and its result when it's done.
+	 */
+	private abstract class TestWorker extends SwingWorker<String, String> {
+		/**
+		 * The shortest time between progress reports, in nanoseconds.
+		 */
+		private static final long REPORT_NANOS = 100_000_000L;
+		
+		private long lastReport = System.nanoTime();
+		
+		/**
+		 * Returns whether it's time for another progress report.
+		 */
+		boolean reportDue() {
+			long now = System.nanoTime();
+			if (now - lastReport < REPORT_NANOS) {
+				return false;
+			}
+			lastReport = now;
+			return true;
+		}
+		
+		@Override
+		protected void process(List<String> reports) {
+			if (testWorker == this) {
+				updateJFrame(reports.get(reports.size() - 1));
+			}
+		}
+		
+		@Override
+		protected void done() {
+			if (testWorker != this) {
+				return;
+			}
+			testWorker = null;
+			cancelTestButton.setEnabled(false);
+			updateHeat();
+			try {
+				updateJFrame(get());
+				succeeded();
+			} catch (CancellationException e) {
+				updateJFrame("Test cancelled.");
+			} catch (InterruptedException e) {
+				updateJFrame("Test cancelled.");
+			} catch (ExecutionException e) {
+				updateJFrame("Test failed: " + e.getCause().getMessage());
+			}
+		}
+		
+		/**
+		 * Called on the event thread after the test has finished without being cancelled.
+		 */
+		void succeeded() {
+		}
+	}
+	
+	/**
+	 * Records a run of the machine over a string, then opens a player for it.
+	 */
+	private class TraceRecording extends TestWorker {
+		/**
+		 * The number of symbols recorded between checks for cancelling and reporting.
+		 */
+		private static final int CHUNK = 1 << 16;
+		
+		private final SimulationTrace trace;
+		
+		/**
+		 * @param word The string, already checked against the alphabet.
+		 * @param machine The machine, which the event thread replaces rather than changes.
+		 */
+		TraceRecording(char[] word, FSM machine) {
+			this.trace = new SimulationTrace(machine, word);
+		}
+		
+		@Override
+		protected String doInBackground() {
+			while (!isCancelled() && !trace.record(CHUNK)) {
+				if (reportDue()) {
+					publish(String.format("Recording: %,d of %,d characters", trace.getRecorded(), trace.getLength()));
+				}
+			}
+			return String.format("Recorded %,d characters in %,d KB.", trace.getLength(), trace.getBytes() / 1024);
+		}
+		
+		@Override
+		void succeeded() {
+			tracePlayer = new TracePlayer(trace);
+			tracePlayer.setVisible(true);
+		}
+	}
+	
+	/**
+	 * A window for moving back and forth through a recorded run. The states active at the
+	 * step it shows are marked on the canvas.
+	 */
+	private class TracePlayer extends JDialog {
+		private static final long serialVersionUID = 1L; //Boiler code
+		/**
+		 * The time between steps while playing, in milliseconds.
+		 */
+		private static final int PLAY_DELAY = 30;
+		
+		private final SimulationTrace trace;
+		private final JSlider slider;
+		private final JLabel status = new JLabel();
+		private final Timer timer;
+		
+		TracePlayer(SimulationTrace trace) {
+			super(SketchFrame.this, "Step Through");
+			this.trace = trace;
+			slider = new JSlider(0, trace.getLength(), 0);
+			slider.addChangeListener(new ChangeListener() {
+				@Override
+				public void stateChanged(ChangeEvent e) {
+					showStep(slider.getValue());
+				}
+			});
+			//Long strings are played several steps at a time, so they take about ten seconds at most.
+			int stride = Math.max(1, trace.getLength() / (10_000 / PLAY_DELAY));
+			timer = new Timer(PLAY_DELAY, new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					if (slider.getValue() == slider.getMaximum()) {
+						timer.stop();
+					} else {
+						slider.setValue(Math.min(slider.getValue() + stride, slider.getMaximum()));
+					}
+				}
+			});
+			
+			JPanel buttons = new JPanel();
+			buttons.add(stepButton("|<", () -> slider.setValue(0)));
+			buttons.add(stepButton("<", () -> slider.setValue(slider.getValue() - 1)));
+			buttons.add(stepButton("Play", () -> {
+				if (timer.isRunning()) {
+					timer.stop();
+				} else {
+					timer.start();
+				}
+			}));
+			buttons.add(stepButton(">", () -> slider.setValue(slider.getValue() + 1)));
+			buttons.add(stepButton(">|", () -> slider.setValue(slider.getMaximum())));
+			
+			setLayout(new BorderLayout());
+			add(slider, BorderLayout.NORTH);
+			add(buttons, BorderLayout.CENTER);
+			add(status, BorderLayout.SOUTH);
+			setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+			pack();
+			setLocationRelativeTo(SketchFrame.this);
+			showStep(0);
+		}
+		
+		private JButton stepButton(String text, Runnable action) {
+			JButton button = new JButton(text);
+			button.addActionListener(e -> action.run());
+			return button;
+		}
+		
+		/**
+		 * Moves to a step and marks the states that are active there.
+		 */
+		private void showStep(int step) {
+			trace.seek(step);
+			for (StateDisplay sd : currentStates) {
+				sd.setIsCurrentState(false);
+			}
+			currentStates.clear();
+			for (int state : trace.getActiveStates()) {
+				StateDisplay sd = getStateDisplay(state);
+				if (sd != null) {
+					sd.setIsCurrentState(true);
+					currentStates.add(sd);
+				}
+			}
+			String next = step < trace.getLength() ? String.format(", next '%s'", trace.getSymbol(step)) : "";
+			status.setText(String.format("Step %,d of %,d%s: %,d active, %s", step, trace.getLength(), next,
+					trace.getActiveCount(), trace.isAccepting() ? "accepting" : "not accepting"));
+			sketchPanel.repaint();
+		}
+		
+		@Override
+		public void dispose() {
+			timer.stop();
+			for (StateDisplay sd : currentStates) {
+				sd.setIsCurrentState(false);
+			}
+			currentStates.clear();
+			sketchPanel.repaint();
+			if (tracePlayer == this) {
+				tracePlayer = null;
+			}
+			super.dispose();
+		}
+	}
+	
+	/**
+	 * Tests one string, a chunk of symbols at a time, reporting how far it has got and how
+	 * many states are active.
+	 */
+	private class WordTest extends TestWorker {
+		/**
+		 * The number of symbols stepped between checks for cancelling and reporting.
+		 */
+		private static final int CHUNK = 1 << 16;
+		
+		private final char[] word;
+		private final FSM machine;
+		private final InstrumentedStateMachine heat;
+		
+		/**
+		 * @param word The string.
+		 * @param machine The machine, which the event thread replaces rather than changes.
+		 * @param heat Where the visits are recorded while the heat map is shown, or null.
+		 */
+		WordTest(char[] word, FSM machine, InstrumentedStateMachine heat) {
+			this.word = word;
+			this.machine = machine;
+			this.heat = heat;
+		}
+		
+		@Override
+		protected String doInBackground() {
+			Simulation simulation = new Simulation(machine);
+			if (simulation.findInvalid(word, 0, word.length) >= 0) {
+				return "Not a valid string!";
+			}
+			//The heat map counts visits as it steps, so it tests the string in one go.
+			if (heat != null) {
+				return heat.acceptsWord(word) ? "Accept" : "Reject";
+			}
+			for (int offset = 0; offset < word.length && !isCancelled(); offset += CHUNK) {
+				boolean alive = simulation.run(word, offset, Math.min(CHUNK, word.length - offset));
+				if (!alive) {
+					break;
+				}
+				if (reportDue()) {
+					publish(String.format("Testing: %,d of %,d characters, %,d active states",
+							simulation.getPosition(), word.length, simulation.getActiveCount()));
+				}
+			}
+			return simulation.isAccepting() ? "Accept" : "Reject";
+		}
+	}
+	
+	/**
+	 * Tests each line of a file, keeping a tally of the results.
+	 */
+	private class FileTest extends TestWorker {
+		private final File file;
+		private final SnapshotPublisher snapshots;
+		private final InstrumentedStateMachine heat;
+		private long accepted, rejected, invalid;
+		
+		/**
+		 * @param file The file.
+		 * @param snapshots Where the machine to test with is published. The test waits for the last edit to be compiled.
+		 * @param heat Where the visits are recorded while the heat map is shown, or null.
+		 */
+		FileTest(File file, SnapshotPublisher snapshots, InstrumentedStateMachine heat) {
+			this.file = file;
+			this.snapshots = snapshots;
+			this.heat = heat;
+		}
+		
+		@Override
+		protected String doInBackground() throws IOException {
+			CompiledFSM machine = snapshots.latest().getMachine();
+			try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+				String line;
+				while (!isCancelled() && (line = reader.readLine()) != null) {
+					char[] word = line.toCharArray();
+					if (!machine.validateWord(word)) {
+						invalid++;
+					} else if (heat != null ? heat.acceptsWord(word) : machine.acceptsWord(word)) {
+						accepted++;
+					} else {
+						rejected++;
+					}
+					if (reportDue()) {
+						publish(tally("Testing " + file.getName()));
+					}
+				}
+			}
+			return tally("Tested " + file.getName());
+		}
+		
+		private String tally(String prefix) {
+			return String.format("%s: %,d accepted, %,d rejected, %,d not valid", prefix, accepted, rejected, invalid);
+		}
+	}
+	
+	/**
+	 * Writes a machine file off the event thread, since the compiled section may have to wait
+	 * for the machine to be compiled.
+	 */
+	private class MachineSave extends SwingWorker<Void, Void> {
+		private final File file;
+		private final FSMDocument document;
+		private final SnapshotPublisher snapshots;
+		
+		/**
+		 * @param file The file to write.
+		 * @param document The editable model, taken on the event thread.
+		 * @param snapshots Where the compiled machine is published. The save waits for the last edit to be compiled.
+		 */
+		MachineSave(File file, FSMDocument document, SnapshotPublisher snapshots) {
+			this.file = file;
+			this.document = document;
+			this.snapshots = snapshots;
+		}
+		
+		@Override
+		protected Void doInBackground() throws IOException {
+			MachineFiles.write(file, document, snapshots.latest().getMachine());
+			return null;
+		}
+		
+		@Override
+		protected void done() {
+			try {
+				get();
+				updateJFrame("Saved " + file.getName());
+			} catch (InterruptedException e) {
+				updateJFrame("Could not save: interrupted");
+			} catch (ExecutionException e) {
+				updateJFrame("Could not save: " + e.getCause().getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Redraws a state after it has changed.
+	 * 
+	 * @param sd The state.
+	 * @param withTransitions Whether its transitions have changed too, as they do when it moves.
+	 */
+	private void redraw(StateDisplay sd, boolean withTransitions) {
+		sketchPanel.invalidate(new Rectangle2D.Double(sd.getX(), sd.getY(), 0, 0));
+		if (withTransitions) {
+			for (TransitionDisplay td : displays.getTransitions(sd)) {
+				redraw(td);
+			}
+		}
+	}
+	
+	/**
+	 * Redraws a transition after it has changed.
+	 * 
+	 * @param td The transition.
+	 */
+	private void redraw(TransitionDisplay td) {
+		Rectangle2D area = new Rectangle2D.Double(td.getFromState().getX(), td.getFromState().getY(), 0, 0);
+		area.add(td.getToState().getX(), td.getToState().getY());
+		sketchPanel.invalidate(area);
+	}
+	
+	/**
+	 * De-selects all the states.
+	 */
+	public void deselectAllStates() {
+		for (StateDisplay sd : selectedStates) {
+			sd.setIsSelected(false);
+		}
+		selectedStates.clear();
+	}
+	
+	/**
+	 * Returns a TransitionDisplay with a given fromState and toState.
+	 * 
+	 * @param fromState The fromState used to select the transition.
+	 * @param toState The toState used to select the transition.
+	 * 
+	 * @return The transition with the given to and from states.
+	 */
+	public TransitionDisplay getTransitionDisplay(StateDisplay fromState, StateDisplay toState) {
+		if (fromState == null || toState == null) return null;
+		return displays.getTransition(fromState, toState);
+	}
+	
+	/**
+	 * 
+	 * @author Leonardo Gutierrez
+	 *
+	 * The panel used to draw. It coveres the entire JFrame
+	 *
+	 */
+	public class SketchPanel extends JPanel {
+		private static final long serialVersionUID = 1L; //Boiler code
+		/**
+		 * How far past the visible area states and transitions are still drawn, so the
+		 * labels and arrows of ones just outside it aren't cut off.
+		 */
+		private static final int VIEW_MARGIN = 10 * StateDisplay.RADIUS;
+		
+		/**
+		 * The width and height of a cached tile, in pixels.
+		 */
+		private static final int TILE_SIZE = 256;
+		/**
+		 * The fewest tiles that are kept, a few screens' worth on a small panel.
+		 */
+		private static final int MIN_TILES = 128;
+		
+		/**
+		 * The graph drawn without highlights, cut into tiles. Tile (i, j) holds the pixels from
+		 * i * TILE_SIZE across and j * TILE_SIZE down of the canvas scaled by tileScale but not
+		 * translated, so panning moves the tiles rather than redrawing them. The least recently
+		 * used tiles are dropped first.
+		 */
+		private final LinkedHashMap<Long, BufferedImage> tiles = new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L; //Boiler code
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+				return size() > maxTiles;
+			}
+		};
+		/**
+		 * The most tiles that are kept: two panels' worth, so one screen of panning is cached
+		 * and the tiles being drawn never push out each other. It follows the panel's size,
+		 * since a fixed count is less than one screen on a large display.
+		 */
+		private int maxTiles = MIN_TILES;
+		/**
+		 * The scale the tiles were drawn at.
+		 */
+		private double tileScale = Double.NaN;
+		
+		/**
+		 * Redraws part of the canvas after the states or transitions in it have changed.
+		 * 
+		 * @param area The part that changed, in the canvas' coordinates. Labels and arrows
+		 * reaching past it are allowed for.
+		 */
+		public void invalidate(Rectangle2D area) {
+			Rectangle2D padded = new Rectangle2D.Double(area.getX() - VIEW_MARGIN, area.getY() - VIEW_MARGIN,
+					area.getWidth() + 2 * VIEW_MARGIN, area.getHeight() + 2 * VIEW_MARGIN);
+			//There are never more than maxTiles, so check them all rather than the ones the area covers.
+			Iterator<Long> keys = tiles.keySet().iterator();
+			while (keys.hasNext()) {
+				long key = keys.next();
+				int i = (int) (key >> 32);
+				int j = (int) key;
+				if (padded.intersects((double) i * TILE_SIZE / tileScale, (double) j * TILE_SIZE / tileScale, TILE_SIZE / tileScale, TILE_SIZE / tileScale)) {
+					keys.remove();
+				}
+			}
+			repaint(transform.createTransformedShape(padded).getBounds());
+		}
+		
+		/**
+		 * Redraws the whole canvas, after changes all over it.
+		 */
+		public void invalidateAll() {
+			tiles.clear();
+			repaint();
+		}
+		
+		/**
+		 * Draws the state displays and transition diplays that can be seen onto the screen.
+		 * The graph comes from the cached tiles, drawing the ones that are missing, and the
+		 * current and selected states are drawn over it.
+		 */
+		@Override
+		public void paintComponent(Graphics g) {
+			Graphics2D g2d = (Graphics2D) g;
+
+			g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		    g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		    
+		    
+		    
+		    //Draw background
+		    g2d.setColor(Color.GRAY.brighter());
+			g2d.fillRect(0, 0, super.getWidth(), super.getHeight());
+			g2d.setColor(Color.GRAY);
+			//int sideLength = 40;
+		    //for (int i = 0; i < 1 + getWidth() / sideLength; i++) g2d.drawLine(i * sideLength, 0, i * sideLength, getHeight());
+		    //for (int i = 0; i < 1 + getHeight() / sideLength; i++) g2d.drawLine(0, i * sideLength, getWidth(), i * sideLength);
+		    
+			//The scale is the same both ways, as the view is only ever zoomed and panned.
+			double scale = transform.getScaleX();
+			if (scale != tileScale) {
+				tiles.clear();
+				tileScale = scale;
+			}
+			if (!(scale > 0)) {
+				g.dispose();
+				return;
+			}
+			//Tiles are placed on whole pixels, so the selected states are drawn with the same rounded translation.
+			int tx = (int) Math.round(transform.getTranslateX());
+			int ty = (int) Math.round(transform.getTranslateY());
+			Rectangle clip = g2d.getClipBounds();
+			if (clip == null) {
+				clip = new Rectangle(0, 0, getWidth(), getHeight());
+			}
+			int minI = Math.floorDiv(clip.x - tx, TILE_SIZE);
+			int maxI = Math.floorDiv(clip.x + clip.width - 1 - tx, TILE_SIZE);
+			int minJ = Math.floorDiv(clip.y - ty, TILE_SIZE);
+			int maxJ = Math.floorDiv(clip.y + clip.height - 1 - ty, TILE_SIZE);
+			//A panel that isn't a whole number of tiles, or is panned part way, overlaps one more each way.
+			int panelTiles = (getWidth() / TILE_SIZE + 2) * (getHeight() / TILE_SIZE + 2);
+			int clipTiles = (maxI - minI + 1) * (maxJ - minJ + 1);
+			maxTiles = Math.max(MIN_TILES, 2 * Math.max(panelTiles, clipTiles));
+			
+			List<Point> missing = new ArrayList<>();
+			for (int i = minI; i <= maxI; i++) {
+				for (int j = minJ; j <= maxJ; j++) {
+					if (!tiles.containsKey(tileKey(i, j))) {
+						missing.add(new Point(i, j));
+					}
+				}
+			}
+			drawTiles(missing);
+			for (int i = minI; i <= maxI; i++) {
+				for (int j = minJ; j <= maxJ; j++) {
+					BufferedImage tile = tiles.get(tileKey(i, j));
+					if (tile != null) {
+						g2d.drawImage(tile, i * TILE_SIZE + tx, j * TILE_SIZE + ty, null);
+					}
+				}
+			}
+			
+			g2d.translate(tx, ty);
+			g2d.scale(scale, scale);
+			//There may be many current states, so only the ones that can be seen are drawn.
+			Rectangle2D visible = new Rectangle2D.Double((clip.x - tx) / scale - VIEW_MARGIN, (clip.y - ty) / scale - VIEW_MARGIN,
+					clip.width / scale + 2 * VIEW_MARGIN, clip.height / scale + 2 * VIEW_MARGIN);
+			for (StateDisplay sd : currentStates) {
+				if (visible.contains(sd.getX(), sd.getY())) {
+					sd.draw(g2d, true);
+				}
+			}
+			for (StateDisplay sd : selectedStates) {
+				sd.draw(g2d, true);
+			}
+			
+			g.dispose();
+		}
+		
+		/**
+		 * Draws tiles of the graph and caches them. The states and transitions near all of
+		 * them are found once and handed out to the tiles they are near.
+		 * 
+		 * @param missing The tiles to draw.
+		 */
+		private void drawTiles(List<Point> missing) {
+			if (missing.isEmpty()) {
+				return;
+			}
+			Rectangle2D union = tileArea(missing.get(0).x, missing.get(0).y);
+			HashMap<Long, List<StateDisplay>> states = new HashMap<>();
+			HashMap<Long, List<TransitionDisplay>> transitions = new HashMap<>();
+			for (Point tile : missing) {
+				union.add(tileArea(tile.x, tile.y));
+				states.put(tileKey(tile.x, tile.y), new ArrayList<>());
+				transitions.put(tileKey(tile.x, tile.y), new ArrayList<>());
+			}
+			for (StateDisplay sd : spatialIndex.statesIn(union)) {
+				forEachTile(sd.getX(), sd.getY(), sd.getX(), sd.getY(), states, sd);
+			}
+			for (TransitionDisplay td : displays.getTransitions()) {
+				if (td.intersects(union)) {
+					StateDisplay from = td.getFromState(), to = td.getToState();
+					forEachTile(Math.min(from.getX(), to.getX()), Math.min(from.getY(), to.getY()),
+							Math.max(from.getX(), to.getX()), Math.max(from.getY(), to.getY()), transitions, td);
+				}
+			}
+			
+			GraphicsConfiguration configuration = getGraphicsConfiguration();
+			for (Point p : missing) {
+				BufferedImage tile = configuration != null
+						? configuration.createCompatibleImage(TILE_SIZE, TILE_SIZE, Transparency.TRANSLUCENT)
+						: new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+				Graphics2D g2d = tile.createGraphics();
+				g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+				g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+				g2d.setFont(getFont());
+				g2d.setColor(Color.GRAY);
+				g2d.translate(-p.x * TILE_SIZE, -p.y * TILE_SIZE);
+				g2d.scale(tileScale, tileScale);
+				long key = tileKey(p.x, p.y);
+				GraphRenderer.draw(g2d, tileScale, tileArea(p.x, p.y), states.get(key), transitions.get(key));
+				g2d.dispose();
+				tiles.put(tileKey(p.x, p.y), tile);
+			}
+		}
+		
+		/**
+		 * Adds something to the lists of the tiles being drawn that it can show up on.
+		 */
+		private <T> void forEachTile(double minX, double minY, double maxX, double maxY, HashMap<Long, List<T>> lists, T item) {
+			int minI = (int) Math.floor((minX - VIEW_MARGIN) * tileScale / TILE_SIZE);
+			int maxI = (int) Math.floor((maxX + VIEW_MARGIN) * tileScale / TILE_SIZE);
+			int minJ = (int) Math.floor((minY - VIEW_MARGIN) * tileScale / TILE_SIZE);
+			int maxJ = (int) Math.floor((maxY + VIEW_MARGIN) * tileScale / TILE_SIZE);
+			//Long transitions can span far more tiles than are being drawn.
+			if (((double) maxI - minI + 1) * ((double) maxJ - minJ + 1) > lists.size()) {
+				for (Map.Entry<Long, List<T>> tile : lists.entrySet()) {
+					int i = (int) (tile.getKey() >> 32);
+					int j = (int) (long) tile.getKey();
+					if (i >= minI && i <= maxI && j >= minJ && j <= maxJ) {
+						tile.getValue().add(item);
+					}
+				}
+				return;
+			}
+			for (int i = minI; i <= maxI; i++) {
+				for (int j = minJ; j <= maxJ; j++) {
+					List<T> list = lists.get(tileKey(i, j));
+					if (list != null) {
+						list.add(item);
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Returns the part of the canvas whose states and transitions can show up on a tile.
+		 */
+		private Rectangle2D tileArea(int i, int j) {
+			double size = TILE_SIZE / tileScale;
+			return new Rectangle2D.Double(i * size - VIEW_MARGIN, j * size - VIEW_MARGIN, size + 2 * VIEW_MARGIN, size + 2 * VIEW_MARGIN);
+		}
+		
+		private long tileKey(int i, int j) {
+			return ((long) i << 32) ^ (j & 0xffffffffL);
+		}
+	}
+	
+	
+	//---MOUSE LISTENER METHODS---
+
+	/**
+	 * Selects states when clicked on. If there is a single state selected, and they 
+	 * click empty space, the state will be moved.
+	 */
+	@Override
+	public void mouseClicked(MouseEvent e) {
+		// TODO Auto-generated method stub
+	}
+
+	@Override
+	public void mouseEntered(MouseEvent e) {
+		// TODO Auto-generated method stub
+	}
+
+	@Override
+	public void mouseExited(MouseEvent e) {
+		// TODO Auto-generated method stub
+	}
+
+	@Override
+	public void mousePressed(MouseEvent e) {
+		Point2D p = new Point2D.Double();
+		try {
+			p = transform.inverseTransform(new Point2D.Double(e.getX(), e.getY()), new Point2D.Double());
+		} catch (NoninvertibleTransformException e1) {
+			e1.printStackTrace();
+		}
+		
+		boolean stateSelected = false;
+		for (StateDisplay sd : spatialIndex.statesNear(p.getX(), p.getY(), StateDisplay.RADIUS)) {
+			if (selectedStates.contains(sd)) {
+				selectedStates.remove(sd);
+			} else {
+				selectedStates.push(sd);
+			}
+			sd.setIsSelected(!sd.isSelected());
+			stateSelected = true;
+			updateJFrame(null);
+		}
+		if (!stateSelected) {
+			if (selectedStates.size() == 1) {
+				int ix = (int) ((e.getX() - transform.getTranslateX()) / transform.getScaleX());
+				int iy = (int) ((e.getY() - transform.getTranslateY()) / transform.getScaleX());
+				List<StateDisplay> moved = Collections.singletonList(selectedStates.get(0));
+				int[] fromX = { moved.get(0).getX() }, fromY = { moved.get(0).getY() };
+				int[] toX = { ix }, toY = { iy };
+				moveStates(moved, toX, toY);
+				history.record("Move State", () -> moveStates(moved, fromX, fromY), () -> moveStates(moved, toX, toY));
+				deselectAllStates();
+				updateJFrame(null);	
+			}
+		}
+	}
+
+	@Override
+	public void mouseReleased(MouseEvent e) {
+		// TODO Auto-generated method stub
+	}
+
+	@Override
+	public void mouseDragged(MouseEvent e) {
+		// TODO Auto-generated method stub
+	}
+
+	@Override
+	public void mouseMoved(MouseEvent e) {
+		// TODO Auto-generated method stub
+	}
+
+	@Override
+	public void mouseWheelMoved(MouseWheelEvent e) {
+		double factor = 1 - 0.1 * e.getPreciseWheelRotation() ;
+		System.out.println(factor);
+		transform.scale(factor, factor);
+		updateJFrame(null);
+	}
+
+	@Override
+	public void keyPressed(KeyEvent e) {
+		System.out.println("reach");
+		if (e.isControlDown() && e.getKeyCode() == KeyEvent.VK_Z) {
+			undo(e.isShiftDown());
+			return;
+		}
+		if (e.isControlDown() && e.getKeyCode() == KeyEvent.VK_Y) {
+			undo(true);
+			return;
+		}
+		if (e.getKeyCode() == KeyEvent.VK_KP_LEFT) {
+			transform.translate(-20, 0);
+		}
+		if (e.getKeyCode() == KeyEvent.VK_KP_RIGHT) {
+			transform.translate(20, 0);
+		}
+		if (e.getKeyCode() == KeyEvent.VK_KP_UP) {
+			transform.translate(0, 20);
+		}
+		if (e.getKeyCode() == KeyEvent.VK_KP_DOWN) {
+			transform.translate(0, -20);
+		}
+		updateJFrame(null);
+	}
+
+	@Override
+	public void keyReleased(KeyEvent e) {
+		// TODO Auto-generated method stub
+		
+	}
+
+	@Override
+	public void keyTyped(KeyEvent e) {
+		// TODO Auto-generated method stub
+		
+	}
+}
\ No newline at end of file
@@ -0,0 +1,147 @@
+package fsmsketcher.ui;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ *
+ * A uniform grid over the canvas that finds the states near a point or inside an area
+ * without looking at every state. Each cell holds the states whose centers lie in it, so
+ * a click only checks the few cells around it and a repaint only the cells it can see.
+ * Cells are kept in a hash map, so empty space costs nothing however far the states are
+ * spread out.
+ *
+ * The index files a state by its position when it's added, so states that are indexed
+ * must be moved with move() rather than setX() and setY().
+ *
+ */
+final class SpatialIndex {
+
+	/**
+	 * The width and height of a cell, a few states across.
+	 */
+	static final int CELL_SIZE = 4 * StateDisplay.RADIUS;
+
+	/**
+	 * The states in each cell, by the cell's key.
+	 */
+	private final HashMap<Long, List<StateDisplay>> cells = new HashMap<>();
+
+	/**
+	 * Adds a state at its current position.
+	 *
+	 * @param sd The state to add.
+	 */
+	void add(StateDisplay sd) {
+		cells.computeIfAbsent(key(cell(sd.getX()), cell(sd.getY())), k -> new ArrayList<>(4)).add(sd);
+	}
+
+	/**
+	 * Removes a state.
+	 *
+	 * @param sd The state to remove. It must not have moved since it was added.
+	 */
+	void remove(StateDisplay sd) {
+		long key = key(cell(sd.getX()), cell(sd.getY()));
+		List<StateDisplay> cell = cells.get(key);
+		if (cell != null && cell.remove(sd) && cell.isEmpty()) {
+			cells.remove(key);
+		}
+	}
+
+	/**
+	 * Moves a state, refiling it if it lands in another cell.
+	 *
+	 * @param sd The state to move.
+	 * @param x The new x coordinate of its center.
+	 * @param y The new y coordinate of its center.
+	 */
+	void move(StateDisplay sd, int x, int y) {
+		remove(sd);
+		sd.setX(x);
+		sd.setY(y);
+		add(sd);
+	}
+
+	/**
+	 * Removes every state.
+	 */
+	void clear() {
+		cells.clear();
+	}
+
+	/**
+	 * Returns the states whose centers are less than a distance from a point.
+	 *
+	 * @param x The x coordinate of the point.
+	 * @param y The y coordinate of the point.
+	 * @param radius The distance.
+	 * @return The states, in no particular order.
+	 */
+	List<StateDisplay> statesNear(double x, double y, double radius) {
+		List<StateDisplay> near = new ArrayList<>();
+		for (long cx = cell(x - radius); cx <= cell(x + radius); cx++) {
+			for (long cy = cell(y - radius); cy <= cell(y + radius); cy++) {
+				List<StateDisplay> cell = cells.get(key(cx, cy));
+				if (cell == null) continue;
+				for (StateDisplay sd : cell) {
+					if (Math.hypot(x - sd.getX(), y - sd.getY()) < radius) {
+						near.add(sd);
+					}
+				}
+			}
+		}
+		return near;
+	}
+
+	/**
+	 * Returns the states whose centers lie inside an area.
+	 *
+	 * @param area The area.
+	 * @return The states, in no particular order.
+	 */
+	List<StateDisplay> statesIn(Rectangle2D area) {
+		List<StateDisplay> inside = new ArrayList<>();
+		long minX = cell(area.getMinX()), maxX = cell(area.getMaxX());
+		long minY = cell(area.getMinY()), maxY = cell(area.getMaxY());
+		//Zoomed far out, the area covers more cells than are in use, so look at those instead.
+		if (((double) maxX - minX + 1) * ((double) maxY - minY + 1) > cells.size()) {
+			for (List<StateDisplay> cell : cells.values()) {
+				addInside(cell, area, inside);
+			}
+			return inside;
+		}
+		for (long cx = minX; cx <= maxX; cx++) {
+			for (long cy = minY; cy <= maxY; cy++) {
+				List<StateDisplay> cell = cells.get(key(cx, cy));
+				if (cell != null) {
+					addInside(cell, area, inside);
+				}
+			}
+		}
+		return inside;
+	}
+
+	private static void addInside(List<StateDisplay> cell, Rectangle2D area, List<StateDisplay> inside) {
+		for (StateDisplay sd : cell) {
+			if (area.contains(sd.getX(), sd.getY())) {
+				inside.add(sd);
+			}
+		}
+	}
+
+	private static long cell(double coordinate) {
+		return (long) Math.floor(coordinate / CELL_SIZE);
+	}
+
+	/**
+	 * Returns a hash map key for a cell. The cell's coordinates are packed into a long and
+	 * multiplied by an odd constant, which keeps keys distinct but spreads them, as a
+	 * Long's hash code of the packed coordinates alone is the same all along a diagonal.
+	 */
+	static long key(long cx, long cy) {
+		return ((cx << 32) ^ (cy & 0xffffffffL)) * 0x9E3779B97F4A7C15L;
+	}
+}
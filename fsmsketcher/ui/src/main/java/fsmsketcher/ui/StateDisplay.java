@@ -1,3 +1,5 @@
+package fsmsketcher.ui;
+
 import java.awt.Color;
 import java.awt.Graphics2D;
 
@@ -19,6 +21,16 @@ public class StateDisplay {
 	private static final Color SELECTED_STATE_COLOR = Color.RED.brighter();
 	private static final Color CURRENT_STATE_COLOR = Color.YELLOW.brighter();
 	private static final Color DEFAULT_COLOR = Color.WHITE;
+	/**
+	 * Colors from cold to hot, blue through to red, used to show how often a state is visited.
+	 */
+	private static final Color[] HEAT_COLORS = new Color[32];
+	static {
+		for (int i = 0; i < HEAT_COLORS.length; i++) {
+			float hue = (2f / 3f) * (1 - i / (float) (HEAT_COLORS.length - 1));
+			HEAT_COLORS[i] = Color.getHSBColor(hue, 0.6f, 1f);
+		}
+	}
 	
 	/**
 	 * The string that will be displayed on the state. Will be used by the user to identify the state.
@@ -52,6 +64,10 @@ public class StateDisplay {
 	 * Marks whether the user has marked the state.
 	 */
 	private boolean isSelected;
+	/**
+	 * How hot the state is drawn, from 0 to 1, or negative to draw it normally.
+	 */
+	private double heat = -1;
 	
 	
 	/**
@@ -95,9 +111,34 @@ public class StateDisplay {
 	 * @param g The graphics used to draw the state.
 	 */
 	public void draw(Graphics2D g) {
+		draw(g, true);
+	}
+	
+	/**
+	 * Draws the state, with or without showing whether it's selected or current. Without,
+	 * the drawing only changes when the state is edited, so it can be cached.
+	 * 
+	 * @param g The graphics used to draw the state.
+	 * @param highlights Whether the selected and current markings are drawn.
+	 */
+	public void draw(Graphics2D g, boolean highlights) {
+		draw(g, highlights, true);
+	}
+	
+	/**
+	 * Draws the state, leaving out the label if it would be too small to read.
+	 * 
+	 * @param g The graphics used to draw the state.
+	 * @param highlights Whether the selected and current markings are drawn.
+	 * @param withLabel Whether the label is drawn.
+	 */
+	public void draw(Graphics2D g, boolean highlights, boolean withLabel) {
 		g.setColor(DEFAULT_COLOR);
+		if (heat >= 0) {
+			g.setColor(HEAT_COLORS[(int) Math.round(Math.min(heat, 1) * (HEAT_COLORS.length - 1))]);
+		}
 		paintCenterCircle(g, x, y, RADIUS, true);
-		if (isSelected) {
+		if (isSelected && highlights) {
 			g.setColor(SELECTED_STATE_COLOR);
 			paintCenterCircle(g, x, y, RADIUS, true);
 		}
@@ -112,7 +153,7 @@ public class StateDisplay {
 			g.drawLine(x - 5 * RADIUS / 4, y + 5, x - RADIUS, y);
 			g.drawLine(x - 5 * RADIUS / 4, y - 5, x - RADIUS, y);
 		}
-		if (isCurrentState) {
+		if (isCurrentState && highlights) {
 			g.setColor(CURRENT_STATE_COLOR);
 			paintCenterCircle(g, x, y, RADIUS / 3, true);
 		}
@@ -120,7 +161,9 @@ public class StateDisplay {
 		
 		g.setColor(Color.BLACK);
 		paintCenterCircle(g, x, y, RADIUS, false);
-		g.drawString(label, x, y);
+		if (withLabel) {
+			g.drawString(label, x, y);
+		}
 	}
 	
 	/**
@@ -181,6 +224,13 @@ public class StateDisplay {
 	public boolean isSelected() {
 		return isSelected;
 	}
+	/**
+	 * Returns how hot the state is drawn.
+	 * @return The heat from 0 to 1, or a negative number if no heat is shown.
+	 */
+	public double getHeat() {
+		return heat;
+	}
 	
 	/**
 	 * Set's the string to be drawn over the state. This will be used to identify the state.
@@ -234,4 +284,11 @@ public class StateDisplay {
 	public void setIsSelected(boolean isSelected) {
 		this.isSelected = isSelected;
 	}
+	/**
+	 * Colors the state by how hot it is, from blue for 0 to red for 1.
+	 * @param heat The heat from 0 to 1, or a negative number to draw the state normally.
+	 */
+	public void setHeat(double heat) {
+		this.heat = heat;
+	}
 }
\ No newline at end of file
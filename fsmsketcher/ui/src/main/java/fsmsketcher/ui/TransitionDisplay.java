@@ -0,0 +1,216 @@
+package fsmsketcher.ui;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.QuadCurve2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+/**
+ * 
+ * @author Leonardo Gutierrez
+ * 
+ * This class represents the UI representation of a theoretical transition from one state to another. 
+ * This works with the SketchFrame class to display state data to the user.
+ *
+ */
+public class TransitionDisplay {
+
+	/**
+	 * The state the transition starts from.
+	 */
+	private StateDisplay fromState;
+	/**
+	 * The state the transition leads to.
+	 */
+	private StateDisplay toState;
+	/**
+	 * The symbols on which the transitions allows travel, in the order they were added.
+	 */
+	private LinkedHashSet<String> labels;
+	/**
+	 * Counts changes to the labels.
+	 */
+	private int labelsVersion;
+	/**
+	 * The label strings last drawn, and what they were made from, so they are only rebuilt
+	 * when the labels or the states' labels change.
+	 */
+	private String[] drawnLabels;
+	private int drawnLabelsVersion;
+	private String drawnFromLabel, drawnToLabel;
+	
+	/**
+	 * The crates a transition display from one state to another.
+	 * @param fromState The state the transition starts from.
+	 * @param toState The state the transition leads to.
+	 */
+	public TransitionDisplay(StateDisplay fromState, StateDisplay toState) {
+		this.fromState = fromState;
+		this.toState = toState;
+		this.labels = new LinkedHashSet<>();
+	}
+	
+	/**
+	 * Draws the transition to the screen.
+	 * 
+	 * <teammate documentation>
+	 * 
+	 * @param g The graphics used to draw.
+	 */
+	public void draw(Graphics2D g) {
+		//If the destination is the source, it is a self loop.
+		if (fromState == toState) {
+			int peakX = fromState.getX() - 2 * StateDisplay.RADIUS;
+			int peakY = fromState.getY() - 2 * StateDisplay.RADIUS;
+			QuadCurve2D q = new QuadCurve2D.Float();
+			q.setCurve(
+					fromState.getX() - StateDisplay.RADIUS, 
+					fromState.getY(), 
+					peakX, 
+					peakY, 
+					fromState.getX(), 
+					fromState.getY() - StateDisplay.RADIUS);
+			g.draw(q);
+			int i = 0;
+			for (String label : labels) {
+				g.drawString(label, peakX + StateDisplay.RADIUS + 10 * i++, peakY + StateDisplay.RADIUS - 15);	
+			}
+			g.drawOval(fromState.getX() - 5, fromState.getY() - StateDisplay.RADIUS - 5, 10, 10);
+			return;
+		}
+		
+		int startX = getStartX();
+		int startY = fromState.getY();
+		int endX = getEndX();
+		int endY = toState.getY();
+		
+		g.setColor(Color.BLACK);
+		g.drawLine(startX, startY, endX, endY);
+		String[] text = getLabelText();
+		for (int i = 0; i < text.length; i++) {
+			if (startX > endX) {
+				g.drawString(text[i], (startX + endX) / 2 + 10 * i - 15, (startY + endY) / 2 + 20);
+			} else {
+				g.drawString(text[i], (startX + endX) / 2 + 10 * i - 15, (startY + endY) / 2 - 20);
+			}
+				
+		}
+		g.fillOval(endX - 5, endY - 5, 10, 10);
+	}
+	
+	/**
+	 * Returns the x coordinate the line leaves its start state from, on the side facing the end state.
+	 * 
+	 * @return The x coordinate.
+	 */
+	int getStartX() {
+		return fromState.getX() + (toState.getX() < fromState.getX() ? -StateDisplay.RADIUS : StateDisplay.RADIUS);
+	}
+	
+	/**
+	 * Returns the x coordinate the line reaches its end state at, on the side facing the start state.
+	 * 
+	 * @return The x coordinate.
+	 */
+	int getEndX() {
+		return toState.getX() + (toState.getX() < fromState.getX() ? StateDisplay.RADIUS : -StateDisplay.RADIUS);
+	}
+	
+	/**
+	 * Returns the strings drawn for the labels, building them again only if something they
+	 * show has changed.
+	 */
+	private String[] getLabelText() {
+		String from = fromState.getLabel();
+		String to = toState.getLabel();
+		if (drawnLabels == null || from != drawnFromLabel || to != drawnToLabel || labelsVersion != drawnLabelsVersion) {
+			String prefix = from + " -> " + to + ": ";
+			drawnLabels = new String[labels.size()];
+			int i = 0;
+			for (String label : labels) {
+				drawnLabels[i++] = prefix + label;
+			}
+			drawnLabelsVersion = labelsVersion;
+			drawnFromLabel = from;
+			drawnToLabel = to;
+		}
+		return drawnLabels;
+	}
+	
+	/**
+	 * Returns whether the transition might be seen in an area. The area should allow for the
+	 * labels and self loops, which reach a little past the states' centers.
+	 * 
+	 * @param area The area, in the canvas' coordinates.
+	 * @return false if the line between the states' centers misses the area's bounds.
+	 */
+	public boolean intersects(Rectangle2D area) {
+		int minX = Math.min(fromState.getX(), toState.getX());
+		int minY = Math.min(fromState.getY(), toState.getY());
+		int maxX = Math.max(fromState.getX(), toState.getX());
+		int maxY = Math.max(fromState.getY(), toState.getY());
+		if (maxX < area.getMinX() || minX > area.getMaxX() || maxY < area.getMinY() || minY > area.getMaxY()) {
+			return false;
+		}
+		return fromState == toState || area.intersectsLine(fromState.getX(), fromState.getY(), toState.getX(), toState.getY());
+	}
+	
+	/**
+	 * Returns the state the transition starts from.
+	 * 
+	 * @return The start state.
+	 */
+	public StateDisplay getFromState() {
+		return fromState;
+	}
+	/**
+	 * Returns the state the transition leads to.
+	 * @return The end state.
+	 */
+	public StateDisplay getToState() {
+		return toState;
+	}
+	/**
+	 * Returns the transition symbols.
+	 * @return The labels of the transition, in the order they were added, which can't be changed through it.
+	 */
+	public Collection<String> getLabels() {
+		return Collections.unmodifiableCollection(labels);
+	}
+	/**
+	 * Returns whether the transition has a symbol.
+	 * @param label The symbol.
+	 * @return Whether it's one of the labels.
+	 */
+	public boolean hasLabel(String label) {
+		return labels.contains(label);
+	}
+	/**
+	 * Adds a transition symbol.
+	 * @param label The symbol.
+	 * @return false if the transition already had it.
+	 */
+	public boolean addLabel(String label) {
+		if (!labels.add(label)) {
+			return false;
+		}
+		labelsVersion++;
+		return true;
+	}
+	/**
+	 * Removes a transition symbol.
+	 * @param label The symbol.
+	 * @return false if the transition didn't have it.
+	 */
+	public boolean removeLabel(String label) {
+		if (!labels.remove(label)) {
+			return false;
+		}
+		labelsVersion++;
+		return true;
+	}
+}
\ No newline at end of file